@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.admin.cluster.node.stats;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.support.nodes.NodeOperationResponse;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.Nullable;
@@ -29,6 +30,7 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.http.HttpStats;
 import org.elasticsearch.indices.NodeIndicesStats;
 import org.elasticsearch.indices.fielddata.breaker.FieldDataBreakerStats;
+import org.elasticsearch.indices.fielddata.breaker.RequestBreakerStats;
 import org.elasticsearch.monitor.fs.FsStats;
 import org.elasticsearch.monitor.jvm.JvmStats;
 import org.elasticsearch.monitor.network.NetworkStats;
@@ -77,13 +79,16 @@ public class NodeStats extends NodeOperationResponse implements ToXContent {
     @Nullable
     private FieldDataBreakerStats breaker;
 
+    @Nullable
+    private RequestBreakerStats requestBreaker;
+
     NodeStats() {
     }
 
     public NodeStats(DiscoveryNode node, long timestamp, @Nullable NodeIndicesStats indices,
                      @Nullable OsStats os, @Nullable ProcessStats process, @Nullable JvmStats jvm, @Nullable ThreadPoolStats threadPool,
                      @Nullable NetworkStats network, @Nullable FsStats fs, @Nullable TransportStats transport, @Nullable HttpStats http,
-                     @Nullable FieldDataBreakerStats breaker) {
+                     @Nullable FieldDataBreakerStats breaker, @Nullable RequestBreakerStats requestBreaker) {
         super(node);
         this.timestamp = timestamp;
         this.indices = indices;
@@ -96,6 +101,7 @@ public class NodeStats extends NodeOperationResponse implements ToXContent {
         this.transport = transport;
         this.http = http;
         this.breaker = breaker;
+        this.requestBreaker = requestBreaker;
     }
 
     public long getTimestamp() {
@@ -178,6 +184,11 @@ public class NodeStats extends NodeOperationResponse implements ToXContent {
         return this.breaker;
     }
 
+    @Nullable
+    public RequestBreakerStats getRequestBreaker() {
+        return this.requestBreaker;
+    }
+
     public static NodeStats readNodeStats(StreamInput in) throws IOException {
         NodeStats nodeInfo = new NodeStats();
         nodeInfo.readFrom(in);
@@ -216,6 +227,9 @@ public class NodeStats extends NodeOperationResponse implements ToXContent {
             http = HttpStats.readHttpStats(in);
         }
         breaker = FieldDataBreakerStats.readOptionalCircuitBreakerStats(in);
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            requestBreaker = RequestBreakerStats.readOptionalRequestBreakerStats(in);
+        }
     }
 
     @Override
@@ -277,6 +291,9 @@ public class NodeStats extends NodeOperationResponse implements ToXContent {
             http.writeTo(out);
         }
         out.writeOptionalStreamable(breaker);
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            out.writeOptionalStreamable(requestBreaker);
+        }
     }
 
     @Override
@@ -327,6 +344,9 @@ public class NodeStats extends NodeOperationResponse implements ToXContent {
         if (getBreaker() != null) {
             getBreaker().toXContent(builder, params);
         }
+        if (getRequestBreaker() != null) {
+            getRequestBreaker().toXContent(builder, params);
+        }
 
         return builder;
     }
@@ -119,8 +119,9 @@ public class TransportClearIndicesCacheAction extends TransportBroadcastOperatio
     protected ShardClearIndicesCacheResponse shardOperation(ShardClearIndicesCacheRequest request) throws ElasticsearchException {
         IndexService service = indicesService.indexService(request.index());
         if (service != null) {
-            // we always clear the query cache
+            // we always clear the query caches
             service.cache().queryParserCache().clear();
+            service.cache().parsedQueryCache().clear("api");
             boolean clearedAtLeastOne = false;
             if (request.filterCache()) {
                 clearedAtLeastOne = true;
@@ -28,6 +28,7 @@ import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.index.cache.filter.FilterCacheStats;
 import org.elasticsearch.index.cache.id.IdCacheStats;
+import org.elasticsearch.index.cache.query.parsed.ParsedQueryCacheStats;
 import org.elasticsearch.index.engine.SegmentsStats;
 import org.elasticsearch.index.fielddata.FieldDataStats;
 import org.elasticsearch.index.flush.FlushStats;
@@ -107,6 +108,9 @@ public class CommonStats implements Streamable, ToXContent {
                 case Translog:
                     translog = new TranslogStats();
                     break;
+                case ParsedQueryCache:
+                    parsedQueryCache = new ParsedQueryCacheStats();
+                    break;
                 default:
                     throw new IllegalStateException("Unknown Flag: " + flag);
             }
@@ -167,6 +171,9 @@ public class CommonStats implements Streamable, ToXContent {
                 case Translog:
                     translog = indexShard.translogStats();
                     break;
+                case ParsedQueryCache:
+                    parsedQueryCache = indexShard.parsedQueryCacheStats();
+                    break;
                 default:
                     throw new IllegalStateException("Unknown Flag: " + flag);
             }
@@ -221,6 +228,9 @@ public class CommonStats implements Streamable, ToXContent {
     @Nullable
     public TranslogStats translog;
 
+    @Nullable
+    public ParsedQueryCacheStats parsedQueryCache;
+
     public void add(CommonStats stats) {
         if (docs == null) {
             if (stats.getDocs() != null) {
@@ -352,6 +362,14 @@ public class CommonStats implements Streamable, ToXContent {
         } else {
             translog.add(stats.getTranslog());
         }
+        if (parsedQueryCache == null) {
+            if (stats.getParsedQueryCache() != null) {
+                parsedQueryCache = new ParsedQueryCacheStats();
+                parsedQueryCache.add(stats.getParsedQueryCache());
+            }
+        } else {
+            parsedQueryCache.add(stats.getParsedQueryCache());
+        }
     }
 
     @Nullable
@@ -432,6 +450,11 @@ public class CommonStats implements Streamable, ToXContent {
     @Nullable
     public TranslogStats getTranslog() { return translog; }
 
+    @Nullable
+    public ParsedQueryCacheStats getParsedQueryCache() {
+        return parsedQueryCache;
+    }
+
     public static CommonStats readCommonStats(StreamInput in) throws IOException {
         CommonStats stats = new CommonStats();
         stats.readFrom(in);
@@ -492,6 +515,9 @@ public class CommonStats implements Streamable, ToXContent {
         if (in.getVersion().after(Version.V_1_0_0_Beta2)) {
             translog = in.readOptionalStreamable(new TranslogStats());
         }
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            parsedQueryCache = in.readOptionalStreamable(new ParsedQueryCacheStats());
+        }
     }
 
     @Override
@@ -593,6 +619,9 @@ public class CommonStats implements Streamable, ToXContent {
         if (out.getVersion().after(Version.V_1_0_0_Beta2)) {
             out.writeOptionalStreamable(translog);
         }
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            out.writeOptionalStreamable(parsedQueryCache);
+        }
     }
 
     // note, requires a wrapping object
@@ -646,6 +675,9 @@ public class CommonStats implements Streamable, ToXContent {
         if (translog != null) {
             translog.toXContent(builder, params);
         }
+        if (parsedQueryCache != null) {
+            parsedQueryCache.toXContent(builder, params);
+        }
         return builder;
     }
 }
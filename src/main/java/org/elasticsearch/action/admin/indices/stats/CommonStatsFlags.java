@@ -228,7 +228,8 @@ public class CommonStatsFlags implements Streamable, Cloneable {
         Percolate("percolate"),
         Completion("completion"),
         Segments("segments"),
-        Translog("translog");
+        Translog("translog"),
+        ParsedQueryCache("parsed_query_cache");
 
         private final String restName;
 
@@ -184,6 +184,15 @@ public class IndicesStatsRequest extends BroadcastOperationRequest<IndicesStatsR
         return flags.isSet(Flag.IdCache);
     }
 
+    public IndicesStatsRequest parsedQueryCache(boolean parsedQueryCache) {
+        flags.set(Flag.ParsedQueryCache, parsedQueryCache);
+        return this;
+    }
+
+    public boolean parsedQueryCache() {
+        return flags.isSet(Flag.ParsedQueryCache);
+    }
+
     public IndicesStatsRequest fieldData(boolean fieldData) {
         flags.set(Flag.FieldData, fieldData);
         return this;
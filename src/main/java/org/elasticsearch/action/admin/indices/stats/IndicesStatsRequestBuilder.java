@@ -124,6 +124,11 @@ public class IndicesStatsRequestBuilder extends BroadcastOperationRequestBuilder
         return this;
     }
 
+    public IndicesStatsRequestBuilder setParsedQueryCache(boolean parsedQueryCache) {
+        request.parsedQueryCache(parsedQueryCache);
+        return this;
+    }
+
     public IndicesStatsRequestBuilder setFieldData(boolean fieldData) {
         request.fieldData(fieldData);
         return this;
@@ -176,6 +176,9 @@ public class TransportIndicesStatsAction extends TransportBroadcastOperationActi
         if (request.request.idCache()) {
             flags.set(CommonStatsFlags.Flag.IdCache);
         }
+        if (request.request.parsedQueryCache()) {
+            flags.set(CommonStatsFlags.Flag.ParsedQueryCache);
+        }
         if (request.request.fieldData()) {
             flags.set(CommonStatsFlags.Flag.FieldData);
             flags.fieldDataFields(request.request.fieldDataFields());
@@ -95,21 +95,28 @@ public class TransportShardMultiPercolateAction extends TransportShardSingleOper
 
     @Override
     protected Response shardOperation(Request request, int shardId) throws ElasticsearchException {
-        // TODO: Look into combining the shard req's docs into one in memory index.
+        List<PercolateShardRequest> shardRequests = new ArrayList<PercolateShardRequest>(request.items.size());
+        for (Request.Item item : request.items) {
+            shardRequests.add(item.request);
+        }
+        // documents are percolated together when possible
+        Object[] results = percolatorService.percolate(shardRequests);
+
         Response response = new Response();
         response.items = new ArrayList<Response.Item>(request.items.size());
-        for (Request.Item item : request.items) {
+        for (int i = 0; i < request.items.size(); i++) {
+            int slot = request.items.get(i).slot;
             Response.Item responseItem;
-            int slot = item.slot;
-            try {
-                responseItem = new Response.Item(slot, percolatorService.percolate(item.request));
-            } catch (Throwable t) {
+            if (results[i] instanceof Throwable) {
+                Throwable t = (Throwable) results[i];
                 if (TransportActions.isShardNotAvailableException(t)) {
                     throw (ElasticsearchException) t;
                 } else {
                     logger.debug("[{}][{}] failed to multi percolate", t, request.index(), request.shardId());
                     responseItem = new Response.Item(slot, new StringText(ExceptionsHelper.detailedMessage(t)));
                 }
+            } else {
+                responseItem = new Response.Item(slot, (PercolateShardResponse) results[i]);
             }
             response.items.add(responseItem);
         }
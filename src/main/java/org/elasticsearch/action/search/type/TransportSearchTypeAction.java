@@ -21,6 +21,7 @@ package org.elasticsearch.action.search.type;
 
 import com.carrotsearch.hppc.IntArrayList;
 import org.apache.lucene.search.ScoreDoc;
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.NoShardAvailableActionException;
 import org.elasticsearch.action.search.*;
@@ -44,9 +45,11 @@ import org.elasticsearch.search.action.SearchServiceTransportAction;
 import org.elasticsearch.search.controller.SearchPhaseController;
 import org.elasticsearch.search.internal.InternalSearchResponse;
 import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.query.QuerySearchResultProvider;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -95,6 +98,11 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
         private final Object shardFailuresMutex = new Object();
         protected volatile ScoreDoc[] sortedShardList;
 
+        // query results which have not been partially reduced yet, only used if there are more shards than the batched reduce size
+        private final List<AtomicArray.Entry<QuerySearchResult>> unreducedResults;
+        private final Object partialReduceMutex = new Object();
+        private volatile Throwable partialReduceFailure;
+
         protected final long startTime = System.currentTimeMillis();
 
         protected BaseAsyncAction(SearchRequest request, ActionListener<SearchResponse> listener) {
@@ -120,6 +128,11 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
             expectedTotalOps = shardsIts.totalSizeWith1ForEmpty();
 
             firstResults = new AtomicArray<FirstResult>(shardsIts.size());
+            if (expectedSuccessfulOps > searchPhaseController.batchedReduceSize()) {
+                unreducedResults = new ArrayList<AtomicArray.Entry<QuerySearchResult>>();
+            } else {
+                unreducedResults = null;
+            }
         }
 
         public void start() {
@@ -393,9 +406,49 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
             if (shardFailures != null) {
                 shardFailures.set(shardIndex, null);
             }
+
+            if (unreducedResults != null && result instanceof QuerySearchResult) {
+                partialReduce(shardIndex, (QuerySearchResult) result);
+            }
+        }
+
+        /**
+         * Buffers the given query result, and reduces the buffered results into a single one once there are enough of
+         * them, so that the memory usage of the coordinating node is bounded by the batched reduce size rather than by
+         * the number of shards.
+         */
+        private void partialReduce(int shardIndex, QuerySearchResult result) {
+            synchronized (partialReduceMutex) {
+                if (partialReduceFailure != null) {
+                    return;
+                }
+                unreducedResults.add(new AtomicArray.Entry<QuerySearchResult>(shardIndex, result));
+                if (unreducedResults.size() < searchPhaseController.batchedReduceSize()) {
+                    return;
+                }
+                try {
+                    QuerySearchResult reduced = searchPhaseController.partialReduce(unreducedResults);
+                    AtomicArray.Entry<QuerySearchResult> reducedEntry = null;
+                    for (AtomicArray.Entry<QuerySearchResult> entry : unreducedResults) {
+                        if (entry.value == reduced) {
+                            reducedEntry = entry;
+                            break;
+                        }
+                    }
+                    assert reducedEntry != null;
+                    unreducedResults.clear();
+                    unreducedResults.add(reducedEntry);
+                } catch (Throwable t) {
+                    // the results may be in an inconsistent state, fail the search when moving to the second phase
+                    partialReduceFailure = t;
+                }
+            }
         }
 
         final void innerMoveToSecondPhase() throws Exception {
+            if (partialReduceFailure != null) {
+                throw new ElasticsearchException("failed to partially reduce query results", partialReduceFailure);
+            }
             if (logger.isTraceEnabled()) {
                 StringBuilder sb = new StringBuilder();
                 boolean hadOne = false;
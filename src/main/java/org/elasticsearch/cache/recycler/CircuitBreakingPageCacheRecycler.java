@@ -0,0 +1,158 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cache.recycler;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.recycler.Recycler;
+import org.elasticsearch.common.util.BigArrays;
+
+/**
+ * A {@link PageCacheRecycler} that charges every page it hands out against a circuit breaker. Pages are uncharged
+ * when they are released, and whatever is still charged when this recycler is released, eg. because pages are
+ * still held by a scroll that has been cleared, is uncharged at once. This recycler is meant to be used for the
+ * duration of a single request, pages are obtained from and returned to the node-level recycler.
+ */
+public class CircuitBreakingPageCacheRecycler extends PageCacheRecycler implements Releasable {
+
+    private final PageCacheRecycler delegate;
+    private final MemoryCircuitBreaker breaker;
+    private long charged;
+    private boolean released;
+
+    public CircuitBreakingPageCacheRecycler(PageCacheRecycler delegate, MemoryCircuitBreaker breaker) {
+        super(delegate);
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    /** Return the number of bytes that are currently charged against the breaker. */
+    public synchronized long chargedBytes() {
+        return charged;
+    }
+
+    /** Charge a page against the breaker, returns false if this recycler has already been released. */
+    private synchronized boolean charge() {
+        if (released) {
+            return false;
+        }
+        try {
+            breaker.addEstimateBytesAndMaybeBreak(BigArrays.PAGE_SIZE_IN_BYTES);
+        } catch (CircuitBreakingException e) {
+            throw new CircuitBreakingException("[request] " + e.getMessage() + ", request already uses [" + charged + "] bytes");
+        }
+        charged += BigArrays.PAGE_SIZE_IN_BYTES;
+        return true;
+    }
+
+    private synchronized void uncharge() {
+        // once released, the charge of this page has already been given back
+        if (!released) {
+            charged -= BigArrays.PAGE_SIZE_IN_BYTES;
+            breaker.addWithoutBreaking(-BigArrays.PAGE_SIZE_IN_BYTES);
+        }
+    }
+
+    private <T> Recycler.V<T> wrap(final Recycler.V<T> v) {
+        return new Recycler.V<T>() {
+
+            private boolean closed;
+
+            @Override
+            public T v() {
+                return v.v();
+            }
+
+            @Override
+            public boolean isRecycled() {
+                return v.isRecycled();
+            }
+
+            @Override
+            public boolean release() throws ElasticsearchException {
+                if (!closed) {
+                    closed = true;
+                    uncharge();
+                }
+                return v.release();
+            }
+        };
+    }
+
+    @Override
+    public Recycler.V<byte[]> bytePage(boolean clear) {
+        if (charge()) {
+            return wrap(delegate.bytePage(clear));
+        }
+        return delegate.bytePage(clear);
+    }
+
+    @Override
+    public Recycler.V<int[]> intPage(boolean clear) {
+        if (charge()) {
+            return wrap(delegate.intPage(clear));
+        }
+        return delegate.intPage(clear);
+    }
+
+    @Override
+    public Recycler.V<long[]> longPage(boolean clear) {
+        if (charge()) {
+            return wrap(delegate.longPage(clear));
+        }
+        return delegate.longPage(clear);
+    }
+
+    @Override
+    public Recycler.V<double[]> doublePage(boolean clear) {
+        if (charge()) {
+            return wrap(delegate.doublePage(clear));
+        }
+        return delegate.doublePage(clear);
+    }
+
+    @Override
+    public Recycler.V<Object[]> objectPage() {
+        if (charge()) {
+            return wrap(delegate.objectPage());
+        }
+        return delegate.objectPage();
+    }
+
+    /**
+     * Give the memory that is still charged back to the breaker.
+     */
+    @Override
+    public synchronized boolean release() throws ElasticsearchException {
+        if (!released) {
+            released = true;
+            breaker.addWithoutBreaking(-charged);
+            charged = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // the pages belong to the node-level recycler
+    }
+}
@@ -77,6 +77,18 @@ public class PageCacheRecycler extends AbstractComponent {
         return (int) (weight / totalWeight * limit / pageSize);
     }
 
+    /**
+     * Create a recycler that shares the pages of the given recycler.
+     */
+    protected PageCacheRecycler(PageCacheRecycler other) {
+        super(other.settings);
+        this.bytePage = other.bytePage;
+        this.intPage = other.intPage;
+        this.longPage = other.longPage;
+        this.doublePage = other.doublePage;
+        this.objectPage = other.objectPage;
+    }
+
     @Inject
     public PageCacheRecycler(Settings settings, ThreadPool threadPool) {
         super(settings);
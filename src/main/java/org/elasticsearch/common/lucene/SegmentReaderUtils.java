@@ -0,0 +1,48 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+
+public final class SegmentReaderUtils {
+
+    private SegmentReaderUtils() {
+    }
+
+    /**
+     * Registers a listener that is notified once the core of the given reader is closed, ie. once no search can use
+     * what has been loaded for this core anymore. Readers that are not segment readers are expected to own their core,
+     * the listener is notified when they are closed.
+     */
+    public static void registerCoreListener(AtomicReader reader, final SegmentReader.CoreClosedListener listener) {
+        if (reader instanceof SegmentReader) {
+            ((SegmentReader) reader).addCoreClosedListener(listener);
+        } else {
+            reader.addReaderClosedListener(new IndexReader.ReaderClosedListener() {
+                @Override
+                public void onClose(IndexReader reader) {
+                    listener.onClose(reader.getCoreCacheKey());
+                }
+            });
+        }
+    }
+}
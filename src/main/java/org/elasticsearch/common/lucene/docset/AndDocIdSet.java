@@ -21,10 +21,12 @@ package org.elasticsearch.common.lucene.docset;
 
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Bits;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -117,6 +119,16 @@ public class AndDocIdSet extends DocIdSet {
     }
 
     static class IteratorBasedIterator extends DocIdSetIterator {
+
+        private static final Comparator<DocIdSetIterator> COST_COMPARATOR = new Comparator<DocIdSetIterator>() {
+            @Override
+            public int compare(DocIdSetIterator o1, DocIdSetIterator o2) {
+                final long cost1 = o1.cost();
+                final long cost2 = o2.cost();
+                return cost1 < cost2 ? -1 : (cost1 == cost2 ? 0 : 1);
+            }
+        };
+
         int lastReturn = -1;
         private DocIdSetIterator[] iterators = null;
         private final long cost;
@@ -143,6 +155,8 @@ public class AndDocIdSet extends DocIdSet {
             this.cost = cost;
             if (lastReturn != DocIdSetIterator.NO_MORE_DOCS) {
                 lastReturn = (iterators.length > 0 ? -1 : DocIdSetIterator.NO_MORE_DOCS);
+                // lead with the sparsest iterator, the other ones only need to advance to its documents
+                ArrayUtil.timSort(iterators, COST_COMPARATOR);
             }
         }
 
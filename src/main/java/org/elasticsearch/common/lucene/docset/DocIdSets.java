@@ -25,6 +25,7 @@ import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.OpenBitSetIterator;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.common.Nullable;
 
 import java.io.IOException;
@@ -35,7 +36,18 @@ public class DocIdSets {
 
     public static long sizeInBytes(DocIdSet docIdSet) {
         if (docIdSet instanceof FixedBitSet) {
-            return ((FixedBitSet) docIdSet).getBits().length * 8 + 16;
+            return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_OBJECT_REF + 2 * RamUsageEstimator.NUM_BYTES_INT)
+                    + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) RamUsageEstimator.NUM_BYTES_LONG * ((FixedBitSet) docIdSet).getBits().length);
+        }
+        if (docIdSet instanceof SparseDocIdSet) {
+            return ((SparseDocIdSet) docIdSet).sizeInBytes();
+        }
+        if (docIdSet instanceof RoaringDocIdSet) {
+            return ((RoaringDocIdSet) docIdSet).sizeInBytes();
+        }
+        if (docIdSet instanceof OffHeapDocIdSet) {
+            // the off-heap memory, the heap footprint is negligible
+            return ((OffHeapDocIdSet) docIdSet).sizeInBytes();
         }
         // only for empty ones and unknowns...
         return 1;
@@ -53,7 +65,7 @@ public class DocIdSets {
      * For example, it does not ends up iterating one doc at a time check for its "value".
      */
     public static boolean isFastIterator(DocIdSet set) {
-        return set instanceof FixedBitSet;
+        return set instanceof FixedBitSet || set instanceof SparseDocIdSet || set instanceof RoaringDocIdSet || set instanceof OffHeapDocIdSet;
     }
 
     /**
@@ -62,7 +74,8 @@ public class DocIdSets {
      */
     public static boolean isFastIterator(DocIdSetIterator iterator) {
         // this is the iterator in the FixedBitSet.
-        return iterator instanceof OpenBitSetIterator;
+        return iterator instanceof OpenBitSetIterator || iterator instanceof SparseDocIdSet.Iterator || iterator instanceof RoaringDocIdSet.Iterator
+                || iterator instanceof OffHeapDocIdSet.DenseIterator || iterator instanceof OffHeapDocIdSet.SparseIterator;
     }
 
     /**
@@ -96,6 +109,45 @@ public class DocIdSets {
         return fixedBitSet;
     }
     
+    /**
+     * Converts to a cacheable {@link DocIdSet} like {@link #toCacheable(AtomicReader, DocIdSet)}, but picks the most
+     * compact representation given the cardinality and the layout of the documents.
+     *
+     * @see #compress(FixedBitSet)
+     */
+    public static DocIdSet toCompressedCacheable(AtomicReader reader, @Nullable DocIdSet set) throws IOException {
+        DocIdSet cacheable = toCacheable(reader, set);
+        if (cacheable instanceof FixedBitSet) {
+            return compress((FixedBitSet) cacheable);
+        }
+        return cacheable;
+    }
+
+    /**
+     * Returns the smallest of a {@link SparseDocIdSet} (very sparse sets), a {@link RoaringDocIdSet} (sparse or clustered
+     * sets) and the given bit set (dense sets) holding the same documents. Since bit sets have the fastest random access,
+     * the bit set is kept unless compressing saves at least a quarter of its size.
+     */
+    public static DocIdSet compress(FixedBitSet bitSet) {
+        final long bitSetSize = sizeInBytes(bitSet);
+        final long maxCompressedSize = bitSetSize - (bitSetSize >>> 2);
+        final int cardinality = (int) bitSet.cardinality();
+        final long sparseSize = SparseDocIdSet.sizeInBytes(cardinality);
+        final long roaringSize = RoaringDocIdSet.sizeInBytes(bitSet);
+        if (sparseSize <= roaringSize && sparseSize <= maxCompressedSize) {
+            final int[] docs = new int[cardinality];
+            int i = 0;
+            for (int doc = bitSet.nextSetBit(0); doc != -1; doc = doc + 1 < bitSet.length() ? bitSet.nextSetBit(doc + 1) : -1) {
+                docs[i++] = doc;
+            }
+            return new SparseDocIdSet(docs, bitSet.length());
+        }
+        if (roaringSize <= maxCompressedSize) {
+            return RoaringDocIdSet.of(bitSet);
+        }
+        return bitSet;
+    }
+
     /** An empty {@code DocIdSet} instance */
     protected static final DocIdSet EMPTY_DOCIDSET = new DocIdSet() {
       
@@ -0,0 +1,290 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.docset;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.util.SlabAllocator;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable {@link DocIdSet} whose documents are stored off-heap, in a chunk of a {@link SlabAllocator}. Dense
+ * sets are stored as a bit set and sparse ones as a sorted list of doc ids, whichever is smaller. Iteration and random
+ * access read the off-heap memory directly.
+ * <p/>
+ * The set is reference counted: it starts with one reference, more can be acquired with {@link #incRef()}, and its
+ * memory is freed once all of them have been {@link #release() released}. Since searches may still hold the set after
+ * it has been evicted from a cache, a reference should be held until the segment it belongs to is closed.
+ */
+public abstract class OffHeapDocIdSet extends DocIdSet implements Bits {
+
+    final SlabAllocator.Chunk chunk;
+    final int maxDoc;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    OffHeapDocIdSet(SlabAllocator.Chunk chunk, int maxDoc) {
+        this.chunk = chunk;
+        this.maxDoc = maxDoc;
+    }
+
+    /**
+     * Copies the given bit set off-heap, or returns <tt>null</tt> if the allocator could not allocate the memory.
+     */
+    @Nullable
+    public static OffHeapDocIdSet copyOf(FixedBitSet bitSet, SlabAllocator allocator) {
+        final long[] bits = bitSet.getBits();
+        final int numWords = FixedBitSet.bits2words(bitSet.length());
+        final int cardinality = (int) bitSet.cardinality();
+        if ((long) RamUsageEstimator.NUM_BYTES_INT * cardinality < (long) RamUsageEstimator.NUM_BYTES_LONG * numWords) {
+            final SlabAllocator.Chunk chunk = allocator.allocate(RamUsageEstimator.NUM_BYTES_INT * cardinality);
+            if (chunk == null) {
+                return null;
+            }
+            final IntBuffer docs = chunk.buffer().asIntBuffer();
+            int i = 0;
+            for (int doc = bitSet.nextSetBit(0); doc != -1; doc = doc + 1 < bitSet.length() ? bitSet.nextSetBit(doc + 1) : -1) {
+                docs.put(i++, doc);
+            }
+            return new Sparse(chunk, bitSet.length());
+        } else {
+            final SlabAllocator.Chunk chunk = allocator.allocate(RamUsageEstimator.NUM_BYTES_LONG * numWords);
+            if (chunk == null) {
+                return null;
+            }
+            final LongBuffer words = chunk.buffer().asLongBuffer();
+            for (int i = 0; i < numWords; i++) {
+                words.put(i, bits[i]);
+            }
+            return new Dense(chunk, bitSet.length(), cardinality);
+        }
+    }
+
+    /**
+     * The number of off-heap bytes used by this set.
+     */
+    public long sizeInBytes() {
+        return chunk.size();
+    }
+
+    public void incRef() {
+        refCount.incrementAndGet();
+    }
+
+    /**
+     * Releases a reference to this set, its off-heap memory is given back to its allocator with the last one.
+     */
+    public void release() {
+        if (refCount.decrementAndGet() == 0) {
+            chunk.release();
+        }
+    }
+
+    public abstract int cardinality();
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public Bits bits() {
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return maxDoc;
+    }
+
+    static final class Dense extends OffHeapDocIdSet {
+
+        private final LongBuffer words;
+        private final int cardinality;
+
+        Dense(SlabAllocator.Chunk chunk, int maxDoc, int cardinality) {
+            super(chunk, maxDoc);
+            this.words = chunk.buffer().asLongBuffer();
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public boolean get(int index) {
+            return (words.get(index >> 6) & (1L << index)) != 0;
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+            return new DenseIterator(words, maxDoc, cardinality);
+        }
+    }
+
+    static final class DenseIterator extends DocIdSetIterator {
+
+        private final LongBuffer words;
+        private final int numWords;
+        private final int numBits;
+        private final int cardinality;
+        private int doc = -1;
+
+        DenseIterator(LongBuffer words, int numBits, int cardinality) {
+            this.words = words;
+            this.numWords = words.capacity();
+            this.numBits = numBits;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            return advance(doc + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            if (target >= numBits) {
+                return doc = NO_MORE_DOCS;
+            }
+            int i = target >> 6;
+            long word = words.get(i) >> target; // skip all the bits to the right of the target
+            if (word != 0) {
+                return doc = target + Long.numberOfTrailingZeros(word);
+            }
+            while (++i < numWords) {
+                word = words.get(i);
+                if (word != 0) {
+                    return doc = (i << 6) + Long.numberOfTrailingZeros(word);
+                }
+            }
+            return doc = NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+            return cardinality;
+        }
+    }
+
+    static final class Sparse extends OffHeapDocIdSet {
+
+        private final IntBuffer docs;
+
+        Sparse(SlabAllocator.Chunk chunk, int maxDoc) {
+            super(chunk, maxDoc);
+            this.docs = chunk.buffer().asIntBuffer();
+        }
+
+        @Override
+        public int cardinality() {
+            return docs.capacity();
+        }
+
+        @Override
+        public boolean get(int index) {
+            final int i = binarySearch(docs, 0, docs.capacity(), index);
+            return i < docs.capacity() && docs.get(i) == index;
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+            return new SparseIterator(docs);
+        }
+    }
+
+    /**
+     * Same as {@link SparseDocIdSet#binarySearch(int[], int, int, int)}, on an {@link IntBuffer}.
+     */
+    static int binarySearch(IntBuffer docs, int from, int to, int target) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (docs.get(mid) < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    static final class SparseIterator extends DocIdSetIterator {
+
+        private final IntBuffer docs;
+        private final int length;
+        private int i = -1;
+        private int doc = -1;
+
+        SparseIterator(IntBuffer docs) {
+            this.docs = docs;
+            this.length = docs.capacity();
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            if (++i < length) {
+                return doc = docs.get(i);
+            }
+            i = length;
+            return doc = NO_MORE_DOCS;
+        }
+
+        @Override
+        public int advance(int target) {
+            // gallop first, targets are usually close to the current doc
+            int from = i + 1;
+            int bound = 1;
+            while (from + bound < length && docs.get(from + bound) < target) {
+                from += bound;
+                bound <<= 1;
+            }
+            i = binarySearch(docs, from, Math.min(length, from + bound + 1), target);
+            if (i < length) {
+                return doc = docs.get(i);
+            }
+            return doc = NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.docset;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * An immutable {@link DocIdSet} that splits the doc id space into blocks of 65536 documents and stores each non
+ * empty block in the smallest of three containers:
+ * <ul>
+ * <li>a sorted array of 16 bits values, for sparse blocks,</li>
+ * <li>a bitmap of 65536 bits, for dense blocks,</li>
+ * <li>sorted runs of consecutive documents, for clustered blocks.</li>
+ * </ul>
+ * Random access and advancing only need to look at the block of the target document.
+ */
+public class RoaringDocIdSet extends DocIdSet implements Bits {
+
+    static final int BLOCK_SHIFT = 16;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    static final int BITMAP_WORDS = BLOCK_SIZE >>> 6;
+
+    private final Container[] containers;
+    private final int maxDoc;
+    private final int cardinality;
+    private final long sizeInBytes;
+
+    private RoaringDocIdSet(Container[] containers, int maxDoc, int cardinality) {
+        this.containers = containers;
+        this.maxDoc = maxDoc;
+        this.cardinality = cardinality;
+        long sizeInBytes = shallowSizeInBytes(containers.length);
+        for (Container container : containers) {
+            if (container != null) {
+                sizeInBytes += container.sizeInBytes();
+            }
+        }
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    private static long shallowSizeInBytes(int numBlocks) {
+        return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_OBJECT_REF
+                + 2 * RamUsageEstimator.NUM_BYTES_INT + RamUsageEstimator.NUM_BYTES_LONG)
+                + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * numBlocks);
+    }
+
+    private static long arraySizeInBytes(int cardinality) {
+        return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_OBJECT_REF)
+                + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + RamUsageEstimator.NUM_BYTES_CHAR * cardinality);
+    }
+
+    private static long bitmapSizeInBytes() {
+        return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_OBJECT_REF)
+                + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + RamUsageEstimator.NUM_BYTES_LONG * BITMAP_WORDS);
+    }
+
+    private static long runsSizeInBytes(int numRuns) {
+        return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF)
+                + 2 * RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + RamUsageEstimator.NUM_BYTES_CHAR * numRuns);
+    }
+
+    /**
+     * @return The exact size in bytes a {@link RoaringDocIdSet} built from the given bit set would take, without building it.
+     */
+    public static long sizeInBytes(FixedBitSet bitSet) {
+        final long[] words = bitSet.getBits();
+        final int numBlocks = numBlocks(bitSet.length());
+        long sizeInBytes = shallowSizeInBytes(numBlocks);
+        for (int block = 0; block < numBlocks; ++block) {
+            final int from = block * BITMAP_WORDS;
+            final int to = Math.min(words.length, from + BITMAP_WORDS);
+            final int cardinality = cardinality(words, from, to);
+            if (cardinality > 0) {
+                sizeInBytes += Math.min(Math.min(arraySizeInBytes(cardinality), bitmapSizeInBytes()), runsSizeInBytes(numRuns(words, from, to)));
+            }
+        }
+        return sizeInBytes;
+    }
+
+    /**
+     * Builds a {@link RoaringDocIdSet} that contains the same documents as the given bit set.
+     */
+    public static RoaringDocIdSet of(FixedBitSet bitSet) {
+        final long[] words = bitSet.getBits();
+        final Container[] containers = new Container[numBlocks(bitSet.length())];
+        int totalCardinality = 0;
+        for (int block = 0; block < containers.length; ++block) {
+            final int from = block * BITMAP_WORDS;
+            final int to = Math.min(words.length, from + BITMAP_WORDS);
+            final int cardinality = cardinality(words, from, to);
+            if (cardinality == 0) {
+                continue;
+            }
+            totalCardinality += cardinality;
+            final int numRuns = numRuns(words, from, to);
+            final long arraySize = arraySizeInBytes(cardinality);
+            final long runsSize = runsSizeInBytes(numRuns);
+            if (runsSize < arraySize && runsSize < bitmapSizeInBytes()) {
+                containers[block] = RunContainer.of(words, from, to, numRuns);
+            } else if (arraySize < bitmapSizeInBytes()) {
+                containers[block] = ArrayContainer.of(words, from, to, cardinality);
+            } else {
+                final long[] bitmap = new long[BITMAP_WORDS];
+                System.arraycopy(words, from, bitmap, 0, to - from);
+                containers[block] = new BitmapContainer(bitmap);
+            }
+        }
+        return new RoaringDocIdSet(containers, bitSet.length(), totalCardinality);
+    }
+
+    private static int numBlocks(int maxDoc) {
+        return (maxDoc + BLOCK_MASK) >>> BLOCK_SHIFT;
+    }
+
+    private static int cardinality(long[] words, int from, int to) {
+        int cardinality = 0;
+        for (int i = from; i < to; ++i) {
+            cardinality += Long.bitCount(words[i]);
+        }
+        return cardinality;
+    }
+
+    private static int numRuns(long[] words, int from, int to) {
+        int numRuns = 0;
+        long previousWord = 0;
+        for (int i = from; i < to; ++i) {
+            final long word = words[i];
+            // a run starts on every set bit whose previous bit is not set
+            numRuns += Long.bitCount(word & ~((word << 1) | (previousWord >>> 63)));
+            previousWord = word;
+        }
+        return numRuns;
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public Bits bits() {
+        return this;
+    }
+
+    @Override
+    public boolean get(int index) {
+        final Container container = containers[index >>> BLOCK_SHIFT];
+        return container != null && container.get(index & BLOCK_MASK);
+    }
+
+    @Override
+    public int length() {
+        return maxDoc;
+    }
+
+    @Override
+    public DocIdSetIterator iterator() {
+        return new Iterator();
+    }
+
+    final class Iterator extends DocIdSetIterator {
+
+        private int block = -1;
+        private ContainerIterator blockIterator;
+        private int doc = -1;
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            if (blockIterator != null) {
+                final int low = blockIterator.nextDoc();
+                if (low != NO_MORE_DOCS) {
+                    return doc = (block << BLOCK_SHIFT) | low;
+                }
+            }
+            return firstDoc(block + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            final int targetBlock = target >>> BLOCK_SHIFT;
+            if (targetBlock >= containers.length) {
+                blockIterator = null;
+                block = containers.length;
+                return doc = NO_MORE_DOCS;
+            }
+            if (targetBlock != block) {
+                block = targetBlock;
+                blockIterator = containers[block] == null ? null : containers[block].iterator();
+            }
+            if (blockIterator != null) {
+                final int low = blockIterator.advance(target & BLOCK_MASK);
+                if (low != NO_MORE_DOCS) {
+                    return doc = (block << BLOCK_SHIFT) | low;
+                }
+            }
+            return firstDoc(block + 1);
+        }
+
+        private int firstDoc(int fromBlock) {
+            for (block = fromBlock; block < containers.length; ++block) {
+                if (containers[block] != null) {
+                    blockIterator = containers[block].iterator();
+                    // containers are never empty
+                    return doc = (block << BLOCK_SHIFT) | blockIterator.nextDoc();
+                }
+            }
+            blockIterator = null;
+            return doc = NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+            return cardinality;
+        }
+    }
+
+    static abstract class Container {
+
+        abstract boolean get(int low);
+
+        abstract ContainerIterator iterator();
+
+        abstract long sizeInBytes();
+    }
+
+    /**
+     * Iterates over the documents of a container, returning {@link DocIdSetIterator#NO_MORE_DOCS} when exhausted.
+     */
+    static abstract class ContainerIterator {
+
+        abstract int nextDoc();
+
+        /**
+         * Advances to the first document greater than or equal to the target, which must be greater than the current document.
+         */
+        abstract int advance(int target);
+    }
+
+    static final class ArrayContainer extends Container {
+
+        private final char[] values;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        static ArrayContainer of(long[] words, int from, int to, int cardinality) {
+            final char[] values = new char[cardinality];
+            int j = 0;
+            for (int i = from; i < to; ++i) {
+                long word = words[i];
+                while (word != 0) {
+                    values[j++] = (char) (((i - from) << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values);
+        }
+
+        @Override
+        boolean get(int low) {
+            final int i = binarySearch(values, 0, values.length, low);
+            return i < values.length && values[i] == low;
+        }
+
+        @Override
+        ContainerIterator iterator() {
+            return new ContainerIterator() {
+                int i = -1;
+
+                @Override
+                int nextDoc() {
+                    return ++i < values.length ? values[i] : DocIdSetIterator.NO_MORE_DOCS;
+                }
+
+                @Override
+                int advance(int target) {
+                    i = binarySearch(values, i + 1, values.length, target);
+                    return i < values.length ? values[i] : DocIdSetIterator.NO_MORE_DOCS;
+                }
+            };
+        }
+
+        @Override
+        long sizeInBytes() {
+            return arraySizeInBytes(values.length);
+        }
+    }
+
+    static final class BitmapContainer extends Container {
+
+        private final long[] bits;
+
+        BitmapContainer(long[] bits) {
+            this.bits = bits;
+        }
+
+        @Override
+        boolean get(int low) {
+            return (bits[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        ContainerIterator iterator() {
+            return new ContainerIterator() {
+                int current = -1;
+
+                @Override
+                int nextDoc() {
+                    return advance(current + 1);
+                }
+
+                @Override
+                int advance(int target) {
+                    if (target >= BLOCK_SIZE) {
+                        return current = DocIdSetIterator.NO_MORE_DOCS;
+                    }
+                    int i = target >>> 6;
+                    long word = bits[i] >>> target;
+                    if (word != 0) {
+                        return current = target + Long.numberOfTrailingZeros(word);
+                    }
+                    while (++i < BITMAP_WORDS) {
+                        word = bits[i];
+                        if (word != 0) {
+                            return current = (i << 6) + Long.numberOfTrailingZeros(word);
+                        }
+                    }
+                    return current = DocIdSetIterator.NO_MORE_DOCS;
+                }
+            };
+        }
+
+        @Override
+        long sizeInBytes() {
+            return bitmapSizeInBytes();
+        }
+    }
+
+    static final class RunContainer extends Container {
+
+        // inclusive bounds of the runs
+        private final char[] starts;
+        private final char[] ends;
+
+        RunContainer(char[] starts, char[] ends) {
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        static RunContainer of(long[] words, int from, int to, int numRuns) {
+            final char[] starts = new char[numRuns];
+            final char[] ends = new char[numRuns];
+            int run = -1;
+            int previous = -2;
+            for (int i = from; i < to; ++i) {
+                long word = words[i];
+                while (word != 0) {
+                    final int low = ((i - from) << 6) + Long.numberOfTrailingZeros(word);
+                    if (low != previous + 1) {
+                        starts[++run] = (char) low;
+                    }
+                    ends[run] = (char) low;
+                    previous = low;
+                    word &= word - 1;
+                }
+            }
+            assert run + 1 == numRuns;
+            return new RunContainer(starts, ends);
+        }
+
+        @Override
+        boolean get(int low) {
+            // the first run that ends after low
+            final int i = binarySearch(ends, 0, ends.length, low);
+            return i < ends.length && starts[i] <= low;
+        }
+
+        @Override
+        ContainerIterator iterator() {
+            return new ContainerIterator() {
+                int run = 0;
+                int current = -1;
+
+                @Override
+                int nextDoc() {
+                    if (run < ends.length && current < ends[run]) {
+                        // still in the current run, or before the first one
+                        return current = Math.max(current + 1, starts[run]);
+                    }
+                    return advance(current + 1);
+                }
+
+                @Override
+                int advance(int target) {
+                    run = binarySearch(ends, run, ends.length, target);
+                    if (run == ends.length) {
+                        return current = DocIdSetIterator.NO_MORE_DOCS;
+                    }
+                    return current = Math.max(target, starts[run]);
+                }
+            };
+        }
+
+        @Override
+        long sizeInBytes() {
+            return runsSizeInBytes(starts.length);
+        }
+    }
+
+    /**
+     * @return The index of the first value in <tt>[from, to)</tt> that is greater than or equal to <tt>target</tt>,
+     *         or <tt>to</tt> if there is none.
+     */
+    static int binarySearch(char[] values, int from, int to, int target) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (values[mid] < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.docset;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * An immutable {@link DocIdSet} that stores its documents as a sorted array of doc ids, for very sparse sets.
+ * Random access is a binary search.
+ */
+public class SparseDocIdSet extends DocIdSet implements Bits {
+
+    private final int[] docs;
+    private final int maxDoc;
+
+    /**
+     * @param docs   The sorted doc ids, the array is not copied
+     * @param maxDoc The number of documents in the segment
+     */
+    public SparseDocIdSet(int[] docs, int maxDoc) {
+        this.docs = docs;
+        this.maxDoc = maxDoc;
+    }
+
+    public static long sizeInBytes(int cardinality) {
+        return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_INT)
+                + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) RamUsageEstimator.NUM_BYTES_INT * cardinality);
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes(docs.length);
+    }
+
+    public int cardinality() {
+        return docs.length;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public Bits bits() {
+        return this;
+    }
+
+    @Override
+    public boolean get(int index) {
+        final int i = binarySearch(docs, 0, docs.length, index);
+        return i < docs.length && docs[i] == index;
+    }
+
+    @Override
+    public int length() {
+        return maxDoc;
+    }
+
+    @Override
+    public DocIdSetIterator iterator() {
+        return new Iterator(docs);
+    }
+
+    /**
+     * @return The index of the first value in <tt>[from, to)</tt> that is greater than or equal to <tt>target</tt>,
+     *         or <tt>to</tt> if there is none.
+     */
+    static int binarySearch(int[] docs, int from, int to, int target) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (docs[mid] < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    static final class Iterator extends DocIdSetIterator {
+
+        private final int[] docs;
+        private int i = -1;
+        private int doc = -1;
+
+        Iterator(int[] docs) {
+            this.docs = docs;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            if (++i < docs.length) {
+                return doc = docs[i];
+            }
+            i = docs.length;
+            return doc = NO_MORE_DOCS;
+        }
+
+        @Override
+        public int advance(int target) {
+            // gallop first, targets are usually close to the current doc
+            int from = i + 1;
+            int bound = 1;
+            while (from + bound < docs.length && docs[from + bound] < target) {
+                from += bound;
+                bound <<= 1;
+            }
+            i = binarySearch(docs, from, Math.min(docs.length, from + bound + 1), target);
+            if (i < docs.length) {
+                return doc = docs[i];
+            }
+            return doc = NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+            return docs.length;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.search;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.sorter.Sorter;
+import org.apache.lucene.index.sorter.SortingMergePolicy;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+
+import java.io.IOException;
+
+/**
+ * A {@link Collector} that stops collecting a segment once <tt>numDocsToCollect</tt> documents have been collected,
+ * if the segment has been sorted by the given {@link Sorter} (see {@link SortingMergePolicy}). The wrapped collector
+ * must rank documents by the same sort as the sorter, so that the remaining documents of such a segment can't compete.
+ * <p/>
+ * Note, segments that are terminated early are not fully visited, so the total hit count of the wrapped collector
+ * is only a lower bound if {@link #terminatedEarly()} returns <tt>true</tt>.
+ */
+public class EarlyTerminatingCollector extends XCollector {
+
+    private final Collector collector;
+    private final Sorter sorter;
+    private final int numDocsToCollect;
+
+    private boolean segmentSorted;
+    private int segmentTotalCollect;
+    private int numCollected;
+    private boolean terminatedEarly;
+
+    public EarlyTerminatingCollector(Collector collector, Sorter sorter, int numDocsToCollect) {
+        if (numDocsToCollect <= 0) {
+            throw new ElasticsearchIllegalArgumentException("numDocsToCollect must be > 0, got " + numDocsToCollect);
+        }
+        this.collector = collector;
+        this.sorter = sorter;
+        this.numDocsToCollect = numDocsToCollect;
+    }
+
+    /**
+     * @return Whether the collection of at least one segment has been terminated early.
+     */
+    public boolean terminatedEarly() {
+        return terminatedEarly;
+    }
+
+    @Override
+    public void postCollection() {
+        if (collector instanceof XCollector) {
+            ((XCollector) collector).postCollection();
+        }
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        collector.setScorer(scorer);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        collector.collect(doc);
+        if (++numCollected >= segmentTotalCollect) {
+            terminatedEarly = true;
+            throw new CollectionTerminatedException();
+        }
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+        collector.setNextReader(context);
+        segmentSorted = SortingMergePolicy.isSorted(context.reader(), sorter);
+        segmentTotalCollect = segmentSorted ? numDocsToCollect : Integer.MAX_VALUE;
+        numCollected = 0;
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        // documents of sorted segments must be collected in order for the early termination to be correct
+        return !segmentSorted && collector.acceptsDocsOutOfOrder();
+    }
+}
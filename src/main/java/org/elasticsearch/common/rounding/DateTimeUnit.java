@@ -19,7 +19,9 @@
 
 package org.elasticsearch.common.rounding;
 
+import com.google.common.collect.ImmutableMap;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.joda.Joda;
 import org.joda.time.DateTimeField;
 import org.joda.time.chrono.ISOChronology;
@@ -38,6 +40,25 @@ public enum DateTimeUnit {
     MINUTES_OF_HOUR(    (byte) 7, ISOChronology.getInstanceUTC().minuteOfHour()),
     SECOND_OF_MINUTE(   (byte) 8, ISOChronology.getInstanceUTC().secondOfMinute());
 
+    private static final ImmutableMap<String, DateTimeUnit> INTERVALS = MapBuilder.<String, DateTimeUnit>newMapBuilder()
+            .put("year", YEAR_OF_CENTURY)
+            .put("1y", YEAR_OF_CENTURY)
+            .put("quarter", QUARTER)
+            .put("1q", QUARTER)
+            .put("month", MONTH_OF_YEAR)
+            .put("1M", MONTH_OF_YEAR)
+            .put("week", WEEK_OF_WEEKYEAR)
+            .put("1w", WEEK_OF_WEEKYEAR)
+            .put("day", DAY_OF_MONTH)
+            .put("1d", DAY_OF_MONTH)
+            .put("hour", HOUR_OF_DAY)
+            .put("1h", HOUR_OF_DAY)
+            .put("minute", MINUTES_OF_HOUR)
+            .put("1m", MINUTES_OF_HOUR)
+            .put("second", SECOND_OF_MINUTE)
+            .put("1s", SECOND_OF_MINUTE)
+            .immutableMap();
+
     private final byte id;
     private final DateTimeField field;
 
@@ -54,6 +75,14 @@ public enum DateTimeUnit {
         return field;
     }
 
+    /**
+     * Returns the unit of a date histogram interval such as <tt>day</tt> or <tt>1d</tt>, or <tt>null</tt> if the
+     * interval is not a calendar unit but a time value.
+     */
+    public static DateTimeUnit forInterval(String interval) {
+        return INTERVALS.get(interval);
+    }
+
     public static DateTimeUnit resolve(byte id) {
         switch (id) {
             case 1: return WEEK_OF_WEEKYEAR;
@@ -50,6 +50,13 @@ public interface Rounding extends Streamable {
      */
     long nextRoundingValue(long value);
 
+    /**
+     * Returns a rounding which gives the same results as this rounding but may be faster, eg. by precomputing data
+     * that this rounding would otherwise compute on every call to {@link #round(long)}. The returned rounding is meant
+     * to be used by a single thread, and serializes like this rounding.
+     */
+    Rounding prepare();
+
     /**
      * Rounding strategy which is based on an interval
      *
@@ -101,6 +108,11 @@ public interface Rounding extends Streamable {
             return value + interval;
         }
 
+        @Override
+        public Rounding prepare() {
+            return this;
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             interval = in.readVLong();
@@ -19,13 +19,17 @@
 
 package org.elasticsearch.common.rounding;
 
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.unit.TimeValue;
 import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeField;
 import org.joda.time.DateTimeZone;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  */
@@ -33,6 +37,11 @@ public abstract class TimeZoneRounding implements Rounding {
 
     public abstract long round(long utcMillis);
 
+    @Override
+    public TimeZoneRounding prepare() {
+        return this;
+    }
+
     public static Builder builder(DateTimeUnit unit) {
         return new Builder(unit);
     }
@@ -164,6 +173,11 @@ public abstract class TimeZoneRounding implements Rounding {
             return unit.field().roundCeiling(value + 1);
         }
 
+        @Override
+        public TimeZoneRounding prepare() {
+            return PreparedTimeZoneRounding.forUnit(this, unit, preTz, postTz, true);
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             unit = DateTimeUnit.resolve(in.readByte());
@@ -207,6 +221,11 @@ public abstract class TimeZoneRounding implements Rounding {
             return unit.field().roundCeiling(value + 1);
         }
 
+        @Override
+        public TimeZoneRounding prepare() {
+            return PreparedTimeZoneRounding.forUnit(this, unit, DateTimeZone.UTC, DateTimeZone.UTC, false);
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             unit = DateTimeUnit.resolve(in.readByte());
@@ -255,6 +274,11 @@ public abstract class TimeZoneRounding implements Rounding {
             return unit.field().getDurationField().getUnitMillis() + value;
         }
 
+        @Override
+        public TimeZoneRounding prepare() {
+            return PreparedTimeZoneRounding.forUnit(this, unit, preTz, postTz, false);
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             unit = DateTimeUnit.resolve(in.readByte());
@@ -348,6 +372,11 @@ public abstract class TimeZoneRounding implements Rounding {
             return value + interval;
         }
 
+        @Override
+        public TimeZoneRounding prepare() {
+            return PreparedTimeZoneRounding.forInterval(this, interval, preTz, postTz, true);
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             interval = in.readVLong();
@@ -400,6 +429,11 @@ public abstract class TimeZoneRounding implements Rounding {
             return value + interval;
         }
 
+        @Override
+        public TimeZoneRounding prepare() {
+            return PreparedTimeZoneRounding.forInterval(this, interval, preTz, postTz, false);
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             interval = in.readVLong();
@@ -446,6 +480,11 @@ public abstract class TimeZoneRounding implements Rounding {
             return timeZoneRounding.nextRoundingValue(value);
         }
 
+        @Override
+        public TimeZoneRounding prepare() {
+            return new FactorTimeZoneRounding(timeZoneRounding.prepare(), factor);
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             timeZoneRounding = (TimeZoneRounding) Rounding.Streams.read(in);
@@ -492,6 +531,11 @@ public abstract class TimeZoneRounding implements Rounding {
             return postOffset + timeZoneRounding.nextRoundingValue(value - postOffset);
         }
 
+        @Override
+        public TimeZoneRounding prepare() {
+            return new PrePostTimeZoneRounding(timeZoneRounding.prepare(), preOffset, postOffset);
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             timeZoneRounding = (TimeZoneRounding) Rounding.Streams.read(in);
@@ -506,4 +550,240 @@ public abstract class TimeZoneRounding implements Rounding {
             out.writeVLong(postOffset);
         }
     }
+
+    /**
+     * A rounding which gives the same results as the time zone rounding it has been prepared from, but which looks up
+     * time zone offsets in {@link OffsetTable}s and rounds to fixed-duration units with arithmetic rather than through
+     * the chronology. It has the id of the prepared rounding and serializes exactly like it.
+     */
+    static final class PreparedTimeZoneRounding extends TimeZoneRounding {
+
+        private final TimeZoneRounding delegate;
+        // non-null if local times need to be rounded through the chronology
+        private final DateTimeField field;
+        private final long interval;
+        // local times are rounded to multiples of interval, starting from origin
+        private final long origin;
+        private final OffsetTable preOffsets;
+        private final OffsetTable postOffsets;
+        // whether local times should be moved back to UTC before applying the post time zone
+        private final boolean moveToUTC;
+
+        private PreparedTimeZoneRounding(TimeZoneRounding delegate, DateTimeField field, long interval, long origin,
+                                         DateTimeZone preTz, DateTimeZone postTz, boolean moveToUTC) {
+            this.delegate = delegate;
+            this.field = field;
+            this.interval = interval;
+            this.origin = origin;
+            this.preOffsets = new OffsetTable(preTz);
+            this.postOffsets = postTz.equals(preTz) ? preOffsets : new OffsetTable(postTz);
+            this.moveToUTC = moveToUTC;
+        }
+
+        static PreparedTimeZoneRounding forUnit(TimeZoneRounding delegate, DateTimeUnit unit, DateTimeZone preTz, DateTimeZone postTz, boolean moveToUTC) {
+            // units are fields of the UTC ISO chronology, so units up to the week have a fixed duration
+            switch (unit) {
+                case WEEK_OF_WEEKYEAR:
+                    // weeks start on mondays, 1969-12-29 is the last monday before the epoch
+                    return new PreparedTimeZoneRounding(delegate, null, 7L * DateTimeConstants.MILLIS_PER_DAY, -3L * DateTimeConstants.MILLIS_PER_DAY, preTz, postTz, moveToUTC);
+                case DAY_OF_MONTH:
+                    return new PreparedTimeZoneRounding(delegate, null, DateTimeConstants.MILLIS_PER_DAY, 0, preTz, postTz, moveToUTC);
+                case HOUR_OF_DAY:
+                    return new PreparedTimeZoneRounding(delegate, null, DateTimeConstants.MILLIS_PER_HOUR, 0, preTz, postTz, moveToUTC);
+                case MINUTES_OF_HOUR:
+                    return new PreparedTimeZoneRounding(delegate, null, DateTimeConstants.MILLIS_PER_MINUTE, 0, preTz, postTz, moveToUTC);
+                case SECOND_OF_MINUTE:
+                    return new PreparedTimeZoneRounding(delegate, null, DateTimeConstants.MILLIS_PER_SECOND, 0, preTz, postTz, moveToUTC);
+                default:
+                    return new PreparedTimeZoneRounding(delegate, unit.field(), -1, 0, preTz, postTz, moveToUTC);
+            }
+        }
+
+        static PreparedTimeZoneRounding forInterval(TimeZoneRounding delegate, long interval, DateTimeZone preTz, DateTimeZone postTz, boolean moveToUTC) {
+            return new PreparedTimeZoneRounding(delegate, null, interval, 0, preTz, postTz, moveToUTC);
+        }
+
+        @Override
+        public byte id() {
+            return delegate.id();
+        }
+
+        @Override
+        public long round(long utcMillis) {
+            long time = utcMillis + preOffsets.getOffset(utcMillis);
+            if (field != null) {
+                time = field.roundFloor(time);
+            } else {
+                time = origin + Rounding.Interval.round(time - origin, interval);
+            }
+            if (moveToUTC) {
+                time = time - preOffsets.getOffset(time);
+            }
+            time = time + postOffsets.getOffset(time);
+            return time;
+        }
+
+        @Override
+        public long nextRoundingValue(long value) {
+            return delegate.nextRoundingValue(value);
+        }
+
+        @Override
+        public TimeZoneRounding prepare() {
+            return this;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            throw new UnsupportedOperationException("prepared roundings are read as the rounding they have been prepared from");
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            delegate.writeTo(out);
+        }
+    }
+
+    /**
+     * The offsets of a time zone over a range of instants, which grows on demand to cover the instants which are looked
+     * up, so that the table only spans the range of the values being rounded, eg. the dates of a segment. The range is
+     * split into fixed-size chunks which record the offset at their start and the transition they contain, so that most
+     * lookups are a shift and a comparison. Chunks which contain several transitions resort to a binary search over the
+     * transitions of the range.
+     */
+    static final class OffsetTable {
+
+        // the range is grown by at least a year, so that values which are not sorted don't trigger too many rebuilds
+        static final long MIN_GROWTH = 366L * DateTimeConstants.MILLIS_PER_DAY;
+        // chunks span 2^32 ms, about 50 days, time zones hardly ever have several transitions in such a short time
+        static final int CHUNK_SHIFT = 32;
+        // about 550 years, instants that would need a larger range are looked up in the time zone directly
+        static final int MAX_CHUNKS = 1 << 12;
+        // offsets are less than a day, so this can't be a valid offset
+        static final int SEVERAL_TRANSITIONS = Integer.MIN_VALUE;
+
+        private final DateTimeZone tz;
+        private final boolean fixed;
+        private final int fixedOffset;
+
+        // inclusive bounds of the range, which is initially empty
+        private long start = 0;
+        private long end = -1;
+        // transitions[i] is the first instant of the range that has offsets[i], transitions[0] is the start of the range
+        private long[] transitions;
+        private int[] offsets;
+        private int size;
+        // the offset at the start of every chunk, the first transition in the chunk (Long.MAX_VALUE if there is none)
+        // and the offset after this transition
+        private int[] chunkOffsets;
+        private long[] chunkTransitions;
+        private int[] chunkNextOffsets;
+        // whether the range can't grow anymore
+        private boolean full;
+
+        OffsetTable(DateTimeZone tz) {
+            this.tz = tz;
+            this.fixed = tz.isFixed();
+            this.fixedOffset = fixed ? tz.getOffset(0L) : 0;
+        }
+
+        int getOffset(long instant) {
+            if (fixed) {
+                return fixedOffset;
+            }
+            if (instant < start || instant > end) {
+                if (full || !grow(instant)) {
+                    return tz.getOffset(instant);
+                }
+            }
+            final int chunk = (int) ((instant - start) >>> CHUNK_SHIFT);
+            if (instant < chunkTransitions[chunk]) {
+                return chunkOffsets[chunk];
+            }
+            final int nextOffset = chunkNextOffsets[chunk];
+            if (nextOffset != SEVERAL_TRANSITIONS) {
+                return nextOffset;
+            }
+            int i = Arrays.binarySearch(transitions, 0, size, instant);
+            if (i < 0) {
+                // the index of the last transition which is before the instant
+                i = -2 - i;
+            }
+            return offsets[i];
+        }
+
+        private static long add(long instant, long delta) {
+            return instant > Long.MAX_VALUE - delta ? Long.MAX_VALUE : instant + delta;
+        }
+
+        private static long subtract(long instant, long delta) {
+            return instant < Long.MIN_VALUE + delta ? Long.MIN_VALUE : instant - delta;
+        }
+
+        /** Grow the range to cover <code>instant</code>, returns false if the range would be too large. */
+        private boolean grow(long instant) {
+            long from = subtract(instant, MIN_GROWTH);
+            long to = add(instant, MIN_GROWTH);
+            if (start <= end) {
+                from = Math.min(from, start);
+                to = Math.max(to, end);
+            }
+            if (to - from < 0 || ((to - from) >>> CHUNK_SHIFT) >= MAX_CHUNKS) {
+                full = true;
+                return false;
+            }
+            final int numChunks = (int) ((to - from) >>> CHUNK_SHIFT) + 1;
+
+            long[] newTransitions = new long[8];
+            int[] newOffsets = new int[8];
+            newTransitions[0] = from;
+            newOffsets[0] = tz.getOffset(from);
+            int newSize = 1;
+            // nextTransition returns its argument when there are no more transitions
+            for (long t = tz.nextTransition(from); t > newTransitions[newSize - 1] && t <= to; t = tz.nextTransition(t)) {
+                if (newSize == newTransitions.length) {
+                    final int newLength = ArrayUtil.oversize(newSize + 1, RamUsageEstimator.NUM_BYTES_LONG);
+                    newTransitions = Arrays.copyOf(newTransitions, newLength);
+                    newOffsets = Arrays.copyOf(newOffsets, newLength);
+                }
+                newTransitions[newSize] = t;
+                newOffsets[newSize] = tz.getOffset(t);
+                ++newSize;
+            }
+
+            final int[] newChunkOffsets = new int[numChunks];
+            final long[] newChunkTransitions = new long[numChunks];
+            final int[] newChunkNextOffsets = new int[numChunks];
+            int t = 0; // index of the last transition which is at or before the start of the chunk
+            for (int chunk = 0; chunk < numChunks; ++chunk) {
+                final long chunkStart = from + ((long) chunk << CHUNK_SHIFT);
+                final long chunkEnd = chunkStart + (1L << CHUNK_SHIFT) - 1;
+                while (t + 1 < newSize && newTransitions[t + 1] <= chunkStart) {
+                    ++t;
+                }
+                newChunkOffsets[chunk] = newOffsets[t];
+                if (t + 1 < newSize && newTransitions[t + 1] <= chunkEnd) {
+                    newChunkTransitions[chunk] = newTransitions[t + 1];
+                    if (t + 2 < newSize && newTransitions[t + 2] <= chunkEnd) {
+                        newChunkNextOffsets[chunk] = SEVERAL_TRANSITIONS;
+                    } else {
+                        newChunkNextOffsets[chunk] = newOffsets[t + 1];
+                    }
+                } else {
+                    newChunkTransitions[chunk] = Long.MAX_VALUE;
+                    newChunkNextOffsets[chunk] = newOffsets[t];
+                }
+            }
+
+            transitions = newTransitions;
+            offsets = newOffsets;
+            size = newSize;
+            chunkOffsets = newChunkOffsets;
+            chunkTransitions = newChunkTransitions;
+            chunkNextOffsets = newChunkNextOffsets;
+            start = from;
+            end = to;
+            return true;
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util;
+
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+
+import java.nio.LongBuffer;
+
+/**
+ * A fixed-size array of unsigned values packed with a fixed number of bits per value into a chunk of off-heap memory.
+ * Values may span two consecutive 64-bit words. Reads are thread-safe, writes are not.
+ */
+public final class OffHeapPackedLongs {
+
+    private final SlabAllocator.Chunk chunk;
+    private final LongBuffer words;
+    private final long size;
+    private final int bitsPerValue;
+    private final long mask;
+
+    /**
+     * @param size         The number of values
+     * @param bitsPerValue The number of bits of every value, between 0 and 64
+     * @throws OffHeapAllocationException if the allocator could not allocate the memory of the array
+     */
+    public OffHeapPackedLongs(SlabAllocator allocator, long size, int bitsPerValue) {
+        if (bitsPerValue < 0 || bitsPerValue > 64) {
+            throw new ElasticsearchIllegalArgumentException("bitsPerValue must be in [0, 64], got " + bitsPerValue);
+        }
+        final long numWords = (size * bitsPerValue + 63) >>> 6;
+        final long numBytes = numWords * RamUsageEstimator.NUM_BYTES_LONG;
+        if (numBytes > Integer.MAX_VALUE) {
+            throw new ElasticsearchIllegalArgumentException("cannot allocate [" + numBytes + "] bytes in a single off-heap chunk");
+        }
+        this.chunk = allocator.allocate((int) numBytes);
+        if (chunk == null) {
+            throw new OffHeapAllocationException(numBytes);
+        }
+        this.words = chunk.buffer().asLongBuffer();
+        this.size = size;
+        this.bitsPerValue = bitsPerValue;
+        this.mask = bitsPerValue == 64 ? ~0L : (1L << bitsPerValue) - 1;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public int bitsPerValue() {
+        return bitsPerValue;
+    }
+
+    public long get(long index) {
+        assert index >= 0 && index < size;
+        if (bitsPerValue == 0) {
+            return 0;
+        }
+        final long bitIndex = index * bitsPerValue;
+        final int wordIndex = (int) (bitIndex >>> 6);
+        final int shift = (int) (bitIndex & 63);
+        long value = words.get(wordIndex) >>> shift;
+        if (shift + bitsPerValue > 64) {
+            value |= words.get(wordIndex + 1) << (64 - shift);
+        }
+        return value & mask;
+    }
+
+    public void set(long index, long value) {
+        assert index >= 0 && index < size;
+        assert bitsPerValue == 64 || (value >>> bitsPerValue) == 0 : value + " doesn't fit on " + bitsPerValue + " bits";
+        if (bitsPerValue == 0) {
+            return;
+        }
+        final long bitIndex = index * bitsPerValue;
+        final int wordIndex = (int) (bitIndex >>> 6);
+        final int shift = (int) (bitIndex & 63);
+        words.put(wordIndex, (words.get(wordIndex) & ~(mask << shift)) | (value << shift));
+        if (shift + bitsPerValue > 64) {
+            final int shift2 = 64 - shift;
+            words.put(wordIndex + 1, (words.get(wordIndex + 1) & ~(mask >>> shift2)) | (value >>> shift2));
+        }
+    }
+
+    /**
+     * The number of off-heap bytes used by this array.
+     */
+    public long sizeInBytes() {
+        return chunk.size();
+    }
+
+    /**
+     * Gives the memory of this array back to its allocator.
+     */
+    public void release() {
+        chunk.release();
+    }
+}
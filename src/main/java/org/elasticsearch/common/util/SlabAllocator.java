@@ -0,0 +1,263 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util;
+
+import org.apache.lucene.store.bytebuffer.ByteBufferAllocator;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates chunks of off-heap memory out of large direct {@link ByteBuffer} slabs, so that many small allocations
+ * don't each pay for a direct buffer (and its page alignment and bookkeeping).
+ * <p/>
+ * Chunks are carved out of the current slab with a bump pointer and are never reused individually: slabs are
+ * reference counted by their chunks, and a slab is freed as soon as it is full and all its chunks have been released.
+ * Since freed memory must not be read anymore, a chunk may only be released once nobody can read it, eg. once the
+ * segment it has been loaded for is closed. Chunks larger than a quarter of the slab size get a dedicated buffer.
+ * <p/>
+ * Subclasses can account for the overhead of the allocator, the bytes of the slabs that are not held by live chunks,
+ * by overriding {@link #tryAddOverhead(long)} and {@link #addOverhead(long)}.
+ */
+public class SlabAllocator {
+
+    public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    private static final int ALIGNMENT = 8;
+
+    private final int slabSize;
+    private final int maxChunkSize;
+    private volatile long limit;
+
+    private Slab current;
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * @param slabSize The size of the slabs in bytes
+     * @param limit    The maximum number of bytes that may be reserved at any time
+     */
+    public SlabAllocator(int slabSize, long limit) {
+        if (slabSize < ALIGNMENT) {
+            throw new ElasticsearchIllegalArgumentException("slab_size must be >= " + ALIGNMENT + ", got " + slabSize);
+        }
+        this.slabSize = slabSize;
+        this.maxChunkSize = slabSize >>> 2;
+        this.limit = limit;
+    }
+
+    public int slabSize() {
+        return slabSize;
+    }
+
+    /**
+     * The maximum number of bytes that may be reserved at any time.
+     */
+    public long limit() {
+        return limit;
+    }
+
+    public void limit(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * The number of bytes of the slabs that are still in use, including the unused space at the end of the current
+     * slab and the space of released chunks on slabs that still have live chunks.
+     */
+    public long reservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * The number of bytes of the chunks that have not been released yet.
+     */
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Called when <tt>bytes</tt> are about to be reserved for a new slab, which adds them to the overhead of the
+     * allocator until they are handed out as chunks. Returns <tt>false</tt> to refuse the reservation.
+     */
+    protected boolean tryAddOverhead(long bytes) {
+        return true;
+    }
+
+    /**
+     * Called when the overhead of the allocator changes and the change can't be refused: it decreases when a chunk is
+     * handed out or when a slab is freed, and increases when a chunk is released while its slab is still alive.
+     */
+    protected void addOverhead(long bytes) {
+    }
+
+    /**
+     * Allocates a chunk of <tt>size</tt> bytes, or returns <tt>null</tt> if it would exceed the limit of reserved bytes
+     * or if the direct memory of the JVM is exhausted. The returned buffer uses the native byte order.
+     */
+    @Nullable
+    public Chunk allocate(int size) {
+        if (size < 0) {
+            throw new ElasticsearchIllegalArgumentException("size must be >= 0, got " + size);
+        }
+        final Chunk chunk;
+        if (size > maxChunkSize) {
+            if (!reserve(size)) {
+                return null;
+            }
+            final ByteBuffer buffer = allocateDirect(size);
+            if (buffer == null) {
+                return null;
+            }
+            chunk = new Chunk(new Slab(buffer, 0), 0, size);
+        } else {
+            final int alignedSize = (size + ALIGNMENT - 1) & -ALIGNMENT;
+            synchronized (this) {
+                if (current == null || current.buffer.capacity() - current.offset < alignedSize) {
+                    if (!reserve(slabSize)) {
+                        return null;
+                    }
+                    final ByteBuffer buffer = allocateDirect(slabSize);
+                    if (buffer == null) {
+                        return null;
+                    }
+                    if (current != null) {
+                        // the slab is full, give up the reference the allocator holds on it
+                        current.decRef();
+                    }
+                    current = new Slab(buffer, 1);
+                }
+                chunk = new Chunk(current, current.offset, size);
+                current.offset += alignedSize;
+            }
+        }
+        usedBytes.addAndGet(size);
+        addOverhead(-size);
+        return chunk;
+    }
+
+    /**
+     * Allocates a direct buffer for bytes that have been reserved, or releases the reservation and returns
+     * <tt>null</tt> if the JVM can't allocate more direct memory (<tt>-XX:MaxDirectMemorySize</tt>).
+     */
+    @Nullable
+    private ByteBuffer allocateDirect(int capacity) {
+        try {
+            return ByteBuffer.allocateDirect(capacity);
+        } catch (OutOfMemoryError e) {
+            unreserve(capacity);
+            return null;
+        }
+    }
+
+    private boolean reserve(long bytes) {
+        while (true) {
+            final long reserved = reservedBytes.get();
+            if (reserved + bytes > limit()) {
+                return false;
+            }
+            if (reservedBytes.compareAndSet(reserved, reserved + bytes)) {
+                break;
+            }
+        }
+        if (!tryAddOverhead(bytes)) {
+            reservedBytes.addAndGet(-bytes);
+            return false;
+        }
+        return true;
+    }
+
+    private void unreserve(long bytes) {
+        reservedBytes.addAndGet(-bytes);
+        addOverhead(-bytes);
+    }
+
+    private final class Slab {
+
+        final ByteBuffer buffer;
+        final AtomicInteger refCount;
+        int offset; // only accessed under the allocator lock
+
+        Slab(ByteBuffer buffer, int refCount) {
+            this.buffer = buffer;
+            this.refCount = new AtomicInteger(refCount);
+        }
+
+        void incRef() {
+            refCount.incrementAndGet();
+        }
+
+        void decRef() {
+            if (refCount.decrementAndGet() == 0) {
+                // don't wait for the garbage collector to give the memory back
+                ByteBufferAllocator.Cleaner.clean(buffer);
+                unreserve(buffer.capacity());
+            }
+        }
+    }
+
+    /**
+     * A chunk of off-heap memory.
+     */
+    public final class Chunk {
+
+        private final Slab slab;
+        private final ByteBuffer buffer;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Chunk(Slab slab, int offset, int size) {
+            this.slab = slab;
+            slab.incRef();
+            final ByteBuffer duplicate = slab.buffer.duplicate();
+            duplicate.position(offset);
+            duplicate.limit(offset + size);
+            this.buffer = duplicate.slice().order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * The memory of this chunk, only absolute reads and writes should be used since the buffer is shared.
+         */
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        public int size() {
+            return buffer.capacity();
+        }
+
+        /**
+         * Gives the chunk back to the allocator, the chunk must not be read anymore since its memory may be freed.
+         * Releasing a chunk several times is a no-op.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                usedBytes.addAndGet(-size());
+                addOverhead(size());
+                slab.decRef();
+            }
+        }
+    }
+}
@@ -32,7 +32,9 @@ import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.cache.docset.DocSetCache;
 import org.elasticsearch.index.cache.filter.FilterCache;
+import org.elasticsearch.index.cache.fixedbitset.FixedBitSetFilterCache;
 import org.elasticsearch.index.cache.id.IdCache;
+import org.elasticsearch.index.cache.query.parsed.ParsedQueryCache;
 import org.elasticsearch.index.cache.query.parser.QueryParserCache;
 import org.elasticsearch.index.settings.IndexSettings;
 
@@ -45,17 +47,21 @@ public class IndexCache extends AbstractIndexComponent implements CloseableCompo
     private final QueryParserCache queryParserCache;
     private final IdCache idCache;
     private final DocSetCache docSetCache;
+    private final FixedBitSetFilterCache fixedBitSetFilterCache;
+    private final ParsedQueryCache parsedQueryCache;
 
     private ClusterService clusterService;
 
     @Inject
     public IndexCache(Index index, @IndexSettings Settings indexSettings, FilterCache filterCache, QueryParserCache queryParserCache, IdCache idCache,
-                      DocSetCache docSetCache) {
+                      DocSetCache docSetCache, FixedBitSetFilterCache fixedBitSetFilterCache, ParsedQueryCache parsedQueryCache) {
         super(index, indexSettings);
         this.filterCache = filterCache;
         this.queryParserCache = queryParserCache;
         this.idCache = idCache;
         this.docSetCache = docSetCache;
+        this.fixedBitSetFilterCache = fixedBitSetFilterCache;
+        this.parsedQueryCache = parsedQueryCache;
     }
 
     @Inject(optional = true)
@@ -78,16 +84,32 @@ public class IndexCache extends AbstractIndexComponent implements CloseableCompo
         return this.idCache;
     }
 
+    /**
+     * Return the {@link FixedBitSetFilterCache} for this index.
+     */
+    public FixedBitSetFilterCache fixedBitSetFilterCache() {
+        return fixedBitSetFilterCache;
+    }
+
     public QueryParserCache queryParserCache() {
         return this.queryParserCache;
     }
 
+    /**
+     * Return the {@link ParsedQueryCache} for this index.
+     */
+    public ParsedQueryCache parsedQueryCache() {
+        return this.parsedQueryCache;
+    }
+
     @Override
     public void close() throws ElasticsearchException {
         filterCache.close();
         idCache.close();
         queryParserCache.close();
         docSetCache.clear("close");
+        fixedBitSetFilterCache.close();
+        parsedQueryCache.close();
         if (clusterService != null) {
             clusterService.remove(this);
         }
@@ -97,6 +119,7 @@ public class IndexCache extends AbstractIndexComponent implements CloseableCompo
         filterCache.clear(reader);
         idCache.clear(reader);
         docSetCache.clear(reader);
+        fixedBitSetFilterCache.clear(reader);
     }
 
     public void clear(String reason) {
@@ -104,6 +127,8 @@ public class IndexCache extends AbstractIndexComponent implements CloseableCompo
         idCache.clear();
         queryParserCache.clear();
         docSetCache.clear(reason);
+        fixedBitSetFilterCache.clear(reason);
+        parsedQueryCache.clear(reason);
     }
 
     @Override
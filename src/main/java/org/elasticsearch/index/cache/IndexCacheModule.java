@@ -23,7 +23,9 @@ import org.elasticsearch.common.inject.AbstractModule;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.cache.docset.DocSetCacheModule;
 import org.elasticsearch.index.cache.filter.FilterCacheModule;
+import org.elasticsearch.index.cache.fixedbitset.FixedBitSetFilterCache;
 import org.elasticsearch.index.cache.id.IdCacheModule;
+import org.elasticsearch.index.cache.query.parsed.ParsedQueryCache;
 import org.elasticsearch.index.cache.query.parser.QueryParserCacheModule;
 
 /**
@@ -44,6 +46,8 @@ public class IndexCacheModule extends AbstractModule {
         new QueryParserCacheModule(settings).configure(binder());
         new DocSetCacheModule(settings).configure(binder());
 
+        bind(FixedBitSetFilterCache.class).asEagerSingleton();
+        bind(ParsedQueryCache.class).asEagerSingleton();
         bind(IndexCache.class).asEagerSingleton();
     }
 }
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.cache.filter;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -34,19 +35,28 @@ import java.io.IOException;
 public class FilterCacheStats implements Streamable, ToXContent {
 
     long memorySize;
+    long offHeapMemorySize;
     long evictions;
+    long admissions;
+    long rejections;
 
     public FilterCacheStats() {
     }
 
-    public FilterCacheStats(long memorySize, long evictions) {
+    public FilterCacheStats(long memorySize, long offHeapMemorySize, long evictions, long admissions, long rejections) {
         this.memorySize = memorySize;
+        this.offHeapMemorySize = offHeapMemorySize;
         this.evictions = evictions;
+        this.admissions = admissions;
+        this.rejections = rejections;
     }
 
     public void add(FilterCacheStats stats) {
         this.memorySize += stats.memorySize;
+        this.offHeapMemorySize += stats.offHeapMemorySize;
         this.evictions += stats.evictions;
+        this.admissions += stats.admissions;
+        this.rejections += stats.rejections;
     }
 
     public long getMemorySizeInBytes() {
@@ -57,10 +67,36 @@ public class FilterCacheStats implements Streamable, ToXContent {
         return new ByteSizeValue(memorySize);
     }
 
+    /**
+     * The memory used by cached doc id sets that are stored off-heap.
+     */
+    public long getOffHeapMemorySizeInBytes() {
+        return this.offHeapMemorySize;
+    }
+
+    public ByteSizeValue getOffHeapMemorySize() {
+        return new ByteSizeValue(offHeapMemorySize);
+    }
+
     public long getEvictions() {
         return this.evictions;
     }
 
+    /**
+     * The number of filter doc id sets that were admitted into the cache.
+     */
+    public long getAdmissions() {
+        return this.admissions;
+    }
+
+    /**
+     * The number of filter doc id sets that were not cached because the filter was not used often enough yet
+     * or the segment was too small.
+     */
+    public long getRejections() {
+        return this.rejections;
+    }
+
     public static FilterCacheStats readFilterCacheStats(StreamInput in) throws IOException {
         FilterCacheStats stats = new FilterCacheStats();
         stats.readFrom(in);
@@ -71,19 +107,32 @@ public class FilterCacheStats implements Streamable, ToXContent {
     public void readFrom(StreamInput in) throws IOException {
         memorySize = in.readVLong();
         evictions = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            admissions = in.readVLong();
+            rejections = in.readVLong();
+            offHeapMemorySize = in.readVLong();
+        }
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeVLong(memorySize);
         out.writeVLong(evictions);
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            out.writeVLong(admissions);
+            out.writeVLong(rejections);
+            out.writeVLong(offHeapMemorySize);
+        }
     }
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject(Fields.FILTER_CACHE);
         builder.byteSizeField(Fields.MEMORY_SIZE_IN_BYTES, Fields.MEMORY_SIZE, memorySize);
+        builder.byteSizeField(Fields.OFF_HEAP_MEMORY_SIZE_IN_BYTES, Fields.OFF_HEAP_MEMORY_SIZE, offHeapMemorySize);
         builder.field(Fields.EVICTIONS, getEvictions());
+        builder.field(Fields.ADMISSIONS, getAdmissions());
+        builder.field(Fields.REJECTIONS, getRejections());
         builder.endObject();
         return builder;
     }
@@ -92,6 +141,10 @@ public class FilterCacheStats implements Streamable, ToXContent {
         static final XContentBuilderString FILTER_CACHE = new XContentBuilderString("filter_cache");
         static final XContentBuilderString MEMORY_SIZE = new XContentBuilderString("memory_size");
         static final XContentBuilderString MEMORY_SIZE_IN_BYTES = new XContentBuilderString("memory_size_in_bytes");
+        static final XContentBuilderString OFF_HEAP_MEMORY_SIZE = new XContentBuilderString("off_heap_memory_size");
+        static final XContentBuilderString OFF_HEAP_MEMORY_SIZE_IN_BYTES = new XContentBuilderString("off_heap_memory_size_in_bytes");
         static final XContentBuilderString EVICTIONS = new XContentBuilderString("evictions");
+        static final XContentBuilderString ADMISSIONS = new XContentBuilderString("admissions");
+        static final XContentBuilderString REJECTIONS = new XContentBuilderString("rejections");
     }
 }
@@ -24,6 +24,7 @@ import com.google.common.cache.RemovalNotification;
 import org.apache.lucene.search.DocIdSet;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.docset.DocIdSets;
+import org.elasticsearch.common.lucene.docset.OffHeapDocIdSet;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.cache.filter.weighted.WeightedFilterCache;
@@ -37,6 +38,9 @@ public class ShardFilterCache extends AbstractIndexShardComponent implements Rem
 
     final CounterMetric evictionsMetric = new CounterMetric();
     final CounterMetric totalMetric = new CounterMetric();
+    final CounterMetric offHeapMetric = new CounterMetric();
+    final CounterMetric admissionsMetric = new CounterMetric();
+    final CounterMetric rejectionsMetric = new CounterMetric();
 
     @Inject
     public ShardFilterCache(ShardId shardId, @IndexSettings Settings indexSettings) {
@@ -44,11 +48,23 @@ public class ShardFilterCache extends AbstractIndexShardComponent implements Rem
     }
 
     public FilterCacheStats stats() {
-        return new FilterCacheStats(totalMetric.count(), evictionsMetric.count());
+        return new FilterCacheStats(totalMetric.count(), offHeapMetric.count(), evictionsMetric.count(), admissionsMetric.count(), rejectionsMetric.count());
     }
 
-    public void onCached(long sizeInBytes) {
-        totalMetric.inc(sizeInBytes);
+    public void onAdmitted() {
+        admissionsMetric.inc();
+    }
+
+    public void onRejected() {
+        rejectionsMetric.inc();
+    }
+
+    public void onCached(DocIdSet docIdSet) {
+        if (docIdSet instanceof OffHeapDocIdSet) {
+            offHeapMetric.inc(DocIdSets.sizeInBytes(docIdSet));
+        } else {
+            totalMetric.inc(DocIdSets.sizeInBytes(docIdSet));
+        }
     }
 
     @Override
@@ -56,8 +72,11 @@ public class ShardFilterCache extends AbstractIndexShardComponent implements Rem
         if (removalNotification.wasEvicted()) {
             evictionsMetric.inc();
         }
-        if (removalNotification.getValue() != null) {
-            totalMetric.dec(DocIdSets.sizeInBytes(removalNotification.getValue()));
+        DocIdSet docIdSet = removalNotification.getValue();
+        if (docIdSet instanceof OffHeapDocIdSet) {
+            offHeapMetric.dec(DocIdSets.sizeInBytes(docIdSet));
+        } else if (docIdSet != null) {
+            totalMetric.dec(DocIdSets.sizeInBytes(docIdSet));
         }
     }
 }
@@ -34,12 +34,14 @@ import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.docset.DocIdSets;
 import org.elasticsearch.common.lucene.search.CachedFilter;
+import org.elasticsearch.common.lucene.search.FixedBitSetFilter;
 import org.elasticsearch.common.lucene.search.NoCacheFilter;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.cache.filter.FilterCache;
+import org.elasticsearch.index.cache.filter.ShardFilterCache;
 import org.elasticsearch.index.cache.filter.support.CacheKeyFilter;
 import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.index.settings.IndexSettings;
@@ -156,6 +158,30 @@ public class WeightedFilterCache extends AbstractIndexComponent implements Filte
 
             DocIdSet cacheValue = innerCache.getIfPresent(cacheKey);
             if (cacheValue == null) {
+                ShardFilterCache shardFilterCache = null;
+                ShardId shardId = ShardUtils.extractShardId(context.reader());
+                if (shardId != null) {
+                    IndexShard shard = cache.indexService.shard(shardId.id());
+                    if (shard != null) {
+                        shardFilterCache = shard.filterCache();
+                    }
+                }
+                if (!cache.indicesFilterCache.admissionPolicy().admit(cacheKey.hashCode(), context.reader().maxDoc())) {
+                    if (shardFilterCache != null) {
+                        shardFilterCache.onRejected();
+                    }
+                    if (filter instanceof FixedBitSetFilter) {
+                        // block joins require a bit set for their parent filter, and NonNestedDocsFilter would flip
+                        // deleted nested docs into parent docs if the accepted docs were applied, like when cached
+                        DocIdSet docIdSet = DocIdSets.toCacheable(context.reader(), filter.getDocIdSet(context, null));
+                        return DocIdSets.isEmpty(docIdSet) ? null : docIdSet;
+                    }
+                    // not worth caching (yet), run the filter as if it was not cached
+                    return filter.getDocIdSet(context, acceptDocs);
+                }
+                if (shardFilterCache != null) {
+                    shardFilterCache.onAdmitted();
+                }
                 if (!cache.seenReaders.containsKey(context.reader().getCoreCacheKey())) {
                     Boolean previous = cache.seenReaders.putIfAbsent(context.reader().getCoreCacheKey(), Boolean.TRUE);
                     if (previous == null) {
@@ -168,16 +194,18 @@ public class WeightedFilterCache extends AbstractIndexComponent implements Filte
                 // we can't pass down acceptedDocs provided, because we are caching the result, and acceptedDocs
                 // might be specific to a query. We don't pass the live docs either because a cache built for a specific
                 // generation of a segment might be reused by an older generation which has fewer deleted documents
-                cacheValue = DocIdSets.toCacheable(context.reader(), filter.getDocIdSet(context, null));
+                if (filter instanceof FixedBitSetFilter) {
+                    cacheValue = DocIdSets.toCacheable(context.reader(), filter.getDocIdSet(context, null));
+                } else if (cache.indicesFilterCache.offHeap()) {
+                    cacheValue = cache.indicesFilterCache.toOffHeap(context.reader(), DocIdSets.toCacheable(context.reader(), filter.getDocIdSet(context, null)));
+                } else {
+                    cacheValue = DocIdSets.toCompressedCacheable(context.reader(), filter.getDocIdSet(context, null));
+                }
                 // we might put the same one concurrently, that's fine, it will be replaced and the removal
                 // will be called
-                ShardId shardId = ShardUtils.extractShardId(context.reader());
-                if (shardId != null) {
-                    IndexShard shard = cache.indexService.shard(shardId.id());
-                    if (shard != null) {
-                        cacheKey.removalListener = shard.filterCache();
-                        shard.filterCache().onCached(DocIdSets.sizeInBytes(cacheValue));
-                    }
+                if (shardFilterCache != null) {
+                    cacheKey.removalListener = shardFilterCache;
+                    shardFilterCache.onCached(cacheValue);
                 }
                 innerCache.put(cacheKey, cacheValue);
             }
@@ -0,0 +1,242 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.fixedbitset;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.component.CloseableComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.docset.DocIdSets;
+import org.elasticsearch.common.lucene.search.CachedFilter;
+import org.elasticsearch.common.lucene.search.FixedBitSetFilter;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.AbstractIndexComponent;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.service.IndexService;
+import org.elasticsearch.index.settings.IndexSettings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.shard.ShardUtils;
+import org.elasticsearch.index.shard.service.IndexShard;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A per segment cache of {@link FixedBitSet}s for the structural filters of nested documents, such as the filter that
+ * matches root documents and the filters that match the documents of a nested object type. Unlike the filter cache,
+ * this cache never evicts: bit sets are loaded the first time a segment is seen, usually by the warmer on refresh,
+ * and live as long as the segment.
+ */
+public class FixedBitSetFilterCache extends AbstractIndexComponent implements SegmentReader.CoreClosedListener, CloseableComponent {
+
+    private final ConcurrentMap<Object, ConcurrentMap<Filter, Value>> loadedFilters;
+
+    private IndexService indexService;
+
+    @Inject
+    public FixedBitSetFilterCache(Index index, @IndexSettings Settings indexSettings) {
+        super(index, indexSettings);
+        this.loadedFilters = ConcurrentCollections.newConcurrentMap();
+    }
+
+    // we need to "inject" the index service to not create cyclic dep
+    public void setIndexService(IndexService indexService) {
+        this.indexService = indexService;
+    }
+
+    /**
+     * Returns a filter whose doc id sets are {@link FixedBitSet}s that are cached in this cache.
+     */
+    public Filter getFixedBitSetFilter(Filter filter) {
+        assert filter != null;
+        assert !(filter instanceof FixedBitSetFilterWrapper);
+        return new FixedBitSetFilterWrapper(filter);
+    }
+
+    @Override
+    public void close() throws ElasticsearchException {
+        clear("close");
+    }
+
+    public void clear(String reason) {
+        logger.debug("full fixed bit set filter cache clear, reason [{}]", reason);
+        for (Object coreCacheKey : loadedFilters.keySet()) {
+            clear(coreCacheKey);
+        }
+    }
+
+    public void clear(IndexReader reader) {
+        for (AtomicReaderContext context : reader.leaves()) {
+            clear(context.reader().getCoreCacheKey());
+        }
+    }
+
+    @Override
+    public void onClose(Object coreCacheKey) {
+        clear(coreCacheKey);
+    }
+
+    public void clear(Object coreCacheKey) {
+        ConcurrentMap<Filter, Value> removed = loadedFilters.remove(coreCacheKey);
+        if (removed != null) {
+            for (Map.Entry<Filter, Value> entry : removed.entrySet()) {
+                // a concurrent load may remove its own value, see getAndLoadIfNotPresent
+                if (removed.remove(entry.getKey(), entry.getValue())) {
+                    onRemoval(entry.getValue());
+                }
+            }
+        }
+    }
+
+    // for tests
+    int numCachedSegments() {
+        return loadedFilters.size();
+    }
+
+    private FixedBitSet getAndLoadIfNotPresent(Filter filter, AtomicReaderContext context) throws IOException {
+        final Object coreCacheKey = context.reader().getCoreCacheKey();
+        ConcurrentMap<Filter, Value> filters = loadedFilters.get(coreCacheKey);
+        if (filters == null) {
+            filters = ConcurrentCollections.newConcurrentMap();
+            ConcurrentMap<Filter, Value> previous = loadedFilters.putIfAbsent(coreCacheKey, filters);
+            if (previous != null) {
+                filters = previous;
+            } else if (context.reader() instanceof SegmentReader) {
+                // we add a core closed listener only, for non core IndexReaders we rely on clear being called (percolator for example)
+                ((SegmentReader) context.reader()).addCoreClosedListener(this);
+            }
+        }
+
+        Value value = filters.get(filter);
+        if (value == null) {
+            // we can't pass down acceptedDocs, because we are caching the result, and acceptedDocs might be specific to
+            // a query. We don't pass the live docs either because the bit set is shared by all generations of the segment
+            final DocIdSet docIdSet = filter.getDocIdSet(context, null);
+            FixedBitSet bitSet = null;
+            if (docIdSet instanceof FixedBitSet) {
+                bitSet = (FixedBitSet) docIdSet;
+            } else if (docIdSet != null) {
+                final DocIdSetIterator iterator = docIdSet.iterator();
+                if (iterator != null) {
+                    bitSet = DocIdSets.toFixedBitSet(iterator, context.reader().maxDoc());
+                }
+            }
+            value = new Value(bitSet, ShardUtils.extractShardId(context.reader()));
+            Value previous = filters.putIfAbsent(filter, value);
+            if (previous != null) {
+                value = previous;
+            } else {
+                onCached(value);
+                // the segment has been closed or the cache cleared while we were loading: either clear sees the value
+                // and removes it, or we do, but not both
+                if (loadedFilters.get(coreCacheKey) != filters && filters.remove(filter, value)) {
+                    onRemoval(value);
+                }
+            }
+        }
+        return value.bitSet;
+    }
+
+    private void onCached(Value value) {
+        ShardFixedBitSetFilterCache shardCache = shardCache(value);
+        if (shardCache != null) {
+            shardCache.onCached(value.sizeInBytes());
+        }
+    }
+
+    private void onRemoval(Value value) {
+        ShardFixedBitSetFilterCache shardCache = shardCache(value);
+        if (shardCache != null) {
+            shardCache.onRemoval(value.sizeInBytes());
+        }
+    }
+
+    @Nullable
+    private ShardFixedBitSetFilterCache shardCache(Value value) {
+        if (value.shardId != null && indexService != null) {
+            IndexShard shard = indexService.shard(value.shardId.id());
+            if (shard != null) {
+                return shard.fixedBitSetFilterCache();
+            }
+        }
+        return null;
+    }
+
+    static final class Value {
+
+        @Nullable
+        final FixedBitSet bitSet;
+        @Nullable
+        final ShardId shardId;
+
+        Value(@Nullable FixedBitSet bitSet, @Nullable ShardId shardId) {
+            this.bitSet = bitSet;
+            this.shardId = shardId;
+        }
+
+        long sizeInBytes() {
+            return bitSet == null ? 0 : DocIdSets.sizeInBytes(bitSet);
+        }
+    }
+
+    final class FixedBitSetFilterWrapper extends CachedFilter implements FixedBitSetFilter {
+
+        private final Filter filter;
+
+        FixedBitSetFilterWrapper(Filter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+            // like with the filter cache, the accepted docs are not applied: block joins need the bit set itself
+            // and we rely on XFilteredQuery to apply them when needed
+            return getAndLoadIfNotPresent(filter, context);
+        }
+
+        @Override
+        public String toString() {
+            return "fixed_bit_set(" + filter + ")";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FixedBitSetFilterWrapper)) {
+                return false;
+            }
+            return this.filter.equals(((FixedBitSetFilterWrapper) o).filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return filter.hashCode() ^ 0x1117BF26;
+        }
+    }
+}
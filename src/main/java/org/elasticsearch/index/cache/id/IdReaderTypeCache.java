@@ -32,6 +32,19 @@ public interface IdReaderTypeCache {
      */
     HashedBytesArray parentIdByDoc(int docId);
 
+    /**
+     * @param docId The Lucene docId of the child document to return the parent ordinal for.
+     * @return The ordinal of the parent _uid of the specified docId, or <tt>0</tt> if the document has no parent. Child
+     *         documents that have the same parent share the same ordinal within a segment.
+     */
+    int parentOrdByDoc(int docId);
+
+    /**
+     * @param ord A parent ordinal, as returned by {@link #parentOrdByDoc(int)}
+     * @return The parent _uid for the specified ordinal, or <tt>null</tt> if the ordinal is <tt>0</tt>
+     */
+    HashedBytesArray parentIdByOrd(int ord);
+
     /**
      * @param uid The uid of the document to return the lucene docId for
      * @return The lucene docId for the specified uid
@@ -0,0 +1,76 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.id.simple;
+
+import org.apache.lucene.util.PagedBytes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bytes of the ids of a parent type in a segment, which the parent ids of other segments may point to. The bytes
+ * are reference counted: the memory that they take is only given back to the breaker and to the stats of the shard of
+ * the segment that loaded them once this segment and all the segments that point to them are closed.
+ */
+final class SharedIdBytes {
+
+    private final SimpleIdCache idCache;
+    private final SimpleIdReaderCache owner;
+    private final PagedBytes.Reader bytes;
+    private final long sizeInBytes;
+
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    SharedIdBytes(SimpleIdCache idCache, SimpleIdReaderCache owner, PagedBytes.Reader bytes, long sizeInBytes) {
+        this.idCache = idCache;
+        this.owner = owner;
+        this.bytes = bytes;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    PagedBytes.Reader bytes() {
+        return bytes;
+    }
+
+    long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Increases the ref count, and returns <tt>true</tt> if it managed to do so, <tt>false</tt> if the bytes have
+     * already been released.
+     */
+    boolean increaseRefCount() {
+        while (true) {
+            final int count = refCount.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void decreaseRefCount() {
+        if (refCount.decrementAndGet() == 0) {
+            idCache.onRemoval(owner, sizeInBytes);
+        }
+    }
+}
@@ -7,7 +7,7 @@
  * not use this file except in compliance with the License.
  * You may obtain a copy of the License at
  *
- * http://www.apache.org/licenses/LICENSE-2.0
+ *    http://www.apache.org/licenses/LICENSE-2.0
  *
  * Unless required by applicable law or agreed to in writing,
  * software distributed under the License is distributed on an
@@ -19,16 +19,18 @@
 
 package org.elasticsearch.index.cache.id.simple;
 
-import com.carrotsearch.hppc.ObjectIntOpenHashMap;
 import org.apache.lucene.index.*;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PagedBytes;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.packed.AppendingPackedLongBuffer;
+import org.apache.lucene.util.packed.GrowableWriter;
+import org.apache.lucene.util.packed.MonotonicAppendingLongBuffer;
+import org.apache.lucene.util.packed.PackedInts;
 import org.elasticsearch.ElasticsearchException;
-import org.elasticsearch.common.Strings;
-import org.elasticsearch.common.bytes.HashedBytesArray;
-import org.elasticsearch.common.collect.MapBuilder;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.common.text.UTF8SortedAsUnicodeComparator;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.Index;
@@ -43,28 +45,33 @@ import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.index.settings.IndexSettings;
 import org.elasticsearch.index.shard.ShardUtils;
 import org.elasticsearch.index.shard.service.IndexShard;
+import org.elasticsearch.indices.fielddata.breaker.CircuitBreakerService;
 
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
 
 /**
- *
+ * An id cache that loads the ids of a parent type and the parent ids of its children lazily, per segment, the first
+ * time that they are needed. The loaded ids are accounted against the field data circuit breaker.
  */
 public class SimpleIdCache extends AbstractIndexComponent implements IdCache, SegmentReader.CoreClosedListener, DocumentTypeListener {
 
-    private final boolean reuse;
+    // number of terms to load between two checks of the circuit breaker
+    private static final int BREAKER_CHECK_INTERVAL = 1024;
+
+    private final CircuitBreakerService breakerService;
     private final ConcurrentMap<Object, SimpleIdReaderCache> idReaders;
-    private final NavigableSet<HashedBytesArray> parentTypes;
+    private final Set<String> parentTypes;
 
     IndexService indexService;
 
     @Inject
-    public SimpleIdCache(Index index, @IndexSettings Settings indexSettings) {
+    public SimpleIdCache(Index index, @IndexSettings Settings indexSettings, CircuitBreakerService breakerService) {
         super(index, indexSettings);
-        reuse = componentSettings.getAsBoolean("reuse", false);
+        this.breakerService = breakerService;
         idReaders = ConcurrentCollections.newConcurrentMap();
-        parentTypes = new TreeSet<HashedBytesArray>(UTF8SortedAsUnicodeComparator.utf8SortedAsUnicodeSortOrder);
+        parentTypes = ConcurrentCollections.newConcurrentSet();
     }
 
     @Override
@@ -88,7 +95,7 @@ public class SimpleIdCache extends AbstractIndexComponent implements IdCache, Se
             // ... and only if the id reader still exists in live readers we decrement stats,
             // this will prevent double onRemoval calls
             if (removed != null) {
-                onRemoval(removed);
+                onRemoval(removed, removed.close());
             }
         }
     }
@@ -101,254 +108,375 @@ public class SimpleIdCache extends AbstractIndexComponent implements IdCache, Se
     @Override
     public void clear(Object coreCacheKey) {
         SimpleIdReaderCache removed = idReaders.remove(coreCacheKey);
-        if (removed != null) onRemoval(removed);
+        if (removed != null) {
+            onRemoval(removed, removed.close());
+        }
     }
 
     @Override
     public IdReaderCache reader(AtomicReader reader) {
-        return idReaders.get(reader.getCoreCacheKey());
+        return readerCache(reader);
     }
 
-    @SuppressWarnings({"StringEquality"})
-    @Override
-    public void refresh(List<AtomicReaderContext> atomicReaderContexts) throws IOException {
-        // do a quick check for the common case, that all are there
-        if (refreshNeeded(atomicReaderContexts)) {
+    private SimpleIdReaderCache readerCache(AtomicReader reader) {
+        SimpleIdReaderCache readerCache = idReaders.get(reader.getCoreCacheKey());
+        if (readerCache == null) {
             synchronized (idReaders) {
-                if (!refreshNeeded(atomicReaderContexts)) {
-                    return;
-                }
-
-                // do the refresh
-                Map<Object, Map<String, TypeBuilder>> builders = new HashMap<Object, Map<String, TypeBuilder>>();
-                Map<Object, IndexReader> cacheToReader = new HashMap<Object, IndexReader>();
-
-                // first, go over and load all the id->doc map for all types
-                for (AtomicReaderContext context : atomicReaderContexts) {
-                    AtomicReader reader = context.reader();
-                    if (!refreshNeeded(context)) {
-                        // no need, continue
-                        continue;
-                    }
-
+                readerCache = idReaders.get(reader.getCoreCacheKey());
+                if (readerCache == null) {
                     if (reader instanceof SegmentReader) {
                         ((SegmentReader) reader).addCoreClosedListener(this);
                     }
-                    Map<String, TypeBuilder> readerBuilder = new HashMap<String, TypeBuilder>();
-                    builders.put(reader.getCoreCacheKey(), readerBuilder);
-                    cacheToReader.put(reader.getCoreCacheKey(), context.reader());
-
-
-                    Terms terms = reader.terms(UidFieldMapper.NAME);
-                    if (terms != null) {
-                        TermsEnum termsEnum = terms.iterator(null);
-                        DocsEnum docsEnum = null;
-                        uid: for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
-                            HashedBytesArray[] typeAndId = Uid.splitUidIntoTypeAndId(term);
-                            // We don't want to load uid of child documents, this allows us to not load uids of child types.
-                            if (!parentTypes.contains(typeAndId[0])) {
-                                do {
-                                    HashedBytesArray nextParent = parentTypes.ceiling(typeAndId[0]);
-                                    if (nextParent == null) {
-                                        break uid;
-                                    }
-
-                                    TermsEnum.SeekStatus status = termsEnum.seekCeil(nextParent.toBytesRef());
-                                    if (status == TermsEnum.SeekStatus.END) {
-                                        break uid;
-                                    } else if (status == TermsEnum.SeekStatus.NOT_FOUND) {
-                                        term = termsEnum.term();
-                                        typeAndId = Uid.splitUidIntoTypeAndId(term);
-                                    } else if (status == TermsEnum.SeekStatus.FOUND) {
-                                        assert false : "Seek status should never be FOUND, because we seek only the type part";
-                                        term = termsEnum.term();
-                                        typeAndId = Uid.splitUidIntoTypeAndId(term);
-                                    }
-                                } while (!parentTypes.contains(typeAndId[0]));
-                            }
-
-                            String type = typeAndId[0].toUtf8();
-                            TypeBuilder typeBuilder = readerBuilder.get(type);
-                            if (typeBuilder == null) {
-                                typeBuilder = new TypeBuilder(reader);
-                                readerBuilder.put(type, typeBuilder);
-                            }
-
-                            HashedBytesArray idAsBytes = checkIfCanReuse(builders, typeAndId[1]);
-                            docsEnum = termsEnum.docs(null, docsEnum, 0);
-                            for (int docId = docsEnum.nextDoc(); docId != DocsEnum.NO_MORE_DOCS; docId = docsEnum.nextDoc()) {
-                                typeBuilder.idToDoc.put(idAsBytes, docId);
-                                typeBuilder.docToId[docId] = idAsBytes;
-                            }
-                        }
-                    }
+                    readerCache = new SimpleIdReaderCache(this, reader, ShardUtils.extractShardId(reader));
+                    idReaders.put(reader.getCoreCacheKey(), readerCache);
                 }
+            }
+        }
+        return readerCache;
+    }
 
-                // now, go and load the docId->parentId map
-                for (AtomicReaderContext context : atomicReaderContexts) {
-                    AtomicReader reader = context.reader();
-                    if (!refreshNeeded(context)) {
-                        // no need, continue
-                        continue;
-                    }
-
-                    Map<String, TypeBuilder> readerBuilder = builders.get(reader.getCoreCacheKey());
-
-                    Terms terms = reader.terms(ParentFieldMapper.NAME);
-                    if (terms != null) {
-                        TermsEnum termsEnum = terms.iterator(null);
-                        DocsEnum docsEnum = null;
-                        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
-                            HashedBytesArray[] typeAndId = Uid.splitUidIntoTypeAndId(term);
-
-                            TypeBuilder typeBuilder = readerBuilder.get(typeAndId[0].toUtf8());
-                            if (typeBuilder == null) {
-                                typeBuilder = new TypeBuilder(reader);
-                                readerBuilder.put(typeAndId[0].toUtf8(), typeBuilder);
-                            }
-
-                            HashedBytesArray idAsBytes = checkIfCanReuse(builders, typeAndId[1]);
-                            boolean added = false; // optimize for when all the docs are deleted for this id
-
-                            docsEnum = termsEnum.docs(null, docsEnum, 0);
-                            for (int docId = docsEnum.nextDoc(); docId != DocsEnum.NO_MORE_DOCS; docId = docsEnum.nextDoc()) {
-                                if (!added) {
-                                    typeBuilder.parentIdsValues.add(idAsBytes);
-                                    added = true;
-                                }
-                                typeBuilder.parentIdsOrdinals[docId] = typeBuilder.t;
-                            }
+    /**
+     * Eagerly loads the ids of all parent types for the given segments, ids are otherwise loaded the first time that
+     * a segment is asked for the ids of a type.
+     */
+    @Override
+    public void refresh(List<AtomicReaderContext> atomicReaderContexts) throws IOException {
+        for (AtomicReaderContext context : atomicReaderContexts) {
+            SimpleIdReaderCache readerCache = readerCache(context.reader());
+            for (String parentType : parentTypes) {
+                readerCache.typeCache(parentType);
+            }
+        }
+    }
 
-                            if (added) {
-                                typeBuilder.t++;
-                            }
-                        }
-                    }
-                }
+    boolean isParentType(String type) {
+        return parentTypes.contains(type);
+    }
 
+    /**
+     * Loads the ids of the documents of the given parent type and the parent ids of its child documents from the
+     * given segment, or returns <tt>null</tt> if the segment has none.
+     */
+    SimpleIdReaderTypeCache load(SimpleIdReaderCache readerCache, AtomicReader reader, String type) throws IOException {
+        // parent ids are shared with the ids that have been loaded for other segments of the same shard, when they can
+        // be found there, the id bytes of these segments are retained until we know whether we point to them
+        List<SimpleIdReaderTypeCache> others = new ArrayList<SimpleIdReaderTypeCache>();
+        for (SimpleIdReaderCache other : idReaders.values()) {
+            if (other == readerCache || !sameShard(other, readerCache)) {
+                continue;
+            }
+            SimpleIdReaderTypeCache typeCache = other.loadedType(type);
+            if (typeCache != null && typeCache.idBytes().increaseRefCount()) {
+                others.add(typeCache);
+            }
+        }
 
-                // now, build it back
-                for (Map.Entry<Object, Map<String, TypeBuilder>> entry : builders.entrySet()) {
-                    Object readerKey = entry.getKey();
-                    MapBuilder<String, SimpleIdReaderTypeCache> types = MapBuilder.newMapBuilder();
-                    for (Map.Entry<String, TypeBuilder> typeBuilderEntry : entry.getValue().entrySet()) {
-                        types.put(typeBuilderEntry.getKey(), new SimpleIdReaderTypeCache(typeBuilderEntry.getKey(),
-                                typeBuilderEntry.getValue().idToDoc,
-                                typeBuilderEntry.getValue().docToId,
-                                typeBuilderEntry.getValue().parentIdsValues.toArray(new HashedBytesArray[typeBuilderEntry.getValue().parentIdsValues.size()]),
-                                typeBuilderEntry.getValue().parentIdsOrdinals));
-                    }
-                    IndexReader indexReader = cacheToReader.get(readerKey);
-                    SimpleIdReaderCache readerCache = new SimpleIdReaderCache(types.immutableMap(), ShardUtils.extractShardId(indexReader));
-                    idReaders.put(readerKey, readerCache);
-                    onCached(readerCache);
-                }
+        TypeLoader loader = new TypeLoader(this, readerCache, type, reader.maxDoc(), breakerService.getBreaker(), others);
+        boolean success = false;
+        try {
+            loader.loadIds(reader.terms(UidFieldMapper.NAME));
+            loader.loadParentIds(reader.terms(ParentFieldMapper.NAME));
+            SimpleIdReaderTypeCache typeCache = loader.build();
+            success = true;
+            return typeCache;
+        } finally {
+            if (!success) {
+                loader.release();
             }
         }
     }
 
-    void onCached(SimpleIdReaderCache readerCache) {
+    private static boolean sameShard(SimpleIdReaderCache readerCache1, SimpleIdReaderCache readerCache2) {
+        if (readerCache1.shardId == null) {
+            return readerCache2.shardId == null;
+        }
+        return readerCache1.shardId.equals(readerCache2.shardId);
+    }
+
+    void onCached(SimpleIdReaderCache readerCache, long sizeInBytes) {
         if (readerCache.shardId != null) {
             IndexShard shard = indexService.shard(readerCache.shardId.id());
             if (shard != null) {
-                shard.idCache().onCached(readerCache.sizeInBytes());
+                shard.idCache().onCached(sizeInBytes);
             }
         }
     }
 
-    void onRemoval(SimpleIdReaderCache readerCache) {
+    void onRemoval(SimpleIdReaderCache readerCache, long sizeInBytes) {
+        breakerService.getBreaker().addWithoutBreaking(-sizeInBytes);
         if (readerCache.shardId != null) {
             IndexShard shard = indexService.shard(readerCache.shardId.id());
             if (shard != null) {
-                shard.idCache().onRemoval(readerCache.sizeInBytes());
+                shard.idCache().onRemoval(sizeInBytes);
             }
         }
     }
 
-    private HashedBytesArray checkIfCanReuse(Map<Object, Map<String, TypeBuilder>> builders, HashedBytesArray idAsBytes) {
-        HashedBytesArray finalIdAsBytes;
-        // go over and see if we can reuse this id
-        if (reuse) {
-            for (SimpleIdReaderCache idReaderCache : idReaders.values()) {
-                finalIdAsBytes = idReaderCache.canReuse(idAsBytes);
-                if (finalIdAsBytes != null) {
-                    return finalIdAsBytes;
+    @Override
+    public void beforeCreate(DocumentMapper mapper) {
+        ParentFieldMapper parentFieldMapper = mapper.parentFieldMapper();
+        if (parentFieldMapper.active()) {
+            // A _parent field can never be added to an existing mapping, so a _parent field either exists on
+            // a new created or doesn't exists. This is why we can update the known parent types via DocumentTypeListener.
+            // Since types are loaded lazily, there is nothing to clear here.
+            parentTypes.add(parentFieldMapper.type());
+        }
+    }
+
+    @Override
+    public void afterRemove(DocumentMapper mapper) {
+        ParentFieldMapper parentFieldMapper = mapper.parentFieldMapper();
+        if (parentFieldMapper.active()) {
+            parentTypes.remove(parentFieldMapper.type());
+        }
+    }
+
+    /**
+     * Loads the ids of a type from a single segment and accounts the memory that they take against the breaker.
+     */
+    static class TypeLoader {
+
+        final SimpleIdCache idCache;
+        final SimpleIdReaderCache readerCache;
+        final String type;
+        final BytesRef prefix;
+        final MemoryCircuitBreaker breaker;
+
+        final PagedBytes idBytes = new PagedBytes(15);
+        final MonotonicAppendingLongBuffer idOrdToOffset = new MonotonicAppendingLongBuffer();
+        final AppendingPackedLongBuffer idOrdToDoc = new AppendingPackedLongBuffer();
+        final GrowableWriter docToIdOrd;
+        PagedBytes.Reader idBytesReader;
+
+        // parent ids that could not be found in the ids of this segment or of other segments
+        final PagedBytes parentIdBytes = new PagedBytes(15);
+        final List<PagedBytes.Reader> parentIdStores = new ArrayList<PagedBytes.Reader>();
+        // the type caches of other segments whose id bytes are retained, and those that parent ids point to
+        final List<SimpleIdReaderTypeCache> others;
+        final List<SharedIdBytes> sharedParentIdStores = new ArrayList<SharedIdBytes>();
+        final AppendingPackedLongBuffer parentOrdToStore = new AppendingPackedLongBuffer();
+        final AppendingPackedLongBuffer parentOrdToOffset = new AppendingPackedLongBuffer();
+        final GrowableWriter docToParentOrd;
+
+        long idBytesSize;
+        long bytesSize;
+        long accounted;
+        int loaded;
+
+        TypeLoader(SimpleIdCache idCache, SimpleIdReaderCache readerCache, String type, int maxDoc, MemoryCircuitBreaker breaker,
+                   List<SimpleIdReaderTypeCache> others) {
+            this.idCache = idCache;
+            this.readerCache = readerCache;
+            this.type = type;
+            this.others = others;
+            this.prefix = Uid.typePrefixAsBytes(new BytesRef(type));
+            this.breaker = breaker;
+            docToIdOrd = new GrowableWriter(1, maxDoc, PackedInts.FAST);
+            docToParentOrd = new GrowableWriter(1, maxDoc, PackedInts.FAST);
+            // parent ordinal 0 means that a document has no parent
+            parentOrdToStore.add(0);
+            parentOrdToOffset.add(0);
+            account();
+        }
+
+        void loadIds(Terms terms) throws IOException {
+            if (terms != null) {
+                TermsEnum termsEnum = terms.iterator(null);
+                if (termsEnum.seekCeil(prefix) != TermsEnum.SeekStatus.END) {
+                    BytesRef id = new BytesRef();
+                    DocsEnum docsEnum = null;
+                    for (BytesRef term = termsEnum.term(); term != null && StringHelper.startsWith(term, prefix); term = termsEnum.next()) {
+                        id(term, id);
+                        final long ord = idOrdToOffset.size() + 1;
+                        idOrdToOffset.add(idBytes.copyUsingLengthPrefix(id));
+                        bytesSize += id.length + 2;
+
+                        // a deleted document may share its uid with a live one, the last document wins like in the uid lookups
+                        int lastDocId = -1;
+                        docsEnum = termsEnum.docs(null, docsEnum, DocsEnum.FLAG_NONE);
+                        for (int docId = docsEnum.nextDoc(); docId != DocsEnum.NO_MORE_DOCS; docId = docsEnum.nextDoc()) {
+                            docToIdOrd.set(docId, ord);
+                            lastDocId = docId;
+                        }
+                        idOrdToDoc.add(lastDocId);
+                        maybeAccount();
+                    }
                 }
             }
+            bytesSize = idBytesSize = idBytes.getPointer();
+            idBytesReader = idBytes.freeze(true);
         }
-        // even if we don't enable reuse, at least check on the current "live" builders that we are handling
-        for (Map<String, TypeBuilder> map : builders.values()) {
-            for (TypeBuilder typeBuilder : map.values()) {
-                finalIdAsBytes = typeBuilder.canReuse(idAsBytes);
-                if (finalIdAsBytes != null) {
-                    return finalIdAsBytes;
+
+        void loadParentIds(Terms terms) throws IOException {
+            // store 0 holds the parent ids that are only known here, the other stores are shared with the ids of the
+            // parent documents of this segment and of other segments, they are added the first time a parent id points
+            // to them
+            parentIdStores.add(null);
+            List<IdCursor> cursors = new ArrayList<IdCursor>();
+            cursors.add(new IdCursor(idBytesReader, idOrdToOffset));
+            for (SimpleIdReaderTypeCache other : others) {
+                cursors.add(new IdCursor(other.idBytes().bytes(), other.idOffsets()));
+            }
+            final int[] cursorToStore = new int[cursors.size()];
+
+            if (terms != null) {
+                TermsEnum termsEnum = terms.iterator(null);
+                if (termsEnum.seekCeil(prefix) != TermsEnum.SeekStatus.END) {
+                    BytesRef id = new BytesRef();
+                    DocsEnum docsEnum = null;
+                    for (BytesRef term = termsEnum.term(); term != null && StringHelper.startsWith(term, prefix); term = termsEnum.next()) {
+                        id(term, id);
+                        // parent ids and ids are both sorted, so the cursors only move forward
+                        int store = 0;
+                        long offset = -1;
+                        for (int i = 0; i < cursors.size(); i++) {
+                            offset = cursors.get(i).seek(id);
+                            if (offset >= 0) {
+                                if (cursorToStore[i] == 0) {
+                                    cursorToStore[i] = parentIdStores.size();
+                                    parentIdStores.add(i == 0 ? idBytesReader : others.get(i - 1).idBytes().bytes());
+                                }
+                                store = cursorToStore[i];
+                                break;
+                            }
+                        }
+                        if (offset < 0) {
+                            offset = parentIdBytes.copyUsingLengthPrefix(id);
+                            bytesSize += id.length + 2;
+                        }
+
+                        final long ord = parentOrdToOffset.size();
+                        parentOrdToStore.add(store);
+                        parentOrdToOffset.add(offset);
+                        docsEnum = termsEnum.docs(null, docsEnum, DocsEnum.FLAG_NONE);
+                        for (int docId = docsEnum.nextDoc(); docId != DocsEnum.NO_MORE_DOCS; docId = docsEnum.nextDoc()) {
+                            docToParentOrd.set(docId, ord);
+                        }
+                        maybeAccount();
+                    }
                 }
             }
+            bytesSize = idBytesSize + parentIdBytes.getPointer();
+            parentIdStores.set(0, parentIdBytes.freeze(true));
+
+            // keep the id bytes of the other segments that parent ids point to only
+            for (int i = 0; i < others.size(); i++) {
+                if (cursorToStore[i + 1] == 0) {
+                    others.get(i).idBytes().decreaseRefCount();
+                } else {
+                    sharedParentIdStores.add(others.get(i).idBytes());
+                }
+            }
+            others.clear();
         }
-        return idAsBytes;
-    }
 
-    private boolean refreshNeeded(List<AtomicReaderContext> atomicReaderContexts) {
-        for (AtomicReaderContext atomicReaderContext : atomicReaderContexts) {
-            if (refreshNeeded(atomicReaderContext)) {
-                return true;
+        SimpleIdReaderTypeCache build() {
+            if (idOrdToOffset.size() == 0 && parentOrdToOffset.size() == 1) {
+                release();
+                return null;
             }
+            SharedIdBytes sharedIdBytes = new SharedIdBytes(idCache, readerCache, idBytesReader, idBytesSize);
+            SimpleIdReaderTypeCache typeCache = new SimpleIdReaderTypeCache(type, sharedIdBytes, idOrdToOffset, idOrdToDoc,
+                    docToIdOrd.getMutable(), parentIdStores.toArray(new PagedBytes.Reader[parentIdStores.size()]),
+                    sharedParentIdStores.toArray(new SharedIdBytes[sharedParentIdStores.size()]),
+                    parentOrdToStore, parentOrdToOffset, docToParentOrd.getMutable(), bytesSize);
+            // adjust the breaker to the exact size
+            breaker.addWithoutBreaking(typeCache.sizeInBytes() - accounted);
+            accounted = typeCache.sizeInBytes();
+            return typeCache;
         }
-        return false;
-    }
 
-    private boolean refreshNeeded(AtomicReaderContext atomicReaderContext) {
-        return !idReaders.containsKey(atomicReaderContext.reader().getCoreCacheKey());
-    }
-
-    @Override
-    public void beforeCreate(DocumentMapper mapper) {
-        synchronized (idReaders) {
-            ParentFieldMapper parentFieldMapper = mapper.parentFieldMapper();
-            if (parentFieldMapper.active()) {
-                // A _parent field can never be added to an existing mapping, so a _parent field either exists on
-                // a new created or doesn't exists. This is why we can update the known parent types via DocumentTypeListener
-                if (parentTypes.add(new HashedBytesArray(Strings.toUTF8Bytes(parentFieldMapper.type(), new BytesRef())))) {
-                    clear();
-                }
+        void release() {
+            breaker.addWithoutBreaking(-accounted);
+            accounted = 0;
+            for (SimpleIdReaderTypeCache other : others) {
+                other.idBytes().decreaseRefCount();
+            }
+            others.clear();
+            for (SharedIdBytes store : sharedParentIdStores) {
+                store.decreaseRefCount();
             }
+            sharedParentIdStores.clear();
         }
-    }
 
-    @Override
-    public void afterRemove(DocumentMapper mapper) {
-        synchronized (idReaders) {
-            ParentFieldMapper parentFieldMapper = mapper.parentFieldMapper();
-            if (parentFieldMapper.active()) {
-                parentTypes.remove(new HashedBytesArray(Strings.toUTF8Bytes(parentFieldMapper.type(), new BytesRef())));
+        private void maybeAccount() {
+            if (++loaded % BREAKER_CHECK_INTERVAL == 0) {
+                account();
             }
         }
+
+        private void account() {
+            final long used = bytesSize + idOrdToOffset.ramBytesUsed() + idOrdToDoc.ramBytesUsed() + docToIdOrd.ramBytesUsed()
+                    + parentOrdToStore.ramBytesUsed() + parentOrdToOffset.ramBytesUsed() + docToParentOrd.ramBytesUsed();
+            breaker.addEstimateBytesAndMaybeBreak(used - accounted);
+            accounted = used;
+        }
+
+        private void id(BytesRef term, BytesRef id) {
+            id.bytes = term.bytes;
+            id.offset = term.offset + prefix.length;
+            id.length = term.length - prefix.length;
+        }
     }
 
-    static class TypeBuilder {
-        final ObjectIntOpenHashMap<HashedBytesArray> idToDoc = new ObjectIntOpenHashMap<HashedBytesArray>();
-        final HashedBytesArray[] docToId;
-        final ArrayList<HashedBytesArray> parentIdsValues = new ArrayList<HashedBytesArray>();
-        final int[] parentIdsOrdinals;
-        int t = 1;  // current term number (0 indicated null value)
-
-        TypeBuilder(IndexReader reader) {
-            parentIdsOrdinals = new int[reader.maxDoc()];
-            // the first one indicates null value
-            parentIdsValues.add(null);
-            docToId = new HashedBytesArray[reader.maxDoc()];
+    /**
+     * Iterates over sorted ids in order to find the ones that are equal to increasing targets. Targets are looked up by
+     * galloping from the previous position and then binary searching by rank, so that ids which are skipped over are
+     * mostly not read.
+     */
+    static final class IdCursor {
+
+        private final PagedBytes.Reader bytes;
+        private final MonotonicAppendingLongBuffer offsets;
+        private final BytesRef current = new BytesRef();
+        // the ids before this rank are less than the previous target
+        private long rank = 0;
+
+        IdCursor(PagedBytes.Reader bytes, MonotonicAppendingLongBuffer offsets) {
+            this.bytes = bytes;
+            this.offsets = offsets;
         }
 
         /**
-         * Returns an already stored instance if exists, if not, returns null;
+         * Moves to the first id that is greater than or equal to the given target, which must not be less than the
+         * previous target, and returns its offset if it is equal to the target, <tt>-1</tt> otherwise.
          */
-        public HashedBytesArray canReuse(HashedBytesArray id) {
-            if (idToDoc.containsKey(id)) {
-                // we can use #lkey() since this is called from a synchronized block
-                return idToDoc.lkey();
-            } else {
-                return id;
+        long seek(BytesRef target) {
+            final long size = offsets.size();
+            if (rank >= size) {
+                return -1;
+            }
+            if (compare(rank, target) >= 0) {
+                return current.bytesEquals(target) ? offsets.get(rank) : -1;
+            }
+            // the id at lo is less than the target, gallop until the id at hi is not
+            long lo = rank;
+            long step = 1;
+            long hi = lo + step;
+            while (hi < size && compare(hi, target) < 0) {
+                lo = hi;
+                step <<= 1;
+                hi = lo + step;
             }
+            hi = Math.min(hi, size);
+            while (hi - lo > 1) {
+                final long mid = (lo + hi) >>> 1;
+                if (compare(mid, target) < 0) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            rank = hi;
+            if (rank == size) {
+                return -1;
+            }
+            return compare(rank, target) == 0 ? offsets.get(rank) : -1;
+        }
+
+        private int compare(long atRank, BytesRef target) {
+            bytes.fill(current, offsets.get(atRank));
+            return current.compareTo(target);
         }
     }
 }
@@ -7,7 +7,7 @@
  * not use this file except in compliance with the License.
  * You may obtain a copy of the License at
  *
- * http://www.apache.org/licenses/LICENSE-2.0
+ *    http://www.apache.org/licenses/LICENSE-2.0
  *
  * Unless required by applicable law or agreed to in writing,
  * software distributed under the License is distributed on an
@@ -19,36 +19,50 @@
 
 package org.elasticsearch.index.cache.id.simple;
 
-import com.google.common.collect.ImmutableMap;
+import org.apache.lucene.index.AtomicReader;
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.HashedBytesArray;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.cache.id.IdReaderCache;
 import org.elasticsearch.index.cache.id.IdReaderTypeCache;
 import org.elasticsearch.index.shard.ShardId;
 
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
 /**
- *
+ * The id cache of a segment. The ids of a parent type are only loaded the first time that they are needed.
  */
 public class SimpleIdReaderCache implements IdReaderCache {
 
-    private final ImmutableMap<String, SimpleIdReaderTypeCache> types;
+    private final SimpleIdCache idCache;
+    private final AtomicReader reader;
+    private final ConcurrentMap<String, SimpleIdReaderTypeCache> types;
+    // parent types that have neither parent nor child documents in this segment
+    private final Set<String> emptyTypes;
+    private boolean closed;
 
     @Nullable
     public final ShardId shardId;
 
-    public SimpleIdReaderCache(ImmutableMap<String, SimpleIdReaderTypeCache> types, @Nullable ShardId shardId) {
-        this.types = types;
+    SimpleIdReaderCache(SimpleIdCache idCache, AtomicReader reader, @Nullable ShardId shardId) {
+        this.idCache = idCache;
+        this.reader = reader;
         this.shardId = shardId;
+        this.types = ConcurrentCollections.newConcurrentMap();
+        this.emptyTypes = ConcurrentCollections.newConcurrentSet();
     }
 
     @Override
     public IdReaderTypeCache type(String type) {
-        return types.get(type);
+        return typeCache(type);
     }
 
     @Override
     public HashedBytesArray parentIdByDoc(String type, int docId) {
-        SimpleIdReaderTypeCache typeCache = types.get(type);
+        SimpleIdReaderTypeCache typeCache = typeCache(type);
         if (typeCache != null) {
             return typeCache.parentIdByDoc(docId);
         }
@@ -57,7 +71,7 @@ public class SimpleIdReaderCache implements IdReaderCache {
 
     @Override
     public int docById(String type, HashedBytesArray id) {
-        SimpleIdReaderTypeCache typeCache = types.get(type);
+        SimpleIdReaderTypeCache typeCache = typeCache(type);
         if (typeCache != null) {
             return typeCache.docById(id);
         }
@@ -73,15 +87,57 @@ public class SimpleIdReaderCache implements IdReaderCache {
     }
 
     /**
-     * Returns an already stored instance if exists, if not, returns null;
+     * Returns the cache of the given type if it has already been loaded, <tt>null</tt> otherwise.
      */
-    public HashedBytesArray canReuse(HashedBytesArray id) {
-        for (SimpleIdReaderTypeCache typeCache : types.values()) {
-            HashedBytesArray wrap = typeCache.canReuse(id);
-            if (wrap != null) {
-                return wrap;
+    SimpleIdReaderTypeCache loadedType(String type) {
+        return types.get(type);
+    }
+
+    /**
+     * Returns the cache of the given type, loading it if needed, or <tt>null</tt> if the type is not a parent type or
+     * has no documents in this segment.
+     */
+    SimpleIdReaderTypeCache typeCache(String type) {
+        SimpleIdReaderTypeCache typeCache = types.get(type);
+        if (typeCache != null || emptyTypes.contains(type) || !idCache.isParentType(type)) {
+            return typeCache;
+        }
+        synchronized (this) {
+            typeCache = types.get(type);
+            if (typeCache != null || emptyTypes.contains(type)) {
+                return typeCache;
+            }
+            try {
+                typeCache = idCache.load(this, reader, type);
+            } catch (IOException e) {
+                throw new ElasticsearchException("failed to load the id cache of type [" + type + "]", e);
+            }
+            if (typeCache == null) {
+                emptyTypes.add(type);
+                return null;
             }
+            if (closed) {
+                // the segment was closed or the cache cleared while we were loading
+                idCache.onCached(this, typeCache.sizeInBytes());
+                idCache.onRemoval(this, typeCache.close());
+                return typeCache;
+            }
+            types.put(type, typeCache);
+            idCache.onCached(this, typeCache.sizeInBytes());
+            return typeCache;
         }
-        return null;
+    }
+
+    /**
+     * Marks this cache as removed and returns the number of bytes that it released. Id bytes that other segments
+     * still point to are released later on, when they are closed too.
+     */
+    synchronized long close() {
+        closed = true;
+        long released = 0;
+        for (SimpleIdReaderTypeCache typeCache : types.values()) {
+            released += typeCache.close();
+        }
+        return released;
     }
 }
@@ -7,7 +7,7 @@
  * not use this file except in compliance with the License.
  * You may obtain a copy of the License at
  *
- * http://www.apache.org/licenses/LICENSE-2.0
+ *    http://www.apache.org/licenses/LICENSE-2.0
  *
  * Unless required by applicable law or agreed to in writing,
  * software distributed under the License is distributed on an
@@ -19,103 +19,171 @@
 
 package org.elasticsearch.index.cache.id.simple;
 
-import com.carrotsearch.hppc.ObjectIntOpenHashMap;
-import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PagedBytes;
+import org.apache.lucene.util.packed.AppendingPackedLongBuffer;
+import org.apache.lucene.util.packed.MonotonicAppendingLongBuffer;
+import org.apache.lucene.util.packed.PackedInts;
 import org.elasticsearch.common.bytes.HashedBytesArray;
 import org.elasticsearch.index.cache.id.IdReaderTypeCache;
 
+import java.util.Arrays;
+
 /**
- *
+ * The ids of the documents of a parent type and the parent ids of its child documents, for a single segment.
+ * <p/>
+ * Ids are stored in {@link PagedBytes} and addressed by packed ordinals: the ids of the documents of the type are
+ * sorted and their ordinal is <tt>1</tt> plus their rank, parent ids have their own ordinals, <tt>0</tt> meaning no
+ * parent. The bytes of a parent id are shared with the ids of the parent documents whenever the parent lives in this
+ * segment or in another segment of the same shard that was loaded before, so only parent ids that can't be found
+ * anywhere else are stored again. The id bytes are reference counted, see {@link SharedIdBytes}.
  */
 public class SimpleIdReaderTypeCache implements IdReaderTypeCache {
 
     private final String type;
 
-    private final ObjectIntOpenHashMap<HashedBytesArray> idToDoc;
-
-    private final HashedBytesArray[] docIdToId;
-
-    private final HashedBytesArray[] parentIdsValues;
-
-    private final int[] parentIdsOrdinals;
-
-    private long sizeInBytes = -1;
-
-    public SimpleIdReaderTypeCache(String type, ObjectIntOpenHashMap<HashedBytesArray> idToDoc, HashedBytesArray[] docIdToId,
-                                   HashedBytesArray[] parentIdsValues, int[] parentIdsOrdinals) {
+    // ids of the documents of this type, ordinal - 1 is the rank of the id
+    private final SharedIdBytes sharedIdBytes;
+    private final PagedBytes.Reader idBytes;
+    private final MonotonicAppendingLongBuffer idOrdToOffset;
+    private final AppendingPackedLongBuffer idOrdToDoc;
+    private final PackedInts.Reader docToIdOrd;
+
+    // parent ids of the child documents, which may point to the id bytes of other segments
+    private final PagedBytes.Reader[] parentIdStores;
+    // the id bytes of other segments that parent ids point to
+    private final SharedIdBytes[] sharedParentIdStores;
+    private final AppendingPackedLongBuffer parentOrdToStore;
+    private final AppendingPackedLongBuffer parentOrdToOffset;
+    private final PackedInts.Reader docToParentOrd;
+
+    private final long sizeInBytes;
+
+    SimpleIdReaderTypeCache(String type, SharedIdBytes idBytes, MonotonicAppendingLongBuffer idOrdToOffset,
+                            AppendingPackedLongBuffer idOrdToDoc, PackedInts.Reader docToIdOrd,
+                            PagedBytes.Reader[] parentIdStores, SharedIdBytes[] sharedParentIdStores,
+                            AppendingPackedLongBuffer parentOrdToStore, AppendingPackedLongBuffer parentOrdToOffset,
+                            PackedInts.Reader docToParentOrd, long bytesSize) {
         this.type = type;
-        this.idToDoc = idToDoc;
-        this.docIdToId = docIdToId;
-        this.parentIdsValues = parentIdsValues;
-        this.parentIdsOrdinals = parentIdsOrdinals;
+        this.sharedIdBytes = idBytes;
+        this.idBytes = idBytes.bytes();
+        this.idOrdToOffset = idOrdToOffset;
+        this.idOrdToDoc = idOrdToDoc;
+        this.docToIdOrd = docToIdOrd;
+        this.parentIdStores = parentIdStores;
+        this.sharedParentIdStores = sharedParentIdStores;
+        this.parentOrdToStore = parentOrdToStore;
+        this.parentOrdToOffset = parentOrdToOffset;
+        this.docToParentOrd = docToParentOrd;
+        // only the bytes this instance owns are accounted, parent ids that point to other segments are accounted there
+        this.sizeInBytes = bytesSize + idOrdToOffset.ramBytesUsed() + idOrdToDoc.ramBytesUsed() + docToIdOrd.ramBytesUsed()
+                + parentOrdToStore.ramBytesUsed() + parentOrdToOffset.ramBytesUsed() + docToParentOrd.ramBytesUsed();
     }
 
     public String type() {
         return this.type;
     }
 
+    @Override
     public HashedBytesArray parentIdByDoc(int docId) {
-        return parentIdsValues[parentIdsOrdinals[docId]];
+        return parentIdByOrd(parentOrdByDoc(docId));
     }
 
+    @Override
+    public int parentOrdByDoc(int docId) {
+        return (int) docToParentOrd.get(docId);
+    }
+
+    @Override
+    public HashedBytesArray parentIdByOrd(int ord) {
+        if (ord == 0) {
+            return null;
+        }
+        final BytesRef scratch = new BytesRef();
+        parentIdStores[(int) parentOrdToStore.get(ord)].fill(scratch, parentOrdToOffset.get(ord));
+        return toHashedBytesArray(scratch);
+    }
+
+    @Override
     public int docById(HashedBytesArray uid) {
-        return idToDoc.getOrDefault(uid, -1);
+        final int ord = idOrd(new BytesRef(uid.toBytes()));
+        if (ord == 0) {
+            return -1;
+        }
+        return (int) idOrdToDoc.get(ord - 1);
     }
 
+    @Override
     public HashedBytesArray idByDoc(int docId) {
-        return docIdToId[docId];
+        final long ord = docToIdOrd.get(docId);
+        if (ord == 0) {
+            return null;
+        }
+        final BytesRef scratch = new BytesRef();
+        idBytes.fill(scratch, idOrdToOffset.get(ord - 1));
+        return toHashedBytesArray(scratch);
     }
 
+    @Override
     public long sizeInBytes() {
-        if (sizeInBytes == -1) {
-            sizeInBytes = computeSizeInBytes();
-        }
         return sizeInBytes;
     }
 
     /**
-     * Returns an already stored instance if exists, if not, returns null;
+     * Returns the number of distinct ids of the documents of this type.
      */
-    public HashedBytesArray canReuse(HashedBytesArray id) {
-        if (idToDoc.containsKey(id)) {
-            // we can use #lkey() since this is called from a synchronized block
-            return idToDoc.lkey();
-        } else {
-            return id;
-        }
+    int numIds() {
+        return (int) idOrdToOffset.size();
     }
 
-    long computeSizeInBytes() {
-        long sizeInBytes = 0;
-        // Ignore type field
-        //  sizeInBytes += ((type.length() * RamUsage.NUM_BYTES_CHAR) + (3 * RamUsage.NUM_BYTES_INT)) + RamUsage.NUM_BYTES_OBJECT_HEADER;
-        sizeInBytes += RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (idToDoc.values.length * RamUsageEstimator.NUM_BYTES_INT);
-        sizeInBytes += RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (idToDoc.allocated.length);
-        final boolean[] states = idToDoc.allocated;
-        final Object[] keys = idToDoc.keys;
-        for (int i = 0; i < states.length; i++) {
-            if (states[i]) {
-                HashedBytesArray bytesArray = (HashedBytesArray) keys[i];
-                if (bytesArray != null) {
-                    sizeInBytes += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + (bytesArray.length() + RamUsageEstimator.NUM_BYTES_INT);
-                } else {
-                    sizeInBytes += RamUsageEstimator.NUM_BYTES_OBJECT_REF;
-                }
-            }
+    SharedIdBytes idBytes() {
+        return sharedIdBytes;
+    }
+
+    /**
+     * Returns the offsets in {@link #idBytes()} of the ids, by rank.
+     */
+    MonotonicAppendingLongBuffer idOffsets() {
+        return idOrdToOffset;
+    }
+
+    /**
+     * Releases the id bytes that this cache holds and returns the number of bytes that are released right away, the
+     * id bytes of this segment are only released once no other segment points to them.
+     */
+    long close() {
+        final long released = sizeInBytes - sharedIdBytes.sizeInBytes();
+        sharedIdBytes.decreaseRefCount();
+        for (SharedIdBytes store : sharedParentIdStores) {
+            store.decreaseRefCount();
         }
+        return released;
+    }
 
-        // The docIdToId array contains references to idToDoc for this segment or other segments, so we can use OBJECT_REF
-        sizeInBytes += RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (RamUsageEstimator.NUM_BYTES_OBJECT_REF * docIdToId.length);
-        for (HashedBytesArray bytesArray : parentIdsValues) {
-            if (bytesArray == null) {
-                sizeInBytes += RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    /**
+     * Returns the ordinal of the given id, or <tt>0</tt> if no document of this type has this id.
+     */
+    private int idOrd(BytesRef id) {
+        final BytesRef scratch = new BytesRef();
+        int lo = 0;
+        int hi = numIds() - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            idBytes.fill(scratch, idOrdToOffset.get(mid));
+            final int cmp = scratch.compareTo(id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
             } else {
-                sizeInBytes += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + (bytesArray.length() + RamUsageEstimator.NUM_BYTES_INT);
+                return mid + 1;
             }
         }
-        sizeInBytes += RamUsageEstimator.sizeOf(parentIdsOrdinals);
+        return 0;
+    }
 
-        return sizeInBytes;
+    private static HashedBytesArray toHashedBytesArray(BytesRef bytes) {
+        return new HashedBytesArray(Arrays.copyOfRange(bytes.bytes, bytes.offset, bytes.offset + bytes.length));
     }
 
 }
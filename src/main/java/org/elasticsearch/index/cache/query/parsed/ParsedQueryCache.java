@@ -0,0 +1,221 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.query.parsed;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.component.CloseableComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.AbstractIndexComponent;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.settings.IndexSettings;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of the parsed queries and filters of an index, keyed by their source and the types they are parsed against.
+ * Dashboards tend to send the same queries over and over again, this saves parsing and analysis and allows caches
+ * which are keyed by queries or filters to hit.
+ * <p/>
+ * The cache is disabled by default and enabled by setting <tt>index.cache.query.parsed.size</tt>. Entries are tagged
+ * with the version of the mappings they have been parsed with, and are ignored once the mappings change. Queries
+ * which depend on the time or on the search request they are executed in must not be cached, see
+ * {@link org.elasticsearch.index.query.QueryParseContext#markAsNotCacheable()}. Entries are accounted to the shard
+ * whose search request parsed them, see {@link ShardParsedQueryCache}.
+ */
+public class ParsedQueryCache extends AbstractIndexComponent implements CloseableComponent {
+
+    private static final byte[] NOW = {'n', 'o', 'w'};
+    private static final byte[] SCRIPT = {'s', 'c', 'r', 'i', 'p', 't'};
+
+    // rough estimate of the memory used by the parsed objects: terms are stored as bytes, and every clause adds at least
+    // an object header and a few references, which is about as much as the json that declares it
+    private static final int PARSED_BYTES_PER_SOURCE_BYTE = 2;
+    // the key and value objects, the types and the entry of the cache
+    private static final int ENTRY_OVERHEAD = 4 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 8 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+            + RamUsageEstimator.NUM_BYTES_LONG;
+
+    private final ByteSizeValue size;
+    private final TimeValue expire;
+
+    // null if disabled
+    private final Cache<Key, Value> cache;
+
+    @Inject
+    public ParsedQueryCache(Index index, @IndexSettings Settings indexSettings) {
+        super(index, indexSettings);
+        this.size = componentSettings.getAsBytesSize("size", new ByteSizeValue(0));
+        this.expire = componentSettings.getAsTime("expire", null);
+        logger.debug("using parsed query cache with size [{}], expire [{}]", size, expire);
+
+        if (size.bytes() <= 0) {
+            this.cache = null;
+            return;
+        }
+        CacheBuilder<Key, Value> cacheBuilder = CacheBuilder.newBuilder()
+                .maximumWeight(size.bytes())
+                .weigher(new Weigher<Key, Value>() {
+                    @Override
+                    public int weigh(Key key, Value value) {
+                        return (int) Math.min(Integer.MAX_VALUE, value.sizeInBytes);
+                    }
+                })
+                .removalListener(new RemovalListener<Key, Value>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<Key, Value> notification) {
+                        Value value = notification.getValue();
+                        if (value != null && value.shardCache != null) {
+                            value.shardCache.onRemoval(value.sizeInBytes, notification.wasEvicted());
+                        }
+                    }
+                });
+        if (expire != null) {
+            cacheBuilder.expireAfterAccess(expire.nanos(), TimeUnit.NANOSECONDS);
+        }
+        this.cache = cacheBuilder.build();
+    }
+
+    public boolean enabled() {
+        return cache != null;
+    }
+
+    /**
+     * Whether the given source may be cached at all: date math relative to <tt>now</tt> and scripts make the parsed
+     * query depend on the time and on the search request. This check is lenient and errs on the side of not caching.
+     */
+    public static boolean isCacheable(BytesReference source) {
+        return !contains(source, NOW) && !contains(source, SCRIPT);
+    }
+
+    private static boolean contains(BytesReference source, byte[] pattern) {
+        final int end = source.length() - pattern.length;
+        for (int i = 0; i <= end; ++i) {
+            int j = 0;
+            while (j < pattern.length && source.get(i + j) == pattern[j]) {
+                ++j;
+            }
+            if (j == pattern.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the query or filter that was parsed from the source of <code>key</code> against the given mapping
+     * version, or null if there is none. Hits and misses are counted on <code>shardCache</code>, if not null.
+     */
+    @Nullable
+    public Object get(Key key, long mappingVersion, @Nullable ShardParsedQueryCache shardCache) {
+        Value value = cache.getIfPresent(key);
+        if (value != null && value.mappingVersion != mappingVersion) {
+            cache.invalidate(key);
+            value = null;
+        }
+        if (shardCache != null) {
+            if (value == null) {
+                shardCache.onMiss();
+            } else {
+                shardCache.onHit();
+            }
+        }
+        return value == null ? null : value.parsed;
+    }
+
+    /**
+     * Cache a parsed query or filter. Its memory is accounted to <code>shardCache</code>, if not null, until it is
+     * removed from the cache.
+     */
+    public void put(Key key, long mappingVersion, Object parsed, @Nullable ShardParsedQueryCache shardCache) {
+        final long sizeInBytes = ENTRY_OVERHEAD + (1 + PARSED_BYTES_PER_SOURCE_BYTE) * (long) key.source.length();
+        if (shardCache != null) {
+            shardCache.onCached(sizeInBytes);
+        }
+        cache.put(key, new Value(parsed, mappingVersion, sizeInBytes, shardCache));
+    }
+
+    public void clear(String reason) {
+        if (cache != null) {
+            logger.debug("full parsed query cache clear, reason [{}]", reason);
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void close() throws ElasticsearchException {
+        clear("close");
+    }
+
+    public static final class Key {
+
+        final BytesReference source;
+        @Nullable
+        final String[] types;
+        final boolean filter;
+        private final int hashCode;
+
+        public Key(BytesReference source, @Nullable String[] types, boolean filter) {
+            this.source = source;
+            this.types = types;
+            this.filter = filter;
+            this.hashCode = 31 * (31 * source.hashCode() + Arrays.hashCode(types)) + (filter ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return filter == key.filter && hashCode == key.hashCode && Arrays.equals(types, key.types) && source.equals(key.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Value {
+
+        final Object parsed;
+        final long mappingVersion;
+        final long sizeInBytes;
+        @Nullable
+        final ShardParsedQueryCache shardCache;
+
+        Value(Object parsed, long mappingVersion, long sizeInBytes, @Nullable ShardParsedQueryCache shardCache) {
+            this.parsed = parsed;
+            this.mappingVersion = mappingVersion;
+            this.sizeInBytes = sizeInBytes;
+            this.shardCache = shardCache;
+        }
+    }
+}
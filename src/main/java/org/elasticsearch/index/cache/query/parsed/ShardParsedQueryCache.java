@@ -0,0 +1,66 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.cache.query.parsed;
+
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.settings.IndexSettings;
+import org.elasticsearch.index.shard.AbstractIndexShardComponent;
+import org.elasticsearch.index.shard.ShardId;
+
+/**
+ * Tracks the usage of the {@link ParsedQueryCache} by the search requests of a shard, as well as the memory of the
+ * entries that they added.
+ */
+public class ShardParsedQueryCache extends AbstractIndexShardComponent {
+
+    final CounterMetric totalMetric = new CounterMetric();
+    final CounterMetric evictionsMetric = new CounterMetric();
+    final CounterMetric hitsMetric = new CounterMetric();
+    final CounterMetric missesMetric = new CounterMetric();
+
+    @Inject
+    public ShardParsedQueryCache(ShardId shardId, @IndexSettings Settings indexSettings) {
+        super(shardId, indexSettings);
+    }
+
+    public ParsedQueryCacheStats stats() {
+        return new ParsedQueryCacheStats(totalMetric.count(), evictionsMetric.count(), hitsMetric.count(), missesMetric.count());
+    }
+
+    public void onHit() {
+        hitsMetric.inc();
+    }
+
+    public void onMiss() {
+        missesMetric.inc();
+    }
+
+    public void onCached(long sizeInBytes) {
+        totalMetric.inc(sizeInBytes);
+    }
+
+    public void onRemoval(long sizeInBytes, boolean evicted) {
+        if (evicted) {
+            evictionsMetric.inc();
+        }
+        totalMetric.dec(sizeInBytes);
+    }
+}
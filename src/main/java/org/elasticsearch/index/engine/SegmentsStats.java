@@ -37,6 +37,7 @@ public class SegmentsStats implements Streamable, ToXContent {
 
     private long count;
     private long memoryInBytes;
+    private long fixedBitSetMemoryInBytes;
 
     public SegmentsStats() {
 
@@ -53,6 +54,11 @@ public class SegmentsStats implements Streamable, ToXContent {
         }
         this.count += mergeStats.count;
         this.memoryInBytes += mergeStats.memoryInBytes;
+        this.fixedBitSetMemoryInBytes += mergeStats.fixedBitSetMemoryInBytes;
+    }
+
+    public void addFixedBitSetMemoryInBytes(long fixedBitSetMemoryInBytes) {
+        this.fixedBitSetMemoryInBytes += fixedBitSetMemoryInBytes;
     }
 
     /**
@@ -73,6 +79,17 @@ public class SegmentsStats implements Streamable, ToXContent {
         return new ByteSizeValue(memoryInBytes);
     }
 
+    /**
+     * Estimation of the memory used by the fixed bit sets of the nested and parent filters of the segments.
+     */
+    public long getFixedBitSetMemoryInBytes() {
+        return fixedBitSetMemoryInBytes;
+    }
+
+    public ByteSizeValue getFixedBitSetMemory() {
+        return new ByteSizeValue(fixedBitSetMemoryInBytes);
+    }
+
     public static SegmentsStats readSegmentsStats(StreamInput in) throws IOException {
         SegmentsStats stats = new SegmentsStats();
         stats.readFrom(in);
@@ -84,6 +101,7 @@ public class SegmentsStats implements Streamable, ToXContent {
         builder.startObject(Fields.SEGMENTS);
         builder.field(Fields.COUNT, count);
         builder.byteSizeField(Fields.MEMORY_IN_BYTES, Fields.MEMORY, memoryInBytes);
+        builder.byteSizeField(Fields.FIXED_BIT_SET_MEMORY_IN_BYTES, Fields.FIXED_BIT_SET, fixedBitSetMemoryInBytes);
         builder.endObject();
         return builder;
     }
@@ -93,6 +111,8 @@ public class SegmentsStats implements Streamable, ToXContent {
         static final XContentBuilderString COUNT = new XContentBuilderString("count");
         static final XContentBuilderString MEMORY = new XContentBuilderString("memory");
         static final XContentBuilderString MEMORY_IN_BYTES = new XContentBuilderString("memory_in_bytes");
+        static final XContentBuilderString FIXED_BIT_SET = new XContentBuilderString("fixed_bit_set");
+        static final XContentBuilderString FIXED_BIT_SET_MEMORY_IN_BYTES = new XContentBuilderString("fixed_bit_set_memory_in_bytes");
     }
 
     @Override
@@ -101,6 +121,9 @@ public class SegmentsStats implements Streamable, ToXContent {
         if (in.getVersion().after(Version.V_0_90_8)) {
             memoryInBytes = in.readLong();
         }
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            fixedBitSetMemoryInBytes = in.readLong();
+        }
     }
 
     @Override
@@ -109,5 +132,8 @@ public class SegmentsStats implements Streamable, ToXContent {
         if (out.getVersion().after(Version.V_0_90_8)) {
             out.writeLong(memoryInBytes);
         }
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            out.writeLong(fixedBitSetMemoryInBytes);
+        }
     }
 }
\ No newline at end of file
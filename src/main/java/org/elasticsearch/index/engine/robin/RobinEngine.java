@@ -22,6 +22,7 @@ package org.elasticsearch.index.engine.robin;
 import com.google.common.collect.Lists;
 import org.apache.lucene.index.*;
 import org.apache.lucene.index.IndexWriter.IndexReaderWarmer;
+import org.apache.lucene.index.sorter.SortingMergePolicy;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.SearcherFactory;
@@ -59,6 +60,7 @@ import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.merge.OnGoingMerge;
 import org.elasticsearch.index.merge.policy.IndexUpgraderMergePolicy;
 import org.elasticsearch.index.merge.policy.MergePolicyProvider;
+import org.elasticsearch.index.merge.policy.NumericFieldSorter;
 import org.elasticsearch.index.merge.scheduler.MergeSchedulerProvider;
 import org.elasticsearch.index.search.nested.IncludeNestedDocsQuery;
 import org.elasticsearch.index.settings.IndexSettings;
@@ -110,6 +112,8 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
     private final Translog translog;
     private final MergePolicyProvider mergePolicyProvider;
     private final MergeSchedulerProvider mergeScheduler;
+    @Nullable
+    private final NumericFieldSorter indexSorter;
     private final AnalysisService analysisService;
     private final SimilarityService similarityService;
     private final CodecService codecService;
@@ -182,6 +186,7 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
         this.translog = translog;
         this.mergePolicyProvider = mergePolicyProvider;
         this.mergeScheduler = mergeScheduler;
+        this.indexSorter = NumericFieldSorter.fromSettings(indexSettings);
         this.analysisService = analysisService;
         this.similarityService = similarityService;
         this.codecService = codecService;
@@ -1355,9 +1360,15 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
             config.setIndexDeletionPolicy(deletionPolicy);
             config.setMergeScheduler(mergeScheduler.newMergeScheduler());
             MergePolicy mergePolicy = mergePolicyProvider.newMergePolicy();
-            // Give us the opportunity to upgrade old segments while performing
-            // background merges
-            mergePolicy = new IndexUpgraderMergePolicy(mergePolicy);
+            if (indexSorter != null) {
+                // Keep merged segments sorted. The index sort can only be configured at index creation time, so
+                // there are no old segments to upgrade (both merge policies need to wrap the merges themselves)
+                mergePolicy = new SortingMergePolicy(mergePolicy, indexSorter);
+            } else {
+                // Give us the opportunity to upgrade old segments while performing
+                // background merges
+                mergePolicy = new IndexUpgraderMergePolicy(mergePolicy);
+            }
             config.setMergePolicy(mergePolicy);
             config.setSimilarity(similarityService.similarity());
             config.setRAMBufferSizeMB(indexingBufferSize.mbFrac());
@@ -1587,7 +1598,7 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
 
                     if (newSearcher != null) {
                         IndicesWarmer.WarmerContext context = new IndicesWarmer.WarmerContext(shardId,
-                                new SimpleSearcher("warmer", newSearcher));
+                                new SimpleSearcher("warmer", newSearcher), reader);
                         warmer.warm(context);
                     }
                 } catch (Throwable e) {
@@ -81,11 +81,15 @@ public interface IndexFieldDataCache {
 
         @Override
         public void onRemoval(RemovalNotification<Key, AtomicFieldData> notification) {
+            AtomicFieldData value = notification.getValue();
+            if (value != null) {
+                // releases the memory of field data that is not managed by the garbage collector
+                value.close();
+            }
             Key key = notification.getKey();
             if (key == null || key.listener == null) {
                 return; // we can't do anything here...
             }
-            AtomicFieldData value = notification.getValue();
             long sizeInBytes = key.sizeInBytes;
             if (sizeInBytes == -1 && value != null) {
                 sizeInBytes = value.getMemorySizeInBytes();
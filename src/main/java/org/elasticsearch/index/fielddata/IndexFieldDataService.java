@@ -23,6 +23,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import org.apache.lucene.index.IndexReader;
 import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
@@ -31,15 +32,20 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinals;
 import org.elasticsearch.index.fielddata.plain.*;
 import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.index.settings.IndexSettings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.shard.ShardUtils;
+import org.elasticsearch.index.shard.service.IndexShard;
 import org.elasticsearch.indices.fielddata.cache.IndicesFieldDataCache;
 import org.elasticsearch.indices.fielddata.breaker.CircuitBreakerService;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  */
@@ -51,6 +57,7 @@ public class IndexFieldDataService extends AbstractIndexComponent {
     private static final String PAGED_BYTES_FORMAT = "paged_bytes";
     private static final String FST_FORMAT = "fst";
     private static final String COMPRESSED_FORMAT = "compressed";
+    private static final String OFF_HEAP_FORMAT = "off_heap";
 
     private final static ImmutableMap<String, IndexFieldData.Builder> buildersByType;
     private final static ImmutableMap<String, IndexFieldData.Builder> docValuesBuildersByType;
@@ -83,6 +90,7 @@ public class IndexFieldDataService extends AbstractIndexComponent {
         buildersByTypeAndFormat = MapBuilder.<Tuple<String, String>, IndexFieldData.Builder>newMapBuilder()
                 .put(Tuple.tuple("string", PAGED_BYTES_FORMAT), new PagedBytesIndexFieldData.Builder())
                 .put(Tuple.tuple("string", FST_FORMAT), new FSTBytesIndexFieldData.Builder())
+                .put(Tuple.tuple("string", OFF_HEAP_FORMAT), new OffHeapBytesIndexFieldData.Builder())
                 .put(Tuple.tuple("string", DOC_VALUES_FORMAT), new DocValuesIndexFieldData.Builder())
                 .put(Tuple.tuple("string", DISABLED_FORMAT), new DisabledIndexFieldData.Builder())
 
@@ -95,18 +103,22 @@ public class IndexFieldDataService extends AbstractIndexComponent {
                 .put(Tuple.tuple("double", DISABLED_FORMAT), new DisabledIndexFieldData.Builder())
 
                 .put(Tuple.tuple("byte", ARRAY_FORMAT), new PackedArrayIndexFieldData.Builder().setNumericType(IndexNumericFieldData.NumericType.BYTE))
+                .put(Tuple.tuple("byte", OFF_HEAP_FORMAT), new OffHeapPackedArrayIndexFieldData.Builder().setNumericType(IndexNumericFieldData.NumericType.BYTE))
                 .put(Tuple.tuple("byte", DOC_VALUES_FORMAT), new DocValuesIndexFieldData.Builder().numericType(IndexNumericFieldData.NumericType.BYTE))
                 .put(Tuple.tuple("byte", DISABLED_FORMAT), new DisabledIndexFieldData.Builder())
 
                 .put(Tuple.tuple("short", ARRAY_FORMAT), new PackedArrayIndexFieldData.Builder().setNumericType(IndexNumericFieldData.NumericType.SHORT))
+                .put(Tuple.tuple("short", OFF_HEAP_FORMAT), new OffHeapPackedArrayIndexFieldData.Builder().setNumericType(IndexNumericFieldData.NumericType.SHORT))
                 .put(Tuple.tuple("short", DOC_VALUES_FORMAT), new DocValuesIndexFieldData.Builder().numericType(IndexNumericFieldData.NumericType.SHORT))
                 .put(Tuple.tuple("short", DISABLED_FORMAT), new DisabledIndexFieldData.Builder())
 
                 .put(Tuple.tuple("int", ARRAY_FORMAT), new PackedArrayIndexFieldData.Builder().setNumericType(IndexNumericFieldData.NumericType.INT))
+                .put(Tuple.tuple("int", OFF_HEAP_FORMAT), new OffHeapPackedArrayIndexFieldData.Builder().setNumericType(IndexNumericFieldData.NumericType.INT))
                 .put(Tuple.tuple("int", DOC_VALUES_FORMAT), new DocValuesIndexFieldData.Builder().numericType(IndexNumericFieldData.NumericType.INT))
                 .put(Tuple.tuple("int", DISABLED_FORMAT), new DisabledIndexFieldData.Builder())
 
                 .put(Tuple.tuple("long", ARRAY_FORMAT), new PackedArrayIndexFieldData.Builder().setNumericType(IndexNumericFieldData.NumericType.LONG))
+                .put(Tuple.tuple("long", OFF_HEAP_FORMAT), new OffHeapPackedArrayIndexFieldData.Builder().setNumericType(IndexNumericFieldData.NumericType.LONG))
                 .put(Tuple.tuple("long", DOC_VALUES_FORMAT), new DocValuesIndexFieldData.Builder().numericType(IndexNumericFieldData.NumericType.LONG))
                 .put(Tuple.tuple("long", DISABLED_FORMAT), new DisabledIndexFieldData.Builder())
 
@@ -121,6 +133,8 @@ public class IndexFieldDataService extends AbstractIndexComponent {
     private final IndicesFieldDataCache indicesFieldDataCache;
     private final ConcurrentMap<String, IndexFieldData<?>> loadedFieldData = ConcurrentCollections.newConcurrentMap();
     private final Map<String, IndexFieldDataCache> fieldDataCaches = Maps.newHashMap(); // no need for concurrency support, always used under lock
+    // top-level reader cache key -> field name -> global ordinals
+    private final ConcurrentMap<Object, ReaderGlobalOrdinals> globalOrdinals = ConcurrentCollections.newConcurrentMap();
 
     IndexService indexService;
 
@@ -152,6 +166,12 @@ public class IndexFieldDataService extends AbstractIndexComponent {
                 cache.clear();
             }
             fieldDataCaches.clear();
+            for (Object readerKey : globalOrdinals.keySet()) {
+                ReaderGlobalOrdinals readerGlobalOrdinals = globalOrdinals.remove(readerKey);
+                if (readerGlobalOrdinals != null) {
+                    readerGlobalOrdinals.release();
+                }
+            }
         }
     }
 
@@ -165,6 +185,9 @@ public class IndexFieldDataService extends AbstractIndexComponent {
             if (cache != null) {
                 cache.clear();
             }
+            for (ReaderGlobalOrdinals readerGlobalOrdinals : globalOrdinals.values()) {
+                readerGlobalOrdinals.release(fieldName);
+            }
         }
     }
 
@@ -179,6 +202,75 @@ public class IndexFieldDataService extends AbstractIndexComponent {
         }
     }
 
+    /**
+     * Returns the global ordinals of the given field on the given top-level reader, building them if needed. They are
+     * cached until the reader is closed, ie. until the next refresh of the shard has been picked up by all searches,
+     * and are accounted like field data: charged to the field data circuit breaker and reported in the shard stats.
+     */
+    public GlobalOrdinals getGlobalOrdinals(IndexReader reader, IndexFieldData.WithOrdinals<?> indexFieldData) {
+        final Object readerKey = reader.getCoreCacheKey();
+        ReaderGlobalOrdinals readerGlobalOrdinals = globalOrdinals.get(readerKey);
+        if (readerGlobalOrdinals == null) {
+            readerGlobalOrdinals = new ReaderGlobalOrdinals(shardFieldData(reader));
+            ReaderGlobalOrdinals previous = globalOrdinals.putIfAbsent(readerKey, readerGlobalOrdinals);
+            if (previous == null) {
+                reader.addReaderClosedListener(new IndexReader.ReaderClosedListener() {
+                    @Override
+                    public void onClose(IndexReader reader) {
+                        ReaderGlobalOrdinals removed = globalOrdinals.remove(readerKey);
+                        if (removed != null) {
+                            removed.release();
+                        }
+                    }
+                });
+            } else {
+                readerGlobalOrdinals = previous;
+            }
+        }
+        final String fieldName = indexFieldData.getFieldNames().indexName();
+        GlobalOrdinals fieldGlobalOrdinals = readerGlobalOrdinals.fields.get(fieldName);
+        if (fieldGlobalOrdinals == null) {
+            // building global ordinals is costly, make sure concurrent searches don't build them several times
+            synchronized (readerGlobalOrdinals) {
+                fieldGlobalOrdinals = readerGlobalOrdinals.fields.get(fieldName);
+                if (fieldGlobalOrdinals == null) {
+                    final long startTime = System.nanoTime();
+                    fieldGlobalOrdinals = GlobalOrdinals.build(reader, indexFieldData);
+                    final long sizeInBytes = fieldGlobalOrdinals.getMemorySizeInBytes();
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("built global ordinals for field [{}] in [{}] segments, [{}] ordinals, [{}] bytes, took [{}]ms",
+                                fieldName, reader.leaves().size(), fieldGlobalOrdinals.getMaxOrd(), sizeInBytes,
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                    }
+                    // throws if the global ordinals don't fit, in which case they are not cached
+                    circuitBreakerService.getBreaker().addEstimateBytesAndMaybeBreak(sizeInBytes);
+                    readerGlobalOrdinals.fields.put(fieldName, fieldGlobalOrdinals);
+                    if (readerGlobalOrdinals.listener != null) {
+                        readerGlobalOrdinals.listener.onGlobalOrdinalsLoad(fieldName, sizeInBytes);
+                    }
+                    if (globalOrdinals.get(readerKey) != readerGlobalOrdinals) {
+                        // the reader has been closed or the field data cleared in the meantime
+                        readerGlobalOrdinals.release(fieldName);
+                    }
+                }
+            }
+        }
+        return fieldGlobalOrdinals;
+    }
+
+    @Nullable
+    private ShardFieldData shardFieldData(IndexReader reader) {
+        if (indexService == null || reader.leaves().isEmpty()) {
+            return null;
+        }
+        ShardId shardId = ShardUtils.extractShardId(reader.leaves().get(0).reader());
+        if (shardId == null) {
+            return null;
+        }
+        IndexShard shard = indexService.shard(shardId.id());
+        return shard == null ? null : shard.fieldData();
+    }
+
     public void onMappingUpdate() {
         // synchronize to make sure to not miss field data instances that are being loaded
         synchronized (loadedFieldData) {
@@ -243,4 +335,36 @@ public class IndexFieldDataService extends AbstractIndexComponent {
         return (IFD) fieldData;
     }
 
+    /**
+     * The global ordinals built on a top-level reader, and the stats of the shard it belongs to.
+     */
+    private final class ReaderGlobalOrdinals {
+
+        final ConcurrentMap<String, GlobalOrdinals> fields = ConcurrentCollections.newConcurrentMap();
+        @Nullable
+        final ShardFieldData listener;
+
+        ReaderGlobalOrdinals(@Nullable ShardFieldData listener) {
+            this.listener = listener;
+        }
+
+        void release(String fieldName) {
+            GlobalOrdinals removed = fields.remove(fieldName);
+            if (removed != null) {
+                final long sizeInBytes = removed.getMemorySizeInBytes();
+                if (listener != null) {
+                    listener.onGlobalOrdinalsUnload(fieldName, sizeInBytes);
+                } else {
+                    circuitBreakerService.getBreaker().addWithoutBreaking(-sizeInBytes);
+                }
+            }
+        }
+
+        void release() {
+            for (String fieldName : fields.keySet()) {
+                release(fieldName);
+            }
+        }
+    }
+
 }
@@ -71,11 +71,28 @@ public class ShardFieldData extends AbstractIndexShardComponent implements Index
 
     @Override
     public void onLoad(FieldMapper.Names fieldNames, FieldDataType fieldDataType, AtomicFieldData fieldData) {
-        long sizeInBytes = fieldData.getMemorySizeInBytes();
+        onLoad(fieldNames.indexName(), fieldData.getMemorySizeInBytes());
+    }
+
+    /**
+     * Called when the global ordinals of a field have been built on a top-level reader of this shard, they are
+     * reported as part of the field data of the field.
+     */
+    public void onGlobalOrdinalsLoad(String fieldName, long sizeInBytes) {
+        onLoad(fieldName, sizeInBytes);
+    }
 
+    /**
+     * Called when the global ordinals of a field are released, gives their memory back to the circuit breaker.
+     */
+    public void onGlobalOrdinalsUnload(String fieldName, long sizeInBytes) {
+        breakerService.getBreaker().addWithoutBreaking(-sizeInBytes);
+        onUnload(fieldName, sizeInBytes);
+    }
+
+    private void onLoad(String keyFieldName, long sizeInBytes) {
         totalMetric.inc(sizeInBytes);
 
-        String keyFieldName = fieldNames.indexName();
         CounterMetric total = perFieldTotals.get(keyFieldName);
         if (total != null) {
             total.inc(sizeInBytes);
@@ -99,13 +116,16 @@ public class ShardFieldData extends AbstractIndexShardComponent implements Index
             // clearing), we also need to decrement the used bytes in the breaker
             breakerService.getBreaker().addWithoutBreaking(-sizeInBytes);
 
-            totalMetric.dec(sizeInBytes);
+            onUnload(fieldNames.indexName(), sizeInBytes);
+        }
+    }
 
-            String keyFieldName = fieldNames.indexName();
-            CounterMetric total = perFieldTotals.get(keyFieldName);
-            if (total != null) {
-                total.dec(sizeInBytes);
-            }
+    private void onUnload(String keyFieldName, long sizeInBytes) {
+        totalMetric.dec(sizeInBytes);
+
+        CounterMetric total = perFieldTotals.get(keyFieldName);
+        if (total != null) {
+            total.dec(sizeInBytes);
         }
     }
 }
@@ -41,6 +41,15 @@ public class LongValuesComparatorSource extends IndexFieldData.XFieldComparatorS
         this.sortMode = sortMode;
     }
 
+    @Nullable
+    public Object missingValue() {
+        return missingValue;
+    }
+
+    public SortMode sortMode() {
+        return sortMode;
+    }
+
     @Override
     public SortField.Type reducedType() {
         return SortField.Type.LONG;
@@ -0,0 +1,195 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.AppendingPackedLongBuffer;
+import org.apache.lucene.util.packed.MonotonicAppendingLongBuffer;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.index.fielddata.AtomicFieldData;
+import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+
+import java.util.List;
+
+/**
+ * Maps the ordinals of each segment of a top-level reader to a shard-wide ordinal space. Global ordinals follow the
+ * same conventions as segment ordinals: {@link Ordinals#MISSING_ORDINAL} means no value and ordinals are sorted by
+ * term, so that they can be compared instead of the terms they stand for.
+ * <p/>
+ * Global ordinals are built by merging the sorted terms of all segments, which is about as costly as loading the
+ * field data, so they should be cached per top-level reader.
+ *
+ * @see org.elasticsearch.index.fielddata.IndexFieldDataService#getGlobalOrdinals(IndexReader, IndexFieldData.WithOrdinals)
+ */
+public class GlobalOrdinals {
+
+    private static final int PAGE_SIZE = 1024;
+
+    private final IndexFieldData.WithOrdinals<?> indexFieldData;
+    private final List<AtomicReaderContext> leaves;
+    private final long maxOrd;
+    // null if there is a single segment, whose ordinals are the global ordinals
+    private final MonotonicAppendingLongBuffer[] segmentToGlobalOrds;
+    private final AppendingPackedLongBuffer firstSegments;
+    private final AppendingPackedLongBuffer firstSegmentOrds;
+
+    private GlobalOrdinals(IndexFieldData.WithOrdinals<?> indexFieldData, List<AtomicReaderContext> leaves, long maxOrd,
+                           MonotonicAppendingLongBuffer[] segmentToGlobalOrds, AppendingPackedLongBuffer firstSegments,
+                           AppendingPackedLongBuffer firstSegmentOrds) {
+        this.indexFieldData = indexFieldData;
+        this.leaves = leaves;
+        this.maxOrd = maxOrd;
+        this.segmentToGlobalOrds = segmentToGlobalOrds;
+        this.firstSegments = firstSegments;
+        this.firstSegmentOrds = firstSegmentOrds;
+    }
+
+    /**
+     * Builds the global ordinals of the given field on the given top-level reader.
+     */
+    public static GlobalOrdinals build(IndexReader reader, IndexFieldData.WithOrdinals<?> indexFieldData) {
+        final List<AtomicReaderContext> leaves = reader.leaves();
+        if (leaves.size() == 1) {
+            final long maxOrd = indexFieldData.load(leaves.get(0)).getBytesValues(false).ordinals().getMaxOrd();
+            return new GlobalOrdinals(indexFieldData, leaves, maxOrd, null, null, null);
+        }
+
+        final MonotonicAppendingLongBuffer[] segmentToGlobalOrds = new MonotonicAppendingLongBuffer[leaves.size()];
+        final AppendingPackedLongBuffer firstSegments = new AppendingPackedLongBuffer(16, PAGE_SIZE, PackedInts.COMPACT);
+        final AppendingPackedLongBuffer firstSegmentOrds = new AppendingPackedLongBuffer(16, PAGE_SIZE, PackedInts.COMPACT);
+        final SegmentQueue queue = new SegmentQueue(leaves.size());
+        for (int i = 0; i < leaves.size(); i++) {
+            final BytesValues.WithOrdinals values = indexFieldData.load(leaves.get(i)).getBytesValues(false);
+            assert values.getOrder() == AtomicFieldData.Order.BYTES;
+            segmentToGlobalOrds[i] = new MonotonicAppendingLongBuffer(16, PAGE_SIZE, PackedInts.COMPACT);
+            segmentToGlobalOrds[i].add(Ordinals.MISSING_ORDINAL);
+            final Segment segment = new Segment(i, values);
+            if (segment.next()) {
+                queue.add(segment);
+            }
+        }
+        firstSegments.add(0);
+        firstSegmentOrds.add(Ordinals.MISSING_ORDINAL);
+
+        long globalOrd = Ordinals.MISSING_ORDINAL;
+        final BytesRef previous = new BytesRef();
+        while (queue.size() > 0) {
+            final Segment top = queue.top();
+            if (globalOrd == Ordinals.MISSING_ORDINAL || !previous.bytesEquals(top.term)) {
+                ++globalOrd;
+                previous.copyBytes(top.term);
+                firstSegments.add(top.index);
+                firstSegmentOrds.add(top.ord);
+            }
+            segmentToGlobalOrds[top.index].add(globalOrd);
+            if (top.next()) {
+                queue.updateTop();
+            } else {
+                queue.pop();
+            }
+        }
+        return new GlobalOrdinals(indexFieldData, leaves, globalOrd + 1, segmentToGlobalOrds, firstSegments, firstSegmentOrds);
+    }
+
+    /**
+     * Returns total unique global ord count, including the {@link Ordinals#MISSING_ORDINAL}.
+     */
+    public long getMaxOrd() {
+        return maxOrd;
+    }
+
+    /**
+     * Returns the global ordinal of the given ordinal of the segment at index <tt>segmentIndex</tt> in the leaves of
+     * the top-level reader.
+     */
+    public long getGlobalOrd(int segmentIndex, long segmentOrd) {
+        if (segmentToGlobalOrds == null) {
+            return segmentOrd;
+        }
+        return segmentToGlobalOrds[segmentIndex].get(segmentOrd);
+    }
+
+    /**
+     * Returns the term of the given global ordinal. The returned {@link BytesRef} might be shared by the field data,
+     * it needs to be copied if it is kept around.
+     */
+    public BytesRef getValueByOrd(long globalOrd) {
+        if (segmentToGlobalOrds == null) {
+            return indexFieldData.load(leaves.get(0)).getBytesValues(false).getValueByOrd(globalOrd);
+        }
+        final int segmentIndex = (int) firstSegments.get(globalOrd);
+        return indexFieldData.load(leaves.get(segmentIndex)).getBytesValues(false).getValueByOrd(firstSegmentOrds.get(globalOrd));
+    }
+
+    public long getMemorySizeInBytes() {
+        if (segmentToGlobalOrds == null) {
+            return 0;
+        }
+        long size = RamUsageEstimator.shallowSizeOf(segmentToGlobalOrds) + firstSegments.ramBytesUsed() + firstSegmentOrds.ramBytesUsed();
+        for (MonotonicAppendingLongBuffer buffer : segmentToGlobalOrds) {
+            size += buffer.ramBytesUsed();
+        }
+        return size;
+    }
+
+    private static final class Segment {
+
+        final int index;
+        final BytesValues.WithOrdinals values;
+        final long maxOrd;
+        final BytesRef term = new BytesRef();
+        long ord = Ordinals.MISSING_ORDINAL;
+
+        Segment(int index, BytesValues.WithOrdinals values) {
+            this.index = index;
+            this.values = values;
+            this.maxOrd = values.ordinals().getMaxOrd();
+        }
+
+        boolean next() {
+            if (++ord >= maxOrd) {
+                return false;
+            }
+            term.copyBytes(values.getValueByOrd(ord));
+            return true;
+        }
+    }
+
+    private static final class SegmentQueue extends PriorityQueue<Segment> {
+
+        SegmentQueue(int size) {
+            super(size);
+        }
+
+        @Override
+        protected boolean lessThan(Segment a, Segment b) {
+            final int cmp = a.term.compareTo(b.term);
+            if (cmp == 0) {
+                return a.index < b.index;
+            }
+            return cmp < 0;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.LongsRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.util.OffHeapPackedLongs;
+import org.elasticsearch.common.util.SlabAllocator;
+
+/**
+ * {@link Ordinals} implementation which stores the ordinals of the documents off-heap. Single-valued ordinals are
+ * stored as one packed ordinal per document, multi-valued ones as packed end offsets per document in a packed list of
+ * ordinals, like {@link MultiOrdinals}.
+ * <p/>
+ * {@link #release()} must be called once the ordinals are not used anymore.
+ */
+public class OffHeapOrdinals implements Ordinals {
+
+    private final int numDocs;
+    private final long numOrds;
+    // null if single-valued
+    @Nullable
+    private final OffHeapPackedLongs endOffsets;
+    private final OffHeapPackedLongs ords;
+
+    private OffHeapOrdinals(int numDocs, long numOrds, @Nullable OffHeapPackedLongs endOffsets, OffHeapPackedLongs ords) {
+        this.numDocs = numDocs;
+        this.numOrds = numOrds;
+        this.endOffsets = endOffsets;
+        this.ords = ords;
+    }
+
+    /**
+     * Copies the given ordinals off-heap.
+     */
+    public static OffHeapOrdinals copyOf(Ordinals ordinals, SlabAllocator allocator) {
+        final int numDocs = ordinals.getNumDocs();
+        final int bitsPerOrd = PackedInts.bitsRequired(ordinals.getMaxOrd() - 1);
+        final Ordinals.Docs docs = ordinals.ordinals();
+        if (!ordinals.isMultiValued()) {
+            final OffHeapPackedLongs ords = new OffHeapPackedLongs(allocator, numDocs, bitsPerOrd);
+            for (int i = 0; i < numDocs; i++) {
+                ords.set(i, docs.getOrd(i));
+            }
+            return new OffHeapOrdinals(numDocs, ordinals.getNumOrds(), null, ords);
+        }
+
+        long totalNumOrds = 0;
+        for (int i = 0; i < numDocs; i++) {
+            totalNumOrds += docs.setDocument(i);
+        }
+        final OffHeapPackedLongs endOffsets = new OffHeapPackedLongs(allocator, numDocs, PackedInts.bitsRequired(totalNumOrds));
+        final OffHeapPackedLongs ords;
+        try {
+            ords = new OffHeapPackedLongs(allocator, totalNumOrds, bitsPerOrd);
+        } catch (RuntimeException e) {
+            endOffsets.release();
+            throw e;
+        }
+        long offset = 0;
+        for (int i = 0; i < numDocs; i++) {
+            final int numValues = docs.setDocument(i);
+            for (int j = 0; j < numValues; j++) {
+                ords.set(offset++, docs.nextOrd());
+            }
+            endOffsets.set(i, offset);
+        }
+        return new OffHeapOrdinals(numDocs, ordinals.getNumOrds(), endOffsets, ords);
+    }
+
+    /**
+     * The number of off-heap bytes used by these ordinals.
+     */
+    public long getOffHeapSizeInBytes() {
+        long size = ords.sizeInBytes();
+        if (endOffsets != null) {
+            size += endOffsets.sizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * Gives the off-heap memory of these ordinals back to the allocator.
+     */
+    public void release() {
+        ords.release();
+        if (endOffsets != null) {
+            endOffsets.release();
+        }
+    }
+
+    @Override
+    public long getMemorySizeInBytes() {
+        return getOffHeapSizeInBytes();
+    }
+
+    @Override
+    public boolean isMultiValued() {
+        return endOffsets != null;
+    }
+
+    @Override
+    public int getNumDocs() {
+        return numDocs;
+    }
+
+    @Override
+    public long getNumOrds() {
+        return numOrds;
+    }
+
+    @Override
+    public long getMaxOrd() {
+        return numOrds + 1;
+    }
+
+    @Override
+    public Ordinals.Docs ordinals() {
+        if (endOffsets == null) {
+            return new SingleDocs(this);
+        } else {
+            return new MultiDocs(this);
+        }
+    }
+
+    static abstract class AbstractDocs implements Ordinals.Docs {
+
+        protected final OffHeapOrdinals parent;
+        protected final OffHeapPackedLongs ords;
+        protected long currentOrd;
+
+        AbstractDocs(OffHeapOrdinals parent) {
+            this.parent = parent;
+            this.ords = parent.ords;
+        }
+
+        @Override
+        public final Ordinals ordinals() {
+            return parent;
+        }
+
+        @Override
+        public final int getNumDocs() {
+            return parent.getNumDocs();
+        }
+
+        @Override
+        public final long getNumOrds() {
+            return parent.getNumOrds();
+        }
+
+        @Override
+        public final long getMaxOrd() {
+            return parent.getMaxOrd();
+        }
+
+        @Override
+        public final boolean isMultiValued() {
+            return parent.isMultiValued();
+        }
+
+        @Override
+        public final long currentOrd() {
+            return currentOrd;
+        }
+    }
+
+    static final class SingleDocs extends AbstractDocs {
+
+        private final LongsRef longsScratch = new LongsRef(1);
+
+        SingleDocs(OffHeapOrdinals parent) {
+            super(parent);
+        }
+
+        @Override
+        public long getOrd(int docId) {
+            return currentOrd = ords.get(docId);
+        }
+
+        @Override
+        public LongsRef getOrds(int docId) {
+            currentOrd = ords.get(docId);
+            longsScratch.offset = 0;
+            longsScratch.length = (int) Math.min(currentOrd, 1);
+            longsScratch.longs[0] = currentOrd;
+            return longsScratch;
+        }
+
+        @Override
+        public long nextOrd() {
+            assert currentOrd > 0;
+            return currentOrd;
+        }
+
+        @Override
+        public int setDocument(int docId) {
+            currentOrd = ords.get(docId);
+            return (int) Math.min(currentOrd, 1);
+        }
+    }
+
+    static final class MultiDocs extends AbstractDocs {
+
+        private final OffHeapPackedLongs endOffsets;
+        private final LongsRef longsScratch = new LongsRef(16);
+        private long offset;
+        private long limit;
+
+        MultiDocs(OffHeapOrdinals parent) {
+            super(parent);
+            this.endOffsets = parent.endOffsets;
+        }
+
+        @Override
+        public long getOrd(int docId) {
+            final long startOffset = docId > 0 ? endOffsets.get(docId - 1) : 0;
+            final long endOffset = endOffsets.get(docId);
+            if (startOffset == endOffset) {
+                return currentOrd = MISSING_ORDINAL;
+            }
+            return currentOrd = ords.get(startOffset);
+        }
+
+        @Override
+        public LongsRef getOrds(int docId) {
+            final long startOffset = docId > 0 ? endOffsets.get(docId - 1) : 0;
+            final int numValues = (int) (endOffsets.get(docId) - startOffset);
+            if (longsScratch.longs.length < numValues) {
+                longsScratch.longs = new long[ArrayUtil.oversize(numValues, RamUsageEstimator.NUM_BYTES_LONG)];
+            }
+            for (int i = 0; i < numValues; i++) {
+                longsScratch.longs[i] = ords.get(startOffset + i);
+            }
+            longsScratch.offset = 0;
+            longsScratch.length = numValues;
+            return longsScratch;
+        }
+
+        @Override
+        public long nextOrd() {
+            assert offset < limit;
+            return currentOrd = ords.get(offset++);
+        }
+
+        @Override
+        public int setDocument(int docId) {
+            offset = docId > 0 ? endOffsets.get(docId - 1) : 0;
+            limit = endOffsets.get(docId);
+            return (int) (limit - offset);
+        }
+    }
+}
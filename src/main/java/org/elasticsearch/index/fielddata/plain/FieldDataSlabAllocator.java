@@ -0,0 +1,61 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.plain;
+
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.util.SlabAllocator;
+import org.elasticsearch.indices.fielddata.breaker.CircuitBreakerService;
+
+/**
+ * The {@link SlabAllocator} of off-heap field data. Chunks are accounted by the field data that holds them, this
+ * allocator charges the rest of its slabs to the field data circuit breaker and can't reserve more than the limit of
+ * the breaker.
+ */
+final class FieldDataSlabAllocator extends SlabAllocator {
+
+    private final CircuitBreakerService breakerService;
+
+    FieldDataSlabAllocator(int slabSize, CircuitBreakerService breakerService) {
+        super(slabSize, Long.MAX_VALUE);
+        this.breakerService = breakerService;
+    }
+
+    @Override
+    public long limit() {
+        // the breaker is replaced when its settings are updated
+        final long maximum = breakerService.getBreaker().getMaximum();
+        return maximum < 0 ? super.limit() : Math.min(maximum, super.limit());
+    }
+
+    @Override
+    protected boolean tryAddOverhead(long bytes) {
+        try {
+            breakerService.getBreaker().addEstimateBytesAndMaybeBreak(bytes);
+            return true;
+        } catch (CircuitBreakingException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected void addOverhead(long bytes) {
+        breakerService.getBreaker().addWithoutBreaking(bytes);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.plain;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.ElasticsearchIllegalStateException;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.IntArray;
+import org.elasticsearch.common.util.OffHeapAllocationException;
+import org.elasticsearch.common.util.OffHeapPackedLongs;
+import org.elasticsearch.common.util.SlabAllocator;
+import org.elasticsearch.index.fielddata.AtomicFieldData;
+import org.elasticsearch.index.fielddata.ScriptDocValues;
+import org.elasticsearch.index.fielddata.ordinals.OffHeapOrdinals;
+import org.elasticsearch.index.fielddata.ordinals.Ordinals;
+import org.elasticsearch.indices.fielddata.breaker.CircuitBreakerService;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * String field data whose terms, term offsets and ordinals are stored off-heap. The field data is reference counted:
+ * it starts with one reference, more can be acquired with {@link #incRef()}, and its off-heap memory is freed once all
+ * of them have been released with {@link #close()}.
+ */
+public class OffHeapBytesAtomicFieldData implements AtomicFieldData.WithOrdinals<ScriptDocValues.Strings> {
+
+    private final SlabAllocator.Chunk bytes;
+    // start offset of every ordinal in the bytes, followed by the end offset of the last one
+    private final OffHeapPackedLongs termOrdToBytesOffset;
+    private final OffHeapOrdinals ordinals;
+    private final CircuitBreakerService breakerService;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    private volatile IntArray hashes;
+
+    OffHeapBytesAtomicFieldData(SlabAllocator.Chunk bytes, OffHeapPackedLongs termOrdToBytesOffset, OffHeapOrdinals ordinals,
+                                CircuitBreakerService breakerService) {
+        this.bytes = bytes;
+        this.termOrdToBytesOffset = termOrdToBytesOffset;
+        this.ordinals = ordinals;
+        this.breakerService = breakerService;
+    }
+
+    /**
+     * Copies the terms and ordinals of the given field data off-heap. The on-heap hashes of the terms, if they are
+     * ever needed, are charged to the field data circuit breaker.
+     *
+     * @throws OffHeapAllocationException if the allocator could not allocate the off-heap memory
+     */
+    public static OffHeapBytesAtomicFieldData copyOf(AtomicFieldData.WithOrdinals<?> data, SlabAllocator allocator,
+                                                     CircuitBreakerService breakerService) {
+        final org.elasticsearch.index.fielddata.BytesValues.WithOrdinals values = data.getBytesValues(false);
+        final long maxOrd = values.ordinals().getMaxOrd();
+        long numBytes = 0;
+        for (long ord = Ordinals.MIN_ORDINAL; ord < maxOrd; ord++) {
+            numBytes += values.getValueByOrd(ord).length;
+        }
+        if (numBytes > Integer.MAX_VALUE) {
+            throw new ElasticsearchIllegalStateException("cannot store [" + numBytes + "] bytes of terms off-heap in a single segment");
+        }
+
+        SlabAllocator.Chunk bytes = null;
+        OffHeapPackedLongs termOrdToBytesOffset = null;
+        boolean success = false;
+        try {
+            bytes = allocator.allocate((int) numBytes);
+            if (bytes == null) {
+                throw new OffHeapAllocationException(numBytes);
+            }
+            termOrdToBytesOffset = new OffHeapPackedLongs(allocator, maxOrd + 1, PackedInts.bitsRequired(numBytes));
+            final ByteBuffer buffer = bytes.buffer().duplicate();
+            // the missing ordinal has an empty term
+            termOrdToBytesOffset.set(Ordinals.MISSING_ORDINAL, 0);
+            for (long ord = Ordinals.MIN_ORDINAL; ord < maxOrd; ord++) {
+                termOrdToBytesOffset.set(ord, buffer.position());
+                final BytesRef term = values.getValueByOrd(ord);
+                buffer.put(term.bytes, term.offset, term.length);
+            }
+            termOrdToBytesOffset.set(maxOrd, buffer.position());
+            assert buffer.position() == numBytes;
+
+            final OffHeapOrdinals ordinals = OffHeapOrdinals.copyOf(values.ordinals().ordinals(), allocator);
+            success = true;
+            return new OffHeapBytesAtomicFieldData(bytes, termOrdToBytesOffset, ordinals, breakerService);
+        } finally {
+            if (!success) {
+                if (bytes != null) {
+                    bytes.release();
+                }
+                if (termOrdToBytesOffset != null) {
+                    termOrdToBytesOffset.release();
+                }
+            }
+        }
+    }
+
+    public void incRef() {
+        refCount.incrementAndGet();
+    }
+
+    /**
+     * Releases a reference to this field data, the off-heap memory is given back to the allocator with the last one
+     * and must not be read anymore.
+     */
+    @Override
+    public void close() {
+        if (refCount.decrementAndGet() == 0) {
+            bytes.release();
+            termOrdToBytesOffset.release();
+            ordinals.release();
+            if (hashes != null) {
+                breakerService.getBreaker().addWithoutBreaking(-hashesSizeInBytes(hashes.size()));
+            }
+        }
+    }
+
+    @Override
+    public boolean isMultiValued() {
+        return ordinals.isMultiValued();
+    }
+
+    @Override
+    public int getNumDocs() {
+        return ordinals.getNumDocs();
+    }
+
+    @Override
+    public long getNumberUniqueValues() {
+        return ordinals.getNumOrds();
+    }
+
+    @Override
+    public boolean isValuesOrdered() {
+        return true;
+    }
+
+    @Override
+    public long getMemorySizeInBytes() {
+        return bytes.size() + termOrdToBytesOffset.sizeInBytes() + ordinals.getOffHeapSizeInBytes();
+    }
+
+    private static long hashesSizeInBytes(long maxOrd) {
+        return maxOrd * RamUsageEstimator.NUM_BYTES_INT;
+    }
+
+    private IntArray getHashes() {
+        if (hashes == null) {
+            // the hashes are charged to the breaker, make sure they are only computed once
+            synchronized (this) {
+                if (hashes == null) {
+                    final long maxOrd = ordinals.getMaxOrd();
+                    breakerService.getBreaker().addEstimateBytesAndMaybeBreak(hashesSizeInBytes(maxOrd));
+                    final IntArray hashes = BigArrays.newIntArray(maxOrd);
+                    final BytesValues values = new BytesValues(bytes.buffer(), termOrdToBytesOffset, ordinals.ordinals());
+                    for (long ord = Ordinals.MIN_ORDINAL; ord < maxOrd; ord++) {
+                        hashes.set(ord, values.getValueByOrd(ord).hashCode());
+                    }
+                    this.hashes = hashes;
+                }
+            }
+        }
+        return hashes;
+    }
+
+    @Override
+    public BytesValues getBytesValues(boolean needsHashes) {
+        if (needsHashes) {
+            return new HashedBytesValues(getHashes(), bytes.buffer(), termOrdToBytesOffset, ordinals.ordinals());
+        } else {
+            return new BytesValues(bytes.buffer(), termOrdToBytesOffset, ordinals.ordinals());
+        }
+    }
+
+    @Override
+    public ScriptDocValues.Strings getScriptValues() {
+        return new ScriptDocValues.Strings(getBytesValues(false));
+    }
+
+    static class BytesValues extends org.elasticsearch.index.fielddata.BytesValues.WithOrdinals {
+
+        private final ByteBuffer bytes;
+        private final OffHeapPackedLongs termOrdToBytesOffset;
+
+        BytesValues(ByteBuffer bytes, OffHeapPackedLongs termOrdToBytesOffset, Ordinals.Docs ordinals) {
+            super(ordinals);
+            // the position of the buffer is per view
+            this.bytes = bytes.duplicate();
+            this.termOrdToBytesOffset = termOrdToBytesOffset;
+        }
+
+        @Override
+        public final BytesRef getValueByOrd(long ord) {
+            final int start = (int) termOrdToBytesOffset.get(ord);
+            final int length = (int) termOrdToBytesOffset.get(ord + 1) - start;
+            if (scratch.bytes.length < length) {
+                scratch.bytes = new byte[ArrayUtil.oversize(length, 1)];
+            }
+            bytes.position(start);
+            bytes.get(scratch.bytes, 0, length);
+            scratch.offset = 0;
+            scratch.length = length;
+            return scratch;
+        }
+    }
+
+    static final class HashedBytesValues extends BytesValues {
+
+        private final IntArray hashes;
+
+        HashedBytesValues(IntArray hashes, ByteBuffer bytes, OffHeapPackedLongs termOrdToBytesOffset, Ordinals.Docs ordinals) {
+            super(bytes, termOrdToBytesOffset, ordinals);
+            this.hashes = hashes;
+        }
+
+        @Override
+        public int currentValueHash() {
+            assert ordinals.currentOrd() >= 0;
+            return hashes.get(ordinals.currentOrd());
+        }
+    }
+}
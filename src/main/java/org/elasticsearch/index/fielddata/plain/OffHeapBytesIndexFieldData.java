@@ -0,0 +1,115 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.plain;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.lucene.SegmentReaderUtils;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.OffHeapAllocationException;
+import org.elasticsearch.common.util.SlabAllocator;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.fielddata.AtomicFieldData;
+import org.elasticsearch.index.fielddata.FieldDataType;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexFieldDataCache;
+import org.elasticsearch.index.fielddata.ScriptDocValues;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.settings.IndexSettings;
+import org.elasticsearch.indices.fielddata.breaker.CircuitBreakerService;
+
+/**
+ * String field data which is stored off-heap. Segments are loaded like with the <tt>paged_bytes</tt> format and then
+ * copied into direct memory, so that only a transient copy lives on the heap. Segments that can't be copied off-heap,
+ * because the field data circuit breaker or the direct memory of the JVM is exhausted, are kept on heap.
+ * <p/>
+ * Off-heap memory is freed once the field data has been removed from the cache and the core of its segment has been
+ * closed, so that searches that still use evicted field data never read freed memory.
+ */
+public class OffHeapBytesIndexFieldData extends AbstractBytesIndexFieldData<AtomicFieldData.WithOrdinals<ScriptDocValues.Strings>> {
+
+    public static class Builder implements IndexFieldData.Builder {
+
+        @Override
+        public IndexFieldData<AtomicFieldData.WithOrdinals<ScriptDocValues.Strings>> build(Index index, @IndexSettings Settings indexSettings,
+                FieldMapper<?> mapper, IndexFieldDataCache cache, CircuitBreakerService breakerService) {
+            return new OffHeapBytesIndexFieldData(index, indexSettings, mapper.names(), mapper.fieldDataType(), cache, breakerService);
+        }
+    }
+
+    private final PagedBytesIndexFieldData delegate;
+    private final CircuitBreakerService breakerService;
+    private final SlabAllocator allocator;
+
+    public OffHeapBytesIndexFieldData(Index index, @IndexSettings Settings indexSettings, FieldMapper.Names fieldNames,
+                                      FieldDataType fieldDataType, IndexFieldDataCache cache, CircuitBreakerService breakerService) {
+        super(index, indexSettings, fieldNames, fieldDataType, cache);
+        this.delegate = new PagedBytesIndexFieldData(index, indexSettings, fieldNames, fieldDataType, cache, breakerService);
+        this.breakerService = breakerService;
+        this.allocator = newAllocator(fieldDataType, breakerService);
+    }
+
+    // public for testing
+    public SlabAllocator allocator() {
+        return allocator;
+    }
+
+    static SlabAllocator newAllocator(FieldDataType fieldDataType, CircuitBreakerService breakerService) {
+        final ByteSizeValue slabSize = fieldDataType.getSettings().getAsBytesSize("slab_size", new ByteSizeValue(64 * 1024));
+        return new FieldDataSlabAllocator((int) slabSize.bytes(), breakerService);
+    }
+
+    @Override
+    public AtomicFieldData.WithOrdinals<ScriptDocValues.Strings> loadDirect(AtomicReaderContext context) throws Exception {
+        final PagedBytesAtomicFieldData onHeap = delegate.loadDirect(context);
+        final MemoryCircuitBreaker breaker = breakerService.getBreaker();
+        // the breaker has been adjusted to the size of the on-heap field data, adjust it to the off-heap size
+        final long onHeapSize = onHeap.getMemorySizeInBytes();
+        final OffHeapBytesAtomicFieldData offHeap;
+        try {
+            offHeap = OffHeapBytesAtomicFieldData.copyOf(onHeap, allocator, breakerService);
+        } catch (OffHeapAllocationException e) {
+            logger.debug("keeping field data of [{}] on heap: {}", getFieldNames().fullName(), e.getMessage());
+            return onHeap;
+        } catch (RuntimeException e) {
+            breaker.addWithoutBreaking(-onHeapSize);
+            throw e;
+        }
+        breaker.addWithoutBreaking(offHeap.getMemorySizeInBytes() - onHeapSize);
+        // one reference for the cache, and one for the segment
+        offHeap.incRef();
+        releaseOnCoreClose(context, offHeap);
+        return offHeap;
+    }
+
+    /**
+     * Closes the given field data once the core of the segment it has been loaded for is closed.
+     */
+    static void releaseOnCoreClose(AtomicReaderContext context, final AtomicFieldData fieldData) {
+        SegmentReaderUtils.registerCoreListener(context.reader(), new SegmentReader.CoreClosedListener() {
+            @Override
+            public void onClose(Object ownerCoreCacheKey) {
+                fieldData.close();
+            }
+        });
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.plain;
+
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.util.OffHeapAllocationException;
+import org.elasticsearch.common.util.OffHeapPackedLongs;
+import org.elasticsearch.common.util.SlabAllocator;
+import org.elasticsearch.index.fielddata.AbstractAtomicNumericFieldData;
+import org.elasticsearch.index.fielddata.AtomicNumericFieldData;
+import org.elasticsearch.index.fielddata.DoubleValues;
+import org.elasticsearch.index.fielddata.LongValues;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Integer field data whose values are stored off-heap, packed as deltas from the minimum value. Fields which have
+ * exactly one value per document store one value per document, other fields additionally store the end offset of the
+ * values of every document. Like {@link OffHeapBytesAtomicFieldData}, the field data is reference counted.
+ */
+public class OffHeapPackedArrayAtomicFieldData extends AbstractAtomicNumericFieldData {
+
+    private final int numDocs;
+    private final boolean multiValued;
+    private final boolean valuesOrdered;
+    private final long numberUniqueValues;
+    private final long minValue;
+    // null if every document has exactly one value
+    @Nullable
+    private final OffHeapPackedLongs endOffsets;
+    private final OffHeapPackedLongs values;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    private OffHeapPackedArrayAtomicFieldData(int numDocs, boolean multiValued, boolean valuesOrdered, long numberUniqueValues,
+                                              long minValue, @Nullable OffHeapPackedLongs endOffsets, OffHeapPackedLongs values) {
+        super(false);
+        this.numDocs = numDocs;
+        this.multiValued = multiValued;
+        this.valuesOrdered = valuesOrdered;
+        this.numberUniqueValues = numberUniqueValues;
+        this.minValue = minValue;
+        this.endOffsets = endOffsets;
+        this.values = values;
+    }
+
+    /**
+     * Copies the values of the given field data off-heap.
+     *
+     * @throws OffHeapAllocationException if the allocator could not allocate the off-heap memory
+     */
+    public static OffHeapPackedArrayAtomicFieldData copyOf(AtomicNumericFieldData data, SlabAllocator allocator) {
+        final int numDocs = data.getNumDocs();
+        final LongValues longValues = data.getLongValues();
+        long numValues = 0;
+        long minValue = Long.MAX_VALUE;
+        long maxValue = Long.MIN_VALUE;
+        boolean singleValued = true;
+        for (int i = 0; i < numDocs; i++) {
+            final int numDocValues = longValues.setDocument(i);
+            singleValued &= numDocValues == 1;
+            for (int j = 0; j < numDocValues; j++) {
+                final long value = longValues.nextValue();
+                minValue = Math.min(minValue, value);
+                maxValue = Math.max(maxValue, value);
+            }
+            numValues += numDocValues;
+        }
+        if (numValues == 0) {
+            minValue = maxValue = 0;
+        }
+        final long delta = maxValue - minValue;
+        final int bitsRequired = delta < 0 ? 64 : PackedInts.bitsRequired(delta);
+
+        OffHeapPackedLongs endOffsets = null;
+        OffHeapPackedLongs values = null;
+        boolean success = false;
+        try {
+            if (!singleValued) {
+                endOffsets = new OffHeapPackedLongs(allocator, numDocs, PackedInts.bitsRequired(numValues));
+            }
+            values = new OffHeapPackedLongs(allocator, numValues, bitsRequired);
+            long offset = 0;
+            for (int i = 0; i < numDocs; i++) {
+                final int numDocValues = longValues.setDocument(i);
+                for (int j = 0; j < numDocValues; j++) {
+                    values.set(offset++, longValues.nextValue() - minValue);
+                }
+                if (endOffsets != null) {
+                    endOffsets.set(i, offset);
+                }
+            }
+            success = true;
+            return new OffHeapPackedArrayAtomicFieldData(numDocs, data.isMultiValued(), data.isValuesOrdered(),
+                    data.getNumberUniqueValues(), minValue, endOffsets, values);
+        } finally {
+            if (!success) {
+                if (endOffsets != null) {
+                    endOffsets.release();
+                }
+                if (values != null) {
+                    values.release();
+                }
+            }
+        }
+    }
+
+    public void incRef() {
+        refCount.incrementAndGet();
+    }
+
+    /**
+     * Releases a reference to this field data, the off-heap memory is given back to the allocator with the last one
+     * and must not be read anymore.
+     */
+    @Override
+    public void close() {
+        if (refCount.decrementAndGet() == 0) {
+            values.release();
+            if (endOffsets != null) {
+                endOffsets.release();
+            }
+        }
+    }
+
+    @Override
+    public boolean isMultiValued() {
+        return multiValued;
+    }
+
+    @Override
+    public boolean isValuesOrdered() {
+        return valuesOrdered;
+    }
+
+    @Override
+    public int getNumDocs() {
+        return numDocs;
+    }
+
+    @Override
+    public long getNumberUniqueValues() {
+        return numberUniqueValues;
+    }
+
+    @Override
+    public long getMemorySizeInBytes() {
+        long size = values.sizeInBytes();
+        if (endOffsets != null) {
+            size += endOffsets.sizeInBytes();
+        }
+        return size;
+    }
+
+    @Override
+    public LongValues getLongValues() {
+        if (endOffsets == null) {
+            return new SingleLongValues(values, minValue);
+        } else {
+            return new MultiLongValues(multiValued, endOffsets, values, minValue);
+        }
+    }
+
+    @Override
+    public DoubleValues getDoubleValues() {
+        return DoubleValues.asDoubleValues(getLongValues());
+    }
+
+    static final class SingleLongValues extends LongValues {
+
+        private final OffHeapPackedLongs values;
+        private final long minValue;
+
+        SingleLongValues(OffHeapPackedLongs values, long minValue) {
+            super(false);
+            this.values = values;
+            this.minValue = minValue;
+        }
+
+        @Override
+        public int setDocument(int docId) {
+            this.docId = docId;
+            return 1;
+        }
+
+        @Override
+        public long nextValue() {
+            return minValue + values.get(docId);
+        }
+    }
+
+    static final class MultiLongValues extends LongValues {
+
+        private final OffHeapPackedLongs endOffsets;
+        private final OffHeapPackedLongs values;
+        private final long minValue;
+        private long offset;
+
+        MultiLongValues(boolean multiValued, OffHeapPackedLongs endOffsets, OffHeapPackedLongs values, long minValue) {
+            super(multiValued);
+            this.endOffsets = endOffsets;
+            this.values = values;
+            this.minValue = minValue;
+        }
+
+        @Override
+        public int setDocument(int docId) {
+            this.docId = docId;
+            offset = docId > 0 ? endOffsets.get(docId - 1) : 0;
+            return (int) (endOffsets.get(docId) - offset);
+        }
+
+        @Override
+        public long nextValue() {
+            return minValue + values.get(offset++);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.plain;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.OffHeapAllocationException;
+import org.elasticsearch.common.util.SlabAllocator;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.fielddata.*;
+import org.elasticsearch.index.fielddata.fieldcomparator.LongValuesComparatorSource;
+import org.elasticsearch.index.fielddata.fieldcomparator.SortMode;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.settings.IndexSettings;
+import org.elasticsearch.indices.fielddata.breaker.CircuitBreakerService;
+
+/**
+ * Integer field data which is stored off-heap. Segments are loaded like with the <tt>array</tt> format and then copied
+ * into direct memory, so that only a transient copy lives on the heap. Memory is managed like with
+ * {@link OffHeapBytesIndexFieldData}.
+ */
+public class OffHeapPackedArrayIndexFieldData extends AbstractIndexFieldData<AtomicNumericFieldData> implements IndexNumericFieldData<AtomicNumericFieldData> {
+
+    public static class Builder implements IndexFieldData.Builder {
+
+        private NumericType numericType;
+
+        public Builder setNumericType(NumericType numericType) {
+            this.numericType = numericType;
+            return this;
+        }
+
+        @Override
+        public IndexFieldData<AtomicNumericFieldData> build(Index index, @IndexSettings Settings indexSettings, FieldMapper<?> mapper,
+                                                            IndexFieldDataCache cache, CircuitBreakerService breakerService) {
+            return new OffHeapPackedArrayIndexFieldData(index, indexSettings, mapper.names(), mapper.fieldDataType(), cache, numericType, breakerService);
+        }
+    }
+
+    private final PackedArrayIndexFieldData delegate;
+    private final CircuitBreakerService breakerService;
+    private final SlabAllocator allocator;
+
+    public OffHeapPackedArrayIndexFieldData(Index index, @IndexSettings Settings indexSettings, FieldMapper.Names fieldNames,
+                                            FieldDataType fieldDataType, IndexFieldDataCache cache, NumericType numericType,
+                                            CircuitBreakerService breakerService) {
+        super(index, indexSettings, fieldNames, fieldDataType, cache);
+        this.delegate = new PackedArrayIndexFieldData(index, indexSettings, fieldNames, fieldDataType, cache, numericType, breakerService);
+        this.breakerService = breakerService;
+        this.allocator = OffHeapBytesIndexFieldData.newAllocator(fieldDataType, breakerService);
+    }
+
+    @Override
+    public NumericType getNumericType() {
+        return delegate.getNumericType();
+    }
+
+    @Override
+    public boolean valuesOrdered() {
+        return delegate.valuesOrdered();
+    }
+
+    @Override
+    public AtomicNumericFieldData loadDirect(AtomicReaderContext context) throws Exception {
+        final AtomicNumericFieldData onHeap = delegate.loadDirect(context);
+        final MemoryCircuitBreaker breaker = breakerService.getBreaker();
+        // the breaker has been adjusted to the size of the on-heap field data, adjust it to the off-heap size
+        final long onHeapSize = onHeap.getMemorySizeInBytes();
+        final OffHeapPackedArrayAtomicFieldData offHeap;
+        try {
+            offHeap = OffHeapPackedArrayAtomicFieldData.copyOf(onHeap, allocator);
+        } catch (OffHeapAllocationException e) {
+            logger.debug("keeping field data of [{}] on heap: {}", getFieldNames().fullName(), e.getMessage());
+            return onHeap;
+        } catch (RuntimeException e) {
+            breaker.addWithoutBreaking(-onHeapSize);
+            throw e;
+        }
+        breaker.addWithoutBreaking(offHeap.getMemorySizeInBytes() - onHeapSize);
+        // one reference for the cache, and one for the segment
+        offHeap.incRef();
+        OffHeapBytesIndexFieldData.releaseOnCoreClose(context, offHeap);
+        return offHeap;
+    }
+
+    @Override
+    public XFieldComparatorSource comparatorSource(@Nullable Object missingValue, SortMode sortMode) {
+        return new LongValuesComparatorSource(this, missingValue, sortMode);
+    }
+}
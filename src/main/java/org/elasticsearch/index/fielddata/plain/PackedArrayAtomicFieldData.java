@@ -186,13 +186,19 @@ public abstract class PackedArrayAtomicFieldData extends AbstractAtomicNumericFi
 
         private final PackedInts.Mutable values;
         private final long minValue;
+        private final long gcd;
         private final long missingValue;
         private final long numOrds;
 
-        public SingleSparse(PackedInts.Mutable values, long minValue, int numDocs, long missingValue, long numOrds) {
+        /**
+         * Note, here, the value of a document is <tt>minValue + gcd * values.get(docId)</tt>, and documents
+         * whose packed value is <tt>missingValue</tt> don't have a value.
+         */
+        public SingleSparse(PackedInts.Mutable values, long minValue, long gcd, int numDocs, long missingValue, long numOrds) {
             super(numDocs);
             this.values = values;
             this.minValue = minValue;
+            this.gcd = gcd;
             this.missingValue = missingValue;
             this.numOrds = numOrds;
         }
@@ -222,24 +228,26 @@ public abstract class PackedArrayAtomicFieldData extends AbstractAtomicNumericFi
 
         @Override
         public LongValues getLongValues() {
-            return new LongValues(values, minValue, missingValue);
+            return new LongValues(values, minValue, gcd, missingValue);
         }
 
         @Override
         public DoubleValues getDoubleValues() {
-            return new DoubleValues(values, minValue, missingValue);
+            return new DoubleValues(values, minValue, gcd, missingValue);
         }
 
         static class LongValues extends org.elasticsearch.index.fielddata.LongValues {
 
             private final PackedInts.Mutable values;
             private final long minValue;
+            private final long gcd;
             private final long missingValue;
 
-            LongValues(PackedInts.Mutable values, long minValue, long missingValue) {
+            LongValues(PackedInts.Mutable values, long minValue, long gcd, long missingValue) {
                 super(false);
                 this.values = values;
                 this.minValue = minValue;
+                this.gcd = gcd;
                 this.missingValue = missingValue;
             }
 
@@ -251,7 +259,7 @@ public abstract class PackedArrayAtomicFieldData extends AbstractAtomicNumericFi
 
             @Override
             public long nextValue() {
-                return  minValue + values.get(docId);
+                return  minValue + gcd * values.get(docId);
             }
         }
 
@@ -259,12 +267,14 @@ public abstract class PackedArrayAtomicFieldData extends AbstractAtomicNumericFi
 
             private final PackedInts.Mutable values;
             private final long minValue;
+            private final long gcd;
             private final long missingValue;
 
-            DoubleValues(PackedInts.Mutable values, long minValue, long missingValue) {
+            DoubleValues(PackedInts.Mutable values, long minValue, long gcd, long missingValue) {
                 super(false);
                 this.values = values;
                 this.minValue = minValue;
+                this.gcd = gcd;
                 this.missingValue = missingValue;
             }
 
@@ -276,7 +286,7 @@ public abstract class PackedArrayAtomicFieldData extends AbstractAtomicNumericFi
 
             @Override
             public double nextValue() {
-                return  minValue + values.get(docId);
+                return  minValue + gcd * values.get(docId);
             }
         }
     }
@@ -288,16 +298,18 @@ public abstract class PackedArrayAtomicFieldData extends AbstractAtomicNumericFi
 
         private final PackedInts.Mutable values;
         private final long minValue;
+        private final long gcd;
         private final long numOrds;
 
         /**
          * Note, here, we assume that there is no offset by 1 from docId, so position 0
-         * is the value for docId 0.
+         * is the value for docId 0, and the value of a document is <tt>minValue + gcd * values.get(docId)</tt>.
          */
-        public Single(PackedInts.Mutable values, long minValue, int numDocs, long numOrds) {
+        public Single(PackedInts.Mutable values, long minValue, long gcd, int numDocs, long numOrds) {
             super(numDocs);
             this.values = values;
             this.minValue = minValue;
+            this.gcd = gcd;
             this.numOrds = numOrds;
         }
 
@@ -326,29 +338,31 @@ public abstract class PackedArrayAtomicFieldData extends AbstractAtomicNumericFi
 
         @Override
         public LongValues getLongValues() {
-            return new LongValues(values, minValue);
+            return new LongValues(values, minValue, gcd);
         }
 
         @Override
         public DoubleValues getDoubleValues() {
-            return new DoubleValues(values, minValue);
+            return new DoubleValues(values, minValue, gcd);
         }
 
         static class LongValues extends DenseLongValues {
 
             private final PackedInts.Mutable values;
             private final long minValue;
+            private final long gcd;
 
-            LongValues(PackedInts.Mutable values, long minValue) {
+            LongValues(PackedInts.Mutable values, long minValue, long gcd) {
                 super(false);
                 this.values = values;
                 this.minValue = minValue;
+                this.gcd = gcd;
             }
 
 
             @Override
             public long nextValue() {
-                return minValue + values.get(docId);
+                return minValue + gcd * values.get(docId);
             }
             
 
@@ -358,11 +372,13 @@ public abstract class PackedArrayAtomicFieldData extends AbstractAtomicNumericFi
 
             private final PackedInts.Mutable values;
             private final long minValue;
+            private final long gcd;
 
-            DoubleValues(PackedInts.Mutable values, long minValue) {
+            DoubleValues(PackedInts.Mutable values, long minValue, long gcd) {
                 super(false);
                 this.values = values;
                 this.minValue = minValue;
+                this.gcd = gcd;
             }
 
             @Override
@@ -373,9 +389,110 @@ public abstract class PackedArrayAtomicFieldData extends AbstractAtomicNumericFi
 
             @Override
             public double nextValue() {
-                return minValue + values.get(docId);
+                return minValue + gcd * values.get(docId);
             }
 
         }
     }
+
+    /**
+     * Assumes all the values are "set" and that values mostly increase with doc ids, like timestamps of documents
+     * that were indexed in chronological order. Values are stored in a {@link MonotonicAppendingLongBuffer}, which
+     * only stores the deviation of every value from a linear approximation of its page.
+     */
+    public static class Monotonic extends PackedArrayAtomicFieldData {
+
+        private final MonotonicAppendingLongBuffer values;
+        private final long minValue;
+        private final long gcd;
+        private final long numOrds;
+
+        /**
+         * Note, here, the value of a document is <tt>minValue + gcd * values.get(docId)</tt>.
+         */
+        public Monotonic(MonotonicAppendingLongBuffer values, long minValue, long gcd, int numDocs, long numOrds) {
+            super(numDocs);
+            this.values = values;
+            this.minValue = minValue;
+            this.gcd = gcd;
+            this.numOrds = numOrds;
+        }
+
+        @Override
+        public boolean isMultiValued() {
+            return false;
+        }
+
+        @Override
+        public boolean isValuesOrdered() {
+            return false;
+        }
+
+        @Override
+        public long getNumberUniqueValues() {
+            return numOrds;
+        }
+
+        @Override
+        public long getMemorySizeInBytes() {
+            if (size == -1) {
+                size = values.ramBytesUsed() + 2 * RamUsageEstimator.NUM_BYTES_LONG;
+            }
+            return size;
+        }
+
+        @Override
+        public LongValues getLongValues() {
+            return new LongValues(values, minValue, gcd);
+        }
+
+        @Override
+        public DoubleValues getDoubleValues() {
+            return new DoubleValues(values, minValue, gcd);
+        }
+
+        static class LongValues extends DenseLongValues {
+
+            private final MonotonicAppendingLongBuffer values;
+            private final long minValue;
+            private final long gcd;
+
+            LongValues(MonotonicAppendingLongBuffer values, long minValue, long gcd) {
+                super(false);
+                this.values = values;
+                this.minValue = minValue;
+                this.gcd = gcd;
+            }
+
+            @Override
+            public long nextValue() {
+                return minValue + gcd * values.get(docId);
+            }
+        }
+
+        static class DoubleValues extends org.elasticsearch.index.fielddata.DoubleValues {
+
+            private final MonotonicAppendingLongBuffer values;
+            private final long minValue;
+            private final long gcd;
+
+            DoubleValues(MonotonicAppendingLongBuffer values, long minValue, long gcd) {
+                super(false);
+                this.values = values;
+                this.minValue = minValue;
+                this.gcd = gcd;
+            }
+
+            @Override
+            public int setDocument(int docId) {
+                this.docId = docId;
+                return 1;
+            }
+
+            @Override
+            public double nextValue() {
+                return minValue + gcd * values.get(docId);
+            }
+        }
+    }
 }
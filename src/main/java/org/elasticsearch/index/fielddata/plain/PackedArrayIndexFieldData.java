@@ -69,6 +69,9 @@ public class PackedArrayIndexFieldData extends AbstractIndexFieldData<AtomicNume
         }
     }
 
+    // below this number of documents, the per-page overhead of monotonic values doesn't pay off
+    private static final int MONOTONIC_MIN_DOCS = 4096;
+
     private final NumericType numericType;
     private final CircuitBreakerService breakerService;
 
@@ -139,29 +142,47 @@ public class PackedArrayIndexFieldData extends AbstractIndexFieldData<AtomicNume
                     maxValue = values.get(values.size() - 1);
                 }
 
+                // values often share a common divisor, eg. dates that are rounded to the second
+                final long gcd = gcd(values, minValue);
+
                 // Encode document without a value with a special value
                 long missingValue = 0;
                 if (set != null) {
-                    if ((maxValue - minValue + 1) == values.size()) {
-                        // values are dense
-                        if (minValue > Long.MIN_VALUE) {
-                            missingValue = --minValue;
-                        } else {
-                            assert maxValue != Long.MAX_VALUE;
-                            missingValue = ++maxValue;
-                        }
-                    } else {
+                    if (gcd != 1) {
+                        // any quotient which is not used works, including the one after the last value
+                        missingValue = (maxValue - minValue) / gcd + 1;
                         for (long i = 1; i < values.size(); ++i) {
-                            if (values.get(i) > values.get(i - 1) + 1) {
-                                missingValue = values.get(i - 1) + 1;
+                            final long previous = (values.get(i - 1) - minValue) / gcd;
+                            if ((values.get(i) - minValue) / gcd > previous + 1) {
+                                missingValue = previous + 1;
                                 break;
                             }
                         }
+                    } else {
+                        if ((maxValue - minValue + 1) == values.size()) {
+                            // values are dense
+                            if (minValue > Long.MIN_VALUE) {
+                                missingValue = --minValue;
+                            } else {
+                                assert maxValue != Long.MAX_VALUE;
+                                missingValue = ++maxValue;
+                            }
+                        } else {
+                            for (long i = 1; i < values.size(); ++i) {
+                                if (values.get(i) > values.get(i - 1) + 1) {
+                                    missingValue = values.get(i - 1) + 1;
+                                    break;
+                                }
+                            }
+                        }
+                        missingValue -= minValue; // delta
                     }
-                    missingValue -= minValue; // delta
                 }
 
-                final long delta = maxValue - minValue;
+                long delta = (maxValue - minValue) / gcd;
+                if (gcd != 1) {
+                    delta = Math.max(delta, missingValue);
+                }
                 final int bitsRequired = delta < 0 ? 64 : PackedInts.bitsRequired(delta);
                 final float acceptableOverheadRatio = fieldDataType.getSettings().getAsFloat("acceptable_overhead_ratio", PackedInts.DEFAULT);
                 final PackedInts.FormatAndBits formatAndBits = PackedInts.fastestFormatAndBits(reader.maxDoc(), bitsRequired, acceptableOverheadRatio);
@@ -171,7 +192,22 @@ public class PackedArrayIndexFieldData extends AbstractIndexFieldData<AtomicNume
                 final long uniqueValuesSize = values.ramBytesUsed();
                 final long ordinalsSize = build.getMemorySizeInBytes();
 
-                if (uniqueValuesSize + ordinalsSize < singleValuesSize) {
+                // values that mostly increase with doc ids, like the timestamps of logs, compress better as deltas
+                // from a monotonic approximation
+                MonotonicAppendingLongBuffer monotonicValues = null;
+                if (set == null && isNearlySorted(values, ordinals, reader.maxDoc())) {
+                    monotonicValues = new MonotonicAppendingLongBuffer();
+                    for (int i = 0; i < reader.maxDoc(); i++) {
+                        monotonicValues.add((values.get(ordinals.getOrd(i) - 1) - minValue) / gcd);
+                    }
+                    if (monotonicValues.ramBytesUsed() >= Math.min(singleValuesSize, uniqueValuesSize + ordinalsSize)) {
+                        monotonicValues = null;
+                    }
+                }
+
+                if (monotonicValues != null) {
+                    data = new PackedArrayAtomicFieldData.Monotonic(monotonicValues, minValue, gcd, reader.maxDoc(), ordinals.getNumOrds());
+                } else if (uniqueValuesSize + ordinalsSize < singleValuesSize) {
                     data = new PackedArrayAtomicFieldData.WithOrdinals(values, reader.maxDoc(), build);
                 } else {
                     final PackedInts.Mutable sValues = PackedInts.getMutable(reader.maxDoc(), bitsRequired, acceptableOverheadRatio);
@@ -181,13 +217,13 @@ public class PackedArrayIndexFieldData extends AbstractIndexFieldData<AtomicNume
                     for (int i = 0; i < reader.maxDoc(); i++) {
                         final long ord = ordinals.getOrd(i);
                         if (ord != Ordinals.MISSING_ORDINAL) {
-                            sValues.set(i, values.get(ord - 1) - minValue);
+                            sValues.set(i, (values.get(ord - 1) - minValue) / gcd);
                         }
                     }
                     if (set == null) {
-                        data = new PackedArrayAtomicFieldData.Single(sValues, minValue, reader.maxDoc(), ordinals.getNumOrds());
+                        data = new PackedArrayAtomicFieldData.Single(sValues, minValue, gcd, reader.maxDoc(), ordinals.getNumOrds());
                     } else {
-                        data = new PackedArrayAtomicFieldData.SingleSparse(sValues, minValue, reader.maxDoc(), missingValue, ordinals.getNumOrds());
+                        data = new PackedArrayAtomicFieldData.SingleSparse(sValues, minValue, gcd, reader.maxDoc(), missingValue, ordinals.getNumOrds());
                     }
                 }
             } else {
@@ -209,6 +245,53 @@ public class PackedArrayIndexFieldData extends AbstractIndexFieldData<AtomicNume
 
     }
 
+    /**
+     * Returns the greatest common divisor of the differences between the given sorted unique values and
+     * <tt>minValue</tt>, or <tt>1</tt> if there is no such divisor or if the differences overflow.
+     */
+    static long gcd(MonotonicAppendingLongBuffer values, long minValue) {
+        long gcd = 0;
+        for (long i = 1; i < values.size() && gcd != 1; ++i) {
+            final long delta = values.get(i) - minValue;
+            if (delta < 0) {
+                // overflow
+                return 1;
+            }
+            gcd = gcd(gcd, delta);
+        }
+        return gcd == 0 ? 1 : gcd;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            final long tmp = b;
+            b = a % b;
+            a = tmp;
+        }
+        return a;
+    }
+
+    /**
+     * Returns whether the values of the documents mostly increase with doc ids.
+     */
+    private static boolean isNearlySorted(MonotonicAppendingLongBuffer values, Docs ordinals, int maxDoc) {
+        if (maxDoc < MONOTONIC_MIN_DOCS) {
+            return false;
+        }
+        final int maxDescents = maxDoc >>> 6;
+        int descents = 0;
+        long previousOrd = ordinals.getOrd(0);
+        for (int i = 1; i < maxDoc; i++) {
+            final long ord = ordinals.getOrd(i);
+            // values are sorted by ordinal
+            if (ord < previousOrd && ++descents > maxDescents) {
+                return false;
+            }
+            previousOrd = ord;
+        }
+        return true;
+    }
+
     @Override
     public XFieldComparatorSource comparatorSource(@Nullable Object missingValue, SortMode sortMode) {
         return new LongValuesComparatorSource(this, missingValue, sortMode);
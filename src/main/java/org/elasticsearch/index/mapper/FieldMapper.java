@@ -136,10 +136,20 @@ public interface FieldMapper<T> extends Mapper {
             public String toString() {
                 return EAGER_VALUE;
             }
+        },
+        /**
+         * Same as {@link #EAGER}, and also builds the global ordinals of the field before new searchers are exposed.
+         */
+        EAGER_GLOBAL_ORDINALS {
+            @Override
+            public String toString() {
+                return EAGER_GLOBAL_ORDINALS_VALUE;
+            }
         };
 
         public static final String KEY = "loading";
         public static final String EAGER_VALUE = "eager";
+        public static final String EAGER_GLOBAL_ORDINALS_VALUE = "eager_global_ordinals";
         public static final String LAZY_VALUE = "lazy";
 
         public static Loading parse(String loading, Loading defaultValue) {
@@ -147,6 +157,8 @@ public interface FieldMapper<T> extends Mapper {
                 return defaultValue;
             } else if (EAGER_VALUE.equalsIgnoreCase(loading)) {
                 return EAGER;
+            } else if (EAGER_GLOBAL_ORDINALS_VALUE.equalsIgnoreCase(loading)) {
+                return EAGER_GLOBAL_ORDINALS;
             } else if (LAZY_VALUE.equalsIgnoreCase(loading)) {
                 return LAZY;
             } else {
@@ -66,6 +66,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.elasticsearch.common.collect.MapBuilder.newMapBuilder;
 import static org.elasticsearch.index.mapper.DocumentMapper.MergeFlags.mergeFlags;
@@ -99,6 +100,8 @@ public class MapperService extends AbstractIndexComponent implements Iterable<Do
 
     private final FieldMappersLookup fieldMappers = new FieldMappersLookup();
     private volatile ImmutableOpenMap<String, ObjectMappers> fullPathObjectMappers = ImmutableOpenMap.of();
+    // incremented whenever types, field mappers or object mappers are added or removed
+    private final AtomicLong mappingVersion = new AtomicLong();
     private boolean hasNested = false; // updated dynamically to true when a nested object is added
 
     private final DocumentMapperParser documentParser;
@@ -226,6 +229,14 @@ public class MapperService extends AbstractIndexComponent implements Iterable<Do
         return this.documentParser;
     }
 
+    /**
+     * A number which changes every time the mappings of this index change, so that the parsed queries and filters
+     * which depend on them can be invalidated.
+     */
+    public long mappingVersion() {
+        return mappingVersion.get();
+    }
+
     public void addTypeListener(DocumentTypeListener listener) {
         typeListeners.add(listener);
     }
@@ -287,6 +298,8 @@ public class MapperService extends AbstractIndexComponent implements Iterable<Do
                     }
                 }
                 fieldDataService.onMappingUpdate();
+                // existing field mappers are updated in place, eg. their search analyzer
+                mappingVersion.incrementAndGet();
                 return oldMapper;
             } else {
                 FieldMapperListener.Aggregator fieldMappersAgg = new FieldMapperListener.Aggregator();
@@ -303,6 +316,7 @@ public class MapperService extends AbstractIndexComponent implements Iterable<Do
                     typeListener.beforeCreate(mapper);
                 }
                 mappers = newMapBuilder(mappers).put(mapper.type(), mapper).map();
+                mappingVersion.incrementAndGet();
                 return mapper;
             }
         }
@@ -325,12 +339,14 @@ public class MapperService extends AbstractIndexComponent implements Iterable<Do
                 }
             }
             this.fullPathObjectMappers = fullPathObjectMappers.build();
+            mappingVersion.incrementAndGet();
         }
     }
 
     private void addFieldMappers(FieldMapper[] fieldMappers) {
         synchronized (mappersMutex) {
             this.fieldMappers.addNewMappers(Arrays.asList(fieldMappers));
+            mappingVersion.incrementAndGet();
         }
     }
 
@@ -343,6 +359,7 @@ public class MapperService extends AbstractIndexComponent implements Iterable<Do
             docMapper.close();
             mappers = newMapBuilder(mappers).remove(type).map();
             removeObjectAndFieldMappers(docMapper);
+            mappingVersion.incrementAndGet();
             for (DocumentTypeListener typeListener : typeListeners) {
                 typeListener.afterRemove(docMapper);
             }
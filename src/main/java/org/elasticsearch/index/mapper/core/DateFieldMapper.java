@@ -35,8 +35,12 @@ import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.joda.DateMathParser;
 import org.elasticsearch.common.joda.FormatDateTimeFormatter;
 import org.elasticsearch.common.joda.Joda;
+import org.elasticsearch.common.rounding.DateTimeUnit;
+import org.elasticsearch.common.rounding.TimeZoneRounding;
+import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.analysis.NamedAnalyzer;
@@ -51,14 +55,20 @@ import org.elasticsearch.index.mapper.core.LongFieldMapper.CustomLongNumericFiel
 import org.elasticsearch.index.query.QueryParseContext;
 import org.elasticsearch.index.search.NumericRangeFieldDataFilter;
 import org.elasticsearch.index.similarity.SimilarityProvider;
+import org.joda.time.DateTimeZone;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.elasticsearch.index.mapper.MapperBuilders.dateField;
+import static org.elasticsearch.index.mapper.MapperBuilders.longField;
 import static org.elasticsearch.index.mapper.core.TypeParsers.parseDateTimeFormatter;
 import static org.elasticsearch.index.mapper.core.TypeParsers.parseNumberField;
 
@@ -82,6 +92,68 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
 
         public static final TimeUnit TIME_UNIT = TimeUnit.MILLISECONDS;
         public static final boolean ROUND_CEIL = true;
+
+        // pre-rounded keys are only read through doc values
+        public static final Settings PRE_ROUNDED_FIELD_DATA_SETTINGS = ImmutableSettings.builder()
+                .put(FieldDataType.FORMAT_KEY, FieldDataType.DOC_VALUES_FORMAT_VALUE).build();
+    }
+
+    /**
+     * A <tt>date_histogram</tt> interval and time zone whose bucket keys are computed at index time and stored in the doc
+     * values of a sub-field, so that date histograms which use the same interval and time zone don't need to round dates.
+     */
+    public static class PreRounding {
+
+        private final String interval;
+        private final DateTimeZone timeZone;
+        private final DateTimeUnit unit;
+        private final long intervalMillis;
+        private final TimeZoneRounding rounding;
+        private final LongFieldMapper mapper;
+
+        PreRounding(String interval, DateTimeZone timeZone, LongFieldMapper mapper) {
+            this.interval = interval;
+            this.timeZone = timeZone;
+            this.unit = DateTimeUnit.forInterval(interval);
+            this.intervalMillis = unit == null ? TimeValue.parseTimeValue(interval, null).millis() : -1;
+            final TimeZoneRounding.Builder builder = unit == null ? TimeZoneRounding.builder(TimeValue.timeValueMillis(intervalMillis)) : TimeZoneRounding.builder(unit);
+            this.rounding = builder.preZone(timeZone).build();
+            this.mapper = mapper;
+        }
+
+        static String fieldName(String interval, DateTimeZone timeZone) {
+            return "rounded_" + interval + (DateTimeZone.UTC.equals(timeZone) ? "" : "_" + timeZone.getID());
+        }
+
+        /**
+         * Whether the keys of this pre-rounding are the same as the keys of a date histogram that has the given interval
+         * and pre time zone, and no post time zone, offset or large interval adjustment.
+         */
+        public boolean matches(String interval, DateTimeZone timeZone) {
+            if (!this.timeZone.equals(timeZone)) {
+                return false;
+            }
+            final DateTimeUnit unit = DateTimeUnit.forInterval(interval);
+            if (this.unit != null || unit != null) {
+                return this.unit == unit;
+            }
+            return intervalMillis == TimeValue.parseTimeValue(interval, null).millis();
+        }
+
+        public String interval() {
+            return interval;
+        }
+
+        public DateTimeZone timeZone() {
+            return timeZone;
+        }
+
+        /**
+         * The mapper of the sub-field which stores the pre-rounded keys.
+         */
+        public LongFieldMapper mapper() {
+            return mapper;
+        }
     }
 
     public static class Builder extends NumberFieldMapper.Builder<Builder, DateFieldMapper> {
@@ -94,6 +166,9 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
 
         private Locale locale;
 
+        private final List<String> preRoundedIntervals = new ArrayList<String>();
+        private final List<DateTimeZone> preRoundedTimeZones = new ArrayList<DateTimeZone>();
+
         public Builder(String name) {
             super(name, new FieldType(Defaults.FIELD_TYPE));
             builder = this;
@@ -116,6 +191,15 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
             return this;
         }
 
+        /**
+         * Store the keys of date histograms with the given interval and time zone in doc values at index time.
+         */
+        public Builder preRounded(String interval, DateTimeZone timeZone) {
+            this.preRoundedIntervals.add(interval);
+            this.preRoundedTimeZones.add(timeZone);
+            return this;
+        }
+
         @Override
         public DateFieldMapper build(BuilderContext context) {
             boolean roundCeil = Defaults.ROUND_CEIL;
@@ -127,9 +211,26 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
             if (!locale.equals(dateTimeFormatter.locale())) {
                 dateTimeFormatter = new FormatDateTimeFormatter(dateTimeFormatter.format(), dateTimeFormatter.parser(), dateTimeFormatter.printer(), locale);
             }
+            List<PreRounding> preRoundings = Collections.emptyList();
+            if (!preRoundedIntervals.isEmpty()) {
+                preRoundings = new ArrayList<PreRounding>(preRoundedIntervals.size());
+                ContentPath.Type origPathType = context.path().pathType();
+                context.path().pathType(ContentPath.Type.FULL);
+                context.path().add(name);
+                for (int i = 0; i < preRoundedIntervals.size(); i++) {
+                    final String interval = preRoundedIntervals.get(i);
+                    final DateTimeZone timeZone = preRoundedTimeZones.get(i);
+                    LongFieldMapper mapper = longField(PreRounding.fieldName(interval, timeZone))
+                            .index(false).store(false).includeInAll(false)
+                            .fieldDataSettings(Defaults.PRE_ROUNDED_FIELD_DATA_SETTINGS).build(context);
+                    preRoundings.add(new PreRounding(interval, timeZone, mapper));
+                }
+                context.path().remove();
+                context.path().pathType(origPathType);
+            }
             DateFieldMapper fieldMapper = new DateFieldMapper(buildNames(context), dateTimeFormatter,
                     precisionStep, boost, fieldType, docValues, nullValue, timeUnit, roundCeil, ignoreMalformed(context),
-                    postingsProvider, docValuesProvider, similarity, normsLoading, fieldDataSettings, context.indexSettings());
+                    postingsProvider, docValuesProvider, similarity, normsLoading, fieldDataSettings, context.indexSettings(), preRoundings);
             fieldMapper.includeInAll(includeInAll);
             return fieldMapper;
         }
@@ -156,12 +257,61 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
                     builder.timeUnit(TimeUnit.valueOf(propNode.toString().toUpperCase(Locale.ROOT)));
                 } else if (propName.equals("locale")) {
                     builder.locale(parseLocale(propNode.toString()));
+                } else if (propName.equals("pre_rounded")) {
+                    parsePreRounded(builder, name, propNode);
                 }
             }
             return builder;
         }
     }
 
+    private static void parsePreRounded(DateFieldMapper.Builder builder, String name, Object propNode) {
+        if (!(propNode instanceof List)) {
+            throw new MapperParsingException("[pre_rounded] of field [" + name + "] must be a list of intervals");
+        }
+        for (Object entry : (List<?>) propNode) {
+            String interval = null;
+            DateTimeZone timeZone = DateTimeZone.UTC;
+            if (entry instanceof Map) {
+                for (Map.Entry<?, ?> setting : ((Map<?, ?>) entry).entrySet()) {
+                    final String settingName = Strings.toUnderscoreCase(setting.getKey().toString());
+                    if (settingName.equals("interval")) {
+                        interval = setting.getValue().toString();
+                    } else if (settingName.equals("time_zone")) {
+                        timeZone = parseTimeZone(setting.getValue().toString());
+                    } else {
+                        throw new MapperParsingException("unknown [pre_rounded] setting [" + settingName + "] for field [" + name + "]");
+                    }
+                }
+            } else if (entry != null) {
+                interval = entry.toString();
+            }
+            if (interval == null) {
+                throw new MapperParsingException("[pre_rounded] entries of field [" + name + "] require an interval");
+            }
+            if (DateTimeUnit.forInterval(interval) == null) {
+                try {
+                    TimeValue.parseTimeValue(interval, null);
+                } catch (Exception e) {
+                    throw new MapperParsingException("failed to parse [pre_rounded] interval [" + interval + "] of field [" + name + "]", e);
+                }
+            }
+            builder.preRounded(interval, timeZone);
+        }
+    }
+
+    // like the time_zone option of date histograms: either an offset such as -02:30, or a time zone id
+    private static DateTimeZone parseTimeZone(String text) {
+        int index = text.indexOf(':');
+        if (index != -1) {
+            int beginIndex = text.charAt(0) == '+' ? 1 : 0;
+            return DateTimeZone.forOffsetHoursMinutes(
+                    Integer.parseInt(text.substring(beginIndex, index)),
+                    Integer.parseInt(text.substring(index + 1)));
+        }
+        return DateTimeZone.forID(text);
+    }
+
     // public for test
     public static Locale parseLocale(String locale) {
         final String[] parts = locale.split("_", -1);
@@ -200,10 +350,20 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
 
     protected final TimeUnit timeUnit;
 
+    private final List<PreRounding> preRoundings;
+
     protected DateFieldMapper(Names names, FormatDateTimeFormatter dateTimeFormatter, int precisionStep, float boost, FieldType fieldType, Boolean docValues,
                               String nullValue, TimeUnit timeUnit, boolean roundCeil, Explicit<Boolean> ignoreMalformed,
                               PostingsFormatProvider postingsProvider, DocValuesFormatProvider docValuesProvider, SimilarityProvider similarity,
                               Loading normsLoading, @Nullable Settings fieldDataSettings, Settings indexSettings) {
+        this(names, dateTimeFormatter, precisionStep, boost, fieldType, docValues, nullValue, timeUnit, roundCeil, ignoreMalformed,
+                postingsProvider, docValuesProvider, similarity, normsLoading, fieldDataSettings, indexSettings, Collections.<PreRounding>emptyList());
+    }
+
+    protected DateFieldMapper(Names names, FormatDateTimeFormatter dateTimeFormatter, int precisionStep, float boost, FieldType fieldType, Boolean docValues,
+                              String nullValue, TimeUnit timeUnit, boolean roundCeil, Explicit<Boolean> ignoreMalformed,
+                              PostingsFormatProvider postingsProvider, DocValuesFormatProvider docValuesProvider, SimilarityProvider similarity,
+                              Loading normsLoading, @Nullable Settings fieldDataSettings, Settings indexSettings, List<PreRounding> preRoundings) {
         super(names, precisionStep, boost, fieldType, docValues, ignoreMalformed, new NamedAnalyzer("_date/" + precisionStep,
                 new NumericDateAnalyzer(precisionStep, dateTimeFormatter.parser())),
                 new NamedAnalyzer("_date/max", new NumericDateAnalyzer(Integer.MAX_VALUE, dateTimeFormatter.parser())),
@@ -213,6 +373,7 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
         this.timeUnit = timeUnit;
         this.roundCeil = roundCeil;
         this.dateMathParser = new DateMathParser(dateTimeFormatter, timeUnit);
+        this.preRoundings = preRoundings;
     }
 
     public FormatDateTimeFormatter dateTimeFormatter() {
@@ -223,6 +384,20 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
         return dateMathParser;
     }
 
+    /**
+     * Return the pre-rounding whose keys are those of a date histogram with the given interval and time zone, or
+     * <tt>null</tt> if there is none.
+     */
+    @Nullable
+    public PreRounding preRounding(String interval, DateTimeZone timeZone) {
+        for (PreRounding preRounding : preRoundings) {
+            if (preRounding.matches(interval, timeZone)) {
+                return preRounding;
+            }
+        }
+        return null;
+    }
+
     @Override
     public FieldType defaultFieldType() {
         return Defaults.FIELD_TYPE;
@@ -436,6 +611,11 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
             if (hasDocValues()) {
                 addDocValue(context, value);
             }
+            // pre-rounded keys go straight to doc values: going through the sub-mappers' parse would clear the
+            // fields of this mapper which have not been added to the document yet
+            for (PreRounding preRounding : preRoundings) {
+                preRounding.mapper.addDocValue(context, preRounding.rounding.round(value));
+            }
         }
     }
 
@@ -444,18 +624,47 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
         return CONTENT_TYPE;
     }
 
+    @Override
+    public void traverse(FieldMapperListener fieldMapperListener) {
+        super.traverse(fieldMapperListener);
+        for (PreRounding preRounding : preRoundings) {
+            preRounding.mapper.traverse(fieldMapperListener);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for (PreRounding preRounding : preRoundings) {
+            preRounding.mapper.close();
+        }
+    }
+
     @Override
     public void merge(Mapper mergeWith, MergeContext mergeContext) throws MergeMappingException {
         super.merge(mergeWith, mergeContext);
         if (!this.getClass().equals(mergeWith.getClass())) {
             return;
         }
+        // pre-roundings can't be added to an existing field since documents which have already been indexed wouldn't
+        // have pre-rounded keys, and date histograms would rely on them
+        if (!preRoundedFieldNames(preRoundings).equals(preRoundedFieldNames(((DateFieldMapper) mergeWith).preRoundings))) {
+            mergeContext.addConflict("mapper [" + names.fullName() + "] has different [pre_rounded] values");
+        }
         if (!mergeContext.mergeFlags().simulate()) {
             this.nullValue = ((DateFieldMapper) mergeWith).nullValue;
             this.dateTimeFormatter = ((DateFieldMapper) mergeWith).dateTimeFormatter;
         }
     }
 
+    private static Set<String> preRoundedFieldNames(List<PreRounding> preRoundings) {
+        final Set<String> fieldNames = new HashSet<String>();
+        for (PreRounding preRounding : preRoundings) {
+            fieldNames.add(PreRounding.fieldName(preRounding.interval, preRounding.timeZone));
+        }
+        return fieldNames;
+    }
+
     @Override
     protected void doXContentBody(XContentBuilder builder, boolean includeDefaults, Params params) throws IOException {
         super.doXContentBody(builder, includeDefaults, params);
@@ -476,6 +685,20 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
         if (includeDefaults || timeUnit != Defaults.TIME_UNIT) {
             builder.field("numeric_resolution", timeUnit.name().toLowerCase(Locale.ROOT));
         }
+        if (!preRoundings.isEmpty()) {
+            builder.startArray("pre_rounded");
+            for (PreRounding preRounding : preRoundings) {
+                if (DateTimeZone.UTC.equals(preRounding.timeZone)) {
+                    builder.value(preRounding.interval);
+                } else {
+                    builder.startObject();
+                    builder.field("interval", preRounding.interval);
+                    builder.field("time_zone", preRounding.timeZone.getID());
+                    builder.endObject();
+                }
+            }
+            builder.endArray();
+        }
         // only serialize locale if needed, ROOT is the default, so no need to serialize that case as well...
         if (dateTimeFormatter.locale() != null && dateTimeFormatter.locale() != Locale.ROOT) {
             builder.field("locale", dateTimeFormatter.locale());
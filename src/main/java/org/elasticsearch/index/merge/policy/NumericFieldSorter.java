@@ -0,0 +1,188 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.merge.policy;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.sorter.Sorter;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.fielddata.ordinals.OrdinalsBuilder;
+
+import java.io.IOException;
+
+/**
+ * A {@link Sorter} that sorts the documents of merged segments by the value of an indexed integral numeric field
+ * (<tt>long</tt>, <tt>integer</tt>, <tt>date</tt>, ...), configured through the {@link #INDEX_SORT_FIELD} and
+ * {@link #INDEX_SORT_ORDER} index settings.
+ * <p/>
+ * Values are read from the full precision terms of the field so that the field doesn't need doc values. Multi-valued
+ * documents are sorted by their minimum value in ascending order and by their maximum value in descending order (which
+ * matches the default sort mode of the search requests), documents without a value are always sorted last. The sort is
+ * stable, so that documents that have the same value keep their relative order.
+ */
+public class NumericFieldSorter extends Sorter {
+
+    /**
+     * The (indexed) name of the field the segments are sorted by. Can only be set at index creation time.
+     */
+    public static final String INDEX_SORT_FIELD = "index.sort.field";
+
+    /**
+     * The sort order, either <tt>asc</tt> (default) or <tt>desc</tt>. Can only be set at index creation time.
+     */
+    public static final String INDEX_SORT_ORDER = "index.sort.order";
+
+    /**
+     * @return The sorter configured in the given index settings, or <tt>null</tt> if the segments of the index are not sorted.
+     */
+    @Nullable
+    public static NumericFieldSorter fromSettings(Settings indexSettings) {
+        final String field = indexSettings.get(INDEX_SORT_FIELD);
+        if (field == null) {
+            return null;
+        }
+        final String order = indexSettings.get(INDEX_SORT_ORDER, "asc");
+        if ("asc".equals(order)) {
+            return new NumericFieldSorter(field, false);
+        } else if ("desc".equals(order)) {
+            return new NumericFieldSorter(field, true);
+        }
+        throw new ElasticsearchIllegalArgumentException("Illegal value for [" + INDEX_SORT_ORDER + "] [" + order + "], must be either [asc] or [desc]");
+    }
+
+    private final String field;
+    private final boolean reverse;
+
+    public NumericFieldSorter(String field, boolean reverse) {
+        this.field = field;
+        this.reverse = reverse;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public boolean reverse() {
+        return reverse;
+    }
+
+    @Override
+    public DocMap sort(AtomicReader reader) throws IOException {
+        final int maxDoc = reader.maxDoc();
+        final long[] values = new long[maxDoc];
+        final FixedBitSet docsWithValue = new FixedBitSet(maxDoc);
+        final Terms terms = reader.terms(field);
+        if (terms != null) {
+            final BytesRef first = terms.iterator(null).next();
+            // full precision terms sort first, their shift tells whether the field is a 32 or 64 bits one
+            if (first != null && first.length > 0
+                    && (first.bytes[first.offset] == NumericUtils.SHIFT_START_LONG || first.bytes[first.offset] == NumericUtils.SHIFT_START_INT)) {
+                final boolean is64Bit = first.bytes[first.offset] == NumericUtils.SHIFT_START_LONG;
+                final TermsEnum termsEnum = is64Bit ? OrdinalsBuilder.wrapNumeric64Bit(terms.iterator(null)) : OrdinalsBuilder.wrapNumeric32Bit(terms.iterator(null));
+                DocsEnum docsEnum = null;
+                for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                    final long value = is64Bit ? NumericUtils.prefixCodedToLong(term) : NumericUtils.prefixCodedToInt(term);
+                    docsEnum = termsEnum.docs(null, docsEnum, DocsEnum.FLAG_NONE);
+                    for (int doc = docsEnum.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docsEnum.nextDoc()) {
+                        // terms come in ascending order: keep the first value (min) when ascending, the last one (max) when descending
+                        if (reverse || !docsWithValue.get(doc)) {
+                            values[doc] = value;
+                        }
+                        docsWithValue.set(doc);
+                    }
+                }
+            }
+        }
+
+        final int[] newToOld = new int[maxDoc];
+        for (int i = 0; i < maxDoc; ++i) {
+            newToOld[i] = i;
+        }
+        boolean sorted = true;
+        for (int i = 1; i < maxDoc && sorted; ++i) {
+            sorted = compare(values, docsWithValue, i - 1, i) <= 0;
+        }
+        if (sorted) {
+            return null;
+        }
+
+        new InPlaceMergeSorter() {
+            @Override
+            protected int compare(int i, int j) {
+                return NumericFieldSorter.this.compare(values, docsWithValue, newToOld[i], newToOld[j]);
+            }
+
+            @Override
+            protected void swap(int i, int j) {
+                final int tmp = newToOld[i];
+                newToOld[i] = newToOld[j];
+                newToOld[j] = tmp;
+            }
+        }.sort(0, maxDoc);
+
+        final int[] oldToNew = new int[maxDoc];
+        for (int i = 0; i < maxDoc; ++i) {
+            oldToNew[newToOld[i]] = i;
+        }
+        return new DocMap() {
+            @Override
+            public int oldToNew(int docID) {
+                return oldToNew[docID];
+            }
+
+            @Override
+            public int newToOld(int docID) {
+                return newToOld[docID];
+            }
+
+            @Override
+            public int size() {
+                return maxDoc;
+            }
+        };
+    }
+
+    private int compare(long[] values, FixedBitSet docsWithValue, int doc1, int doc2) {
+        final boolean hasValue1 = docsWithValue.get(doc1);
+        final boolean hasValue2 = docsWithValue.get(doc2);
+        if (!hasValue1 || !hasValue2) {
+            // missing values sort last
+            return hasValue1 == hasValue2 ? 0 : (hasValue1 ? -1 : 1);
+        }
+        final long value1 = values[doc1];
+        final long value2 = values[doc2];
+        final int cmp = value1 < value2 ? -1 : (value1 == value2 ? 0 : 1);
+        return reverse ? -cmp : cmp;
+    }
+
+    @Override
+    public String getID() {
+        return "NumericField(" + field + "," + (reverse ? "desc" : "asc") + ")";
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.percolator;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queries.TermFilter;
 import org.apache.lucene.search.Query;
@@ -53,7 +54,10 @@ import org.elasticsearch.index.shard.service.IndexShard;
 import org.elasticsearch.indices.IndicesLifecycle;
 import org.elasticsearch.percolator.PercolatorService;
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -77,6 +81,7 @@ public class PercolatorQueriesRegistry extends AbstractIndexShardComponent {
     private final ShardPercolateService shardPercolateService;
 
     private final ConcurrentMap<HashedBytesRef, Query> percolateQueries = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
+    private final QueryTermsIndex queryTermsIndex = new QueryTermsIndex();
     private final ShardLifecycleListener shardLifecycleListener = new ShardLifecycleListener();
     private final RealTimePercolatorOperationListener realTimePercolatorOperationListener = new RealTimePercolatorOperationListener();
     private final PercolateTypeListener percolateTypeListener = new PercolateTypeListener();
@@ -103,6 +108,25 @@ public class PercolatorQueriesRegistry extends AbstractIndexShardComponent {
         return percolateQueries;
     }
 
+    /**
+     * Return the registered queries that may match the documents of <code>reader</code>. Queries which require terms
+     * that none of the documents have are left out, all other queries need to be verified.
+     */
+    public Map<HashedBytesRef, Query> candidateQueries(IndexReader reader) throws IOException {
+        if (queryTermsIndex.analyzedQueries() == 0) {
+            return percolateQueries;
+        }
+        final Set<HashedBytesRef> candidates = queryTermsIndex.candidates(reader);
+        final Map<HashedBytesRef, Query> candidateQueries = new HashMap<HashedBytesRef, Query>(candidates.size());
+        for (HashedBytesRef id : candidates) {
+            final Query query = percolateQueries.get(id);
+            if (query != null) {
+                candidateQueries.put(id, query);
+            }
+        }
+        return candidateQueries;
+    }
+
     public void close() {
         mapperService.removeTypeListener(percolateTypeListener);
         indicesLifecycle.removeListener(shardLifecycleListener);
@@ -112,6 +136,7 @@ public class PercolatorQueriesRegistry extends AbstractIndexShardComponent {
 
     public void clear() {
         percolateQueries.clear();
+        queryTermsIndex.clear();
     }
 
     void enableRealTimePercolator() {
@@ -129,6 +154,7 @@ public class PercolatorQueriesRegistry extends AbstractIndexShardComponent {
     public void addPercolateQuery(String idAsString, BytesReference source) {
         Query newquery = parsePercolatorDocument(idAsString, source);
         HashedBytesRef id = new HashedBytesRef(new BytesRef(idAsString));
+        queryTermsIndex.add(id, newquery);
         Query previousQuery = percolateQueries.put(id, newquery);
         shardPercolateService.addedQuery(id, previousQuery, newquery);
     }
@@ -136,6 +162,7 @@ public class PercolatorQueriesRegistry extends AbstractIndexShardComponent {
     public void removePercolateQuery(String idAsString) {
         HashedBytesRef id = new HashedBytesRef(idAsString);
         Query query = percolateQueries.remove(id);
+        queryTermsIndex.remove(id);
         if (query != null) {
             shardPercolateService.removedQuery(id, query);
         }
@@ -267,6 +294,7 @@ public class PercolatorQueriesRegistry extends AbstractIndexShardComponent {
                     searcher.searcher().search(query, queryCollector);
                     Map<HashedBytesRef, Query> queries = queryCollector.queries();
                     for (Map.Entry<HashedBytesRef, Query> entry : queries.entrySet()) {
+                        queryTermsIndex.add(entry.getKey(), entry.getValue());
                         Query previousQuery = percolateQueries.put(entry.getKey(), entry.getValue());
                         shardPercolateService.addedQuery(entry.getKey(), previousQuery, entry.getValue());
                     }
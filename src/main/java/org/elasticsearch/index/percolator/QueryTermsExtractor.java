@@ -0,0 +1,285 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.percolator;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queries.FilterClause;
+import org.apache.lucene.queries.TermFilter;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.spans.*;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.lucene.search.AndFilter;
+import org.elasticsearch.common.lucene.search.OrFilter;
+import org.elasticsearch.common.lucene.search.XBooleanFilter;
+import org.elasticsearch.common.lucene.search.XFilteredQuery;
+import org.elasticsearch.common.lucene.search.function.FunctionScoreQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts from a percolator query the terms and fields that a document must have for the query to match it. A
+ * document which has none of the extracted terms and none of the extracted fields can't match the query.
+ * <p/>
+ * Queries (or parts of queries) which are not understood are not analyzed, in which case the query needs to be verified
+ * against every document.
+ */
+public final class QueryTermsExtractor {
+
+    /**
+     * A document matches a query only if it contains one of {@link #terms()} or any term of one of {@link #fields()}.
+     */
+    public static final class RequiredTerms {
+
+        private final Set<Term> terms;
+        private final Set<String> fields;
+
+        RequiredTerms(Set<Term> terms, Set<String> fields) {
+            this.terms = terms;
+            this.fields = fields;
+        }
+
+        public Set<Term> terms() {
+            return terms;
+        }
+
+        public Set<String> fields() {
+            return fields;
+        }
+
+        // whether this set of required terms is a worse pre-selection than other
+        boolean worseThan(RequiredTerms other) {
+            // requiring a field is much weaker than requiring a term
+            if (fields.isEmpty() != other.fields.isEmpty()) {
+                return !fields.isEmpty();
+            }
+            return terms.size() + fields.size() > other.terms.size() + other.fields.size();
+        }
+
+        static RequiredTerms union(List<RequiredTerms> requiredTerms) {
+            final Set<Term> terms = new HashSet<Term>();
+            final Set<String> fields = new HashSet<String>();
+            for (RequiredTerms r : requiredTerms) {
+                terms.addAll(r.terms);
+                fields.addAll(r.fields);
+            }
+            return new RequiredTerms(terms, fields);
+        }
+
+        static RequiredTerms term(Term term) {
+            final Set<Term> terms = new HashSet<Term>();
+            terms.add(term);
+            return new RequiredTerms(terms, new HashSet<String>());
+        }
+
+        static RequiredTerms field(String field) {
+            final Set<String> fields = new HashSet<String>();
+            fields.add(field);
+            return new RequiredTerms(new HashSet<Term>(), fields);
+        }
+    }
+
+    private QueryTermsExtractor() {
+    }
+
+    /**
+     * Return the terms that a document must have to match <code>query</code>, or <tt>null</tt> if the query can't be
+     * analyzed.
+     */
+    @Nullable
+    public static RequiredTerms extract(Query query) {
+        final RequiredTerms requiredTerms = extractQuery(query);
+        if (requiredTerms == null || (requiredTerms.terms.isEmpty() && requiredTerms.fields.isEmpty())) {
+            return null;
+        }
+        return requiredTerms;
+    }
+
+    private static RequiredTerms extractQuery(Query query) {
+        if (query instanceof TermQuery) {
+            return RequiredTerms.term(((TermQuery) query).getTerm());
+        } else if (query instanceof BooleanQuery) {
+            return extractBoolean(((BooleanQuery) query).clauses());
+        } else if (query instanceof PhraseQuery) {
+            // all terms are required, the longest one is likely the least frequent one
+            Term longest = null;
+            for (Term term : ((PhraseQuery) query).getTerms()) {
+                if (longest == null || term.bytes().length > longest.bytes().length) {
+                    longest = term;
+                }
+            }
+            return longest == null ? null : RequiredTerms.term(longest);
+        } else if (query instanceof MultiPhraseQuery) {
+            // one of the terms of every position is required
+            RequiredTerms best = null;
+            for (Term[] terms : ((MultiPhraseQuery) query).getTermArrays()) {
+                final Set<Term> position = new HashSet<Term>();
+                for (Term term : terms) {
+                    position.add(term);
+                }
+                final RequiredTerms requiredTerms = new RequiredTerms(position, new HashSet<String>());
+                if (best == null || best.worseThan(requiredTerms)) {
+                    best = requiredTerms;
+                }
+            }
+            return best;
+        } else if (query instanceof MultiTermQuery) {
+            // prefix, wildcard, fuzzy, regexp and range queries, including numeric ranges: the document needs at least
+            // one term in the field
+            return RequiredTerms.field(((MultiTermQuery) query).getField());
+        } else if (query instanceof DisjunctionMaxQuery) {
+            return extractDisjunction(((DisjunctionMaxQuery) query).getDisjuncts());
+        } else if (query instanceof FilteredQuery) {
+            return extractQuery(((FilteredQuery) query).getQuery());
+        } else if (query instanceof XFilteredQuery) {
+            return extractQuery(((XFilteredQuery) query).getQuery());
+        } else if (query instanceof ConstantScoreQuery) {
+            final ConstantScoreQuery constantScoreQuery = (ConstantScoreQuery) query;
+            if (constantScoreQuery.getQuery() != null) {
+                return extractQuery(constantScoreQuery.getQuery());
+            }
+            return extractFilter(constantScoreQuery.getFilter());
+        } else if (query instanceof FunctionScoreQuery) {
+            return extractQuery(((FunctionScoreQuery) query).getSubQuery());
+        } else if (query instanceof SpanTermQuery) {
+            return RequiredTerms.term(((SpanTermQuery) query).getTerm());
+        } else if (query instanceof SpanNearQuery) {
+            return extractConjunction(((SpanNearQuery) query).getClauses());
+        } else if (query instanceof SpanOrQuery) {
+            return extractDisjunction(((SpanOrQuery) query).getClauses());
+        } else if (query instanceof SpanFirstQuery) {
+            return extractQuery(((SpanFirstQuery) query).getMatch());
+        } else if (query instanceof SpanNotQuery) {
+            return extractQuery(((SpanNotQuery) query).getInclude());
+        }
+        return null;
+    }
+
+    private static RequiredTerms extractBoolean(List<BooleanClause> clauses) {
+        RequiredTerms best = null;
+        boolean hasRequiredClauses = false;
+        for (BooleanClause clause : clauses) {
+            if (clause.isRequired()) {
+                hasRequiredClauses = true;
+                // any required clause is enough, pick the most selective one
+                final RequiredTerms requiredTerms = extractQuery(clause.getQuery());
+                if (requiredTerms != null && (best == null || best.worseThan(requiredTerms))) {
+                    best = requiredTerms;
+                }
+            }
+        }
+        if (hasRequiredClauses) {
+            return best;
+        }
+        // only optional and prohibited clauses: at least one optional clause needs to match
+        final List<RequiredTerms> optional = new ArrayList<RequiredTerms>();
+        for (BooleanClause clause : clauses) {
+            if (clause.getOccur() == BooleanClause.Occur.SHOULD) {
+                final RequiredTerms requiredTerms = extractQuery(clause.getQuery());
+                if (requiredTerms == null) {
+                    return null;
+                }
+                optional.add(requiredTerms);
+            }
+        }
+        return optional.isEmpty() ? null : RequiredTerms.union(optional);
+    }
+
+    private static RequiredTerms extractConjunction(Query[] queries) {
+        RequiredTerms best = null;
+        for (Query query : queries) {
+            final RequiredTerms requiredTerms = extractQuery(query);
+            if (requiredTerms != null && (best == null || best.worseThan(requiredTerms))) {
+                best = requiredTerms;
+            }
+        }
+        return best;
+    }
+
+    private static RequiredTerms extractDisjunction(Iterable<? extends Query> queries) {
+        final List<RequiredTerms> disjuncts = new ArrayList<RequiredTerms>();
+        for (Query query : queries) {
+            final RequiredTerms requiredTerms = extractQuery(query);
+            if (requiredTerms == null) {
+                return null;
+            }
+            disjuncts.add(requiredTerms);
+        }
+        return disjuncts.isEmpty() ? null : RequiredTerms.union(disjuncts);
+    }
+
+    private static RequiredTerms extractDisjunction(Query[] queries) {
+        return extractDisjunction(Arrays.asList(queries));
+    }
+
+    private static RequiredTerms extractFilter(Filter filter) {
+        if (filter instanceof TermFilter) {
+            return RequiredTerms.term(((TermFilter) filter).getTerm());
+        } else if (filter instanceof XBooleanFilter) {
+            RequiredTerms best = null;
+            boolean hasRequiredClauses = false;
+            final List<RequiredTerms> optional = new ArrayList<RequiredTerms>();
+            boolean optionalAnalyzed = true;
+            for (FilterClause clause : (XBooleanFilter) filter) {
+                if (clause.getOccur() == BooleanClause.Occur.MUST) {
+                    hasRequiredClauses = true;
+                    final RequiredTerms requiredTerms = extractFilter(clause.getFilter());
+                    if (requiredTerms != null && (best == null || best.worseThan(requiredTerms))) {
+                        best = requiredTerms;
+                    }
+                } else if (clause.getOccur() == BooleanClause.Occur.SHOULD && optionalAnalyzed) {
+                    final RequiredTerms requiredTerms = extractFilter(clause.getFilter());
+                    if (requiredTerms == null) {
+                        optionalAnalyzed = false;
+                    } else {
+                        optional.add(requiredTerms);
+                    }
+                }
+            }
+            if (hasRequiredClauses) {
+                return best;
+            }
+            return optionalAnalyzed && !optional.isEmpty() ? RequiredTerms.union(optional) : null;
+        } else if (filter instanceof AndFilter) {
+            RequiredTerms best = null;
+            for (Filter f : ((AndFilter) filter).filters()) {
+                final RequiredTerms requiredTerms = extractFilter(f);
+                if (requiredTerms != null && (best == null || best.worseThan(requiredTerms))) {
+                    best = requiredTerms;
+                }
+            }
+            return best;
+        } else if (filter instanceof OrFilter) {
+            final List<RequiredTerms> disjuncts = new ArrayList<RequiredTerms>();
+            for (Filter f : ((OrFilter) filter).filters()) {
+                final RequiredTerms requiredTerms = extractFilter(f);
+                if (requiredTerms == null) {
+                    return null;
+                }
+                disjuncts.add(requiredTerms);
+            }
+            return disjuncts.isEmpty() ? null : RequiredTerms.union(disjuncts);
+        }
+        return null;
+    }
+
+}
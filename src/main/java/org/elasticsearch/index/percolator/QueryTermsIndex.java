@@ -0,0 +1,166 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.percolator;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.lucene.HashedBytesRef;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An in-memory inverted index from the terms and fields that percolator queries require (see {@link QueryTermsExtractor})
+ * to the ids of these queries. It allows to select, for a given document, the queries which may match the document
+ * without running all registered queries.
+ * <p/>
+ * Updates are serialized but lookups don't need to lock.
+ */
+public final class QueryTermsIndex {
+
+    private final ConcurrentMap<String, ConcurrentMap<BytesRef, Set<HashedBytesRef>>> terms = ConcurrentCollections.newConcurrentMap();
+    private final ConcurrentMap<String, Set<HashedBytesRef>> fields = ConcurrentCollections.newConcurrentMap();
+    // queries which could not be analyzed, they always need to be verified
+    private final Set<HashedBytesRef> unanalyzed = ConcurrentCollections.newConcurrentSet();
+    // the required terms that have been indexed for each query, only accessed under lock
+    private final Map<HashedBytesRef, QueryTermsExtractor.RequiredTerms> registered = new HashMap<HashedBytesRef, QueryTermsExtractor.RequiredTerms>();
+
+    /**
+     * Index the terms that <code>query</code> requires, replacing those of the query that was registered with the same
+     * id, if any.
+     */
+    public synchronized void add(HashedBytesRef id, Query query) {
+        remove(id);
+        final QueryTermsExtractor.RequiredTerms requiredTerms = QueryTermsExtractor.extract(query);
+        if (requiredTerms == null) {
+            unanalyzed.add(id);
+            return;
+        }
+        for (Term term : requiredTerms.terms()) {
+            ConcurrentMap<BytesRef, Set<HashedBytesRef>> fieldTerms = terms.get(term.field());
+            if (fieldTerms == null) {
+                fieldTerms = ConcurrentCollections.newConcurrentMap();
+                terms.put(term.field(), fieldTerms);
+            }
+            Set<HashedBytesRef> ids = fieldTerms.get(term.bytes());
+            if (ids == null) {
+                ids = ConcurrentCollections.newConcurrentSet();
+                fieldTerms.put(BytesRef.deepCopyOf(term.bytes()), ids);
+            }
+            ids.add(id);
+        }
+        for (String field : requiredTerms.fields()) {
+            Set<HashedBytesRef> ids = fields.get(field);
+            if (ids == null) {
+                ids = ConcurrentCollections.newConcurrentSet();
+                fields.put(field, ids);
+            }
+            ids.add(id);
+        }
+        registered.put(id, requiredTerms);
+    }
+
+    /**
+     * Remove the terms of the query with the given id.
+     */
+    public synchronized void remove(HashedBytesRef id) {
+        if (unanalyzed.remove(id)) {
+            return;
+        }
+        final QueryTermsExtractor.RequiredTerms requiredTerms = registered.remove(id);
+        if (requiredTerms == null) {
+            return;
+        }
+        for (Term term : requiredTerms.terms()) {
+            final ConcurrentMap<BytesRef, Set<HashedBytesRef>> fieldTerms = terms.get(term.field());
+            final Set<HashedBytesRef> ids = fieldTerms.get(term.bytes());
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                fieldTerms.remove(term.bytes());
+                if (fieldTerms.isEmpty()) {
+                    terms.remove(term.field());
+                }
+            }
+        }
+        for (String field : requiredTerms.fields()) {
+            final Set<HashedBytesRef> ids = fields.get(field);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                fields.remove(field);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        terms.clear();
+        fields.clear();
+        unanalyzed.clear();
+        registered.clear();
+    }
+
+    /**
+     * Return the number of queries that have been analyzed.
+     */
+    public synchronized int analyzedQueries() {
+        return registered.size();
+    }
+
+    /**
+     * Return the ids of the queries that may match the documents of <code>reader</code>: the queries that require a
+     * term or a field that one of the documents has, as well as the queries that could not be analyzed.
+     */
+    public Set<HashedBytesRef> candidates(IndexReader reader) throws IOException {
+        final Set<HashedBytesRef> candidates = new HashSet<HashedBytesRef>(unanalyzed);
+        for (AtomicReaderContext context : reader.leaves()) {
+            final Fields readerFields = context.reader().fields();
+            if (readerFields == null) {
+                continue;
+            }
+            for (String field : readerFields) {
+                final Set<HashedBytesRef> fieldIds = fields.get(field);
+                if (fieldIds != null) {
+                    candidates.addAll(fieldIds);
+                }
+                final Map<BytesRef, Set<HashedBytesRef>> fieldTerms = terms.get(field);
+                if (fieldTerms == null) {
+                    continue;
+                }
+                final Terms readerTerms = readerFields.terms(field);
+                if (readerTerms == null) {
+                    continue;
+                }
+                final TermsEnum termsEnum = readerTerms.iterator(null);
+                for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                    final Set<HashedBytesRef> ids = fieldTerms.get(term);
+                    if (ids != null) {
+                        candidates.addAll(ids);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+}
@@ -142,6 +142,8 @@ public class FuzzyLikeThisFieldQueryParser implements QueryParser {
             }
         }
 
+        // the query keeps the result of its first rewrite, which depends on the reader, it can't be reused
+        parseContext.markAsNotCacheable();
         FuzzyLikeThisQuery fuzzyLikeThisQuery = new FuzzyLikeThisQuery(maxNumTerms, analyzer);
         fuzzyLikeThisQuery.addTerms(likeText, fieldName, fuzziness.asSimilarity(), prefixLength);
         fuzzyLikeThisQuery.setBoost(boost);
@@ -122,6 +122,8 @@ public class FuzzyLikeThisQueryParser implements QueryParser {
             analyzer = parseContext.mapperService().searchAnalyzer();
         }
 
+        // the query keeps the result of its first rewrite, which depends on the reader, it can't be reused
+        parseContext.markAsNotCacheable();
         FuzzyLikeThisQuery query = new FuzzyLikeThisQuery(maxNumTerms, analyzer);
         if (fields == null) {
             fields = Lists.newArrayList(parseContext.defaultField());
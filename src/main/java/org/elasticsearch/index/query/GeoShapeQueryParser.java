@@ -112,6 +112,8 @@ public class GeoShapeQueryParser implements QueryParser {
                             } else if (type == null) {
                                 throw new QueryParsingException(parseContext.index(), "Type for indexed shape not provided");
                             }
+                            // the indexed shape may change, don't reuse the parsed query
+                            parseContext.markAsNotCacheable();
                             shape = fetchService.fetch(id, type, index, shapePath);
                         } else {
                             throw new QueryParsingException(parseContext.index(), "[geo_shape] query does not support [" + currentFieldName + "]");
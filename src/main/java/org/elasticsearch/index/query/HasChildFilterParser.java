@@ -137,7 +137,7 @@ public class HasChildFilterParser implements FilterParser {
 
         Filter nonNestedDocsFilter = null;
         if (parentDocMapper.hasNestedObjects()) {
-            nonNestedDocsFilter = parseContext.cacheFilter(NonNestedDocsFilter.INSTANCE, null);
+            nonNestedDocsFilter = parseContext.fixedBitSetFilter(NonNestedDocsFilter.INSTANCE);
         }
 
         Filter parentFilter = parseContext.cacheFilter(parentDocMapper.typeFilter(), null);
@@ -147,6 +147,8 @@ public class HasChildFilterParser implements FilterParser {
             parseContext.addNamedFilter(filterName, new CustomQueryWrappingFilter(childrenConstantScoreQuery));
         }
 
+        // the query depends on the search request and keeps state while it is executed, it can't be reused
+        parseContext.markAsNotCacheable();
         boolean deleteByQuery = "delete_by_query".equals(SearchContext.current().source());
         if (deleteByQuery) {
             return new DeleteByQueryWrappingFilter(childrenConstantScoreQuery);
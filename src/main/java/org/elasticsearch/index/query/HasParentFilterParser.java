@@ -164,6 +164,8 @@ public class HasParentFilterParser implements FilterParser {
             parseContext.addNamedFilter(filterName, new CustomQueryWrappingFilter(parentConstantScoreQuery));
         }
 
+        // the query depends on the search request and keeps state while it is executed, it can't be reused
+        parseContext.markAsNotCacheable();
         boolean deleteByQuery = "delete_by_query".equals(SearchContext.current().source());
         if (deleteByQuery) {
             return new DeleteByQueryWrappingFilter(parentConstantScoreQuery);
@@ -159,6 +159,8 @@ public class HasParentQueryParser implements QueryParser {
         }
         Filter childrenFilter = parseContext.cacheFilter(new NotFilter(parentFilter), null);
 
+        // the query depends on the search request and keeps state while it is executed, it can't be reused
+        parseContext.markAsNotCacheable();
         boolean deleteByQuery = "delete_by_query".equals(SearchContext.current().source());
         Query query;
         if (!deleteByQuery && score) {
@@ -31,6 +31,7 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.search.Queries;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentParser;
@@ -38,6 +39,8 @@ import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.analysis.AnalysisService;
 import org.elasticsearch.index.cache.IndexCache;
+import org.elasticsearch.index.cache.query.parsed.ParsedQueryCache;
+import org.elasticsearch.index.cache.query.parsed.ShardParsedQueryCache;
 import org.elasticsearch.index.engine.IndexEngine;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
 import org.elasticsearch.index.mapper.MapperService;
@@ -46,6 +49,7 @@ import org.elasticsearch.index.settings.IndexSettings;
 import org.elasticsearch.index.similarity.SimilarityService;
 import org.elasticsearch.indices.query.IndicesQueriesRegistry;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 import java.util.EnumSet;
@@ -97,6 +101,9 @@ public class IndexQueryParserService extends AbstractIndexComponent {
     private boolean queryStringLenient;
     private final boolean strict;
 
+    // null if disabled
+    private final ParsedQueryCache parsedQueryCache;
+
     @Inject
     public IndexQueryParserService(Index index, @IndexSettings Settings indexSettings,
                                    IndicesQueriesRegistry indicesQueriesRegistry, CacheRecycler cacheRecycler,
@@ -119,6 +126,8 @@ public class IndexQueryParserService extends AbstractIndexComponent {
         this.queryStringLenient = indexSettings.getAsBoolean("index.query_string.lenient", false);
         this.strict = indexSettings.getAsBoolean("index.query.parse.strict", false);
 
+        this.parsedQueryCache = indexCache.parsedQueryCache().enabled() ? indexCache.parsedQueryCache() : null;
+
         List<QueryParser> queryParsers = newArrayList();
         if (namedQueryParsers != null) {
             Map<String, Settings> queryParserGroups = indexSettings.getGroups(IndexQueryParserService.Defaults.QUERY_PREFIX);
@@ -226,6 +235,9 @@ public class IndexQueryParserService extends AbstractIndexComponent {
     public ParsedQuery parse(BytesReference source) throws ElasticsearchException {
         XContentParser parser = null;
         try {
+            if (parsedQueryCache != null) {
+                return (ParsedQuery) parseCacheable(source, true, false);
+            }
             parser = XContentFactory.xContent(source).createParser(source);
             return parse(cache.get(), parser);
         } catch (QueryParsingException e) {
@@ -257,6 +269,9 @@ public class IndexQueryParserService extends AbstractIndexComponent {
 
     public ParsedQuery parse(XContentParser parser) {
         try {
+            if (parsedQueryCache != null && parser.currentToken() == XContentParser.Token.START_OBJECT) {
+                return (ParsedQuery) parseCacheable(copyCurrentStructure(parser), false, false);
+            }
             return parse(cache.get(), parser);
         } catch (IOException e) {
             throw new QueryParsingException(index, "Failed to parse", e);
@@ -268,6 +283,9 @@ public class IndexQueryParserService extends AbstractIndexComponent {
      */
     @Nullable
     public ParsedFilter parseInnerFilter(XContentParser parser) throws IOException {
+        if (parsedQueryCache != null && parser.currentToken() == XContentParser.Token.START_OBJECT) {
+            return (ParsedFilter) parseCacheable(copyCurrentStructure(parser), false, true);
+        }
         QueryParseContext context = cache.get();
         context.reset(parser);
         Filter filter = context.parseInnerFilter();
@@ -294,6 +312,8 @@ public class IndexQueryParserService extends AbstractIndexComponent {
                 if (token == XContentParser.Token.FIELD_NAME) {
                     String fieldName = parser.currentName();
                     if ("query".equals(fieldName)) {
+                        // move to the start of the query so that it can be looked up in the parsed query cache
+                        parser.nextToken();
                         return parse(parser);
                     } else if ("query_binary".equals(fieldName) || "queryBinary".equals(fieldName)) {
                         byte[] querySource = parser.binaryValue();
@@ -313,6 +333,56 @@ public class IndexQueryParserService extends AbstractIndexComponent {
         throw new QueryParsingException(index(), "Required query is missing");
     }
 
+    private static BytesReference copyCurrentStructure(XContentParser parser) throws IOException {
+        XContentBuilder builder = XContentFactory.contentBuilder(parser.contentType());
+        builder.copyCurrentStructure(parser);
+        return builder.bytes();
+    }
+
+    /**
+     * Parses a query, or an inner filter, from the given source and reuses the result of a previous parsing of the same
+     * source against the same types if possible.
+     *
+     * @param copySource whether the source needs to be copied before it is cached, because it may be reused by the caller
+     */
+    @Nullable
+    private Object parseCacheable(BytesReference source, boolean copySource, boolean filter) throws IOException {
+        final boolean cacheable = ParsedQueryCache.isCacheable(source);
+        final String[] types = QueryParseContext.getTypes();
+        // read the version first so that a concurrent mapping change invalidates what we are about to parse
+        final long mappingVersion = mapperService.mappingVersion();
+        // entries are accounted to the shard whose search request parses them
+        final SearchContext searchContext = SearchContext.current();
+        final ShardParsedQueryCache shardCache = searchContext == null || searchContext.indexShard() == null ? null : searchContext.indexShard().parsedQueryCache();
+        if (cacheable) {
+            Object parsed = parsedQueryCache.get(new ParsedQueryCache.Key(source, types, filter), mappingVersion, shardCache);
+            if (parsed != null) {
+                return parsed;
+            }
+        }
+
+        XContentParser parser = XContentFactory.xContent(source).createParser(source);
+        try {
+            QueryParseContext context = cache.get();
+            Object parsed;
+            if (filter) {
+                context.reset(parser);
+                Filter parsedFilter = context.parseInnerFilter();
+                parsed = parsedFilter == null ? null : new ParsedFilter(parsedFilter, context.copyNamedFilters());
+            } else {
+                parsed = parse(context, parser);
+            }
+            if (parsed != null && cacheable && context.isCacheable()) {
+                ParsedQueryCache.Key key = new ParsedQueryCache.Key(copySource ? source.copyBytesArray() : source,
+                        types == null ? null : types.clone(), filter);
+                parsedQueryCache.put(key, mappingVersion, parsed, shardCache);
+            }
+            return parsed;
+        } finally {
+            parser.close();
+        }
+    }
+
     private ParsedQuery parse(QueryParseContext parseContext, XContentParser parser) throws IOException, QueryParsingException {
         parseContext.reset(parser);
         if (strict) {
@@ -85,6 +85,7 @@ public class QueryParseContext {
 
     private EnumSet<ParseField.Flag> parseFlags = ParseField.EMPTY_FLAGS;
 
+    private boolean cacheable = true;
 
     public QueryParseContext(Index index, IndexQueryParserService indexQueryParser) {
         this.index = index;
@@ -104,6 +105,22 @@ public class QueryParseContext {
         this.lookup = null;
         this.parser = jp;
         this.namedFilters.clear();
+        this.cacheable = true;
+    }
+
+    /**
+     * Marks the query being parsed as one that may not be reused by other requests, for example because it depends
+     * on the current time or on the search request.
+     */
+    public void markAsNotCacheable() {
+        this.cacheable = false;
+    }
+
+    /**
+     * Whether the query being parsed may be reused by other requests.
+     */
+    public boolean isCacheable() {
+        return cacheable;
     }
 
     public Index index() {
@@ -174,6 +191,15 @@ public class QueryParseContext {
         return indexQueryParser.indexCache.filter().cache(filter);
     }
 
+    /**
+     * Wraps the given filter so that its doc id sets are fixed bit sets loaded from the
+     * {@link org.elasticsearch.index.cache.fixedbitset.FixedBitSetFilterCache}, to be used for structural filters
+     * such as the parent filters of block joins.
+     */
+    public Filter fixedBitSetFilter(Filter filter) {
+        return indexQueryParser.indexCache.fixedBitSetFilterCache().getFixedBitSetFilter(filter);
+    }
+
     public void addNamedFilter(String name, Filter filter) {
         namedFilters.put(name, filter);
     }
@@ -322,6 +348,8 @@ public class QueryParseContext {
     private SearchLookup lookup = null;
 
     public SearchLookup lookup() {
+        // scripts are bound to the lookup of the search request
+        markAsNotCacheable();
         SearchContext current = SearchContext.current();
         if (current != null) {
             return current.lookup();
@@ -333,6 +361,7 @@ public class QueryParseContext {
     }
 
     public long nowInMillis() {
+        markAsNotCacheable();
         SearchContext current = SearchContext.current();
         if (current != null) {
             return current.nowInMillis();
@@ -132,6 +132,8 @@ public class TermsFilterParser implements FilterParser {
                 if (lookupPath == null) {
                     throw new QueryParsingException(parseContext.index(), "[terms] filter lookup element requires specifying the path");
                 }
+                // the looked up document may change, don't reuse the parsed filter
+                parseContext.markAsNotCacheable();
             } else if (token.isValue()) {
                 if ("execution".equals(currentFieldName)) {
                     execution = parser.text();
@@ -113,6 +113,8 @@ public class TopChildrenQueryParser implements QueryParser {
             return null;
         }
 
+        // the query depends on the search request and keeps state while it is executed, it can't be reused
+        parseContext.markAsNotCacheable();
         if ("delete_by_query".equals(SearchContext.current().source())) {
             throw new QueryParsingException(parseContext.index(), "[top_children] unsupported in delete_by_query api");
         }
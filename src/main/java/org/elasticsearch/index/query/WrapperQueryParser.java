@@ -20,9 +20,11 @@
 package org.elasticsearch.index.query;
 
 import org.apache.lucene.search.Query;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.cache.query.parsed.ParsedQueryCache;
 
 import java.io.IOException;
 
@@ -62,6 +64,10 @@ public class WrapperQueryParser implements QueryParser {
             final QueryParseContext context = new QueryParseContext(parseContext.index(), parseContext.indexQueryParser);
             context.reset(qSourceParser);
             Query result = context.parseInnerQuery();
+            // the wrapped source is parsed with its own context and is not visible to the scan of the outer source
+            if (!context.isCacheable() || !ParsedQueryCache.isCacheable(new BytesArray(querySource))) {
+                parseContext.markAsNotCacheable();
+            }
             parser.nextToken();
             return result;
         } finally {
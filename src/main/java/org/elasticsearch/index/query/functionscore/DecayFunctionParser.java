@@ -44,7 +44,6 @@ import org.elasticsearch.index.query.QueryParseContext;
 import org.elasticsearch.index.query.QueryParsingException;
 import org.elasticsearch.index.query.functionscore.gauss.GaussDecayFunctionBuilder;
 import org.elasticsearch.index.query.functionscore.gauss.GaussDecayFunctionParser;
-import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 
@@ -248,7 +247,7 @@ public abstract class DecayFunctionParser implements ScoreFunctionParser {
                 throw new ElasticsearchParseException("Parameter " + parameterName + " not supported!");
             }
         }
-        long origin = SearchContext.current().nowInMillis();
+        long origin = parseContext.nowInMillis();
         if (originString != null) {
             origin = dateFieldMapper.parseToMilliseconds(originString, parseContext);
         }
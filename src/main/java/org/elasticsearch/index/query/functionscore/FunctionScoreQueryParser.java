@@ -72,6 +72,9 @@ public class FunctionScoreQueryParser implements QueryParser {
     public Query parse(QueryParseContext parseContext) throws IOException, QueryParsingException {
         XContentParser parser = parseContext.parser();
 
+        // score functions keep per segment state while the query is executed, the query can't be shared between requests
+        parseContext.markAsNotCacheable();
+
         Query query = null;
         float boost = 1.0f;
 
@@ -72,6 +72,8 @@ public class RandomScoreFunctionParser implements ScoreFunctionParser {
             seed = parseContext.nowInMillis();
         }
 
+        // the seed is salted with the shard, which is not part of the key of parsed queries
+        parseContext.markAsNotCacheable();
         ShardId shardId = SearchContext.current().indexShard().shardId();
         seed = salt(seed, shardId.index().name(), shardId.id());
 
@@ -136,7 +136,6 @@ public class ChildrenQuery extends Query {
     @Override
     public Weight createWeight(IndexSearcher searcher) throws IOException {
         SearchContext searchContext = SearchContext.current();
-        searchContext.idCache().refresh(searchContext.searcher().getTopReaderContext().leaves());
 
         Recycler.V<ObjectFloatOpenHashMap<HashedBytesArray>> uidToScore = searchContext.cacheRecycler().objectFloatMap(-1);
         Recycler.V<ObjectIntOpenHashMap<HashedBytesArray>> uidToCount = null;
@@ -182,7 +181,7 @@ public class ChildrenQuery extends Query {
                 parentFilter = new TermFilter(new Term(UidFieldMapper.NAME, Uid.createUidAsBytes(parentType, id)));
             }
         } else if (size <= shortCircuitParentDocSet) {
-            parentFilter = new ParentIdsFilter(parentType, uidToScore.v().keys, uidToScore.v().allocated, nonNestedDocsFilter);
+            parentFilter = new ParentIdsFilter(searchContext.idCache(), parentType, uidToScore.v().keys, uidToScore.v().allocated);
         } else {
             parentFilter = new ApplyAcceptedDocsFilter(this.parentFilter);
         }
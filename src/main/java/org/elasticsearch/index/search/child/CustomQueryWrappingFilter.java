@@ -56,13 +56,16 @@ public class CustomQueryWrappingFilter extends Filter {
     @Override
     public DocIdSet getDocIdSet(final AtomicReaderContext context, final Bits acceptDocs) throws IOException {
         SearchContext searchContext = SearchContext.current();
-        if (weight == null) {
-            assert searcher == null;
-            IndexSearcher searcher = searchContext.searcher();
-            weight = searcher.createNormalizedWeight(query);
-            this.searcher = searcher;
-        } else {
-            assert searcher == SearchContext.current().searcher();
+        // the leaves of a shard may be searched concurrently, see ContextIndexSearcher#concurrentSlices
+        synchronized (this) {
+            if (weight == null) {
+                assert searcher == null;
+                IndexSearcher searcher = searchContext.searcher();
+                weight = searcher.createNormalizedWeight(query);
+                this.searcher = searcher;
+            } else {
+                assert searcher == SearchContext.current().searcher();
+            }
         }
 
         return new DocIdSet() {
@@ -76,7 +76,6 @@ public class ParentConstantScoreQuery extends Query {
     @Override
     public Weight createWeight(IndexSearcher searcher) throws IOException {
         SearchContext searchContext = SearchContext.current();
-        searchContext.idCache().refresh(searcher.getTopReaderContext().leaves());
         Recycler.V<ObjectOpenHashSet<HashedBytesArray>> parents = searchContext.cacheRecycler().hashSet(-1);
         ParentUidsCollector collector = new ParentUidsCollector(parents.v(), searchContext, parentType);
 
@@ -164,6 +163,9 @@ public class ParentConstantScoreQuery extends Query {
 
             private final ObjectOpenHashSet<HashedBytesArray> parents;
             private final IdReaderTypeCache idReaderTypeCache;
+            // children of the same parent are usually next to each other, so we remember the last parent we checked
+            private int lastParentOrd;
+            private boolean lastMatch;
 
             ChildrenDocIdIterator(DocIdSetIterator innerIterator, ObjectOpenHashSet<HashedBytesArray> parents, IdReaderTypeCache idReaderTypeCache) {
                 super(innerIterator);
@@ -173,7 +175,15 @@ public class ParentConstantScoreQuery extends Query {
 
             @Override
             protected boolean match(int doc) {
-                return parents.contains(idReaderTypeCache.parentIdByDoc(doc));
+                int parentOrd = idReaderTypeCache.parentOrdByDoc(doc);
+                if (parentOrd == 0) {
+                    return false;
+                }
+                if (parentOrd != lastParentOrd) {
+                    lastMatch = parents.contains(idReaderTypeCache.parentIdByOrd(parentOrd));
+                    lastParentOrd = parentOrd;
+                }
+                return lastMatch;
             }
 
         }
@@ -34,6 +34,9 @@ abstract class ParentIdCollector extends NoopCollector {
     protected final String type;
     protected final SearchContext context;
     private IdReaderTypeCache typeCache;
+    // children of the same parent are usually next to each other, so we remember the last parent id we resolved
+    private int lastParentOrd;
+    private HashedBytesArray lastParentId;
 
     protected ParentIdCollector(String parentType, SearchContext context) {
         this.type = parentType;
@@ -43,9 +46,13 @@ abstract class ParentIdCollector extends NoopCollector {
     @Override
     public final void collect(int doc) throws IOException {
         if (typeCache != null) {
-            HashedBytesArray parentIdByDoc = typeCache.parentIdByDoc(doc);
-            if (parentIdByDoc != null) {
-               collect(doc, parentIdByDoc);
+            int parentOrd = typeCache.parentOrdByDoc(doc);
+            if (parentOrd != 0) {
+                if (parentOrd != lastParentOrd) {
+                    lastParentId = typeCache.parentIdByOrd(parentOrd);
+                    lastParentOrd = parentOrd;
+                }
+                collect(doc, lastParentId);
             }
         }
     }
@@ -55,5 +62,7 @@ abstract class ParentIdCollector extends NoopCollector {
     @Override
     public void setNextReader(AtomicReaderContext readerContext) throws IOException {
         typeCache = context.idCache().reader(readerContext.reader()).type(type);
+        lastParentOrd = 0;
+        lastParentId = null;
     }
 }
@@ -20,18 +20,13 @@
 package org.elasticsearch.index.search.child;
 
 import org.apache.lucene.index.AtomicReaderContext;
-import org.apache.lucene.index.DocsEnum;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSet;
-import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.util.Bits;
-import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.common.bytes.HashedBytesArray;
-import org.elasticsearch.index.mapper.Uid;
-import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.index.cache.id.IdCache;
+import org.elasticsearch.index.cache.id.IdReaderTypeCache;
 
 import java.io.IOException;
 
@@ -39,77 +34,51 @@ import java.io.IOException;
  * Advantages over using this filter over Lucene's TermsFilter in the parent child context:
  * 1) Don't need to copy all values over to a list from the id cache and then
  *    copy all the ids values over to one continuous byte array. Should save a lot of of object creations and gcs..
- * 2) We filter docs by one field only.
+ * 2) Parent docs are looked up in the id cache of the segment rather than in the terms dictionary of the _uid field.
  * 3) We can directly reference to values that originate from the id cache.
  */
 final class ParentIdsFilter extends Filter {
 
-    private final BytesRef parentTypeBr;
+    private final IdCache idCache;
+    private final String parentType;
     private final Object[] keys;
     private final boolean[] allocated;
 
-    private final Filter nonNestedDocsFilter;
-
-    public ParentIdsFilter(String parentType, Object[] keys, boolean[] allocated, Filter nonNestedDocsFilter) {
-        this.nonNestedDocsFilter = nonNestedDocsFilter;
-        this.parentTypeBr = new BytesRef(parentType);
+    public ParentIdsFilter(IdCache idCache, String parentType, Object[] keys, boolean[] allocated) {
+        this.idCache = idCache;
+        this.parentType = parentType;
         this.keys = keys;
         this.allocated = allocated;
     }
 
     @Override
     public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
-        Terms terms = context.reader().terms(UidFieldMapper.NAME);
-        if (terms == null) {
+        IdReaderTypeCache typeCache = idCache.reader(context.reader()).type(parentType);
+        if (typeCache == null) {
             return null;
         }
 
-        TermsEnum termsEnum = terms.iterator(null);
-        BytesRef uidSpare = new BytesRef();
-        BytesRef idSpare = new BytesRef();
-
         if (acceptDocs == null) {
             acceptDocs = context.reader().getLiveDocs();
         }
 
-        FixedBitSet nonNestedDocs = null;
-        if (nonNestedDocsFilter != null) {
-            nonNestedDocs = (FixedBitSet) nonNestedDocsFilter.getDocIdSet(context, acceptDocs);
-        }
-
-        DocsEnum docsEnum = null;
         FixedBitSet result = null;
         for (int i = 0; i < allocated.length; i++) {
             if (!allocated[i]) {
                 continue;
             }
 
-            idSpare.bytes = ((HashedBytesArray) keys[i]).toBytes();
-            idSpare.length = idSpare.bytes.length;
-            Uid.createUidAsBytes(parentTypeBr, idSpare, uidSpare);
-            if (termsEnum.seekExact(uidSpare)) {
-                int docId;
-                docsEnum = termsEnum.docs(acceptDocs, docsEnum, DocsEnum.FLAG_NONE);
-                if (result == null) {
-                    docId = docsEnum.nextDoc();
-                    if (docId != DocIdSetIterator.NO_MORE_DOCS) {
-                        result = new FixedBitSet(context.reader().maxDoc());
-                    } else {
-                        continue;
-                    }
-                } else {
-                    docId = docsEnum.nextDoc();
-                    if (docId == DocIdSetIterator.NO_MORE_DOCS) {
-                        continue;
-                    }
-                }
-                if (nonNestedDocs != null && !nonNestedDocs.get(docId)) {
-                    docId = nonNestedDocs.nextSetBit(docId);
-                }
-                result.set(docId);
-                assert docsEnum.advance(docId + 1) == DocIdSetIterator.NO_MORE_DOCS : "DocId " + docId + " should have been the last one but docId " + docsEnum.docID() + " exists.";
+            // The id cache maps an id to the last document that has it, which is the live document if an older version
+            // has been deleted in the same segment and the root document if the parent has nested documents.
+            int docId = typeCache.docById((HashedBytesArray) keys[i]);
+            if (docId == -1 || (acceptDocs != null && !acceptDocs.get(docId))) {
+                continue;
+            }
+            if (result == null) {
+                result = new FixedBitSet(context.reader().maxDoc());
             }
+            result.set(docId);
         }
         return result;
     }
-}
\ No newline at end of file
+}
@@ -118,7 +118,6 @@ public class ParentQuery extends Query {
     @Override
     public Weight createWeight(IndexSearcher searcher) throws IOException {
         SearchContext searchContext = SearchContext.current();
-        searchContext.idCache().refresh(searchContext.searcher().getTopReaderContext().leaves());
         Recycler.V<ObjectFloatOpenHashMap<HashedBytesArray>> uidToScore = searchContext.cacheRecycler().objectFloatMap(-1);
         ParentUidCollector collector = new ParentUidCollector(uidToScore.v(), searchContext, parentType);
 
@@ -243,6 +242,11 @@ public class ParentQuery extends Query {
         private int currentChildDoc = -1;
         private float currentScore;
 
+        // children of the same parent are usually next to each other, so we remember the last parent we looked up
+        private int lastParentOrd;
+        private boolean lastMatch;
+        private float lastScore;
+
         ChildScorer(Weight weight, ObjectFloatOpenHashMap<HashedBytesArray> uidToScore, DocIdSetIterator childrenIterator, IdReaderTypeCache typeCache) {
             super(weight);
             this.uidToScore = uidToScore;
@@ -275,13 +279,7 @@ public class ParentQuery extends Query {
                     return currentChildDoc;
                 }
 
-                HashedBytesArray uid = typeCache.parentIdByDoc(currentChildDoc);
-                if (uid == null) {
-                    continue;
-                }
-                if (uidToScore.containsKey(uid)) {
-                    // Can use lget b/c uidToScore is only used by one thread at the time (via CacheRecycler)
-                    currentScore = uidToScore.lget();
+                if (matchParent()) {
                     return currentChildDoc;
                 }
             }
@@ -293,20 +291,31 @@ public class ParentQuery extends Query {
             if (currentChildDoc == DocIdSetIterator.NO_MORE_DOCS) {
                 return currentChildDoc;
             }
-            HashedBytesArray uid = typeCache.parentIdByDoc(currentChildDoc);
-            if (uid == null) {
-                return nextDoc();
-            }
-
-            if (uidToScore.containsKey(uid)) {
-                // Can use lget b/c uidToScore is only used by one thread at the time (via CacheRecycler)
-                currentScore = uidToScore.lget();
+            if (matchParent()) {
                 return currentChildDoc;
             } else {
                 return nextDoc();
             }
         }
 
+        private boolean matchParent() {
+            int parentOrd = typeCache.parentOrdByDoc(currentChildDoc);
+            if (parentOrd == 0) {
+                return false;
+            }
+            if (parentOrd != lastParentOrd) {
+                HashedBytesArray uid = typeCache.parentIdByOrd(parentOrd);
+                lastMatch = uidToScore.containsKey(uid);
+                if (lastMatch) {
+                    // Can use lget b/c uidToScore is only used by one thread at the time (via CacheRecycler)
+                    lastScore = uidToScore.lget();
+                }
+                lastParentOrd = parentOrd;
+            }
+            currentScore = lastScore;
+            return lastMatch;
+        }
+
         @Override
         public long cost() {
             return childrenIterator.cost();
@@ -107,7 +107,6 @@ public class TopChildrenQuery extends Query {
     public Weight createWeight(IndexSearcher searcher) throws IOException {
         Recycler.V<ObjectObjectOpenHashMap<Object, ParentDoc[]>> parentDocs = cacheRecycler.hashMap(-1);
         SearchContext searchContext = SearchContext.current();
-        searchContext.idCache().refresh(searchContext.searcher().getTopReaderContext().leaves());
 
         int parentHitsResolved;
         int requestedDocs = (searchContext.from() + searchContext.size());
@@ -39,10 +39,14 @@ public class GeoPolygonFilter extends Filter {
 
     private final GeoPoint[] points;
 
+    // built once per filter and shared by all segments
+    private final GeoPolygonGrid grid;
+
     private final IndexGeoPointFieldData indexFieldData;
 
     public GeoPolygonFilter(GeoPoint[] points, IndexGeoPointFieldData indexFieldData) {
         this.points = points;
+        this.grid = new GeoPolygonGrid(points);
         this.indexFieldData = indexFieldData;
     }
 
@@ -57,7 +61,7 @@ public class GeoPolygonFilter extends Filter {
     @Override
     public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptedDocs) throws IOException {
         final GeoPointValues values = indexFieldData.load(context).getGeoPointValues();
-        return new GeoPolygonDocIdSet(context.reader().maxDoc(), acceptedDocs, values, points);
+        return new GeoPolygonDocIdSet(context.reader().maxDoc(), acceptedDocs, values, grid);
     }
 
     @Override
@@ -67,12 +71,12 @@ public class GeoPolygonFilter extends Filter {
 
     public static class GeoPolygonDocIdSet extends MatchDocIdSet {
         private final GeoPointValues values;
-        private final GeoPoint[] points;
+        private final GeoPolygonGrid grid;
 
-        public GeoPolygonDocIdSet(int maxDoc, @Nullable Bits acceptDocs, GeoPointValues values, GeoPoint[] points) {
+        public GeoPolygonDocIdSet(int maxDoc, @Nullable Bits acceptDocs, GeoPointValues values, GeoPolygonGrid grid) {
             super(maxDoc, acceptDocs);
             this.values = values;
-            this.points = points;
+            this.grid = grid;
         }
 
         @Override
@@ -85,29 +89,11 @@ public class GeoPolygonFilter extends Filter {
             final int length = values.setDocument(doc);
             for (int i = 0; i < length; i++) {
                 GeoPoint point = values.nextValue();
-                if (pointInPolygon(points, point.lat(), point.lon())) {
+                if (grid.contains(point.lat(), point.lon())) {
                     return true;
                 }
             }
             return false;
         }
-
-        private static boolean pointInPolygon(GeoPoint[] points, double lat, double lon) {
-            int i;
-            int j = points.length - 1;
-            boolean inPoly = false;
-
-            for (i = 0; i < points.length; i++) {
-                if (points[i].lon() < lon && points[j].lon() >= lon
-                        || points[j].lon() < lon && points[i].lon() >= lon) {
-                    if (points[i].lat() + (lon - points[i].lon()) /
-                            (points[j].lon() - points[i].lon()) * (points[j].lat() - points[i].lat()) < lat) {
-                        inPoly = !inPoly;
-                    }
-                }
-                j = i;
-            }
-            return inPoly;
-        }
     }
 }
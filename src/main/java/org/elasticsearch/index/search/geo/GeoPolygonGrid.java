@@ -0,0 +1,217 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.search.geo;
+
+import com.carrotsearch.hppc.IntArrayList;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.geo.GeoPoint;
+
+/**
+ * A point-in-polygon test which is accelerated by a coarse grid over the bounding box of the polygon. Cells which
+ * don't intersect any edge of the polygon are either fully inside or fully outside of it and answer without looking
+ * at the edges. For the other cells, only the edges which may cross the ray of the point are tested: the ray goes
+ * south from the point, so these are the edges whose longitudes overlap the column of the cell and whose southernmost
+ * point is not in a row above the cell.
+ * <p/>
+ * The grid is built once per polygon and returns the same results as a full ray-casting over all edges.
+ */
+public final class GeoPolygonGrid {
+
+    private static final byte OUTSIDE = 0;
+    private static final byte INSIDE = 1;
+    private static final byte EDGE = 2;
+
+    private static final int MAX_SIZE = 256;
+
+    // the polygon is implicitly closed: edge i goes from vertex i-1 (or the last one if i == 0) to vertex i
+    private final double[] lats;
+    private final double[] lons;
+
+    private final double minLat, maxLat, minLon, maxLon;
+    private final int size;
+    private final double latScale, lonScale;
+
+    // the state of every cell, row by row
+    private final byte[] cells;
+    // the edges whose longitudes overlap every column, sorted by the row of their southernmost point
+    private final int[][] columnEdges;
+    // columnRowEnds[col][row] is the number of edges of the column whose southernmost point is in a row <= row
+    private final int[][] columnRowEnds;
+
+    public GeoPolygonGrid(GeoPoint[] points) {
+        if (points.length == 0) {
+            throw new ElasticsearchIllegalArgumentException("a polygon needs at least one point");
+        }
+        final int numEdges = points.length;
+        lats = new double[numEdges];
+        lons = new double[numEdges];
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numEdges; ++i) {
+            lats[i] = points[i].lat();
+            lons[i] = points[i].lon();
+            minLat = Math.min(minLat, lats[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            minLon = Math.min(minLon, lons[i]);
+            maxLon = Math.max(maxLon, lons[i]);
+        }
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLon = minLon;
+        this.maxLon = maxLon;
+
+        // about one edge per cell for polygons whose edges are evenly distributed
+        size = Math.max(1, Math.min(MAX_SIZE, (int) Math.ceil(Math.sqrt(numEdges))));
+        latScale = maxLat > minLat ? size / (maxLat - minLat) : 0;
+        lonScale = maxLon > minLon ? size / (maxLon - minLon) : 0;
+
+        cells = new byte[size * size];
+        final IntArrayList[] columns = new IntArrayList[size];
+        for (int col = 0; col < size; ++col) {
+            columns[col] = new IntArrayList();
+        }
+        for (int i = 0; i < numEdges; ++i) {
+            final int j = i == 0 ? numEdges - 1 : i - 1;
+            final int minCol = col(Math.min(lons[i], lons[j]));
+            final int maxCol = col(Math.max(lons[i], lons[j]));
+            final int minRow = row(Math.min(lats[i], lats[j]));
+            final int maxRow = row(Math.max(lats[i], lats[j]));
+            for (int col = minCol; col <= maxCol; ++col) {
+                columns[col].add(i);
+                for (int row = minRow; row <= maxRow; ++row) {
+                    cells[row * size + col] = EDGE;
+                }
+            }
+        }
+
+        // counting sort of the edges of every column by the row of their southernmost point
+        columnEdges = new int[size][];
+        columnRowEnds = new int[size][];
+        for (int col = 0; col < size; ++col) {
+            final IntArrayList column = columns[col];
+            final int[] rowEnds = new int[size];
+            for (int k = 0; k < column.size(); ++k) {
+                ++rowEnds[minRow(column.get(k))];
+            }
+            for (int row = 1; row < size; ++row) {
+                rowEnds[row] += rowEnds[row - 1];
+            }
+            final int[] edges = new int[column.size()];
+            final int[] offsets = new int[size];
+            for (int row = 1; row < size; ++row) {
+                offsets[row] = rowEnds[row - 1];
+            }
+            for (int k = 0; k < column.size(); ++k) {
+                final int edge = column.get(k);
+                edges[offsets[minRow(edge)]++] = edge;
+            }
+            columnEdges[col] = edges;
+            columnRowEnds[col] = rowEnds;
+        }
+
+        // cells which don't intersect any edge are entirely on one side of the polygon, classify them using their center
+        for (int row = 0; row < size; ++row) {
+            for (int col = 0; col < size; ++col) {
+                final int cell = row * size + col;
+                if (cells[cell] == EDGE) {
+                    continue;
+                }
+                final double lat = latScale == 0 ? minLat : minLat + (row + 0.5) / latScale;
+                final double lon = lonScale == 0 ? minLon : minLon + (col + 0.5) / lonScale;
+                if (row(lat) != row || col(lon) != col) {
+                    // rounding put the center in another cell, don't take any chance
+                    cells[cell] = EDGE;
+                } else {
+                    cells[cell] = crossEdges(col, row, lat, lon) ? INSIDE : OUTSIDE;
+                }
+            }
+        }
+    }
+
+    private int row(double lat) {
+        final int row = (int) ((lat - minLat) * latScale);
+        return row >= size ? size - 1 : row;
+    }
+
+    private int col(double lon) {
+        final int col = (int) ((lon - minLon) * lonScale);
+        return col >= size ? size - 1 : col;
+    }
+
+    private int minRow(int edge) {
+        final int j = edge == 0 ? lats.length - 1 : edge - 1;
+        return row(Math.min(lats[edge], lats[j]));
+    }
+
+    /**
+     * Return whether the given point is inside the polygon.
+     */
+    public boolean contains(double lat, double lon) {
+        if (!(lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon)) {
+            // the ray of a point outside of the bounding box crosses the polygon an even number of times
+            return false;
+        }
+        final int row = row(lat);
+        final int col = col(lon);
+        switch (cells[row * size + col]) {
+            case INSIDE:
+                return true;
+            case OUTSIDE:
+                return false;
+            default:
+                return crossEdges(col, row, lat, lon);
+        }
+    }
+
+    /**
+     * Ray-casting restricted to the edges which may cross the ray of a point of the given cell.
+     */
+    private boolean crossEdges(int col, int row, double lat, double lon) {
+        final int[] edges = columnEdges[col];
+        final int end = columnRowEnds[col][row];
+        boolean inPoly = false;
+        for (int k = 0; k < end; ++k) {
+            final int i = edges[k];
+            final int j = i == 0 ? lats.length - 1 : i - 1;
+            if (crosses(lats[i], lons[i], lats[j], lons[j], lat, lon)) {
+                inPoly = !inPoly;
+            }
+        }
+        return inPoly;
+    }
+
+    private static boolean crosses(double latI, double lonI, double latJ, double lonJ, double lat, double lon) {
+        return (lonI < lon && lonJ >= lon || lonJ < lon && lonI >= lon)
+                && latI + (lon - lonI) / (lonJ - lonI) * (latJ - latI) < lat;
+    }
+
+    /**
+     * Ray-casting over all edges of the polygon.
+     */
+    static boolean pointInPolygon(GeoPoint[] points, double lat, double lon) {
+        boolean inPoly = false;
+        for (int i = 0, j = points.length - 1; i < points.length; j = i++) {
+            if (crosses(points[i].lat(), points[i].lon(), points[j].lat(), points[j].lon(), lat, lon)) {
+                inPoly = !inPoly;
+            }
+        }
+        return inPoly;
+    }
+}
@@ -28,11 +28,12 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.common.lucene.docset.DocIdSets;
+import org.elasticsearch.common.lucene.search.FixedBitSetFilter;
 import org.elasticsearch.index.mapper.internal.TypeFieldMapper;
 
 import java.io.IOException;
 
-public class NonNestedDocsFilter extends Filter {
+public class NonNestedDocsFilter extends Filter implements FixedBitSetFilter {
 
     public static final NonNestedDocsFilter INSTANCE = new NonNestedDocsFilter();
 
@@ -35,7 +35,9 @@ import org.elasticsearch.index.aliases.IndexAliasesService;
 import org.elasticsearch.index.analysis.AnalysisService;
 import org.elasticsearch.index.cache.IndexCache;
 import org.elasticsearch.index.cache.filter.ShardFilterCacheModule;
+import org.elasticsearch.index.cache.fixedbitset.ShardFixedBitSetFilterCacheModule;
 import org.elasticsearch.index.cache.id.ShardIdCacheModule;
+import org.elasticsearch.index.cache.query.parsed.ShardParsedQueryCacheModule;
 import org.elasticsearch.index.deletionpolicy.DeletionPolicyModule;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.EngineModule;
@@ -155,6 +157,7 @@ public class InternalIndexService extends AbstractIndexComponent implements Inde
         // inject workarounds for cyclic dep
         indexCache.filter().setIndexService(this);
         indexCache.idCache().setIndexService(this);
+        indexCache.fixedBitSetFilterCache().setIndexService(this);
         indexFieldData.setIndexService(this);
     }
 
@@ -331,6 +334,8 @@ public class InternalIndexService extends AbstractIndexComponent implements Inde
         modules.add(new ShardFilterCacheModule());
         modules.add(new ShardFieldDataModule());
         modules.add(new ShardIdCacheModule());
+        modules.add(new ShardFixedBitSetFilterCacheModule());
+        modules.add(new ShardParsedQueryCacheModule());
         modules.add(new TranslogModule(indexSettings));
         modules.add(new EngineModule(indexSettings));
         modules.add(new IndexShardGatewayModule(injector.getInstance(IndexGateway.class)));
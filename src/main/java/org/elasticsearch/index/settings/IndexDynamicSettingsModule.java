@@ -42,6 +42,7 @@ import org.elasticsearch.index.translog.TranslogService;
 import org.elasticsearch.index.translog.fs.FsTranslog;
 import org.elasticsearch.indices.ttl.IndicesTTLService;
 import org.elasticsearch.indices.warmer.InternalIndicesWarmer;
+import org.elasticsearch.search.SearchService;
 
 /**
  */
@@ -117,6 +118,7 @@ public class IndexDynamicSettingsModule extends AbstractModule {
         indexDynamicSettings.addDynamicSetting(TranslogService.INDEX_TRANSLOG_FLUSH_THRESHOLD_PERIOD, Validator.TIME);
         indexDynamicSettings.addDynamicSetting(TranslogService.INDEX_TRANSLOG_DISABLE_FLUSH);
         indexDynamicSettings.addDynamicSetting(InternalIndicesWarmer.INDEX_WARMER_ENABLED);
+        indexDynamicSettings.addDynamicSetting(SearchService.INDEX_SEARCH_CONCURRENT_SLICES, Validator.NON_NEGATIVE_INTEGER);
     }
 
     public void addDynamicSettings(String... settings) {
@@ -27,7 +27,10 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.cache.filter.FilterCacheStats;
 import org.elasticsearch.index.cache.filter.ShardFilterCache;
 import org.elasticsearch.index.cache.id.IdCacheStats;
+import org.elasticsearch.index.cache.fixedbitset.ShardFixedBitSetFilterCache;
 import org.elasticsearch.index.cache.id.ShardIdCache;
+import org.elasticsearch.index.cache.query.parsed.ParsedQueryCacheStats;
+import org.elasticsearch.index.cache.query.parsed.ShardParsedQueryCache;
 import org.elasticsearch.index.deletionpolicy.SnapshotIndexCommit;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.EngineException;
@@ -77,6 +80,10 @@ public interface IndexShard extends IndexShardComponent {
 
     ShardIdCache idCache();
 
+    ShardFixedBitSetFilterCache fixedBitSetFilterCache();
+
+    ShardParsedQueryCache parsedQueryCache();
+
     ShardFieldData fieldData();
 
     ShardRouting routingEntry();
@@ -105,6 +112,8 @@ public interface IndexShard extends IndexShardComponent {
 
     IdCacheStats idCacheStats();
 
+    ParsedQueryCacheStats parsedQueryCacheStats();
+
     FieldDataStats fieldDataStats(String... fields);
 
     CompletionStats completionStats(String... fields);
@@ -47,7 +47,10 @@ import org.elasticsearch.index.cache.IndexCache;
 import org.elasticsearch.index.cache.filter.FilterCacheStats;
 import org.elasticsearch.index.cache.filter.ShardFilterCache;
 import org.elasticsearch.index.cache.id.IdCacheStats;
+import org.elasticsearch.index.cache.fixedbitset.ShardFixedBitSetFilterCache;
 import org.elasticsearch.index.cache.id.ShardIdCache;
+import org.elasticsearch.index.cache.query.parsed.ParsedQueryCacheStats;
+import org.elasticsearch.index.cache.query.parsed.ShardParsedQueryCache;
 import org.elasticsearch.index.codec.CodecService;
 import org.elasticsearch.index.deletionpolicy.SnapshotIndexCommit;
 import org.elasticsearch.index.engine.*;
@@ -116,6 +119,8 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
     private final ShardIndexWarmerService shardWarmerService;
     private final ShardFilterCache shardFilterCache;
     private final ShardIdCache shardIdCache;
+    private final ShardFixedBitSetFilterCache shardFixedBitSetFilterCache;
+    private final ShardParsedQueryCache shardParsedQueryCache;
     private final ShardFieldData shardFieldData;
     private final PercolatorQueriesRegistry percolatorQueriesRegistry;
     private final ShardPercolateService shardPercolateService;
@@ -148,7 +153,8 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
                               ThreadPool threadPool, MapperService mapperService, IndexQueryParserService queryParserService, IndexCache indexCache, IndexAliasesService indexAliasesService, ShardIndexingService indexingService, ShardGetService getService, ShardSearchService searchService, ShardIndexWarmerService shardWarmerService,
                               ShardFilterCache shardFilterCache, ShardIdCache shardIdCache, ShardFieldData shardFieldData,
                               PercolatorQueriesRegistry percolatorQueriesRegistry, ShardPercolateService shardPercolateService, CodecService codecService,
-                              ShardTermVectorService termVectorService, IndexFieldDataService indexFieldDataService, IndexService indexService) {
+                              ShardTermVectorService termVectorService, IndexFieldDataService indexFieldDataService, IndexService indexService,
+                              ShardFixedBitSetFilterCache shardFixedBitSetFilterCache, ShardParsedQueryCache shardParsedQueryCache) {
         super(shardId, indexSettings);
         this.indicesLifecycle = (InternalIndicesLifecycle) indicesLifecycle;
         this.indexSettingsService = indexSettingsService;
@@ -168,6 +174,8 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
         this.shardWarmerService = shardWarmerService;
         this.shardFilterCache = shardFilterCache;
         this.shardIdCache = shardIdCache;
+        this.shardFixedBitSetFilterCache = shardFixedBitSetFilterCache;
+        this.shardParsedQueryCache = shardParsedQueryCache;
         this.shardFieldData = shardFieldData;
         this.percolatorQueriesRegistry = percolatorQueriesRegistry;
         this.shardPercolateService = shardPercolateService;
@@ -251,6 +259,16 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
         return this.shardIdCache;
     }
 
+    @Override
+    public ShardFixedBitSetFilterCache fixedBitSetFilterCache() {
+        return this.shardFixedBitSetFilterCache;
+    }
+
+    @Override
+    public ShardParsedQueryCache parsedQueryCache() {
+        return this.shardParsedQueryCache;
+    }
+
     @Override
     public ShardFieldData fieldData() {
         return this.shardFieldData;
@@ -445,7 +463,7 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
         query = filterQueryIfNeeded(query, types);
 
         Filter aliasFilter = indexAliasesService.aliasFilter(filteringAliases);
-        Filter parentFilter = mapperService.hasNested() ? indexCache.filter().cache(NonNestedDocsFilter.INSTANCE) : null;
+        Filter parentFilter = mapperService.hasNested() ? indexCache.fixedBitSetFilterCache().getFixedBitSetFilter(NonNestedDocsFilter.INSTANCE) : null;
         return new Engine.DeleteByQuery(query, source, filteringAliases, aliasFilter, parentFilter, types).startTime(startTime);
     }
 
@@ -529,7 +547,9 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
 
     @Override
     public SegmentsStats segmentStats() {
-        return engine.segmentsStats();
+        SegmentsStats segmentsStats = engine.segmentsStats();
+        segmentsStats.addFixedBitSetMemoryInBytes(shardFixedBitSetFilterCache.getMemorySizeInBytes());
+        return segmentsStats;
     }
 
     @Override
@@ -562,6 +582,11 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
         return shardIdCache.stats();
     }
 
+    @Override
+    public ParsedQueryCacheStats parsedQueryCacheStats() {
+        return shardParsedQueryCache.stats();
+    }
+
     @Override
     public TranslogStats translogStats() {
         return translog.stats();
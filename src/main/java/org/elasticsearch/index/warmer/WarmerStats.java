@@ -19,6 +19,9 @@
 
 package org.elasticsearch.index.warmer;
 
+import com.carrotsearch.hppc.ObjectLongOpenHashMap;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -37,14 +40,22 @@ public class WarmerStats implements Streamable, ToXContent {
 
     private long totalTimeInMillis;
 
+    @Nullable
+    private ObjectLongOpenHashMap<String> fieldDataTimeInMillis;
+
     public WarmerStats() {
 
     }
 
     public WarmerStats(long current, long total, long totalTimeInMillis) {
+        this(current, total, totalTimeInMillis, null);
+    }
+
+    public WarmerStats(long current, long total, long totalTimeInMillis, @Nullable ObjectLongOpenHashMap<String> fieldDataTimeInMillis) {
         this.current = current;
         this.total = total;
         this.totalTimeInMillis = totalTimeInMillis;
+        this.fieldDataTimeInMillis = fieldDataTimeInMillis;
     }
 
     public void add(long current, long total, long totalTimeInMillis) {
@@ -60,6 +71,19 @@ public class WarmerStats implements Streamable, ToXContent {
         this.current += warmerStats.current;
         this.total += warmerStats.total;
         this.totalTimeInMillis += warmerStats.totalTimeInMillis;
+        if (warmerStats.fieldDataTimeInMillis != null) {
+            if (fieldDataTimeInMillis == null) {
+                fieldDataTimeInMillis = new ObjectLongOpenHashMap<String>();
+            }
+            final boolean[] states = warmerStats.fieldDataTimeInMillis.allocated;
+            final Object[] keys = warmerStats.fieldDataTimeInMillis.keys;
+            final long[] values = warmerStats.fieldDataTimeInMillis.values;
+            for (int i = 0; i < states.length; i++) {
+                if (states[i]) {
+                    fieldDataTimeInMillis.addTo((String) keys[i], values[i]);
+                }
+            }
+        }
     }
 
     public long current() {
@@ -87,6 +111,15 @@ public class WarmerStats implements Streamable, ToXContent {
         return new TimeValue(totalTimeInMillis);
     }
 
+    /**
+     * The total time spent warming up the field data (and global ordinals) of each field that is loaded eagerly,
+     * in milliseconds.
+     */
+    @Nullable
+    public ObjectLongOpenHashMap<String> fieldDataTimeInMillis() {
+        return this.fieldDataTimeInMillis;
+    }
+
     public static WarmerStats readWarmerStats(StreamInput in) throws IOException {
         WarmerStats refreshStats = new WarmerStats();
         refreshStats.readFrom(in);
@@ -99,6 +132,20 @@ public class WarmerStats implements Streamable, ToXContent {
         builder.field(Fields.CURRENT, current);
         builder.field(Fields.TOTAL, total);
         builder.timeValueField(Fields.TOTAL_TIME_IN_MILLIS, Fields.TOTAL_TIME, totalTimeInMillis);
+        if (fieldDataTimeInMillis != null && !fieldDataTimeInMillis.isEmpty()) {
+            builder.startObject(Fields.FIELDDATA);
+            final boolean[] states = fieldDataTimeInMillis.allocated;
+            final Object[] keys = fieldDataTimeInMillis.keys;
+            final long[] values = fieldDataTimeInMillis.values;
+            for (int i = 0; i < states.length; i++) {
+                if (states[i]) {
+                    builder.startObject((String) keys[i], XContentBuilder.FieldCaseConversion.NONE);
+                    builder.timeValueField(Fields.TOTAL_TIME_IN_MILLIS, Fields.TOTAL_TIME, values[i]);
+                    builder.endObject();
+                }
+            }
+            builder.endObject();
+        }
         builder.endObject();
         return builder;
     }
@@ -109,6 +156,7 @@ public class WarmerStats implements Streamable, ToXContent {
         static final XContentBuilderString TOTAL = new XContentBuilderString("total");
         static final XContentBuilderString TOTAL_TIME = new XContentBuilderString("total_time");
         static final XContentBuilderString TOTAL_TIME_IN_MILLIS = new XContentBuilderString("total_time_in_millis");
+        static final XContentBuilderString FIELDDATA = new XContentBuilderString("fielddata");
     }
 
     @Override
@@ -116,6 +164,13 @@ public class WarmerStats implements Streamable, ToXContent {
         current = in.readVLong();
         total = in.readVLong();
         totalTimeInMillis = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_RC1) && in.readBoolean()) {
+            int size = in.readVInt();
+            fieldDataTimeInMillis = new ObjectLongOpenHashMap<String>(size);
+            for (int i = 0; i < size; i++) {
+                fieldDataTimeInMillis.put(in.readString(), in.readVLong());
+            }
+        }
     }
 
     @Override
@@ -123,5 +178,22 @@ public class WarmerStats implements Streamable, ToXContent {
         out.writeVLong(current);
         out.writeVLong(total);
         out.writeVLong(totalTimeInMillis);
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            if (fieldDataTimeInMillis == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                out.writeVInt(fieldDataTimeInMillis.size());
+                final boolean[] states = fieldDataTimeInMillis.allocated;
+                final Object[] keys = fieldDataTimeInMillis.keys;
+                final long[] values = fieldDataTimeInMillis.values;
+                for (int i = 0; i < states.length; i++) {
+                    if (states[i]) {
+                        out.writeString((String) keys[i]);
+                        out.writeVLong(values[i]);
+                    }
+                }
+            }
+        }
     }
 }
\ No newline at end of file
@@ -34,6 +34,7 @@ import org.elasticsearch.common.xcontent.XContentBuilderString;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.cache.filter.FilterCacheStats;
 import org.elasticsearch.index.cache.id.IdCacheStats;
+import org.elasticsearch.index.cache.query.parsed.ParsedQueryCacheStats;
 import org.elasticsearch.index.engine.SegmentsStats;
 import org.elasticsearch.index.fielddata.FieldDataStats;
 import org.elasticsearch.index.flush.FlushStats;
@@ -140,6 +141,11 @@ public class NodeIndicesStats implements Streamable, Serializable, ToXContent {
         return stats.getIdCache();
     }
 
+    @Nullable
+    public ParsedQueryCacheStats getParsedQueryCache() {
+        return stats.getParsedQueryCache();
+    }
+
     @Nullable
     public CompletionStats getCompletion() {
         return stats.getCompletion();
@@ -0,0 +1,128 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.cache.filter;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Decides whether the doc id set of a filter on a segment is worth caching. Segments that have less than
+ * <tt>minSegmentDocs</tt> documents are never cached, since building a cacheable doc id set for them costs more than
+ * running the filter again. On other segments, a filter is only cached once it has been used at least
+ * <tt>minFrequency</tt> times within the last <tt>window</tt> uses, so that one-off filters don't evict the hot ones.
+ * <p/>
+ * Usages are tracked with a count-min sketch: the frequency of a key is the minimum of the counters it hashes to in
+ * each of the rows, which may overestimate it on collisions but never underestimates it. All counters are halved every
+ * <tt>window</tt> uses so that old usages age out. Updates are not atomic as a whole, which only makes the estimates
+ * a bit fuzzier under concurrency.
+ */
+public class FilterCacheAdmissionPolicy {
+
+    private static final int[] SEEDS = new int[] {0x97cb3127, 0x9e3779b9, 0xc2b2ae35, 0x27d4eb2f};
+
+    private final int minFrequency;
+    private final int minSegmentDocs;
+    private final int window;
+
+    private final int mask;
+    private final AtomicIntegerArray counters;
+    private final AtomicInteger uses = new AtomicInteger();
+
+    public FilterCacheAdmissionPolicy(int minFrequency, int window, int minSegmentDocs) {
+        if (minFrequency < 1) {
+            throw new ElasticsearchIllegalArgumentException("min_frequency must be >= 1, got " + minFrequency);
+        }
+        if (window < 1) {
+            throw new ElasticsearchIllegalArgumentException("window must be >= 1, got " + window);
+        }
+        this.minFrequency = minFrequency;
+        this.minSegmentDocs = minSegmentDocs;
+        this.window = window;
+        if (minFrequency > 1) {
+            final int width = Integer.highestOneBit(Math.max(16, Math.min(window, ArrayUtil.MAX_ARRAY_LENGTH / SEEDS.length) - 1)) << 1;
+            this.mask = width - 1;
+            this.counters = new AtomicIntegerArray(SEEDS.length * width);
+        } else {
+            // every filter is admitted, no need to track usages
+            this.mask = 0;
+            this.counters = null;
+        }
+    }
+
+    public int minFrequency() {
+        return minFrequency;
+    }
+
+    public int window() {
+        return window;
+    }
+
+    public int minSegmentDocs() {
+        return minSegmentDocs;
+    }
+
+    /**
+     * Records a use of the filter identified by the given hash on a segment of <tt>maxDoc</tt> documents and
+     * returns whether its doc id set should be cached.
+     */
+    public boolean admit(int hash, int maxDoc) {
+        if (maxDoc < minSegmentDocs) {
+            return false;
+        }
+        if (counters == null) {
+            return true;
+        }
+        int frequency = Integer.MAX_VALUE;
+        final int width = mask + 1;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final int index = i * width + (mix(hash * SEEDS[i]) & mask);
+            frequency = Math.min(frequency, counters.incrementAndGet(index));
+        }
+        if (uses.incrementAndGet() >= window) {
+            uses.set(0);
+            reset();
+        }
+        return frequency >= minFrequency;
+    }
+
+    /**
+     * Halves all counters.
+     */
+    private void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            final int count = counters.get(i);
+            if (count != 0) {
+                counters.set(i, count >>> 1);
+            }
+        }
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
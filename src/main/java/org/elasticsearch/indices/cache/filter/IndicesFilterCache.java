@@ -25,15 +25,22 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.SegmentReaderUtils;
+import org.elasticsearch.common.lucene.docset.DocIdSets;
+import org.elasticsearch.common.lucene.docset.OffHeapDocIdSet;
 import org.elasticsearch.common.recycler.Recycler;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.MemorySizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.SlabAllocator;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.cache.filter.weighted.WeightedFilterCache;
@@ -57,6 +64,10 @@ public class IndicesFilterCache extends AbstractComponent implements RemovalList
 
     private final TimeValue cleanInterval;
 
+    private final FilterCacheAdmissionPolicy admissionPolicy;
+
+    private final SlabAllocator offHeapAllocator;
+
     private final Set<Object> readersKeysToClean = ConcurrentCollections.newConcurrentSet();
 
     private volatile boolean closed;
@@ -98,10 +109,18 @@ public class IndicesFilterCache extends AbstractComponent implements RemovalList
         this.size = componentSettings.get("size", "20%");
         this.expire = componentSettings.getAsTime("expire", null);
         this.cleanInterval = componentSettings.getAsTime("clean_interval", TimeValue.timeValueSeconds(60));
+        this.admissionPolicy = new FilterCacheAdmissionPolicy(componentSettings.getAsInt("admission.min_frequency", 2),
+                componentSettings.getAsInt("admission.window", 10000), componentSettings.getAsInt("admission.min_segment_docs", 10000));
         computeSizeInBytes();
+        if (componentSettings.getAsBoolean("off_heap", false)) {
+            int slabSize = (int) componentSettings.getAsBytesSize("off_heap.slab_size", new ByteSizeValue(SlabAllocator.DEFAULT_SLAB_SIZE)).bytes();
+            this.offHeapAllocator = new SlabAllocator(slabSize, offHeapLimit());
+        } else {
+            this.offHeapAllocator = null;
+        }
         buildCache();
-        logger.debug("using [node] weighted filter cache with size [{}], actual_size [{}], expire [{}], clean_interval [{}]",
-                size, new ByteSizeValue(sizeInBytes), expire, cleanInterval);
+        logger.debug("using [node] weighted filter cache with size [{}], actual_size [{}], expire [{}], clean_interval [{}], off_heap [{}], admission min_frequency [{}], window [{}], min_segment_docs [{}]",
+                size, new ByteSizeValue(sizeInBytes), expire, cleanInterval, offHeapAllocator != null, admissionPolicy.minFrequency(), admissionPolicy.window(), admissionPolicy.minSegmentDocs());
 
         nodeSettingsService.addListener(new ApplySettings());
         threadPool.schedule(cleanInterval, ThreadPool.Names.SAME, new ReaderCleaner());
@@ -124,6 +143,14 @@ public class IndicesFilterCache extends AbstractComponent implements RemovalList
 
     private void computeSizeInBytes() {
         this.sizeInBytes = MemorySizeValue.parseBytesSizeValueOrHeapRatio(size).bytes();
+        if (offHeapAllocator != null) {
+            offHeapAllocator.limit(offHeapLimit());
+        }
+    }
+
+    private long offHeapLimit() {
+        // leave room for the slabs that are pinned by a few live entries, they are reclaimed as entries get evicted
+        return 2 * sizeInBytes;
     }
 
     public void addReaderKeyToClean(Object readerKey) {
@@ -139,6 +166,51 @@ public class IndicesFilterCache extends AbstractComponent implements RemovalList
         return this.cache;
     }
 
+    public FilterCacheAdmissionPolicy admissionPolicy() {
+        return this.admissionPolicy;
+    }
+
+    /**
+     * Whether cached doc id sets are stored off-heap.
+     */
+    public boolean offHeap() {
+        return offHeapAllocator != null;
+    }
+
+    /**
+     * The number of off-heap bytes currently reserved by the cache, including the fragmentation of the slabs.
+     */
+    public long offHeapReservedBytes() {
+        return offHeapAllocator == null ? 0 : offHeapAllocator.reservedBytes();
+    }
+
+    /**
+     * Moves a cacheable doc id set of the given reader off-heap. Sets that are not bit sets, and bit sets that don't
+     * fit in the off-heap memory limit, are compressed and kept on heap. The memory of an off-heap set is freed once
+     * it has been removed from the cache and the core of the reader has been closed, so that searches that still
+     * use an evicted set never read freed memory.
+     *
+     * @see DocIdSets#toCacheable(org.apache.lucene.index.AtomicReader, DocIdSet)
+     */
+    public DocIdSet toOffHeap(AtomicReader reader, DocIdSet cacheable) {
+        if (offHeapAllocator == null || !(cacheable instanceof FixedBitSet)) {
+            return cacheable;
+        }
+        final OffHeapDocIdSet offHeap = OffHeapDocIdSet.copyOf((FixedBitSet) cacheable, offHeapAllocator);
+        if (offHeap == null) {
+            return DocIdSets.compress((FixedBitSet) cacheable);
+        }
+        // one reference for the cache, released on removal, and one for the segment
+        offHeap.incRef();
+        SegmentReaderUtils.registerCoreListener(reader, new SegmentReader.CoreClosedListener() {
+            @Override
+            public void onClose(Object ownerCoreCacheKey) {
+                offHeap.release();
+            }
+        });
+        return offHeap;
+    }
+
     @Override
     public void onRemoval(RemovalNotification<WeightedFilterCache.FilterCacheKey, DocIdSet> removalNotification) {
         WeightedFilterCache.FilterCacheKey key = removalNotification.getKey();
@@ -148,6 +220,9 @@ public class IndicesFilterCache extends AbstractComponent implements RemovalList
         if (key.removalListener != null) {
             key.removalListener.onRemoval(removalNotification);
         }
+        if (removalNotification.getValue() instanceof OffHeapDocIdSet) {
+            ((OffHeapDocIdSet) removalNotification.getValue()).release();
+        }
     }
 
     /**
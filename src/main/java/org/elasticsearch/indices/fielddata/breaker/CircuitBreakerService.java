@@ -23,7 +23,7 @@ import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
 
 /**
  * Interface for Circuit Breaker services, which provide breakers to classes
- * that load field data.
+ * that load field data and to search requests that allocate big arrays.
  */
 public interface CircuitBreakerService {
 
@@ -32,9 +32,18 @@ public interface CircuitBreakerService {
      */
     public MemoryCircuitBreaker getBreaker();
 
+    /**
+     * @return the breaker that memory allocated by search requests is charged against
+     */
+    public MemoryCircuitBreaker getRequestBreaker();
 
     /**
      * @return stats about the breaker
      */
     public FieldDataBreakerStats stats();
+
+    /**
+     * @return stats about the request breaker
+     */
+    public RequestBreakerStats requestStats();
 }
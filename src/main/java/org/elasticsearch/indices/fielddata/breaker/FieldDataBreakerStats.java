@@ -79,9 +79,16 @@ public class FieldDataBreakerStats implements Streamable, ToXContent {
         out.writeDouble(overhead);
     }
 
+    /**
+     * @return the name of the object these stats are rendered under
+     */
+    protected XContentBuilderString name() {
+        return Fields.BREAKER;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
-        builder.startObject(Fields.BREAKER);
+        builder.startObject(name());
         builder.field(Fields.MAX, maximum);
         builder.field(Fields.MAX_HUMAN, new ByteSizeValue(maximum));
         builder.field(Fields.ESTIMATED, estimated);
@@ -39,15 +39,24 @@ public class InternalCircuitBreakerService extends AbstractLifecycleComponent<In
     public static final String CIRCUIT_BREAKER_MAX_BYTES_SETTING = "indices.fielddata.breaker.limit";
     public static final String CIRCUIT_BREAKER_OVERHEAD_SETTING = "indices.fielddata.breaker.overhead";
 
+    public static final String REQUEST_CIRCUIT_BREAKER_MAX_BYTES_SETTING = "indices.breaker.request.limit";
+    public static final String REQUEST_CIRCUIT_BREAKER_OVERHEAD_SETTING = "indices.breaker.request.overhead";
+
     public static final double DEFAULT_OVERHEAD_CONSTANT = 1.03;
+    public static final double DEFAULT_REQUEST_OVERHEAD_CONSTANT = 1.0;
 
     private static final long JVM_HEAP_MAX_BYTES = JvmInfo.jvmInfo().getMem().getHeapMax().bytes();
     private static final long DEFAULT_BREAKER_LIMIT = (long) (0.8 * JVM_HEAP_MAX_BYTES); // 80% of the max heap
+    private static final long DEFAULT_REQUEST_BREAKER_LIMIT = (long) (0.4 * JVM_HEAP_MAX_BYTES); // 40% of the max heap
 
     private volatile MemoryCircuitBreaker breaker;
     private volatile long maxBytes;
     private volatile double overhead;
 
+    private volatile MemoryCircuitBreaker requestBreaker;
+    private volatile long requestMaxBytes;
+    private volatile double requestOverhead;
+
     @Inject
     public InternalCircuitBreakerService(Settings settings, NodeSettingsService nodeSettingsService) {
         super(settings);
@@ -56,6 +65,11 @@ public class InternalCircuitBreakerService extends AbstractLifecycleComponent<In
 
         this.breaker = new MemoryCircuitBreaker(new ByteSizeValue(maxBytes), overhead, null, logger);
 
+        this.requestMaxBytes = settings.getAsBytesSize(REQUEST_CIRCUIT_BREAKER_MAX_BYTES_SETTING, new ByteSizeValue(DEFAULT_REQUEST_BREAKER_LIMIT)).bytes();
+        this.requestOverhead = settings.getAsDouble(REQUEST_CIRCUIT_BREAKER_OVERHEAD_SETTING, DEFAULT_REQUEST_OVERHEAD_CONSTANT);
+
+        this.requestBreaker = new MemoryCircuitBreaker(new ByteSizeValue(requestMaxBytes), requestOverhead, null, logger);
+
         nodeSettingsService.addListener(new ApplySettings());
     }
 
@@ -84,6 +98,28 @@ public class InternalCircuitBreakerService extends AbstractLifecycleComponent<In
             if (breakerResetNeeded) {
                 resetBreaker();
             }
+
+            ByteSizeValue newRequestMaxByteSizeValue = settings.getAsBytesSize(REQUEST_CIRCUIT_BREAKER_MAX_BYTES_SETTING, null);
+            boolean requestBreakerResetNeeded = false;
+
+            if (newRequestMaxByteSizeValue != null) {
+                logger.info("updating [{}] from [{}] to [{}]", REQUEST_CIRCUIT_BREAKER_MAX_BYTES_SETTING,
+                        new ByteSizeValue(InternalCircuitBreakerService.this.requestMaxBytes), newRequestMaxByteSizeValue);
+                InternalCircuitBreakerService.this.requestMaxBytes = newRequestMaxByteSizeValue.bytes();
+                requestBreakerResetNeeded = true;
+            }
+
+            double newRequestOverhead = settings.getAsDouble(REQUEST_CIRCUIT_BREAKER_OVERHEAD_SETTING, requestOverhead);
+            if (newRequestOverhead != requestOverhead) {
+                logger.info("updating [{}] from [{}] to [{}]", REQUEST_CIRCUIT_BREAKER_OVERHEAD_SETTING,
+                        requestOverhead, newRequestOverhead);
+                InternalCircuitBreakerService.this.requestOverhead = newRequestOverhead;
+                requestBreakerResetNeeded = true;
+            }
+
+            if (requestBreakerResetNeeded) {
+                resetRequestBreaker();
+            }
         }
     }
 
@@ -106,11 +142,34 @@ public class InternalCircuitBreakerService extends AbstractLifecycleComponent<In
         this.breaker = new MemoryCircuitBreaker(new ByteSizeValue(maxBytes), overhead, oldBreaker, logger);
     }
 
+    /**
+     * @return a {@link org.elasticsearch.common.breaker.MemoryCircuitBreaker} that is charged with the
+     * memory that search requests allocate through big arrays
+     */
+    public MemoryCircuitBreaker getRequestBreaker() {
+        return this.requestBreaker;
+    }
+
+    /**
+     * Reset the request breaker, creating a new one that inherits the used
+     * value of the current request breaker so that allocations which are
+     * still in flight can be released against it.
+     */
+    public synchronized void resetRequestBreaker() {
+        final MemoryCircuitBreaker oldBreaker = this.requestBreaker;
+        this.requestBreaker = new MemoryCircuitBreaker(new ByteSizeValue(requestMaxBytes), requestOverhead, oldBreaker, logger);
+    }
+
     @Override
     public FieldDataBreakerStats stats() {
         return new FieldDataBreakerStats(breaker.getMaximum(), breaker.getUsed(), breaker.getOverhead());
     }
 
+    @Override
+    public RequestBreakerStats requestStats() {
+        return new RequestBreakerStats(requestBreaker.getMaximum(), requestBreaker.getUsed(), requestBreaker.getOverhead());
+    }
+
     @Override
     protected void doStart() throws ElasticsearchException {
     }
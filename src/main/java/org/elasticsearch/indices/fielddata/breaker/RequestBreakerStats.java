@@ -0,0 +1,53 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.fielddata.breaker;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+
+/**
+ * Class encapsulating stats about the request circuit breaker
+ */
+public class RequestBreakerStats extends FieldDataBreakerStats {
+
+    RequestBreakerStats() {
+
+    }
+
+    public RequestBreakerStats(long maximum, long estimated, double overhead) {
+        super(maximum, estimated, overhead);
+    }
+
+    public static RequestBreakerStats readOptionalRequestBreakerStats(StreamInput in) throws IOException {
+        RequestBreakerStats stats = in.readOptionalStreamable(new RequestBreakerStats());
+        return stats;
+    }
+
+    @Override
+    protected XContentBuilderString name() {
+        return Fields.REQUEST_BREAKER;
+    }
+
+    static final class Fields {
+        static final XContentBuilderString REQUEST_BREAKER = new XContentBuilderString("request_breaker");
+    }
+}
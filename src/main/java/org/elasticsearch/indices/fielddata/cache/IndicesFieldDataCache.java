@@ -87,13 +87,17 @@ public class IndicesFieldDataCache extends AbstractComponent implements RemovalL
 
     @Override
     public void onRemoval(RemovalNotification<Key, AtomicFieldData> notification) {
+        AtomicFieldData value = notification.getValue();
+        if (value != null) {
+            // releases the memory of field data that is not managed by the garbage collector
+            value.close();
+        }
         Key key = notification.getKey();
         if (key == null || key.listener == null) {
             return; // nothing to do here really...
         }
         IndexFieldCache indexCache = key.indexCache;
         long sizeInBytes = key.sizeInBytes;
-        AtomicFieldData value = notification.getValue();
         if (sizeInBytes == -1 && value != null) {
             sizeInBytes = value.getMemorySizeInBytes();
         }
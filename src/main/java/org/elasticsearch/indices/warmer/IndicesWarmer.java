@@ -19,7 +19,9 @@
 
 package org.elasticsearch.indices.warmer;
 
+import org.apache.lucene.index.IndexReader;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.shard.service.IndexShard;
@@ -57,9 +59,16 @@ public interface IndicesWarmer {
 
         private final Engine.Searcher newSearcher;
 
+        private final IndexReader topLevelReader;
+
         public WarmerContext(ShardId shardId, Engine.Searcher newSearcher) {
+            this(shardId, newSearcher, null);
+        }
+
+        public WarmerContext(ShardId shardId, Engine.Searcher newSearcher, @Nullable IndexReader topLevelReader) {
             this.shardId = shardId;
             this.newSearcher = newSearcher;
+            this.topLevelReader = topLevelReader;
         }
 
         public ShardId shardId() {
@@ -70,6 +79,15 @@ public interface IndicesWarmer {
         public Engine.Searcher newSearcher() {
             return newSearcher;
         }
+
+        /**
+         * Return the top-level reader that is going to be exposed to searches once warm-up is done, or <tt>null</tt>
+         * if the warmed segments are not exposed by a new reader yet, eg. when warming merged segments.
+         */
+        @Nullable
+        public IndexReader topLevelReader() {
+            return topLevelReader;
+        }
     }
 
     void addListener(Listener listener);
@@ -145,7 +145,8 @@ public class NodeService extends AbstractComponent {
                 monitorService.fsService().stats(),
                 transportService.stats(),
                 httpServer == null ? null : httpServer.stats(),
-                circuitBreakerService.stats()
+                circuitBreakerService.stats(),
+                circuitBreakerService.requestStats()
         );
     }
 
@@ -163,7 +164,8 @@ public class NodeService extends AbstractComponent {
                 fs ? monitorService.fsService().stats() : null,
                 transport ? transportService.stats() : null,
                 http ? (httpServer == null ? null : httpServer.stats()) : null,
-                circuitBreaker ? circuitBreakerService.stats() : null
+                circuitBreaker ? circuitBreakerService.stats() : null,
+                circuitBreaker ? circuitBreakerService.requestStats() : null
         );
     }
 }
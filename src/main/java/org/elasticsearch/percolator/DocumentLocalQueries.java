@@ -0,0 +1,146 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.percolator;
+
+import org.apache.lucene.queries.FilterClause;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.spans.*;
+import org.elasticsearch.common.lucene.search.AndFilter;
+import org.elasticsearch.common.lucene.search.ApplyAcceptedDocsFilter;
+import org.elasticsearch.common.lucene.search.CachedFilter;
+import org.elasticsearch.common.lucene.search.NotFilter;
+import org.elasticsearch.common.lucene.search.OrFilter;
+import org.elasticsearch.common.lucene.search.XBooleanFilter;
+import org.elasticsearch.common.lucene.search.XFilteredQuery;
+import org.elasticsearch.common.lucene.search.function.FiltersFunctionScoreQuery;
+import org.elasticsearch.common.lucene.search.function.FunctionScoreQuery;
+
+/**
+ * Tells whether a percolator query matches a document regardless of the other documents of the index. Queries
+ * which depend on the terms or statistics of the whole index, like fuzzy queries and other top terms rewrites,
+ * <code>match_phrase_prefix</code> or <code>common</code> terms queries, may match different documents when the
+ * percolated documents are indexed together, so they need to be verified against every document on its own.
+ * <p/>
+ * Queries (or parts of queries) which are not understood are considered to depend on the index.
+ */
+final class DocumentLocalQueries {
+
+    private DocumentLocalQueries() {
+    }
+
+    static boolean isDocumentLocal(Query query) {
+        if (query instanceof TermQuery || query instanceof PhraseQuery || query instanceof MultiPhraseQuery
+                || query instanceof MatchAllDocsQuery) {
+            return true;
+        } else if (query instanceof MultiTermQuery) {
+            // the top terms rewrites (fuzzy queries by default) only keep the best terms of the index
+            return !(((MultiTermQuery) query).getRewriteMethod() instanceof TopTermsRewrite);
+        } else if (query instanceof BooleanQuery) {
+            for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+                if (!isDocumentLocal(clause.getQuery())) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (query instanceof DisjunctionMaxQuery) {
+            for (Query disjunct : ((DisjunctionMaxQuery) query).getDisjuncts()) {
+                if (!isDocumentLocal(disjunct)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (query instanceof FilteredQuery) {
+            final FilteredQuery filteredQuery = (FilteredQuery) query;
+            return isDocumentLocal(filteredQuery.getQuery()) && isDocumentLocal(filteredQuery.getFilter());
+        } else if (query instanceof XFilteredQuery) {
+            final XFilteredQuery filteredQuery = (XFilteredQuery) query;
+            return isDocumentLocal(filteredQuery.getQuery()) && isDocumentLocal(filteredQuery.getFilter());
+        } else if (query instanceof ConstantScoreQuery) {
+            final ConstantScoreQuery constantScoreQuery = (ConstantScoreQuery) query;
+            if (constantScoreQuery.getQuery() != null) {
+                return isDocumentLocal(constantScoreQuery.getQuery());
+            }
+            return isDocumentLocal(constantScoreQuery.getFilter());
+        } else if (query instanceof FunctionScoreQuery) {
+            return isDocumentLocal(((FunctionScoreQuery) query).getSubQuery());
+        } else if (query instanceof FiltersFunctionScoreQuery) {
+            // the filters of the functions only change the scores
+            return isDocumentLocal(((FiltersFunctionScoreQuery) query).getSubQuery());
+        } else if (query instanceof SpanTermQuery) {
+            return true;
+        } else if (query instanceof SpanNearQuery) {
+            return areDocumentLocal(((SpanNearQuery) query).getClauses());
+        } else if (query instanceof SpanOrQuery) {
+            return areDocumentLocal(((SpanOrQuery) query).getClauses());
+        } else if (query instanceof SpanFirstQuery) {
+            return isDocumentLocal(((SpanFirstQuery) query).getMatch());
+        } else if (query instanceof SpanNotQuery) {
+            final SpanNotQuery spanNotQuery = (SpanNotQuery) query;
+            return isDocumentLocal(spanNotQuery.getInclude()) && isDocumentLocal(spanNotQuery.getExclude());
+        }
+        // MultiPhrasePrefixQuery expands its last term to the first terms of the index, CommonTermsQuery splits its
+        // terms by document frequency, MoreLikeThisQuery picks its terms by frequency...
+        return false;
+    }
+
+    private static boolean areDocumentLocal(Query[] queries) {
+        for (Query query : queries) {
+            if (!isDocumentLocal(query)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isDocumentLocal(Filter filter) {
+        if (filter instanceof QueryWrapperFilter) {
+            return isDocumentLocal(((QueryWrapperFilter) filter).getQuery());
+        } else if (filter instanceof XBooleanFilter) {
+            for (FilterClause clause : (XBooleanFilter) filter) {
+                if (!isDocumentLocal(clause.getFilter())) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (filter instanceof AndFilter) {
+            for (Filter f : ((AndFilter) filter).filters()) {
+                if (!isDocumentLocal(f)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (filter instanceof OrFilter) {
+            for (Filter f : ((OrFilter) filter).filters()) {
+                if (!isDocumentLocal(f)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (filter instanceof NotFilter) {
+            return isDocumentLocal(((NotFilter) filter).filter());
+        } else if (filter instanceof ApplyAcceptedDocsFilter) {
+            return isDocumentLocal(((ApplyAcceptedDocsFilter) filter).filter());
+        } else if (CachedFilter.isCached(filter)) {
+            // the cached filter might wrap a query
+            return false;
+        }
+        // term, terms, range, prefix, exists... filters only look at the terms of the document
+        return true;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.percolator;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.lucene.HashedBytesRef;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Verifies the candidate queries of a percolate request in parallel. Queries are split into partitions which are
+ * verified against the (read-only) in-memory index of the percolated document by the calling thread and by up to
+ * <code>maxThreads - 1</code> threads of a bounded executor. The calling thread takes partitions too, so that requests
+ * make progress even if the executor is busy or rejects the tasks.
+ */
+final class ParallelPercolator {
+
+    static final class Result {
+
+        private final long count;
+        private final List<BytesRef> matches;
+
+        Result(long count, List<BytesRef> matches) {
+            this.count = count;
+            this.matches = matches;
+        }
+
+        long count() {
+            return count;
+        }
+
+        List<BytesRef> matches() {
+            return matches;
+        }
+    }
+
+    private final ESLogger logger;
+    private final Executor executor;
+    private final int maxThreads;
+    private final int minQueriesPerThread;
+
+    ParallelPercolator(ESLogger logger, Executor executor, int maxThreads, int minQueriesPerThread) {
+        this.logger = logger;
+        this.executor = executor;
+        this.maxThreads = maxThreads;
+        this.minQueriesPerThread = Math.max(1, minQueriesPerThread);
+    }
+
+    /**
+     * Whether it is worth verifying the given number of queries in parallel.
+     */
+    boolean shouldRun(int numQueries) {
+        return maxThreads > 1 && numQueries >= 2 * minQueriesPerThread;
+    }
+
+    /**
+     * Verify the candidate queries of <code>context</code> and return the number of matching queries, as well as their
+     * ids if <code>collectMatches</code> is true.
+     */
+    Result percolate(PercolateContext context, boolean collectMatches) {
+        final Map<HashedBytesRef, Query> candidates = context.candidateQueries();
+        @SuppressWarnings("unchecked")
+        final Map.Entry<HashedBytesRef, Query>[] queries = candidates.entrySet().toArray(new Map.Entry[candidates.size()]);
+        // more partitions than threads, so that threads which are done early can help the others
+        final int numPartitions = Math.max(1, Math.min(4 * maxThreads, queries.length / minQueriesPerThread));
+        final int numThreads = Math.min(maxThreads, numPartitions);
+        // no need to keep more matches per partition than the number of matches that will be returned
+        final int maxMatches = !collectMatches ? 0 : (context.limit ? context.size : Integer.MAX_VALUE);
+
+        final IndexSearcher searcher = context.docSearcher();
+        final long[] counts = new long[numPartitions];
+        final List<List<BytesRef>> matches = new ArrayList<List<BytesRef>>(numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+            matches.add(new ArrayList<BytesRef>());
+        }
+        final AtomicInteger nextPartition = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(numPartitions);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                final Lucene.ExistsCollector collector = new Lucene.ExistsCollector();
+                for (int partition = nextPartition.getAndIncrement(); partition < numPartitions; partition = nextPartition.getAndIncrement()) {
+                    try {
+                        if (failure.get() != null) {
+                            // the request fails anyway, don't verify the remaining partitions
+                            continue;
+                        }
+                        final int from = (int) ((long) queries.length * partition / numPartitions);
+                        final int to = (int) ((long) queries.length * (partition + 1) / numPartitions);
+                        final List<BytesRef> partitionMatches = matches.get(partition);
+                        long count = 0;
+                        for (int i = from; i < to; i++) {
+                            collector.reset();
+                            try {
+                                searcher.search(queries[i].getValue(), collector);
+                            } catch (IOException e) {
+                                logger.warn("[" + queries[i].getKey() + "] failed to execute query", e);
+                            }
+                            if (collector.exists()) {
+                                if (partitionMatches.size() < maxMatches) {
+                                    partitionMatches.add(queries[i].getKey().bytes);
+                                }
+                                count++;
+                            }
+                        }
+                        counts[partition] = count;
+                    } catch (Throwable t) {
+                        // unlike I/O errors, which only fail the query that caused them, anything else fails the request
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+
+        for (int i = 1; i < numThreads; i++) {
+            try {
+                executor.execute(worker);
+            } catch (EsRejectedExecutionException e) {
+                // the calling thread will verify the queries
+                break;
+            }
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ElasticsearchException("interrupted while waiting for percolator queries to be verified", e);
+        }
+        final Throwable t = failure.get();
+        if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new PercolateException(context.indexShard().shardId(), "failed to execute", t);
+        }
+
+        // merge partitions in order, like if queries had been verified sequentially
+        long count = 0;
+        final List<BytesRef> finalMatches = new ArrayList<BytesRef>();
+        for (int i = 0; i < numPartitions; i++) {
+            count += counts[i];
+            for (BytesRef match : matches.get(i)) {
+                if (finalMatches.size() < maxMatches) {
+                    finalMatches.add(match);
+                }
+            }
+        }
+        return new Result(count, finalMatches);
+    }
+
+}
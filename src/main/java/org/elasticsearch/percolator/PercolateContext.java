@@ -38,6 +38,7 @@ import org.elasticsearch.common.text.StringText;
 import org.elasticsearch.index.analysis.AnalysisService;
 import org.elasticsearch.index.cache.docset.DocSetCache;
 import org.elasticsearch.index.cache.filter.FilterCache;
+import org.elasticsearch.index.cache.fixedbitset.FixedBitSetFilterCache;
 import org.elasticsearch.index.cache.id.IdCache;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
@@ -96,6 +97,7 @@ public class PercolateContext extends SearchContext {
     private final CacheRecycler cacheRecycler;
     private final PageCacheRecycler pageCacheRecycler;
     private final ConcurrentMap<HashedBytesRef, Query> percolateQueries;
+    private Map<HashedBytesRef, Query> candidateQueries;
     private String[] types;
 
     private Engine.Searcher docEngineSearcher;
@@ -160,6 +162,11 @@ public class PercolateContext extends SearchContext {
                 return true;
             }
         };
+        try {
+            candidateQueries = indexShard.percolateRegistry().candidateQueries(topLevelReader);
+        } catch (IOException e) {
+            throw new ElasticsearchException("failed to select candidate queries", e);
+        }
         lookup().setNextReader(readerContext);
         lookup().setNextDocId(0);
         lookup().source().setNextSource(parsedDocument.source());
@@ -188,6 +195,13 @@ public class PercolateContext extends SearchContext {
         return percolateQueries;
     }
 
+    /**
+     * The registered queries that may match the percolated document, only available after {@link #initialize}.
+     */
+    public Map<HashedBytesRef, Query> candidateQueries() {
+        return candidateQueries;
+    }
+
     public Query percolateQuery() {
         return percolateQuery;
     }
@@ -487,6 +501,12 @@ public class PercolateContext extends SearchContext {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public FixedBitSetFilterCache fixedBitSetFilterCache() {
+        // the entries of the in-memory readers are removed when the context is released, see IndexCache#clear(IndexReader)
+        return indexService.cache().fixedBitSetFilterCache();
+    }
+
     @Override
     public DocSetCache docSetCache() {
         throw new UnsupportedOperationException();
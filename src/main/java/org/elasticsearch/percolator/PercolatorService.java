@@ -21,15 +21,18 @@ package org.elasticsearch.percolator;
 import com.carrotsearch.hppc.ByteObjectOpenHashMap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.index.AtomicReaderContext;
-import org.apache.lucene.index.IndexableField;
-import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.*;
 import org.apache.lucene.index.memory.ExtendedMemoryIndex;
 import org.apache.lucene.index.memory.MemoryIndex;
 import org.apache.lucene.search.*;
+import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CloseableThreadLocal;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.ElasticsearchParseException;
@@ -89,11 +92,14 @@ import org.elasticsearch.search.highlight.HighlightPhase;
 import org.elasticsearch.search.highlight.SearchContextHighlight;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.sort.SortParseElement;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import static org.elasticsearch.index.mapper.SourceToParse.source;
 import static org.elasticsearch.percolator.QueryCollector.*;
@@ -117,10 +123,12 @@ public class PercolatorService extends AbstractComponent {
     private final AggregationPhase aggregationPhase;
     private final SortParseElement sortParseElement;
 
+    private final ParallelPercolator parallelPercolator;
+
     @Inject
     public PercolatorService(Settings settings, IndicesService indicesService, CacheRecycler cacheRecycler, PageCacheRecycler pageCacheRecycler,
                              HighlightPhase highlightPhase, ClusterService clusterService, FacetPhase facetPhase,
-                             AggregationPhase aggregationPhase) {
+                             AggregationPhase aggregationPhase, ThreadPool threadPool) {
         super(settings);
         this.indicesService = indicesService;
         this.cacheRecycler = cacheRecycler;
@@ -139,6 +147,12 @@ public class PercolatorService extends AbstractComponent {
             }
         };
 
+        // verifying the queries of a single request on several threads is disabled by default
+        final int parallelMaxThreads = settings.getAsInt("percolator.parallel.max_threads", 1);
+        final int parallelMinQueriesPerThread = settings.getAsInt("percolator.parallel.min_queries_per_thread", 1000);
+        final Executor parallelExecutor = parallelMaxThreads > 1 ? threadPool.executor(ThreadPool.Names.PERCOLATE_PARALLEL) : null;
+        parallelPercolator = new ParallelPercolator(logger, parallelExecutor, parallelMaxThreads, parallelMinQueriesPerThread);
+
         percolatorTypes = new ByteObjectOpenHashMap<PercolatorType>(6);
         percolatorTypes.put(countPercolator.id(), countPercolator);
         percolatorTypes.put(queryCountPercolator.id(), queryCountPercolator);
@@ -167,72 +181,380 @@ public class PercolatorService extends AbstractComponent {
                 request, searchShardTarget, indexShard, percolateIndexService, cacheRecycler, pageCacheRecycler
         );
         try {
-
-            ParsedDocument parsedDocument = parseRequest(percolateIndexService, request, context);
-            if (context.percolateQueries().isEmpty()) {
+            ParsedDocument parsedDocument = parseDocument(percolateIndexService, request, context);
+            if (parsedDocument == null) {
                 return new PercolateShardResponse(context, request.index(), request.shardId());
             }
+            return percolate(request, context, parsedDocument);
+        } finally {
+            context.release();
+            shardPercolateService.postPercolate(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Percolate several documents against the same shard. Documents which only need the ids or the number of the
+     * matching queries are indexed together into a small in-memory index, against which every registered query runs
+     * only once, unless the query depends on the terms or statistics of the whole index (see
+     * {@link DocumentLocalQueries}), in which case it is verified against every document on its own. Other documents
+     * are percolated one by one.
+     *
+     * @return for every request, either its {@link PercolateShardResponse} or the {@link Throwable} it failed with
+     */
+    public Object[] percolate(List<PercolateShardRequest> requests) {
+        final Object[] responses = new Object[requests.size()];
+        if (requests.isEmpty()) {
+            return responses;
+        }
+        IndexService percolateIndexService = indicesService.indexServiceSafe(requests.get(0).index());
+        IndexShard indexShard = percolateIndexService.shardSafe(requests.get(0).shardId());
+        ShardPercolateService shardPercolateService = indexShard.shardPercolateService();
+        SearchShardTarget searchShardTarget = new SearchShardTarget(clusterService.localNode().id(), requests.get(0).index(), requests.get(0).shardId());
 
-            if (request.docSource() != null && request.docSource().length() != 0) {
-                parsedDocument = parseFetchedDoc(request.docSource(), percolateIndexService, request.documentType());
-            } else if (parsedDocument == null) {
-                throw new ElasticsearchIllegalArgumentException("Nothing to percolate");
+        final List<Integer> batchSlots = new ArrayList<Integer>();
+        final List<PercolateShardRequest> batchRequests = new ArrayList<PercolateShardRequest>();
+        final List<PercolateContext> batchContexts = new ArrayList<PercolateContext>();
+        final List<ParsedDocument> batchDocs = new ArrayList<ParsedDocument>();
+        try {
+            for (int i = 0; i < requests.size(); i++) {
+                final PercolateShardRequest request = requests.get(i);
+                shardPercolateService.prePercolate();
+                long startTime = System.nanoTime();
+                PercolateContext context = null;
+                boolean batched = false;
+                try {
+                    context = new PercolateContext(request, searchShardTarget, indexShard, percolateIndexService, cacheRecycler, pageCacheRecycler);
+                    ParsedDocument parsedDocument = parseDocument(percolateIndexService, request, context);
+                    if (parsedDocument == null) {
+                        responses[i] = new PercolateShardResponse(context, request.index(), request.shardId());
+                    } else if (context.percolateQuery() == null && context.highlight() == null) {
+                        // neither scores, sorting, facets, aggregations nor highlighting, only matches are needed
+                        context.percolatorTypeId = request.onlyCount() ? countPercolator.id() : matchPercolator.id();
+                        batchSlots.add(i);
+                        batchRequests.add(request);
+                        batchContexts.add(context);
+                        batchDocs.add(parsedDocument);
+                        batched = true;
+                    } else {
+                        responses[i] = percolate(request, context, parsedDocument);
+                    }
+                } catch (Throwable t) {
+                    responses[i] = t;
+                } finally {
+                    if (!batched) {
+                        if (context != null) {
+                            context.release();
+                        }
+                        shardPercolateService.postPercolate(System.nanoTime() - startTime);
+                    }
+                }
             }
 
-            if (context.percolateQuery() == null && (context.trackScores() || context.doSort || context.facets() != null || context.aggregations() != null)) {
-                context.percolateQuery(new MatchAllDocsQuery());
+            if (batchSlots.isEmpty()) {
+                return responses;
             }
+            long startTime = System.nanoTime();
+            try {
+                if (batchSlots.size() == 1) {
+                    // not worth an index
+                    responses[batchSlots.get(0)] = percolate(batchRequests.get(0), batchContexts.get(0), batchDocs.get(0));
+                } else {
+                    PercolateShardResponse[] batchResponses = percolateBatch(indexShard, batchRequests, batchContexts, batchDocs);
+                    for (int i = 0; i < batchSlots.size(); i++) {
+                        responses[batchSlots.get(i)] = batchResponses[i];
+                    }
+                }
+            } catch (Throwable t) {
+                for (int slot : batchSlots) {
+                    responses[slot] = t;
+                }
+            } finally {
+                final long tookPerDocument = (System.nanoTime() - startTime) / batchSlots.size();
+                for (int i = 0; i < batchSlots.size(); i++) {
+                    shardPercolateService.postPercolate(tookPerDocument);
+                }
+            }
+        } finally {
+            for (PercolateContext context : batchContexts) {
+                context.release();
+            }
+        }
+        return responses;
+    }
 
-            if (context.doSort && !context.limit) {
-                throw new ElasticsearchIllegalArgumentException("Can't sort if size isn't specified");
+    /**
+     * Parse the request and the document to percolate, or return <tt>null</tt> if there are no queries to percolate.
+     */
+    private ParsedDocument parseDocument(IndexService percolateIndexService, PercolateShardRequest request, PercolateContext context) {
+        ParsedDocument parsedDocument = parseRequest(percolateIndexService, request, context);
+        if (context.percolateQueries().isEmpty()) {
+            return null;
+        }
+
+        if (request.docSource() != null && request.docSource().length() != 0) {
+            parsedDocument = parseFetchedDoc(request.docSource(), percolateIndexService, request.documentType());
+        } else if (parsedDocument == null) {
+            throw new ElasticsearchIllegalArgumentException("Nothing to percolate");
+        }
+
+        if (context.percolateQuery() == null && (context.trackScores() || context.doSort || context.facets() != null || context.aggregations() != null)) {
+            context.percolateQuery(new MatchAllDocsQuery());
+        }
+
+        if (context.doSort && !context.limit) {
+            throw new ElasticsearchIllegalArgumentException("Can't sort if size isn't specified");
+        }
+
+        if (context.highlight() != null && !context.limit) {
+            throw new ElasticsearchIllegalArgumentException("Can't highlight if size isn't specified");
+        }
+
+        if (context.size < 0) {
+            context.size = 0;
+        }
+        return parsedDocument;
+    }
+
+    private PercolateShardResponse percolate(PercolateShardRequest request, PercolateContext context, ParsedDocument parsedDocument) {
+        // first, parse the source doc into a MemoryIndex
+        final MemoryIndex memoryIndex = cache.get();
+        // TODO: This means percolation does not support nested docs...
+        // So look into: ByteBufferDirectory
+        for (IndexableField field : parsedDocument.rootDoc().getFields()) {
+            if (!field.fieldType().indexed() && field.name().equals(UidFieldMapper.NAME)) {
+                continue;
+            }
+            try {
+                TokenStream tokenStream = field.tokenStream(parsedDocument.analyzer());
+                if (tokenStream != null) {
+                    memoryIndex.addField(field.name(), tokenStream, field.boost());
+                }
+            } catch (IOException e) {
+                throw new ElasticsearchException("Failed to create token stream", e);
             }
+        }
 
-            if (context.highlight() != null && !context.limit) {
-                throw new ElasticsearchIllegalArgumentException("Can't highlight if size isn't specified");
+        PercolatorType action;
+        if (request.onlyCount()) {
+            action = context.percolateQuery() != null ? queryCountPercolator : countPercolator;
+        } else {
+            if (context.doSort) {
+                action = topMatchingPercolator;
+            } else if (context.percolateQuery() != null) {
+                action = context.trackScores() ? scoringPercolator : queryPercolator;
+            } else {
+                action = matchPercolator;
             }
+        }
+        context.percolatorTypeId = action.id();
+
+        context.initialize(memoryIndex, parsedDocument);
+        context.indexShard().readAllowed();
+        return action.doPercolate(request, context);
+    }
 
-            if (context.size < 0) {
-                context.size = 0;
+    private PercolateShardResponse[] percolateBatch(IndexShard indexShard, List<PercolateShardRequest> requests, List<PercolateContext> contexts,
+                                                    List<ParsedDocument> docs) throws IOException {
+        final IndexWriterConfig config = new IndexWriterConfig(Lucene.VERSION, Lucene.KEYWORD_ANALYZER)
+                .setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+        final IndexWriter writer = new IndexWriter(new RAMDirectory(), config);
+        DirectoryReader reader = null;
+        try {
+            for (ParsedDocument doc : docs) {
+                writer.addDocument(batchDocument(doc));
             }
+            reader = DirectoryReader.open(writer, false);
+            indexShard.readAllowed();
 
-            // first, parse the source doc into a MemoryIndex
-            final MemoryIndex memoryIndex = cache.get();
-            // TODO: This means percolation does not support nested docs...
-            // So look into: ByteBufferDirectory
-            for (IndexableField field : parsedDocument.rootDoc().getFields()) {
-                if (!field.fieldType().indexed() && field.name().equals(UidFieldMapper.NAME)) {
+            final IndexSearcher searcher = new IndexSearcher(reader);
+            final int maxDoc = reader.maxDoc();
+            final BatchCollector collector = new BatchCollector(maxDoc);
+            final long[] counts = new long[docs.size()];
+            final List<List<BytesRef>> matches = new ArrayList<List<BytesRef>>(docs.size());
+            for (int i = 0; i < docs.size(); i++) {
+                matches.add(new ArrayList<BytesRef>());
+            }
+            // queries which depend on the other documents of the index are verified against every document on its own
+            final IndexSearcher[] docSearchers = new IndexSearcher[docs.size()];
+            final Lucene.ExistsCollector existsCollector = new Lucene.ExistsCollector();
+            for (Map.Entry<HashedBytesRef, Query> entry : indexShard.percolateRegistry().candidateQueries(reader).entrySet()) {
+                if (!DocumentLocalQueries.isDocumentLocal(entry.getValue())) {
+                    for (int doc = 0; doc < docs.size(); doc++) {
+                        if (docSearchers[doc] == null) {
+                            docSearchers[doc] = documentSearcher(docs.get(doc));
+                        }
+                        existsCollector.reset();
+                        try {
+                            docSearchers[doc].search(entry.getValue(), existsCollector);
+                        } catch (IOException e) {
+                            logger.warn("[" + entry.getKey() + "] failed to execute query", e);
+                            break;
+                        }
+                        if (existsCollector.exists()) {
+                            addBatchMatch(contexts.get(doc), entry.getKey(), doc, counts, matches);
+                        }
+                    }
                     continue;
                 }
+                collector.reset();
                 try {
-                    TokenStream tokenStream = field.tokenStream(parsedDocument.analyzer());
-                    if (tokenStream != null) {
-                        memoryIndex.addField(field.name(), tokenStream, field.boost());
-                    }
+                    searcher.search(entry.getValue(), collector);
                 } catch (IOException e) {
-                    throw new ElasticsearchException("Failed to create token stream", e);
+                    logger.warn("[" + entry.getKey() + "] failed to execute query", e);
+                    continue;
+                }
+                // documents are added in order, so their doc ids are their indices in the batch
+                for (int doc = collector.hits.nextSetBit(0); doc != -1; doc = doc + 1 < maxDoc ? collector.hits.nextSetBit(doc + 1) : -1) {
+                    addBatchMatch(contexts.get(doc), entry.getKey(), doc, counts, matches);
                 }
             }
 
-            PercolatorType action;
-            if (request.onlyCount()) {
-                action = context.percolateQuery() != null ? queryCountPercolator : countPercolator;
-            } else {
-                if (context.doSort) {
-                    action = topMatchingPercolator;
-                } else if (context.percolateQuery() != null) {
-                    action = context.trackScores() ? scoringPercolator : queryPercolator;
+            final PercolateShardResponse[] responses = new PercolateShardResponse[docs.size()];
+            for (int i = 0; i < docs.size(); i++) {
+                final PercolateContext context = contexts.get(i);
+                final PercolateShardRequest request = requests.get(i);
+                if (context.percolatorTypeId == countPercolator.id()) {
+                    responses[i] = new PercolateShardResponse(counts[i], context, request.index(), request.shardId());
                 } else {
-                    action = matchPercolator;
+                    final BytesRef[] finalMatches = matches.get(i).toArray(new BytesRef[matches.get(i).size()]);
+                    responses[i] = new PercolateShardResponse(finalMatches, new ArrayList<Map<String, HighlightField>>(), counts[i], context, request.index(), request.shardId());
                 }
             }
-            context.percolatorTypeId = action.id();
-
-            context.initialize(memoryIndex, parsedDocument);
-            indexShard.readAllowed();
-            return action.doPercolate(request, context);
+            return responses;
         } finally {
-            context.release();
-            shardPercolateService.postPercolate(System.nanoTime() - startTime);
+            try {
+                IOUtils.close(reader);
+            } finally {
+                writer.rollback();
+            }
+        }
+    }
+
+    private void addBatchMatch(PercolateContext context, HashedBytesRef id, int doc, long[] counts, List<List<BytesRef>> matches) {
+        if (context.percolatorTypeId == matchPercolator.id() && (!context.limit || counts[doc] < context.size)) {
+            matches.get(doc).add(id.bytes);
+        }
+        counts[doc]++;
+    }
+
+    /**
+     * A searcher over the document alone, with the same fields as the document of the batch.
+     */
+    private static IndexSearcher documentSearcher(ParsedDocument doc) throws IOException {
+        final MemoryIndex memoryIndex = new MemoryIndex();
+        for (IndexableField field : batchDocument(doc)) {
+            final TokenStream tokenStream = field.tokenStream(null);
+            if (tokenStream != null) {
+                memoryIndex.addField(field.name(), tokenStream, field.boost());
+            }
+        }
+        return memoryIndex.createSearcher();
+    }
+
+    /**
+     * Index the fields of the document like they would be indexed into a {@link MemoryIndex}.
+     */
+    private static List<IndexableField> batchDocument(ParsedDocument doc) {
+        final List<IndexableField> fields = new ArrayList<IndexableField>();
+        for (IndexableField field : doc.rootDoc().getFields()) {
+            if (field.fieldType().indexed()) {
+                fields.add(new BatchField(field, doc.analyzer()));
+            }
+        }
+        return fields;
+    }
+
+    private static final FieldType BATCH_FIELD_TYPE = new FieldType();
+
+    static {
+        BATCH_FIELD_TYPE.setIndexed(true);
+        BATCH_FIELD_TYPE.setTokenized(true);
+        BATCH_FIELD_TYPE.setIndexOptions(FieldInfo.IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        BATCH_FIELD_TYPE.freeze();
+    }
+
+    private static final class BatchField implements IndexableField {
+
+        private final IndexableField field;
+        private final Analyzer analyzer;
+
+        BatchField(IndexableField field, Analyzer analyzer) {
+            this.field = field;
+            this.analyzer = analyzer;
+        }
+
+        @Override
+        public String name() {
+            return field.name();
+        }
+
+        @Override
+        public IndexableFieldType fieldType() {
+            return BATCH_FIELD_TYPE;
+        }
+
+        @Override
+        public float boost() {
+            return field.boost();
+        }
+
+        @Override
+        public BytesRef binaryValue() {
+            return null;
+        }
+
+        @Override
+        public String stringValue() {
+            return null;
+        }
+
+        @Override
+        public Reader readerValue() {
+            return null;
+        }
+
+        @Override
+        public Number numericValue() {
+            return null;
+        }
+
+        @Override
+        public TokenStream tokenStream(Analyzer analyzer) throws IOException {
+            // the analyzer of the document, not the one of the writer
+            return field.tokenStream(this.analyzer);
+        }
+    }
+
+    private static final class BatchCollector extends Collector {
+
+        final FixedBitSet hits;
+        int docBase;
+
+        BatchCollector(int maxDoc) {
+            hits = new FixedBitSet(maxDoc);
+        }
+
+        void reset() {
+            hits.clear(0, hits.length());
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException {
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            hits.set(docBase + doc);
+        }
+
+        @Override
+        public void setNextReader(AtomicReaderContext context) throws IOException {
+            docBase = context.docBase;
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return true;
         }
     }
 
@@ -438,9 +760,13 @@ public class PercolatorService extends AbstractComponent {
 
         @Override
         public PercolateShardResponse doPercolate(PercolateShardRequest request, PercolateContext context) {
+            if (parallelPercolator.shouldRun(context.candidateQueries().size())) {
+                long count = parallelPercolator.percolate(context, false).count();
+                return new PercolateShardResponse(count, context, request.index(), request.shardId());
+            }
             long count = 0;
             Lucene.ExistsCollector collector = new Lucene.ExistsCollector();
-            for (Map.Entry<HashedBytesRef, Query> entry : context.percolateQueries().entrySet()) {
+            for (Map.Entry<HashedBytesRef, Query> entry : context.candidateQueries().entrySet()) {
                 collector.reset();
                 try {
                     context.docSearcher().search(entry.getValue(), collector);
@@ -528,12 +854,18 @@ public class PercolatorService extends AbstractComponent {
 
         @Override
         public PercolateShardResponse doPercolate(PercolateShardRequest request, PercolateContext context) {
+            // highlighting relies on the state of the context, so it is done sequentially
+            if (context.highlight() == null && parallelPercolator.shouldRun(context.candidateQueries().size())) {
+                ParallelPercolator.Result result = parallelPercolator.percolate(context, true);
+                BytesRef[] finalMatches = result.matches().toArray(new BytesRef[result.matches().size()]);
+                return new PercolateShardResponse(finalMatches, new ArrayList<Map<String, HighlightField>>(), result.count(), context, request.index(), request.shardId());
+            }
             long count = 0;
             List<BytesRef> matches = new ArrayList<BytesRef>();
             List<Map<String, HighlightField>> hls = new ArrayList<Map<String, HighlightField>>();
             Lucene.ExistsCollector collector = new Lucene.ExistsCollector();
 
-            for (Map.Entry<HashedBytesRef, Query> entry : context.percolateQueries().entrySet()) {
+            for (Map.Entry<HashedBytesRef, Query> entry : context.candidateQueries().entrySet()) {
                 collector.reset();
                 if (context.highlight() != null) {
                     context.parsedQuery(new ParsedQuery(entry.getValue(), ImmutableMap.<String, Filter>of()));
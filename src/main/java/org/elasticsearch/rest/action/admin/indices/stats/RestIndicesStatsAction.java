@@ -85,6 +85,7 @@ public class RestIndicesStatsAction extends BaseRestHandler {
             indicesStatsRequest.warmer(metrics.contains("warmer"));
             indicesStatsRequest.filterCache(metrics.contains("filter_cache"));
             indicesStatsRequest.idCache(metrics.contains("id_cache"));
+            indicesStatsRequest.parsedQueryCache(metrics.contains("parsed_query_cache"));
             indicesStatsRequest.percolate(metrics.contains("percolate"));
             indicesStatsRequest.segments(metrics.contains("segments"));
             indicesStatsRequest.fieldData(metrics.contains("fielddata"));
@@ -25,11 +25,13 @@ import com.carrotsearch.hppc.cursors.ObjectCursor;
 import com.google.common.collect.ImmutableMap;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.TopDocs;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cache.recycler.CacheRecycler;
+import org.elasticsearch.cache.recycler.CircuitBreakingPageCacheRecycler;
 import org.elasticsearch.cache.recycler.PageCacheRecycler;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
@@ -44,19 +46,24 @@ import org.elasticsearch.common.util.concurrent.ConcurrentMapLong;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.cache.fixedbitset.FixedBitSetFilterCache;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.fielddata.FieldDataType;
+import org.elasticsearch.index.fielddata.IndexFieldData;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
 import org.elasticsearch.index.mapper.DocumentMapper;
 import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.index.mapper.FieldMapper.Loading;
 import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.object.ObjectMapper;
 import org.elasticsearch.index.mapper.internal.ParentFieldMapper;
+import org.elasticsearch.index.search.nested.NonNestedDocsFilter;
 import org.elasticsearch.index.search.stats.StatsGroupsParseElement;
 import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.index.shard.service.IndexShard;
 import org.elasticsearch.indices.IndicesLifecycle;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.indices.fielddata.breaker.CircuitBreakerService;
 import org.elasticsearch.indices.warmer.IndicesWarmer;
 import org.elasticsearch.indices.warmer.IndicesWarmer.WarmerContext;
 import org.elasticsearch.script.ScriptService;
@@ -72,8 +79,10 @@ import org.elasticsearch.search.query.*;
 import org.elasticsearch.search.warmer.IndexWarmersMetaData;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
@@ -89,6 +98,12 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     public static final String NORMS_LOADING_KEY = "index.norms.loading";
 
+    /**
+     * The maximum number of slices the leaves of a shard are partitioned into in order to execute the query phase
+     * concurrently, defaults to <tt>1</tt> (disabled).
+     */
+    public static final String INDEX_SEARCH_CONCURRENT_SLICES = "index.search.concurrent_slices";
+
     private final ThreadPool threadPool;
 
     private final ClusterService clusterService;
@@ -103,6 +118,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     private final PageCacheRecycler pageCacheRecycler;
 
+    private final CircuitBreakerService breakerService;
+
     private final DfsPhase dfsPhase;
 
     private final QueryPhase queryPhase;
@@ -121,7 +138,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     @Inject
     public SearchService(Settings settings, ClusterService clusterService, IndicesService indicesService, IndicesLifecycle indicesLifecycle, IndicesWarmer indicesWarmer, ThreadPool threadPool,
-                         ScriptService scriptService, CacheRecycler cacheRecycler, PageCacheRecycler pageCacheRecycler, DfsPhase dfsPhase, QueryPhase queryPhase, FetchPhase fetchPhase) {
+                         ScriptService scriptService, CacheRecycler cacheRecycler, PageCacheRecycler pageCacheRecycler, CircuitBreakerService breakerService,
+                         DfsPhase dfsPhase, QueryPhase queryPhase, FetchPhase fetchPhase) {
         super(settings);
         this.threadPool = threadPool;
         this.clusterService = clusterService;
@@ -130,6 +148,7 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         this.scriptService = scriptService;
         this.cacheRecycler = cacheRecycler;
         this.pageCacheRecycler = pageCacheRecycler;
+        this.breakerService = breakerService;
         this.dfsPhase = dfsPhase;
         this.queryPhase = queryPhase;
         this.fetchPhase = fetchPhase;
@@ -149,6 +168,7 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
         this.indicesWarmer.addListener(new NormsWarmer());
         this.indicesWarmer.addListener(new FieldDataWarmer());
+        this.indicesWarmer.addListener(new FixedBitSetFilterWarmer());
         this.indicesWarmer.addListener(new SearchWarmer());
     }
 
@@ -481,7 +501,13 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         SearchShardTarget shardTarget = new SearchShardTarget(clusterService.localNode().id(), request.index(), request.shardId());
 
         Engine.Searcher engineSearcher = searcher == null ? indexShard.acquireSearcher("search") : searcher;
-        SearchContext context = new DefaultSearchContext(idGenerator.incrementAndGet(), request, shardTarget, engineSearcher, indexService, indexShard, scriptService, cacheRecycler, pageCacheRecycler);
+        // pages allocated by this request are charged against the request breaker until the context is released
+        final PageCacheRecycler requestPageCacheRecycler = new CircuitBreakingPageCacheRecycler(pageCacheRecycler, breakerService.getRequestBreaker());
+        SearchContext context = new DefaultSearchContext(idGenerator.incrementAndGet(), request, shardTarget, engineSearcher, indexService, indexShard, scriptService, cacheRecycler, requestPageCacheRecycler);
+        int concurrentSlices = indexService.settingsService().getSettings().getAsInt(INDEX_SEARCH_CONCURRENT_SLICES, 1);
+        if (concurrentSlices > 1) {
+            context.searcher().concurrentSlices(threadPool.executor(ThreadPool.Names.SEARCH_SLICE), concurrentSlices);
+        }
         SearchContext.setCurrent(context);
         try {
             context.scroll(request.scroll());
@@ -700,6 +726,7 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         public TerminationHandle warm(final IndexShard indexShard, IndexMetaData indexMetaData, final WarmerContext context, ThreadPool threadPool) {
             final MapperService mapperService = indexShard.mapperService();
             final Map<String, FieldMapper<?>> warmUp = new HashMap<String, FieldMapper<?>>();
+            final Map<String, FieldMapper<?>> warmUpGlobalOrdinals = new HashMap<String, FieldMapper<?>>();
             boolean parentChild = false;
             for (DocumentMapper docMapper : mapperService) {
                 for (FieldMapper<?> fieldMapper : docMapper.mappers().mappers()) {
@@ -710,10 +737,14 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                     if (fieldDataType == null) {
                         continue;
                     }
-                    if (fieldDataType.getLoading() != Loading.EAGER) {
+                    if (fieldDataType.getLoading() == Loading.LAZY) {
                         continue;
                     }
                     final String indexName = fieldMapper.names().indexName();
+                    if (fieldDataType.getLoading() == Loading.EAGER_GLOBAL_ORDINALS && context.topLevelReader() != null
+                            && !warmUpGlobalOrdinals.containsKey(indexName)) {
+                        warmUpGlobalOrdinals.put(indexName, fieldMapper);
+                    }
                     if (warmUp.containsKey(indexName)) {
                         continue;
                     }
@@ -722,7 +753,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
             }
             final IndexFieldDataService indexFieldDataService = indexShard.indexFieldDataService();
             final Executor executor = threadPool.executor(executor());
-            final CountDownLatch latch = new CountDownLatch(context.newSearcher().reader().leaves().size() * warmUp.size() + (parentChild ? 1 : 0));
+            final CountDownLatch latch = new CountDownLatch(context.newSearcher().reader().leaves().size() * warmUp.size()
+                    + warmUpGlobalOrdinals.size() + (parentChild ? 1 : 0));
             for (final AtomicReaderContext ctx : context.newSearcher().reader().leaves()) {
                 for (final FieldMapper<?> fieldMapper : warmUp.values()) {
                     executor.execute(new Runnable() {
@@ -732,8 +764,10 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                             try {
                                 final long start = System.nanoTime();
                                 indexFieldDataService.getForField(fieldMapper).load(ctx);
+                                final long took = System.nanoTime() - start;
+                                indexShard.warmerService().onFieldDataWarmed(fieldMapper.names().indexName(), took);
                                 if (indexShard.warmerService().logger().isTraceEnabled()) {
-                                    indexShard.warmerService().logger().trace("warmed fielddata for [{}], took [{}]", fieldMapper.names().name(), TimeValue.timeValueNanos(System.nanoTime() - start));
+                                    indexShard.warmerService().logger().trace("warmed fielddata for [{}], took [{}]", fieldMapper.names().name(), TimeValue.timeValueNanos(took));
                                 }
                             } catch (Throwable t) {
                                 indexShard.warmerService().logger().warn("failed to warm-up fielddata for [{}]", t, fieldMapper.names().name());
@@ -746,6 +780,33 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                 }
             }
 
+            for (final FieldMapper<?> fieldMapper : warmUpGlobalOrdinals.values()) {
+                executor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            final long start = System.nanoTime();
+                            final IndexFieldData<?> indexFieldData = indexFieldDataService.getForField(fieldMapper);
+                            if (indexFieldData instanceof IndexFieldData.WithOrdinals) {
+                                // loads the field data of the new segments too if they are not loaded yet
+                                indexFieldDataService.getGlobalOrdinals(context.topLevelReader(), (IndexFieldData.WithOrdinals<?>) indexFieldData);
+                                final long took = System.nanoTime() - start;
+                                indexShard.warmerService().onFieldDataWarmed(fieldMapper.names().indexName(), took);
+                                if (indexShard.warmerService().logger().isTraceEnabled()) {
+                                    indexShard.warmerService().logger().trace("warmed global ordinals for [{}], took [{}]", fieldMapper.names().name(), TimeValue.timeValueNanos(took));
+                                }
+                            }
+                        } catch (Throwable t) {
+                            indexShard.warmerService().logger().warn("failed to warm-up global ordinals for [{}]", t, fieldMapper.names().name());
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+
+                });
+            }
+
             if (parentChild) {
                 executor.execute(new Runnable() {
 
@@ -777,6 +838,60 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     }
 
+    static class FixedBitSetFilterWarmer extends IndicesWarmer.Listener {
+
+        @Override
+        public TerminationHandle warm(final IndexShard indexShard, IndexMetaData indexMetaData, final WarmerContext context, ThreadPool threadPool) {
+            final MapperService mapperService = indexShard.mapperService();
+            if (!mapperService.hasNested()) {
+                return TerminationHandle.NO_WAIT;
+            }
+            // the root documents filter and the filters of all nested object types, which are used as parent filters by
+            // nested queries, aggregations and sorting
+            final List<Filter> warmUp = new ArrayList<Filter>();
+            warmUp.add(NonNestedDocsFilter.INSTANCE);
+            for (DocumentMapper docMapper : mapperService) {
+                for (ObjectMapper objectMapper : docMapper.objectMappers().values()) {
+                    if (objectMapper.nested().isNested() && !warmUp.contains(objectMapper.nestedTypeFilter())) {
+                        warmUp.add(objectMapper.nestedTypeFilter());
+                    }
+                }
+            }
+            final FixedBitSetFilterCache fixedBitSetFilterCache = indexShard.indexService().cache().fixedBitSetFilterCache();
+            final Executor executor = threadPool.executor(executor());
+            final CountDownLatch latch = new CountDownLatch(context.newSearcher().reader().leaves().size() * warmUp.size());
+            for (final AtomicReaderContext ctx : context.newSearcher().reader().leaves()) {
+                for (final Filter filter : warmUp) {
+                    executor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                final long start = System.nanoTime();
+                                fixedBitSetFilterCache.getFixedBitSetFilter(filter).getDocIdSet(ctx, null);
+                                if (indexShard.warmerService().logger().isTraceEnabled()) {
+                                    indexShard.warmerService().logger().trace("warmed fixed bit set for [{}], took [{}]", filter, TimeValue.timeValueNanos(System.nanoTime() - start));
+                                }
+                            } catch (Throwable t) {
+                                indexShard.warmerService().logger().warn("failed to warm-up fixed bit set for [{}]", t, filter);
+                            } finally {
+                                latch.countDown();
+                            }
+                        }
+
+                    });
+                }
+            }
+            return new TerminationHandle() {
+                @Override
+                public void awaitTermination() throws InterruptedException {
+                    latch.await();
+                }
+            };
+        }
+
+    }
+
     class SearchWarmer extends IndicesWarmer.Listener {
 
         @Override
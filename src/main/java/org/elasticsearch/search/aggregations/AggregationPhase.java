@@ -21,6 +21,7 @@ package org.elasticsearch.search.aggregations;
 
 import com.google.common.collect.ImmutableMap;
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
@@ -36,6 +37,7 @@ import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.aggregations.bucket.global.GlobalAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.SliceableCollector;
 import org.elasticsearch.search.query.QueryPhaseExecutionException;
 
 import java.io.IOException;
@@ -88,7 +90,7 @@ public class AggregationPhase implements SearchPhase {
             }
             context.aggregations().aggregators(aggregators);
             if (!collectors.isEmpty()) {
-                context.searcher().addMainQueryCollector(new AggregationsCollector(collectors, aggregationContext));
+                context.searcher().addMainQueryCollector(new MainQueryAggregationsCollector(collectors, aggregationContext, context.aggregations()));
             }
         }
     }
@@ -130,22 +132,78 @@ public class AggregationPhase implements SearchPhase {
                 collector.postCollection();
             }
 
+            List<Aggregator[]> sliceAggregators = context.aggregations().sliceAggregators();
             List<InternalAggregation> aggregations = new ArrayList<InternalAggregation>(aggregators.length);
-            for (Aggregator aggregator : context.aggregations().aggregators()) {
-                aggregations.add(aggregator.buildAggregation(0));
+            for (int i = 0; i < aggregators.length; i++) {
+                if (sliceAggregators.isEmpty() || aggregators[i] instanceof GlobalAggregator) {
+                    aggregations.add(aggregators[i].buildAggregation(0));
+                } else {
+                    // the main query was collected concurrently, each slice has its own aggregators. The shard result is
+                    // reduced again on the coordinating node, so this is a partial reduction which keeps the buckets that
+                    // fall beyond the requested size
+                    List<InternalAggregation> slices = new ArrayList<InternalAggregation>(sliceAggregators.size());
+                    for (Aggregator[] slice : sliceAggregators) {
+                        slices.add(slice[i].buildAggregation(0));
+                    }
+                    aggregations.add(slices.get(0).reduce(new InternalAggregation.ReduceContext(slices, context.cacheRecycler(), false)));
+                }
             }
             context.queryResult().aggregations(new InternalAggregations(aggregations));
             success = true;
         } finally {
             Releasables.release(success, aggregators);
+            for (Aggregator[] slice : context.aggregations().sliceAggregators()) {
+                Releasables.release(success, slice);
+            }
         }
 
     }
 
 
+    /**
+     * Collects the top level aggregators of the main query. When the main query is executed concurrently, each slice gets its
+     * own aggregators (and aggregation context) which are then reduced in {@link #execute(SearchContext)}.
+     */
+    static class MainQueryAggregationsCollector extends AggregationsCollector implements SliceableCollector {
+
+        private final SearchContextAggregations aggregations;
+
+        MainQueryAggregationsCollector(List<Aggregator> collectors, AggregationContext aggregationContext, SearchContextAggregations aggregations) {
+            super(collectors, aggregationContext);
+            this.aggregations = aggregations;
+        }
+
+        @Override
+        public boolean supportsSlicing() {
+            // aggregations are only built once per search context, eg. the first time a scroll is executed
+            return aggregationContext.searchContext().queryResult().aggregations() == null
+                    && aggregations.factories().supportsConcurrentCollection();
+        }
+
+        @Override
+        public Collector newSliceCollector() {
+            AggregationContext sliceContext = new AggregationContext(aggregationContext.searchContext());
+            Aggregator[] sliceAggregators = aggregations.factories().createTopLevelAggregators(sliceContext);
+            // registered right away so that they get released with the top level ones
+            aggregations.addSliceAggregators(sliceAggregators);
+            List<Aggregator> collectors = new ArrayList<Aggregator>();
+            for (int i = 0; i < sliceAggregators.length; i++) {
+                if (!(sliceAggregators[i] instanceof GlobalAggregator) && sliceAggregators[i].shouldCollect()) {
+                    collectors.add(sliceAggregators[i]);
+                }
+            }
+            return new AggregationsCollector(collectors, sliceContext);
+        }
+
+        @Override
+        public void mergeSlices(List<Collector> sliceCollectors) {
+            // nothing to do, the slice aggregators are reduced when building the aggregations
+        }
+    }
+
     public static class AggregationsCollector extends XCollector {
 
-        private final AggregationContext aggregationContext;
+        protected final AggregationContext aggregationContext;
         private final List<Aggregator> collectors;
 
         public AggregationsCollector(List<Aggregator> collectors, AggregationContext aggregationContext) {
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations;
 
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.xcontent.XContentParser;
@@ -47,6 +48,42 @@ public abstract class Aggregator implements Releasable {
         MULTI_BUCKETS
     }
 
+    /**
+     * Defines when the sub-aggregators of a bucket aggregator collect documents.
+     */
+    public static enum SubAggCollectionMode {
+
+        /**
+         * Documents are collected into the sub-aggregators as soon as they fall into a bucket.
+         */
+        DEPTH_FIRST("depth_first"),
+
+        /**
+         * Documents are recorded per bucket during collection, and only the documents of the buckets that the
+         * aggregator decides to keep are replayed into the sub-aggregators.
+         */
+        BREADTH_FIRST("breadth_first");
+
+        private final String name;
+
+        private SubAggCollectionMode(String name) {
+            this.name = name;
+        }
+
+        public String toXContentName() {
+            return name;
+        }
+
+        public static SubAggCollectionMode parse(String value) {
+            for (SubAggCollectionMode mode : values()) {
+                if (mode.name.equals(value)) {
+                    return mode;
+                }
+            }
+            throw new ElasticsearchIllegalArgumentException("No collect_mode found for value [" + value + "]");
+        }
+    }
+
     protected final String name;
     protected final Aggregator parent;
     protected final AggregationContext context;
@@ -149,12 +186,22 @@ public abstract class Aggregator implements Releasable {
      * Called after collection of all document is done.
      */
     public final void postCollection() {
-        for (int i = 0; i < subAggregators.length; i++) {
-            subAggregators[i].postCollection();
+        if (!defersSubAggregatorsCollection()) {
+            for (int i = 0; i < subAggregators.length; i++) {
+                subAggregators[i].postCollection();
+            }
         }
         doPostCollection();
     }
 
+    /**
+     * @return Whether the sub-aggregators of this aggregator are collected after its own collection phase ends, in which
+     *         case the aggregator is responsible for calling their {@link #postCollection()} once they are collected.
+     */
+    protected boolean defersSubAggregatorsCollection() {
+        return false;
+    }
+
     /** Called upon release of the aggregator. */
     @Override
     public boolean release() {
@@ -130,6 +130,18 @@ public class AggregatorFactories {
         return factories.length;
     }
 
+    /**
+     * @return  Whether all the aggregators created by these factories can collect concurrently.
+     */
+    public boolean supportsConcurrentCollection() {
+        for (AggregatorFactory factory : factories) {
+            if (!factory.supportsConcurrentCollection()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     void setParent(AggregatorFactory parent) {
         for (AggregatorFactory factory : factories) {
             factory.parent = parent;
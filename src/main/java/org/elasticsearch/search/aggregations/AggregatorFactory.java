@@ -82,6 +82,14 @@ public abstract class AggregatorFactory {
      */
     public abstract Aggregator create(AggregationContext context, Aggregator parent, long expectedBucketsCount);
 
+    /**
+     * @return  Whether several aggregators created by this factory (and its sub-factories) can collect concurrently, each one
+     *          with its own {@link AggregationContext}, for example because they don't share a stateful script.
+     */
+    public boolean supportsConcurrentCollection() {
+        return factories.supportsConcurrentCollection();
+    }
+
     public void doValidate() {
     }
 
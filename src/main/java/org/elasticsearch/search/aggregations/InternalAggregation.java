@@ -78,10 +78,16 @@ public abstract class InternalAggregation implements Aggregation, ToXContent, St
 
         private final List<InternalAggregation> aggregations;
         private final CacheRecycler cacheRecycler;
+        private final boolean finalReduce;
 
         public ReduceContext(List<InternalAggregation> aggregations, CacheRecycler cacheRecycler) {
+            this(aggregations, cacheRecycler, true);
+        }
+
+        public ReduceContext(List<InternalAggregation> aggregations, CacheRecycler cacheRecycler, boolean finalReduce) {
             this.aggregations = aggregations;
             this.cacheRecycler = cacheRecycler;
+            this.finalReduce = finalReduce;
         }
 
         public List<InternalAggregation> aggregations() {
@@ -91,6 +97,15 @@ public abstract class InternalAggregation implements Aggregation, ToXContent, St
         public CacheRecycler cacheRecycler() {
             return cacheRecycler;
         }
+
+        /**
+         * @return Whether this is the last reduction of these aggregations. Partial reductions, which are later reduced
+         *         again together with other results, must not drop anything that the final reduction may need, such as
+         *         the buckets that fall beyond the requested size.
+         */
+        public boolean isFinalReduce() {
+            return finalReduce;
+        }
     }
 
 
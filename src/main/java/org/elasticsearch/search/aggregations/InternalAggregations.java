@@ -120,6 +120,17 @@ public class InternalAggregations implements Aggregations, ToXContent, Streamabl
      * @return                  The reduced addAggregation
      */
     public static InternalAggregations reduce(List<InternalAggregations> aggregationsList, CacheRecycler cacheRecycler) {
+        return reduce(aggregationsList, cacheRecycler, true);
+    }
+
+    /**
+     * Reduces the given lists of addAggregation.
+     *
+     * @param aggregationsList  A list of addAggregation to reduce
+     * @param finalReduce       Whether this is the last reduction, or a partial one whose result will be reduced again
+     * @return                  The reduced addAggregation
+     */
+    public static InternalAggregations reduce(List<InternalAggregations> aggregationsList, CacheRecycler cacheRecycler, boolean finalReduce) {
         if (aggregationsList.isEmpty()) {
             return null;
         }
@@ -144,7 +155,7 @@ public class InternalAggregations implements Aggregations, ToXContent, Streamabl
         for (Map.Entry<String, List<InternalAggregation>> entry : aggByName.entrySet()) {
             List<InternalAggregation> aggregations = entry.getValue();
             InternalAggregation first = aggregations.get(0); // the list can't be empty as it's created on demand
-            reducedAggregations.add(first.reduce(new InternalAggregation.ReduceContext(aggregations, cacheRecycler)));
+            reducedAggregations.add(first.reduce(new InternalAggregation.ReduceContext(aggregations, cacheRecycler, finalReduce)));
         }
         InternalAggregations result = aggregationsList.get(0);
         result.reset(reducedAggregations);
@@ -212,4 +223,72 @@ public class InternalAggregations implements Aggregations, ToXContent, Streamabl
         }
     }
 
+    /**
+     * Write the sub-aggregations of several buckets. If all buckets have the same aggregations, which is the common
+     * case, then aggregations are written by column so that every column only needs to write its type once.
+     */
+    public static void writeAggregationsByColumn(List<InternalAggregations> aggregationsList, StreamOutput out) throws IOException {
+        final boolean byColumn = sameTypes(aggregationsList);
+        out.writeBoolean(byColumn);
+        if (byColumn) {
+            final List<InternalAggregation> first = aggregationsList.isEmpty() ? ImmutableList.<InternalAggregation>of() : aggregationsList.get(0).aggregations;
+            out.writeVInt(first.size());
+            for (int i = 0; i < first.size(); i++) {
+                out.writeBytesReference(first.get(i).type().stream());
+                for (InternalAggregations aggregations : aggregationsList) {
+                    aggregations.aggregations.get(i).writeTo(out);
+                }
+            }
+        } else {
+            for (InternalAggregations aggregations : aggregationsList) {
+                aggregations.writeTo(out);
+            }
+        }
+    }
+
+    private static boolean sameTypes(List<InternalAggregations> aggregationsList) {
+        if (aggregationsList.isEmpty()) {
+            return true;
+        }
+        final List<InternalAggregation> first = aggregationsList.get(0).aggregations;
+        for (InternalAggregations aggregations : aggregationsList) {
+            if (aggregations.aggregations.size() != first.size()) {
+                return false;
+            }
+            for (int i = 0; i < first.size(); i++) {
+                if (!aggregations.aggregations.get(i).type().stream().equals(first.get(i).type().stream())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the sub-aggregations of <code>size</code> buckets, which have been written with {@link #writeAggregationsByColumn}.
+     */
+    public static InternalAggregations[] readAggregationsByColumn(StreamInput in, int size) throws IOException {
+        final InternalAggregations[] result = new InternalAggregations[size];
+        if (in.readBoolean()) {
+            final int numColumns = in.readVInt();
+            for (int i = 0; i < size; i++) {
+                result[i] = new InternalAggregations();
+                if (numColumns > 0) {
+                    result[i].aggregations = Lists.newArrayListWithCapacity(numColumns);
+                }
+            }
+            for (int i = 0; i < numColumns; i++) {
+                final AggregationStreams.Stream stream = AggregationStreams.stream(in.readBytesReference());
+                for (int j = 0; j < size; j++) {
+                    result[j].aggregations.add(stream.readResult(in));
+                }
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                result[i] = readAggregations(in);
+            }
+        }
+        return result;
+    }
+
 }
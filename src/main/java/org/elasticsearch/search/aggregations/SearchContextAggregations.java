@@ -21,6 +21,9 @@ package org.elasticsearch.search.aggregations;
 
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * The aggregation context that is part of the search context.
  */
@@ -29,6 +32,7 @@ public class SearchContextAggregations {
     private final AggregatorFactories factories;
     private Aggregator[] aggregators;
     private AggregationContext aggregationContext;
+    private List<Aggregator[]> sliceAggregators = new ArrayList<Aggregator[]>();
 
     /**
      * Creates a new aggregation context with the parsed aggregator factories
@@ -62,4 +66,19 @@ public class SearchContextAggregations {
         this.aggregators = aggregators;
     }
 
+    /**
+     * @return  The top level aggregators of each slice when the main query was collected concurrently (see
+     *          {@link org.elasticsearch.search.internal.ContextIndexSearcher#concurrentSlices}), in slice order. Empty otherwise.
+     */
+    public List<Aggregator[]> sliceAggregators() {
+        return sliceAggregators;
+    }
+
+    /**
+     * Registers the top level aggregators that collected a slice of the main query. They are aligned with {@link #aggregators()}.
+     */
+    public void addSliceAggregators(Aggregator[] aggregators) {
+        this.sliceAggregators.add(aggregators);
+    }
+
 }
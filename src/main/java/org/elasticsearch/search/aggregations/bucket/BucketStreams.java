@@ -0,0 +1,182 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * Helpers to stream the buckets of bucket aggregations by column: all keys first, then all doc counts, then all
+ * sub-aggregations (see {@link org.elasticsearch.search.aggregations.InternalAggregations#writeAggregationsByColumn}).
+ * Columns compress better than interleaved buckets: long keys are delta-encoded, terms only store the suffix that they
+ * don't share with the previous term and doc counts are bit-packed.
+ */
+public final class BucketStreams {
+
+    private BucketStreams() {
+    }
+
+    /**
+     * Whether buckets should be streamed by column to or from a node of the given version.
+     */
+    public static boolean streamByColumn(Version version) {
+        return version.onOrAfter(Version.V_1_0_0_RC1);
+    }
+
+    /**
+     * Write long keys as zig-zag encoded deltas from the previous key, which are small when keys are sorted.
+     */
+    public static void writeLongKeys(long[] keys, StreamOutput out) throws IOException {
+        long previous = 0;
+        for (long key : keys) {
+            final long delta = key - previous;
+            out.writeVLong((delta << 1) ^ (delta >> 63));
+            previous = key;
+        }
+    }
+
+    public static long[] readLongKeys(StreamInput in, int size) throws IOException {
+        final long[] keys = new long[size];
+        long previous = 0;
+        for (int i = 0; i < size; ++i) {
+            final long zigZag = in.readVLong();
+            previous += (zigZag >>> 1) ^ -(zigZag & 1);
+            keys[i] = previous;
+        }
+        return keys;
+    }
+
+    public static void writeDoubleKeys(double[] keys, StreamOutput out) throws IOException {
+        for (double key : keys) {
+            out.writeDouble(key);
+        }
+    }
+
+    public static double[] readDoubleKeys(StreamInput in, int size) throws IOException {
+        final double[] keys = new double[size];
+        for (int i = 0; i < size; ++i) {
+            keys[i] = in.readDouble();
+        }
+        return keys;
+    }
+
+    /**
+     * Write terms as the length of the prefix that they share with the previous term followed by their suffix.
+     */
+    public static void writeTerms(BytesRef[] terms, StreamOutput out) throws IOException {
+        int totalLength = 0;
+        for (BytesRef term : terms) {
+            totalLength += term.length;
+        }
+        out.writeVInt(totalLength);
+        BytesRef previous = new BytesRef();
+        for (BytesRef term : terms) {
+            final int prefixLength = StringHelper.bytesDifference(previous, term);
+            out.writeVInt(prefixLength);
+            out.writeVInt(term.length - prefixLength);
+            out.writeBytes(term.bytes, term.offset + prefixLength, term.length - prefixLength);
+            previous = term;
+        }
+    }
+
+    /**
+     * Read terms written with {@link #writeTerms}. All returned terms share the same byte array.
+     */
+    public static BytesRef[] readTerms(StreamInput in, int size) throws IOException {
+        final byte[] bytes = new byte[in.readVInt()];
+        final BytesRef[] terms = new BytesRef[size];
+        int offset = 0;
+        int previousOffset = 0;
+        for (int i = 0; i < size; ++i) {
+            final int prefixLength = in.readVInt();
+            final int suffixLength = in.readVInt();
+            System.arraycopy(bytes, previousOffset, bytes, offset, prefixLength);
+            in.readBytes(bytes, offset + prefixLength, suffixLength);
+            terms[i] = new BytesRef(bytes, offset, prefixLength + suffixLength);
+            previousOffset = offset;
+            offset += prefixLength + suffixLength;
+        }
+        return terms;
+    }
+
+    /**
+     * Write non-negative doc counts with as many bits per value as the maximum doc count requires.
+     */
+    public static void writeDocCounts(long[] docCounts, StreamOutput out) throws IOException {
+        long max = 0;
+        for (long docCount : docCounts) {
+            assert docCount >= 0;
+            max |= docCount;
+        }
+        final int bitsPerValue = PackedInts.bitsRequired(max);
+        out.writeByte((byte) bitsPerValue);
+        // values are written least significant bits first, and may span several bytes
+        int pending = 0;
+        int pendingBits = 0;
+        for (long docCount : docCounts) {
+            long value = docCount;
+            int remainingBits = bitsPerValue;
+            while (remainingBits > 0) {
+                final int bits = Math.min(remainingBits, 8 - pendingBits);
+                pending |= ((int) value & ((1 << bits) - 1)) << pendingBits;
+                value >>>= bits;
+                remainingBits -= bits;
+                pendingBits += bits;
+                if (pendingBits == 8) {
+                    out.writeByte((byte) pending);
+                    pending = 0;
+                    pendingBits = 0;
+                }
+            }
+        }
+        if (pendingBits > 0) {
+            out.writeByte((byte) pending);
+        }
+    }
+
+    public static long[] readDocCounts(StreamInput in, int size) throws IOException {
+        final int bitsPerValue = in.readByte();
+        final long[] docCounts = new long[size];
+        int current = 0;
+        int currentBits = 0;
+        for (int i = 0; i < size; ++i) {
+            long value = 0;
+            int shift = 0;
+            while (shift < bitsPerValue) {
+                if (currentBits == 0) {
+                    current = in.readByte() & 0xFF;
+                    currentBits = 8;
+                }
+                final int bits = Math.min(bitsPerValue - shift, currentBits);
+                value |= ((long) (current & ((1 << bits) - 1))) << shift;
+                current >>>= bits;
+                currentBits -= bits;
+                shift += bits;
+            }
+            docCounts[i] = value;
+        }
+        return docCounts;
+    }
+}
@@ -23,6 +23,7 @@ import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.LongArray;
 import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregationExecutionException;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
@@ -42,8 +43,20 @@ public abstract class BucketsAggregator extends Aggregator {
 
     private final Aggregator[] collectableSugAggregators;
 
+    private final SubAggCollectionMode collectMode;
+    // non-null if the collection of sub-aggregators is deferred until the surviving buckets are known
+    private DeferredBucketDocs deferredDocs;
+    // maps the ordinals of the surviving buckets to the dense ordinals that the sub-aggregators have been replayed with
+    private LongHash survivingBucketOrds;
+    private boolean deferredCollectionsRun;
+
     public BucketsAggregator(String name, BucketAggregationMode bucketAggregationMode, AggregatorFactories factories,
                              long estimatedBucketsCount, AggregationContext context, Aggregator parent) {
+        this(name, bucketAggregationMode, factories, estimatedBucketsCount, SubAggCollectionMode.DEPTH_FIRST, context, parent);
+    }
+
+    public BucketsAggregator(String name, BucketAggregationMode bucketAggregationMode, AggregatorFactories factories,
+                             long estimatedBucketsCount, SubAggCollectionMode collectMode, AggregationContext context, Aggregator parent) {
         super(name, bucketAggregationMode, factories, estimatedBucketsCount, context, parent);
         docCounts = BigArrays.newLongArray(estimatedBucketsCount, context.pageCacheRecycler(), true);
         List<Aggregator> collectables = new ArrayList<Aggregator>(subAggregators.length);
@@ -53,6 +66,10 @@ public abstract class BucketsAggregator extends Aggregator {
             }
         }
         collectableSugAggregators = collectables.toArray(new Aggregator[collectables.size()]);
+        this.collectMode = collectMode;
+        if (collectMode == SubAggCollectionMode.BREADTH_FIRST && collectableSugAggregators.length > 0) {
+            deferredDocs = new DeferredBucketDocs();
+        }
     }
 
     /**
@@ -61,15 +78,17 @@ public abstract class BucketsAggregator extends Aggregator {
     protected final void collectBucket(int doc, long bucketOrd) throws IOException {
         docCounts = BigArrays.grow(docCounts, bucketOrd + 1);
         docCounts.increment(bucketOrd, 1);
-        for (int i = 0; i < collectableSugAggregators.length; i++) {
-            collectableSugAggregators[i].collect(doc, bucketOrd);
-        }
+        collectBucketNoCounts(doc, bucketOrd);
     }
 
     /**
      * Utility method to collect the given doc in the given bucket but not to update the doc counts of the bucket
      */
     protected final void collectBucketNoCounts(int doc, long bucketOrd) throws IOException {
+        if (deferredDocs != null) {
+            deferredDocs.record(context.currentReader(), context.currentScorer(), doc, bucketOrd);
+            return;
+        }
         for (int i = 0; i < collectableSugAggregators.length; i++) {
             collectableSugAggregators[i].collect(doc, bucketOrd);
         }
@@ -98,12 +117,51 @@ public abstract class BucketsAggregator extends Aggregator {
         }
     }
 
+    @Override
+    protected boolean defersSubAggregatorsCollection() {
+        return collectMode == SubAggCollectionMode.BREADTH_FIRST;
+    }
+
+    /**
+     * Collect the documents of the given buckets into the sub-aggregators if their collection has been deferred, and
+     * do nothing otherwise. This must be called once, before building the aggregations of the buckets, and
+     * {@link #bucketAggregations(long)} may then only be called for these buckets.
+     */
+    protected final void runDeferredCollections(long... bucketOrds) {
+        if (collectMode != SubAggCollectionMode.BREADTH_FIRST) {
+            return;
+        }
+        assert !deferredCollectionsRun : "deferred collections must only be run once";
+        deferredCollectionsRun = true;
+        if (deferredDocs != null) {
+            survivingBucketOrds = new LongHash(Math.max(1, bucketOrds.length), context.pageCacheRecycler());
+            for (long bucketOrd : bucketOrds) {
+                survivingBucketOrds.add(bucketOrd);
+            }
+            try {
+                deferredDocs.replay(context, survivingBucketOrds, collectableSugAggregators);
+            } catch (IOException e) {
+                throw new AggregationExecutionException("Failed to replay the documents of the buckets of [" + name + "]", e);
+            }
+            deferredDocs = null;
+        }
+        // the post collection of the sub-aggregators has been deferred as well, see defersSubAggregatorsCollection
+        for (int i = 0; i < subAggregators.length; i++) {
+            subAggregators[i].postCollection();
+        }
+    }
+
     /**
      * Utility method to build the aggregations of the given bucket (identified by the bucket ordinal)
      */
     protected final InternalAggregations bucketAggregations(long bucketOrd) {
         final InternalAggregation[] aggregations = new InternalAggregation[subAggregators.length];
+        assert deferredDocs == null : "deferred collections must be run before building the aggregations of buckets";
         final long bucketDocCount = bucketDocCount(bucketOrd);
+        if (survivingBucketOrds != null) {
+            bucketOrd = survivingBucketOrds.find(bucketOrd);
+            assert bucketOrd >= 0 : "the collection of this bucket has been deferred but it has not been replayed";
+        }
         for (int i = 0; i < subAggregators.length; i++) {
             aggregations[i] = bucketDocCount == 0L
                     ? subAggregators[i].buildEmptyAggregation()
@@ -119,7 +177,7 @@ public abstract class BucketsAggregator extends Aggregator {
             super.release();
             success = true;
         } finally {
-            Releasables.release(success, docCounts);
+            Releasables.release(success, docCounts, survivingBucketOrds);
         }
         return true;
     }
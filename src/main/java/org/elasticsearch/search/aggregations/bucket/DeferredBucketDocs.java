@@ -0,0 +1,122 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.packed.AppendingDeltaPackedLongBuffer;
+import org.apache.lucene.util.packed.AppendingPackedLongBuffer;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the documents that fall into the buckets of an aggregator so that they can be collected into its
+ * sub-aggregators later on, when the aggregator knows which buckets it is going to keep.
+ * <p/>
+ * Documents and bucket ordinals are stored per segment in packed buffers, which typically require a couple of bytes
+ * per document. Scores are recorded as well when a scorer is available, so that sub-aggregators which need them
+ * (scripts using the score, samplers) see the same scores as when they are collected right away.
+ */
+final class DeferredBucketDocs {
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int INIT_PAGE_COUNT = 16;
+
+    private static class SegmentDocs {
+
+        final AtomicReaderContext reader;
+        final AppendingDeltaPackedLongBuffer docs = new AppendingDeltaPackedLongBuffer(INIT_PAGE_COUNT, PAGE_SIZE, PackedInts.COMPACT);
+        final AppendingPackedLongBuffer bucketOrds = new AppendingPackedLongBuffer(INIT_PAGE_COUNT, PAGE_SIZE, PackedInts.COMPACT);
+        // null if no scorer was available while collecting the segment
+        float[] scores;
+        int count;
+
+        SegmentDocs(AtomicReaderContext reader, boolean recordScores) {
+            this.reader = reader;
+            if (recordScores) {
+                scores = new float[INIT_PAGE_COUNT];
+            }
+        }
+    }
+
+    private final List<SegmentDocs> segments = new ArrayList<SegmentDocs>();
+    private SegmentDocs current;
+
+    /**
+     * Record that <code>doc</code> of the given segment fell into the bucket identified by <code>bucketOrd</code>.
+     */
+    void record(AtomicReaderContext reader, @Nullable Scorer scorer, int doc, long bucketOrd) throws IOException {
+        if (current == null || current.reader != reader) {
+            current = new SegmentDocs(reader, scorer != null);
+            segments.add(current);
+        }
+        current.docs.add(doc);
+        current.bucketOrds.add(bucketOrd);
+        if (current.scores != null) {
+            current.scores = ArrayUtil.grow(current.scores, current.count + 1);
+            current.scores[current.count] = scorer.score();
+        }
+        ++current.count;
+    }
+
+    /**
+     * Collect the recorded documents into the given aggregators, segment by segment. Bucket ordinals are translated
+     * through <code>survivingBucketOrds</code> and documents of the buckets that it doesn't contain are skipped.
+     */
+    void replay(AggregationContext context, LongHash survivingBucketOrds, Aggregator[] aggregators) throws IOException {
+        final AtomicReaderContext previousReader = context.currentReader();
+        final Scorer previousScorer = context.currentScorer();
+        final ReplayScorer scorer = new ReplayScorer();
+        for (SegmentDocs segment : segments) {
+            context.setNextReader(segment.reader);
+            // the scorer of the collection is positioned on the last collected document, never expose it
+            context.setScorer(segment.scores == null ? null : scorer);
+            final AppendingDeltaPackedLongBuffer.Iterator docs = segment.docs.iterator();
+            final AppendingPackedLongBuffer.Iterator bucketOrds = segment.bucketOrds.iterator();
+            for (int i = 0; docs.hasNext(); ++i) {
+                final int doc = (int) docs.next();
+                final long bucketOrd = survivingBucketOrds.find(bucketOrds.next());
+                if (bucketOrd < 0) {
+                    continue;
+                }
+                if (segment.scores != null) {
+                    scorer.reset(doc, segment.scores[i]);
+                }
+                for (int j = 0; j < aggregators.length; ++j) {
+                    aggregators[j].collect(doc, bucketOrd);
+                }
+            }
+        }
+        segments.clear();
+        current = null;
+        if (previousReader != null) {
+            context.setNextReader(previousReader);
+        }
+        context.setScorer(previousScorer);
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+
+/**
+ * Exposes the score that a document had during collection to aggregators that collect it again later on, once
+ * documents are replayed from a buffer. The scorer is positioned on the replayed document only: it can't be iterated
+ * any further and reports {@link #NO_MORE_DOCS} when asked to.
+ */
+public final class ReplayScorer extends Scorer {
+
+    private int doc = -1;
+    private float score;
+
+    public ReplayScorer() {
+        super(null);
+    }
+
+    /**
+     * Position the scorer on the replayed document <code>doc</code>, whose score was <code>score</code>.
+     */
+    public void reset(int doc, float score) {
+        this.doc = doc;
+        this.score = score;
+    }
+
+    @Override
+    public float score() throws IOException {
+        return score;
+    }
+
+    @Override
+    public int freq() throws IOException {
+        return 1;
+    }
+
+    @Override
+    public int docID() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+        return doc = NO_MORE_DOCS;
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+        return doc = NO_MORE_DOCS;
+    }
+
+    @Override
+    public long cost() {
+        return 1;
+    }
+}
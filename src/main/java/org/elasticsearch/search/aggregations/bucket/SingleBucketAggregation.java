@@ -77,7 +77,7 @@ public abstract class SingleBucketAggregation<B extends SingleBucketAggregation<
             }
             subAggregationsList.add(((B) aggregation).aggregations);
         }
-        reduced.aggregations = InternalAggregations.reduce(subAggregationsList, reduceContext.cacheRecycler());
+        reduced.aggregations = InternalAggregations.reduce(subAggregationsList, reduceContext.cacheRecycler(), reduceContext.isFinalReduce());
         return reduced;
     }
 
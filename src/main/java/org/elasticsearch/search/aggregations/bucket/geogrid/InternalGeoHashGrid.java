@@ -21,7 +21,6 @@ package org.elasticsearch.search.aggregations.bucket.geogrid;
 
 import com.carrotsearch.hppc.LongObjectOpenHashMap;
 import org.apache.lucene.util.PriorityQueue;
-import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.common.geo.GeoHashUtils;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -101,7 +100,7 @@ public class InternalGeoHashGrid extends InternalAggregation implements GeoHashG
             }
             return 0;
         }
-        public Bucket reduce(List<? extends Bucket> buckets, CacheRecycler cacheRecycler) {
+        public Bucket reduce(List<? extends Bucket> buckets, ReduceContext reduceContext) {
             if (buckets.size() == 1) {
                 return buckets.get(0);
             }
@@ -115,7 +114,7 @@ public class InternalGeoHashGrid extends InternalAggregation implements GeoHashG
                 }
                 aggregationsList.add(bucket.aggregations);
             }
-            reduced.aggregations = InternalAggregations.reduce(aggregationsList, cacheRecycler);
+            reduced.aggregations = InternalAggregations.reduce(aggregationsList, reduceContext.cacheRecycler(), reduceContext.isFinalReduce());
             return reduced;
         }
 
@@ -167,7 +166,9 @@ public class InternalGeoHashGrid extends InternalAggregation implements GeoHashG
         List<InternalAggregation> aggregations = reduceContext.aggregations();
         if (aggregations.size() == 1) {
             InternalGeoHashGrid grid = (InternalGeoHashGrid) aggregations.get(0);
-            grid.trimExcessEntries();
+            if (reduceContext.isFinalReduce()) {
+                grid.trimExcessEntries();
+            }
             return grid;
         }
         InternalGeoHashGrid reduced = null;
@@ -197,14 +198,14 @@ public class InternalGeoHashGrid extends InternalAggregation implements GeoHashG
         }
 
         // TODO: would it be better to sort the backing array buffer of the hppc map directly instead of using a PQ?
-        final int size = Math.min(requiredSize, buckets.v().size());
+        final int size = reduceContext.isFinalReduce() ? Math.min(requiredSize, buckets.v().size()) : buckets.v().size();
         BucketPriorityQueue ordered = new BucketPriorityQueue(size);
         Object[] internalBuckets = buckets.v().values;
         boolean[] states = buckets.v().allocated;
         for (int i = 0; i < states.length; i++) {
             if (states[i]) {
                 List<Bucket> sameCellBuckets = (List<Bucket>) internalBuckets[i];
-                ordered.insertWithOverflow(sameCellBuckets.get(0).reduce(sameCellBuckets, reduceContext.cacheRecycler()));
+                ordered.insertWithOverflow(sameCellBuckets.get(0).reduce(sameCellBuckets, reduceContext));
             }
         }
         buckets.release();
@@ -22,7 +22,6 @@ package org.elasticsearch.search.aggregations.bucket.histogram;
 import com.carrotsearch.hppc.LongObjectOpenHashMap;
 import com.google.common.collect.Lists;
 import org.apache.lucene.util.CollectionUtil;
-import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -35,6 +34,7 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.aggregations.Aggregations;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.BucketStreams;
 import org.elasticsearch.search.aggregations.support.numeric.ValueFormatter;
 import org.elasticsearch.search.aggregations.support.numeric.ValueFormatterStreams;
 
@@ -76,7 +76,7 @@ abstract class AbstractHistogramBase<B extends HistogramBase.Bucket> extends Int
             return aggregations;
         }
 
-        Bucket reduce(List<Bucket> buckets, CacheRecycler cacheRecycler) {
+        Bucket reduce(List<Bucket> buckets, ReduceContext reduceContext) {
             if (buckets.size() == 1) {
                 return buckets.get(0);
             }
@@ -90,7 +90,7 @@ abstract class AbstractHistogramBase<B extends HistogramBase.Bucket> extends Int
                 }
                 aggregations.add((InternalAggregations) bucket.getAggregations());
             }
-            reduced.aggregations = InternalAggregations.reduce(aggregations, cacheRecycler);
+            reduced.aggregations = InternalAggregations.reduce(aggregations, reduceContext.cacheRecycler(), reduceContext.isFinalReduce());
             return reduced;
         }
     }
@@ -222,7 +222,7 @@ abstract class AbstractHistogramBase<B extends HistogramBase.Bucket> extends Int
         boolean[] allocated = bucketsByKey.v().allocated;
         for (int i = 0; i < allocated.length; i++) {
             if (allocated[i]) {
-                Bucket bucket = ((List<Bucket>) buckets[i]).get(0).reduce(((List<Bucket>) buckets[i]), reduceContext.cacheRecycler());
+                Bucket bucket = ((List<Bucket>) buckets[i]).get(0).reduce(((List<Bucket>) buckets[i]), reduceContext);
                 reducedBuckets.add(bucket);
             }
         }
@@ -276,8 +276,17 @@ abstract class AbstractHistogramBase<B extends HistogramBase.Bucket> extends Int
         keyed = in.readBoolean();
         int size = in.readVInt();
         List<B> buckets = new ArrayList<B>(size);
-        for (int i = 0; i < size; i++) {
-            buckets.add(createBucket(in.readLong(), in.readVLong(), InternalAggregations.readAggregations(in)));
+        if (BucketStreams.streamByColumn(in.getVersion())) {
+            final long[] keys = BucketStreams.readLongKeys(in, size);
+            final long[] docCounts = BucketStreams.readDocCounts(in, size);
+            final InternalAggregations[] aggregations = InternalAggregations.readAggregationsByColumn(in, size);
+            for (int i = 0; i < size; i++) {
+                buckets.add(createBucket(keys[i], docCounts[i], aggregations[i]));
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                buckets.add(createBucket(in.readLong(), in.readVLong(), InternalAggregations.readAggregations(in)));
+            }
         }
         this.buckets = buckets;
         this.bucketsMap = null;
@@ -296,10 +305,27 @@ abstract class AbstractHistogramBase<B extends HistogramBase.Bucket> extends Int
         ValueFormatterStreams.writeOptional(formatter, out);
         out.writeBoolean(keyed);
         out.writeVInt(buckets.size());
-        for (HistogramBase.Bucket bucket : buckets) {
-            out.writeLong(((Bucket) bucket).key);
-            out.writeVLong(((Bucket) bucket).docCount);
-            ((Bucket) bucket).aggregations.writeTo(out);
+        if (BucketStreams.streamByColumn(out.getVersion())) {
+            // buckets are usually sorted by key, so keys are small deltas
+            final long[] keys = new long[buckets.size()];
+            final long[] docCounts = new long[buckets.size()];
+            final List<InternalAggregations> aggregations = new ArrayList<InternalAggregations>(buckets.size());
+            int i = 0;
+            for (HistogramBase.Bucket bucket : buckets) {
+                keys[i] = ((Bucket) bucket).key;
+                docCounts[i] = ((Bucket) bucket).docCount;
+                aggregations.add(((Bucket) bucket).aggregations);
+                i++;
+            }
+            BucketStreams.writeLongKeys(keys, out);
+            BucketStreams.writeDocCounts(docCounts, out);
+            InternalAggregations.writeAggregationsByColumn(aggregations, out);
+        } else {
+            for (HistogramBase.Bucket bucket : buckets) {
+                out.writeLong(((Bucket) bucket).key);
+                out.writeVLong(((Bucket) bucket).docCount);
+                ((Bucket) bucket).aggregations.writeTo(out);
+            }
         }
     }
 
@@ -19,8 +19,6 @@
 
 package org.elasticsearch.search.aggregations.bucket.histogram;
 
-import com.google.common.collect.ImmutableMap;
-import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.joda.DateMathParser;
 import org.elasticsearch.common.rounding.DateTimeUnit;
 import org.elasticsearch.common.rounding.TimeZoneRounding;
@@ -49,29 +47,6 @@ import java.util.Map;
  */
 public class DateHistogramParser implements Aggregator.Parser {
 
-    private final ImmutableMap<String, DateTimeUnit> dateFieldUnits;
-
-    public DateHistogramParser() {
-        dateFieldUnits = MapBuilder.<String, DateTimeUnit>newMapBuilder()
-                .put("year", DateTimeUnit.YEAR_OF_CENTURY)
-                .put("1y", DateTimeUnit.YEAR_OF_CENTURY)
-                .put("quarter", DateTimeUnit.QUARTER)
-                .put("1q", DateTimeUnit.QUARTER)
-                .put("month", DateTimeUnit.MONTH_OF_YEAR)
-                .put("1M", DateTimeUnit.MONTH_OF_YEAR)
-                .put("week", DateTimeUnit.WEEK_OF_WEEKYEAR)
-                .put("1w", DateTimeUnit.WEEK_OF_WEEKYEAR)
-                .put("day", DateTimeUnit.DAY_OF_MONTH)
-                .put("1d", DateTimeUnit.DAY_OF_MONTH)
-                .put("hour", DateTimeUnit.HOUR_OF_DAY)
-                .put("1h", DateTimeUnit.HOUR_OF_DAY)
-                .put("minute", DateTimeUnit.MINUTES_OF_HOUR)
-                .put("1m", DateTimeUnit.MINUTES_OF_HOUR)
-                .put("second", DateTimeUnit.SECOND_OF_MINUTE)
-                .put("1s", DateTimeUnit.SECOND_OF_MINUTE)
-                .immutableMap();
-    }
-
     @Override
     public String type() {
         return InternalDateHistogram.TYPE.name();
@@ -177,7 +152,7 @@ public class DateHistogramParser implements Aggregator.Parser {
         }
 
         TimeZoneRounding.Builder tzRoundingBuilder;
-        DateTimeUnit dateTimeUnit = dateFieldUnits.get(interval);
+        DateTimeUnit dateTimeUnit = DateTimeUnit.forInterval(interval);
         if (dateTimeUnit != null) {
             tzRoundingBuilder = TimeZoneRounding.builder(dateTimeUnit);
         } else {
@@ -217,6 +192,17 @@ public class DateHistogramParser implements Aggregator.Parser {
             throw new SearchParseException(context, "date histogram can only be aggregated on date fields but  [" + field + "] is not a date field");
         }
 
+        if (searchScript == null && postZone.equals(DateTimeZone.UTC) && preOffset == 0 && postOffset == 0
+                && (!preZoneAdjustLargeInterval || preZone.equals(DateTimeZone.UTC))) {
+            // keys may have been computed at index time, in which case they can be read as-is instead of rounding dates
+            DateFieldMapper.PreRounding preRounding = ((DateFieldMapper) mapper).preRounding(interval, preZone);
+            if (preRounding != null) {
+                IndexFieldData<?> indexFieldData = context.fieldData().getForField(preRounding.mapper());
+                config.fieldContext(new FieldContext(field, indexFieldData));
+                return new HistogramAggregator.Factory(aggregationName, config, rounding, order, keyed, computeEmptyBuckets, InternalDateHistogram.FACTORY, true);
+            }
+        }
+
         IndexFieldData<?> indexFieldData = context.fieldData().getForField(mapper);
         config.fieldContext(new FieldContext(field, indexFieldData));
         return new HistogramAggregator.Factory(aggregationName, config, rounding, order, keyed, computeEmptyBuckets, InternalDateHistogram.FACTORY);
@@ -44,6 +44,10 @@ public class HistogramAggregator extends BucketsAggregator {
 
     private final NumericValuesSource valuesSource;
     private final Rounding rounding;
+    // used to compute the keys of the collected values, while the original rounding is the one which is serialized
+    private final Rounding preparedRounding;
+    // whether the values have already been rounded at index time
+    private final boolean preRounded;
     private final InternalOrder order;
     private final boolean keyed;
     private final boolean computeEmptyBuckets;
@@ -62,10 +66,27 @@ public class HistogramAggregator extends BucketsAggregator {
                                AbstractHistogramBase.Factory<?> histogramFactory,
                                AggregationContext aggregationContext,
                                Aggregator parent) {
+        this(name, factories, rounding, order, keyed, computeEmptyBuckets, valuesSource, false, initialCapacity, histogramFactory, aggregationContext, parent);
+    }
+
+    public HistogramAggregator(String name,
+                               AggregatorFactories factories,
+                               Rounding rounding,
+                               InternalOrder order,
+                               boolean keyed,
+                               boolean computeEmptyBuckets,
+                               @Nullable NumericValuesSource valuesSource,
+                               boolean preRounded,
+                               long initialCapacity,
+                               AbstractHistogramBase.Factory<?> histogramFactory,
+                               AggregationContext aggregationContext,
+                               Aggregator parent) {
 
         super(name, BucketAggregationMode.PER_BUCKET, factories, initialCapacity, aggregationContext, parent);
         this.valuesSource = valuesSource;
         this.rounding = rounding;
+        this.preparedRounding = rounding.prepare();
+        this.preRounded = preRounded;
         this.order = order;
         this.keyed = keyed;
         this.computeEmptyBuckets = computeEmptyBuckets;
@@ -88,7 +109,7 @@ public class HistogramAggregator extends BucketsAggregator {
         long previousKey = Long.MIN_VALUE;
         for (int i = 0; i < valuesCount; ++i) {
             long value = values.nextValue();
-            long key = rounding.round(value);
+            long key = preRounded ? value : preparedRounding.round(value);
             assert key >= previousKey;
             if (key == previousKey) {
                 continue;
@@ -142,15 +163,27 @@ public class HistogramAggregator extends BucketsAggregator {
         private final boolean keyed;
         private final boolean computeEmptyBuckets;
         private final AbstractHistogramBase.Factory<?> histogramFactory;
+        private final boolean preRounded;
 
         public Factory(String name, ValuesSourceConfig<NumericValuesSource> valueSourceConfig,
                        Rounding rounding, InternalOrder order, boolean keyed, boolean computeEmptyBuckets, AbstractHistogramBase.Factory<?> histogramFactory) {
+            this(name, valueSourceConfig, rounding, order, keyed, computeEmptyBuckets, histogramFactory, false);
+        }
+
+        /**
+         * @param preRounded whether the values of <code>valueSourceConfig</code> are already the keys of <code>rounding</code>,
+         *                   eg. because they have been rounded at index time
+         */
+        public Factory(String name, ValuesSourceConfig<NumericValuesSource> valueSourceConfig,
+                       Rounding rounding, InternalOrder order, boolean keyed, boolean computeEmptyBuckets, AbstractHistogramBase.Factory<?> histogramFactory,
+                       boolean preRounded) {
             super(name, histogramFactory.type(), valueSourceConfig);
             this.rounding = rounding;
             this.order = order;
             this.keyed = keyed;
             this.computeEmptyBuckets = computeEmptyBuckets;
             this.histogramFactory = histogramFactory;
+            this.preRounded = preRounded;
         }
 
         @Override
@@ -161,7 +194,7 @@ public class HistogramAggregator extends BucketsAggregator {
         @Override
         protected Aggregator create(NumericValuesSource valuesSource, long expectedBucketsCount, AggregationContext aggregationContext, Aggregator parent) {
             // todo if we'll keep track of min/max values in IndexFieldData, we could use the max here to come up with a better estimation for the buckets count
-            return new HistogramAggregator(name, factories, rounding, order, keyed, computeEmptyBuckets, valuesSource, 50, histogramFactory, aggregationContext, parent);
+            return new HistogramAggregator(name, factories, rounding, order, keyed, computeEmptyBuckets, valuesSource, preRounded, 50, histogramFactory, aggregationContext, parent);
         }
 
     }
@@ -59,8 +59,8 @@ public class NestedAggregator extends SingleBucketAggregator implements ReaderCo
         if (!objectMapper.nested().isNested()) {
             throw new AggregationExecutionException("facet nested path [" + nestedPath + "] is not nested");
         }
-        parentFilter = aggregationContext.searchContext().filterCache().cache(NonNestedDocsFilter.INSTANCE);
-        childFilter = aggregationContext.searchContext().filterCache().cache(objectMapper.nestedTypeFilter());
+        parentFilter = aggregationContext.searchContext().fixedBitSetFilterCache().getFixedBitSetFilter(NonNestedDocsFilter.INSTANCE);
+        childFilter = aggregationContext.searchContext().fixedBitSetFilterCache().getFixedBitSetFilter(objectMapper.nestedTypeFilter());
     }
 
     @Override
@@ -20,13 +20,13 @@
 package org.elasticsearch.search.aggregations.bucket.range;
 
 import com.google.common.collect.Lists;
-import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.aggregations.Aggregations;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.BucketStreams;
 import org.elasticsearch.search.aggregations.support.numeric.ValueFormatter;
 import org.elasticsearch.search.aggregations.support.numeric.ValueFormatterStreams;
 
@@ -85,7 +85,7 @@ public abstract class AbstractRangeBase<B extends RangeBase.Bucket> extends Inte
             return aggregations;
         }
 
-        Bucket reduce(List<Bucket> ranges, CacheRecycler cacheRecycler) {
+        Bucket reduce(List<Bucket> ranges, ReduceContext reduceContext) {
             if (ranges.size() == 1) {
                 return ranges.get(0);
             }
@@ -99,7 +99,7 @@ public abstract class AbstractRangeBase<B extends RangeBase.Bucket> extends Inte
                 }
                 aggregationsList.add(range.aggregations);
             }
-            reduced.aggregations = InternalAggregations.reduce(aggregationsList, cacheRecycler);
+            reduced.aggregations = InternalAggregations.reduce(aggregationsList, reduceContext.cacheRecycler(), reduceContext.isFinalReduce());
             return reduced;
         }
 
@@ -228,7 +228,7 @@ public abstract class AbstractRangeBase<B extends RangeBase.Bucket> extends Inte
         AbstractRangeBase reduced = (AbstractRangeBase) aggregations.get(0);
         int i = 0;
         for (List<Bucket> sameRangeList : rangesList) {
-            reduced.ranges.set(i++, (sameRangeList.get(0)).reduce(sameRangeList, reduceContext.cacheRecycler()));
+            reduced.ranges.set(i++, (sameRangeList.get(0)).reduce(sameRangeList, reduceContext));
         }
         return reduced;
     }
@@ -242,9 +242,23 @@ public abstract class AbstractRangeBase<B extends RangeBase.Bucket> extends Inte
         keyed = in.readBoolean();
         int size = in.readVInt();
         List<B> ranges = Lists.newArrayListWithCapacity(size);
-        for (int i = 0; i < size; i++) {
-            String key = in.readOptionalString();
-            ranges.add(createBucket(key, in.readDouble(), in.readDouble(), in.readVLong(), InternalAggregations.readAggregations(in), formatter));
+        if (BucketStreams.streamByColumn(in.getVersion())) {
+            final String[] keys = new String[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = in.readOptionalString();
+            }
+            final double[] from = BucketStreams.readDoubleKeys(in, size);
+            final double[] to = BucketStreams.readDoubleKeys(in, size);
+            final long[] docCounts = BucketStreams.readDocCounts(in, size);
+            final InternalAggregations[] aggregations = InternalAggregations.readAggregationsByColumn(in, size);
+            for (int i = 0; i < size; i++) {
+                ranges.add(createBucket(keys[i], from[i], to[i], docCounts[i], aggregations[i], formatter));
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                String key = in.readOptionalString();
+                ranges.add(createBucket(key, in.readDouble(), in.readDouble(), in.readVLong(), InternalAggregations.readAggregations(in), formatter));
+            }
         }
         this.ranges = ranges;
         this.rangeMap = null;
@@ -256,12 +270,32 @@ public abstract class AbstractRangeBase<B extends RangeBase.Bucket> extends Inte
         ValueFormatterStreams.writeOptional(formatter, out);
         out.writeBoolean(keyed);
         out.writeVInt(ranges.size());
-        for (B bucket : ranges) {
-            out.writeOptionalString(((Bucket) bucket).key);
-            out.writeDouble(((Bucket) bucket).from);
-            out.writeDouble(((Bucket) bucket).to);
-            out.writeVLong(((Bucket) bucket).docCount);
-            ((Bucket) bucket).aggregations.writeTo(out);
+        if (BucketStreams.streamByColumn(out.getVersion())) {
+            final double[] from = new double[ranges.size()];
+            final double[] to = new double[ranges.size()];
+            final long[] docCounts = new long[ranges.size()];
+            final List<InternalAggregations> aggregations = Lists.newArrayListWithCapacity(ranges.size());
+            int i = 0;
+            for (B bucket : ranges) {
+                out.writeOptionalString(((Bucket) bucket).key);
+                from[i] = ((Bucket) bucket).from;
+                to[i] = ((Bucket) bucket).to;
+                docCounts[i] = ((Bucket) bucket).docCount;
+                aggregations.add(((Bucket) bucket).aggregations);
+                i++;
+            }
+            BucketStreams.writeDoubleKeys(from, out);
+            BucketStreams.writeDoubleKeys(to, out);
+            BucketStreams.writeDocCounts(docCounts, out);
+            InternalAggregations.writeAggregationsByColumn(aggregations, out);
+        } else {
+            for (B bucket : ranges) {
+                out.writeOptionalString(((Bucket) bucket).key);
+                out.writeDouble(((Bucket) bucket).from);
+                out.writeDouble(((Bucket) bucket).to);
+                out.writeVLong(((Bucket) bucket).docCount);
+                ((Bucket) bucket).aggregations.writeTo(out);
+            }
         }
     }
 
@@ -0,0 +1,212 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.sampler;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.PriorityQueue;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.ObjectArray;
+import org.elasticsearch.search.aggregations.AggregationExecutionException;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.bucket.ReplayScorer;
+import org.elasticsearch.search.aggregations.bucket.SingleBucketAggregator;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Aggregates the top scoring documents of every shard. Matching documents are not collected into the sub-aggregators
+ * directly, instead the top <code>shardSize</code> documents are kept in a priority queue and replayed into the
+ * sub-aggregators once collection is over, so that the cost of the sub-aggregations is bounded by
+ * <code>shardSize</code> rather than by the number of hits.
+ */
+public class SamplerAggregator extends SingleBucketAggregator {
+
+    private final int shardSize;
+
+    private ObjectArray<SampleQueue> queues;
+    // the sample that was last rejected or evicted from a queue, reused by the next hit
+    private Sample spare;
+
+    public SamplerAggregator(String name, int shardSize, AggregatorFactories factories, long estimatedBucketsCount,
+                             AggregationContext aggregationContext, Aggregator parent) {
+        super(name, factories, aggregationContext, parent);
+        this.shardSize = shardSize;
+        queues = BigArrays.newObjectArray(estimatedBucketsCount, context.pageCacheRecycler());
+    }
+
+    @Override
+    public void collect(int doc, long owningBucketOrdinal) throws IOException {
+        final Scorer scorer = context.currentScorer();
+        if (scorer == null) {
+            throw new AggregationExecutionException("Aggregation [" + name + "] requires document scores but no scorer is available");
+        }
+        queues = BigArrays.grow(queues, owningBucketOrdinal + 1);
+        SampleQueue queue = queues.get(owningBucketOrdinal);
+        if (queue == null) {
+            queue = new SampleQueue(shardSize);
+            queues.set(owningBucketOrdinal, queue);
+        }
+        if (spare == null) {
+            spare = new Sample();
+        }
+        spare.reset(context.currentReader(), doc, scorer.score(), owningBucketOrdinal);
+        spare = queue.insertWithOverflow(spare);
+    }
+
+    @Override
+    protected void doPostCollection() {
+        // drain the queues, the samples are replayed exactly once
+        List<Sample> samples = new ArrayList<Sample>();
+        for (long i = 0; i < queues.size(); ++i) {
+            final SampleQueue queue = queues.get(i);
+            if (queue != null) {
+                while (queue.size() > 0) {
+                    samples.add(queue.pop());
+                }
+                queues.set(i, null);
+            }
+        }
+        if (!samples.isEmpty()) {
+            try {
+                replay(samples.toArray(new Sample[samples.size()]));
+            } catch (IOException e) {
+                throw new AggregationExecutionException("Failed to replay the sampled documents of aggregator [" + name + "]", e);
+            }
+        }
+        for (Aggregator subAggregator : subAggregators) {
+            subAggregator.postCollection();
+        }
+    }
+
+    @Override
+    protected boolean defersSubAggregatorsCollection() {
+        // the sub-aggregators only see the samples, which are replayed on post collection
+        return true;
+    }
+
+    private void replay(Sample[] samples) throws IOException {
+        // replay in index order, segment by segment
+        ArrayUtil.timSort(samples, INDEX_ORDER);
+        final AtomicReaderContext previousReader = context.currentReader();
+        final Scorer previousScorer = context.currentScorer();
+        final ReplayScorer scorer = new ReplayScorer();
+        context.setScorer(scorer);
+        AtomicReaderContext reader = null;
+        for (Sample sample : samples) {
+            if (sample.reader != reader) {
+                reader = sample.reader;
+                context.setNextReader(reader);
+            }
+            scorer.reset(sample.doc, sample.score);
+            collectBucket(sample.doc, sample.owningBucketOrdinal);
+        }
+        if (previousReader != null) {
+            context.setNextReader(previousReader);
+        }
+        if (previousScorer != null) {
+            context.setScorer(previousScorer);
+        }
+    }
+
+    @Override
+    public InternalAggregation buildAggregation(long owningBucketOrdinal) {
+        return new InternalSampler(name, bucketDocCount(owningBucketOrdinal), bucketAggregations(owningBucketOrdinal));
+    }
+
+    @Override
+    public InternalAggregation buildEmptyAggregation() {
+        return new InternalSampler(name, 0, buildEmptySubAggregations());
+    }
+
+    @Override
+    protected void doRelease() {
+        Releasables.release(queues);
+    }
+
+    private static class Sample {
+
+        AtomicReaderContext reader;
+        int doc;
+        float score;
+        long owningBucketOrdinal;
+
+        void reset(AtomicReaderContext reader, int doc, float score, long owningBucketOrdinal) {
+            this.reader = reader;
+            this.doc = doc;
+            this.score = score;
+            this.owningBucketOrdinal = owningBucketOrdinal;
+        }
+
+        int globalDoc() {
+            return reader.docBase + doc;
+        }
+    }
+
+    private static final Comparator<Sample> INDEX_ORDER = new Comparator<Sample>() {
+        @Override
+        public int compare(Sample a, Sample b) {
+            return a.globalDoc() - b.globalDoc();
+        }
+    };
+
+    /**
+     * Keeps the top scoring samples, ties are broken in favour of the documents that come first in the index.
+     */
+    private static class SampleQueue extends PriorityQueue<Sample> {
+
+        SampleQueue(int size) {
+            super(size);
+        }
+
+        @Override
+        protected boolean lessThan(Sample a, Sample b) {
+            if (a.score != b.score) {
+                return a.score < b.score;
+            }
+            return a.globalDoc() > b.globalDoc();
+        }
+    }
+
+    public static class Factory extends AggregatorFactory {
+
+        private final int shardSize;
+
+        public Factory(String name, int shardSize) {
+            super(name, InternalSampler.TYPE.name());
+            this.shardSize = shardSize;
+        }
+
+        @Override
+        public Aggregator create(AggregationContext context, Aggregator parent, long expectedBucketsCount) {
+            return new SamplerAggregator(name, shardSize, factories, expectedBucketsCount, context, parent);
+        }
+
+    }
+}
@@ -29,6 +29,7 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.aggregations.AggregationStreams;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.BucketStreams;
 import org.elasticsearch.search.aggregations.bucket.terms.support.BucketPriorityQueue;
 import org.elasticsearch.search.aggregations.support.numeric.ValueFormatter;
 import org.elasticsearch.search.aggregations.support.numeric.ValueFormatterStreams;
@@ -108,7 +109,9 @@ public class DoubleTerms extends InternalTerms {
         List<InternalAggregation> aggregations = reduceContext.aggregations();
         if (aggregations.size() == 1) {
             InternalTerms terms = (InternalTerms) aggregations.get(0);
-            terms.trimExcessEntries();
+            if (reduceContext.isFinalReduce()) {
+                terms.trimExcessEntries();
+            }
             return terms;
         }
         InternalTerms reduced = null;
@@ -141,14 +144,14 @@ public class DoubleTerms extends InternalTerms {
         }
 
         // TODO: would it be better to sort the backing array buffer of hppc map directly instead of using a PQ?
-        final int size = Math.min(requiredSize, buckets.v().size());
+        final int size = reduceContext.isFinalReduce() ? Math.min(requiredSize, buckets.v().size()) : buckets.v().size();
         BucketPriorityQueue ordered = new BucketPriorityQueue(size, order.comparator(null));
         boolean[] states = buckets.v().allocated;
         Object[] internalBuckets = buckets.v().values;
         for (int i = 0; i < states.length; i++) {
             if (states[i]) {
                 List<DoubleTerms.Bucket> sameTermBuckets = (List<DoubleTerms.Bucket>) internalBuckets[i];
-                ordered.insertWithOverflow(sameTermBuckets.get(0).reduce(sameTermBuckets, reduceContext.cacheRecycler()));
+                ordered.insertWithOverflow(sameTermBuckets.get(0).reduce(sameTermBuckets, reduceContext));
             }
         }
         buckets.release();
@@ -168,8 +171,17 @@ public class DoubleTerms extends InternalTerms {
         this.requiredSize = in.readVInt();
         int size = in.readVInt();
         List<InternalTerms.Bucket> buckets = new ArrayList<InternalTerms.Bucket>(size);
-        for (int i = 0; i < size; i++) {
-            buckets.add(new Bucket(in.readDouble(), in.readVLong(), InternalAggregations.readAggregations(in)));
+        if (BucketStreams.streamByColumn(in.getVersion())) {
+            final double[] terms = BucketStreams.readDoubleKeys(in, size);
+            final long[] docCounts = BucketStreams.readDocCounts(in, size);
+            final InternalAggregations[] aggregations = InternalAggregations.readAggregationsByColumn(in, size);
+            for (int i = 0; i < size; i++) {
+                buckets.add(new Bucket(terms[i], docCounts[i], aggregations[i]));
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                buckets.add(new Bucket(in.readDouble(), in.readVLong(), InternalAggregations.readAggregations(in)));
+            }
         }
         this.buckets = buckets;
         this.bucketMap = null;
@@ -182,10 +194,26 @@ public class DoubleTerms extends InternalTerms {
         ValueFormatterStreams.writeOptional(valueFormatter, out);
         out.writeVInt(requiredSize);
         out.writeVInt(buckets.size());
-        for (InternalTerms.Bucket bucket : buckets) {
-            out.writeDouble(((Bucket) bucket).term);
-            out.writeVLong(bucket.getDocCount());
-            ((InternalAggregations) bucket.getAggregations()).writeTo(out);
+        if (BucketStreams.streamByColumn(out.getVersion())) {
+            final double[] terms = new double[buckets.size()];
+            final long[] docCounts = new long[buckets.size()];
+            final List<InternalAggregations> aggregations = new ArrayList<InternalAggregations>(buckets.size());
+            int i = 0;
+            for (InternalTerms.Bucket bucket : buckets) {
+                terms[i] = ((Bucket) bucket).term;
+                docCounts[i] = bucket.getDocCount();
+                aggregations.add((InternalAggregations) bucket.getAggregations());
+                i++;
+            }
+            BucketStreams.writeDoubleKeys(terms, out);
+            BucketStreams.writeDocCounts(docCounts, out);
+            InternalAggregations.writeAggregationsByColumn(aggregations, out);
+        } else {
+            for (InternalTerms.Bucket bucket : buckets) {
+                out.writeDouble(((Bucket) bucket).term);
+                out.writeVLong(bucket.getDocCount());
+                ((InternalAggregations) bucket.getAggregations()).writeTo(out);
+            }
         }
     }
 
@@ -45,8 +45,8 @@ public class DoubleTermsAggregator extends BucketsAggregator {
     private final LongHash bucketOrds;
 
     public DoubleTermsAggregator(String name, AggregatorFactories factories, NumericValuesSource valuesSource, long estimatedBucketCount,
-                               InternalOrder order, int requiredSize, int shardSize, AggregationContext aggregationContext, Aggregator parent) {
-        super(name, BucketAggregationMode.PER_BUCKET, factories, estimatedBucketCount, aggregationContext, parent);
+                               InternalOrder order, int requiredSize, int shardSize, SubAggCollectionMode collectMode, AggregationContext aggregationContext, Aggregator parent) {
+        super(name, BucketAggregationMode.PER_BUCKET, factories, estimatedBucketCount, collectMode, aggregationContext, parent);
         this.valuesSource = valuesSource;
         this.order = InternalOrder.validate(order, this);
         this.requiredSize = requiredSize;
@@ -100,11 +100,16 @@ public class DoubleTermsAggregator extends BucketsAggregator {
         }
 
         final InternalTerms.Bucket[] list = new InternalTerms.Bucket[ordered.size()];
+        final long[] survivingBucketOrds = new long[ordered.size()];
         for (int i = ordered.size() - 1; i >= 0; --i) {
             final DoubleTerms.Bucket bucket = (DoubleTerms.Bucket) ordered.pop();
-            bucket.aggregations = bucketAggregations(bucket.bucketOrd);
+            survivingBucketOrds[i] = bucket.bucketOrd;
             list[i] = bucket;
         }
+        runDeferredCollections(survivingBucketOrds);
+        for (InternalTerms.Bucket bucket : list) {
+            bucket.aggregations = bucketAggregations(bucket.bucketOrd);
+        }
         return new DoubleTerms(name, order, valuesSource.formatter(), requiredSize, Arrays.asList(list));
     }
 
@@ -20,7 +20,6 @@
 package org.elasticsearch.search.aggregations.bucket.terms;
 
 import com.google.common.collect.Maps;
-import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.common.io.stream.Streamable;
 import org.elasticsearch.common.text.Text;
 import org.elasticsearch.common.xcontent.ToXContent;
@@ -58,7 +57,7 @@ public abstract class InternalTerms extends InternalAggregation implements Terms
             return aggregations;
         }
 
-        public Bucket reduce(List<? extends Bucket> buckets, CacheRecycler cacheRecycler) {
+        public Bucket reduce(List<? extends Bucket> buckets, ReduceContext reduceContext) {
             if (buckets.size() == 1) {
                 return buckets.get(0);
             }
@@ -72,7 +71,7 @@ public abstract class InternalTerms extends InternalAggregation implements Terms
                 }
                 aggregationsList.add(bucket.aggregations);
             }
-            reduced.aggregations = InternalAggregations.reduce(aggregationsList, cacheRecycler);
+            reduced.aggregations = InternalAggregations.reduce(aggregationsList, reduceContext.cacheRecycler(), reduceContext.isFinalReduce());
             return reduced;
         }
     }
@@ -119,7 +118,9 @@ public abstract class InternalTerms extends InternalAggregation implements Terms
         List<InternalAggregation> aggregations = reduceContext.aggregations();
         if (aggregations.size() == 1) {
             InternalTerms terms = (InternalTerms) aggregations.get(0);
-            terms.trimExcessEntries();
+            if (reduceContext.isFinalReduce()) {
+                terms.trimExcessEntries();
+            }
             return terms;
         }
         InternalTerms reduced = null;
@@ -153,11 +154,12 @@ public abstract class InternalTerms extends InternalAggregation implements Terms
             return (UnmappedTerms) aggregations.get(0);
         }
 
-        final int size = Math.min(requiredSize, buckets.size());
+        // partial reductions keep all buckets, a term which is not in the top requiredSize yet may still make it later
+        final int size = reduceContext.isFinalReduce() ? Math.min(requiredSize, buckets.size()) : buckets.size();
         BucketPriorityQueue ordered = new BucketPriorityQueue(size, order.comparator(null));
         for (Map.Entry<Text, List<Bucket>> entry : buckets.entrySet()) {
             List<Bucket> sameTermBuckets = entry.getValue();
-            ordered.insertWithOverflow(sameTermBuckets.get(0).reduce(sameTermBuckets, reduceContext.cacheRecycler()));
+            ordered.insertWithOverflow(sameTermBuckets.get(0).reduce(sameTermBuckets, reduceContext));
         }
         Bucket[] list = new Bucket[ordered.size()];
         for (int i = ordered.size() - 1; i >= 0; i--) {
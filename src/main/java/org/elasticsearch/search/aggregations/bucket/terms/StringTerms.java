@@ -29,6 +29,7 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.aggregations.AggregationStreams;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.BucketStreams;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -100,8 +101,17 @@ public class StringTerms extends InternalTerms {
         this.requiredSize = in.readVInt();
         int size = in.readVInt();
         List<InternalTerms.Bucket> buckets = new ArrayList<InternalTerms.Bucket>(size);
-        for (int i = 0; i < size; i++) {
-            buckets.add(new Bucket(in.readBytesRef(), in.readVLong(), InternalAggregations.readAggregations(in)));
+        if (BucketStreams.streamByColumn(in.getVersion())) {
+            final BytesRef[] terms = BucketStreams.readTerms(in, size);
+            final long[] docCounts = BucketStreams.readDocCounts(in, size);
+            final InternalAggregations[] aggregations = InternalAggregations.readAggregationsByColumn(in, size);
+            for (int i = 0; i < size; i++) {
+                buckets.add(new Bucket(terms[i], docCounts[i], aggregations[i]));
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                buckets.add(new Bucket(in.readBytesRef(), in.readVLong(), InternalAggregations.readAggregations(in)));
+            }
         }
         this.buckets = buckets;
         this.bucketMap = null;
@@ -113,10 +123,26 @@ public class StringTerms extends InternalTerms {
         InternalOrder.Streams.writeOrder(order, out);
         out.writeVInt(requiredSize);
         out.writeVInt(buckets.size());
-        for (InternalTerms.Bucket bucket : buckets) {
-            out.writeBytesRef(((Bucket) bucket).termBytes);
-            out.writeVLong(bucket.getDocCount());
-            ((InternalAggregations) bucket.getAggregations()).writeTo(out);
+        if (BucketStreams.streamByColumn(out.getVersion())) {
+            final BytesRef[] terms = new BytesRef[buckets.size()];
+            final long[] docCounts = new long[buckets.size()];
+            final List<InternalAggregations> aggregations = new ArrayList<InternalAggregations>(buckets.size());
+            int i = 0;
+            for (InternalTerms.Bucket bucket : buckets) {
+                terms[i] = ((Bucket) bucket).termBytes;
+                docCounts[i] = bucket.getDocCount();
+                aggregations.add((InternalAggregations) bucket.getAggregations());
+                i++;
+            }
+            BucketStreams.writeTerms(terms, out);
+            BucketStreams.writeDocCounts(docCounts, out);
+            InternalAggregations.writeAggregationsByColumn(aggregations, out);
+        } else {
+            for (InternalTerms.Bucket bucket : buckets) {
+                out.writeBytesRef(((Bucket) bucket).termBytes);
+                out.writeVLong(bucket.getDocCount());
+                ((InternalAggregations) bucket.getAggregations()).writeTo(out);
+            }
         }
     }
 
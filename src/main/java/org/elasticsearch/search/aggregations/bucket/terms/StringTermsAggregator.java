@@ -19,26 +19,27 @@
 
 package org.elasticsearch.search.aggregations.bucket.terms;
 
-import com.sun.corba.se.impl.naming.cosnaming.InterOperableNamingImpl;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.lucene.ReaderContextAware;
-import org.elasticsearch.common.util.BigArrays;
-import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.common.util.Comparators;
 import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinals;
 import org.elasticsearch.index.fielddata.ordinals.Ordinals;
 import org.elasticsearch.search.aggregations.AggregationExecutionException;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
 import org.elasticsearch.search.aggregations.bucket.BytesRefHash;
+import org.elasticsearch.search.aggregations.bucket.LongHash;
 import org.elasticsearch.search.aggregations.bucket.terms.support.BucketPriorityQueue;
 import org.elasticsearch.search.aggregations.bucket.terms.support.IncludeExclude;
 import org.elasticsearch.search.aggregations.metrics.MetricsAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
 import org.elasticsearch.search.aggregations.support.bytes.BytesValuesSource;
+import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -57,10 +58,10 @@ public class StringTermsAggregator extends BucketsAggregator {
     private final IncludeExclude includeExclude;
 
     public StringTermsAggregator(String name, AggregatorFactories factories, ValuesSource valuesSource, long estimatedBucketCount,
-                                 InternalOrder order, int requiredSize, int shardSize,
+                                 InternalOrder order, int requiredSize, int shardSize, SubAggCollectionMode collectMode,
                                  IncludeExclude includeExclude, AggregationContext aggregationContext, Aggregator parent) {
 
-        super(name, BucketAggregationMode.PER_BUCKET, factories, estimatedBucketCount, aggregationContext, parent);
+        super(name, BucketAggregationMode.PER_BUCKET, factories, estimatedBucketCount, collectMode, aggregationContext, parent);
         this.valuesSource = valuesSource;
         this.order = InternalOrder.validate(order, this);
         this.requiredSize = requiredSize;
@@ -113,11 +114,16 @@ public class StringTermsAggregator extends BucketsAggregator {
         }
 
         final InternalTerms.Bucket[] list = new InternalTerms.Bucket[ordered.size()];
+        final long[] survivingBucketOrds = new long[ordered.size()];
         for (int i = ordered.size() - 1; i >= 0; --i) {
             final StringTerms.Bucket bucket = (StringTerms.Bucket) ordered.pop();
-            bucket.aggregations = bucketAggregations(bucket.bucketOrd);
+            survivingBucketOrds[i] = bucket.bucketOrd;
             list[i] = bucket;
         }
+        runDeferredCollections(survivingBucketOrds);
+        for (InternalTerms.Bucket bucket : list) {
+            bucket.aggregations = bucketAggregations(bucket.bucketOrd);
+        }
         return new StringTerms(name, order, requiredSize, Arrays.asList(list));
     }
 
@@ -132,33 +138,47 @@ public class StringTermsAggregator extends BucketsAggregator {
     }
 
     /**
-     * Extension of StringTermsAggregator that caches bucket ords using terms ordinals.
+     * Variant of {@link StringTermsAggregator} for fields that have ordinals: documents are counted per global ordinal
+     * of their terms, and terms are only resolved for the top buckets. Global ordinals are mapped to bucket ordinals
+     * in the order they are collected so that the cost of building the aggregation depends on the number of collected
+     * terms, not on the number of terms of the field.
+     *
+     * @see GlobalOrdinals
      */
-    public static class WithOrdinals extends StringTermsAggregator implements ReaderContextAware {
+    public static class WithOrdinals extends BucketsAggregator implements ReaderContextAware {
 
         private final BytesValuesSource.WithOrdinals valuesSource;
-        private BytesValues.WithOrdinals bytesValues;
+        private final InternalOrder order;
+        private final int requiredSize;
+        private final int shardSize;
+        private final LongHash bucketOrds;
+        private GlobalOrdinals globalOrdinals;
         private Ordinals.Docs ordinals;
-        private LongArray ordinalToBucket;
+        private int segmentIndex;
 
         public WithOrdinals(String name, AggregatorFactories factories, BytesValuesSource.WithOrdinals valuesSource, long esitmatedBucketCount,
-                InternalOrder order, int requiredSize, int shardSize, AggregationContext aggregationContext, Aggregator parent) {
-            super(name, factories, valuesSource, esitmatedBucketCount, order, requiredSize, shardSize, null, aggregationContext, parent);
+                InternalOrder order, int requiredSize, int shardSize, SubAggCollectionMode collectMode, AggregationContext aggregationContext, Aggregator parent) {
+            super(name, BucketAggregationMode.PER_BUCKET, factories, esitmatedBucketCount, collectMode, aggregationContext, parent);
             this.valuesSource = valuesSource;
+            this.order = InternalOrder.validate(order, this);
+            this.requiredSize = requiredSize;
+            this.shardSize = shardSize;
+            bucketOrds = new LongHash(esitmatedBucketCount, aggregationContext.pageCacheRecycler());
+        }
+
+        @Override
+        public boolean shouldCollect() {
+            return true;
         }
 
         @Override
         public void setNextReader(AtomicReaderContext reader) {
-            bytesValues = valuesSource.bytesValues();
-            ordinals = bytesValues.ordinals();
-            final long maxOrd = ordinals.getMaxOrd();
-            if (ordinalToBucket == null || ordinalToBucket.size() < maxOrd) {
-                if (ordinalToBucket != null) {
-                    ordinalToBucket.release();
-                }
-                ordinalToBucket = BigArrays.newLongArray(BigArrays.overSize(maxOrd), context().pageCacheRecycler(), false);
+            if (globalOrdinals == null) {
+                final SearchContext searchContext = context().searchContext();
+                globalOrdinals = searchContext.fieldData().getGlobalOrdinals(searchContext.searcher().getIndexReader(), valuesSource.indexFieldData());
             }
-            ordinalToBucket.fill(0, maxOrd, -1L);
+            ordinals = valuesSource.bytesValues().ordinals();
+            segmentIndex = reader.ord;
         }
 
         @Override
@@ -167,28 +187,81 @@ public class StringTermsAggregator extends BucketsAggregator {
             final int valuesCount = ordinals.setDocument(doc);
 
             for (int i = 0; i < valuesCount; ++i) {
-                final long ord = ordinals.nextOrd();
-                long bucketOrd = ordinalToBucket.get(ord);
-                if (bucketOrd < 0) { // unlikely condition on a low-cardinality field
-                    final BytesRef bytes = bytesValues.getValueByOrd(ord);
-                    final int hash = bytesValues.currentValueHash();
-                    assert hash == bytes.hashCode();
-                    bucketOrd = bucketOrds.add(bytes, hash);
-                    if (bucketOrd < 0) { // already seen in another segment
-                        bucketOrd = - 1 - bucketOrd;
-                    }
-                    ordinalToBucket.set(ord, bucketOrd);
+                long bucketOrdinal = bucketOrds.add(globalOrdinals.getGlobalOrd(segmentIndex, ordinals.nextOrd()));
+                if (bucketOrdinal < 0) { // already seen
+                    bucketOrdinal = - 1 - bucketOrdinal;
+                }
+                collectBucket(doc, bucketOrdinal);
+            }
+        }
+
+        @Override
+        public StringTerms buildAggregation(long owningBucketOrdinal) {
+            assert owningBucketOrdinal == 0;
+            if (globalOrdinals == null) {
+                return buildEmptyAggregation();
+            }
+            final int size = (int) Math.min(bucketOrds.size(), shardSize);
+
+            BucketPriorityQueue ordered = new BucketPriorityQueue(size, order.comparator(this));
+            OrdBucket spare = null;
+            for (long i = 0; i < bucketOrds.capacity(); ++i) {
+                final long ord = bucketOrds.id(i);
+                if (ord < 0) {
+                    // slot is not allocated
+                    continue;
                 }
+                if (spare == null) {
+                    spare = new OrdBucket();
+                }
+                spare.globalOrd = bucketOrds.key(i);
+                spare.bucketOrd = ord;
+                spare.docCount = bucketDocCount(ord);
+                spare = (OrdBucket) ordered.insertWithOverflow(spare);
+            }
 
-                collectBucket(doc, bucketOrd);
+            final InternalTerms.Bucket[] list = new InternalTerms.Bucket[ordered.size()];
+            final long[] survivingBucketOrds = new long[ordered.size()];
+            for (int i = ordered.size() - 1; i >= 0; --i) {
+                final OrdBucket bucket = (OrdBucket) ordered.pop();
+                final BytesRef term = BytesRef.deepCopyOf(globalOrdinals.getValueByOrd(bucket.globalOrd));
+                survivingBucketOrds[i] = bucket.bucketOrd;
+                list[i] = new StringTerms.Bucket(term, bucket.docCount, null);
+                list[i].bucketOrd = bucket.bucketOrd;
             }
+            runDeferredCollections(survivingBucketOrds);
+            for (InternalTerms.Bucket bucket : list) {
+                bucket.aggregations = bucketAggregations(bucket.bucketOrd);
+            }
+            return new StringTerms(name, order, requiredSize, Arrays.asList(list));
+        }
+
+        @Override
+        public StringTerms buildEmptyAggregation() {
+            return new StringTerms(name, order, requiredSize, Collections.<InternalTerms.Bucket>emptyList());
         }
 
         @Override
         public void doRelease() {
-            Releasables.release(bucketOrds, ordinalToBucket);
+            Releasables.release(bucketOrds);
+        }
+
+        /**
+         * A bucket whose term has not been resolved yet: global ordinals are sorted like terms so they are compared instead.
+         */
+        static class OrdBucket extends StringTerms.Bucket {
+
+            long globalOrd;
+
+            OrdBucket() {
+                super(null, 0, null);
+            }
+
+            @Override
+            int compareTerm(Terms.Bucket other) {
+                return Comparators.compare(globalOrd, ((OrdBucket) other).globalOrd);
+            }
         }
     }
 
 }
-
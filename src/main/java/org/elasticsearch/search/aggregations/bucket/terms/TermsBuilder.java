@@ -20,6 +20,7 @@
 package org.elasticsearch.search.aggregations.bucket.terms;
 
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.Aggregator.SubAggCollectionMode;
 import org.elasticsearch.search.aggregations.ValuesSourceAggregationBuilder;
 
 import java.io.IOException;
@@ -40,6 +41,7 @@ public class TermsBuilder extends ValuesSourceAggregationBuilder<TermsBuilder> {
     private String excludePattern;
     private int excludeFlags;
     private String executionHint;
+    private SubAggCollectionMode collectMode;
 
     public TermsBuilder(String name) {
         super(name, "terms");
@@ -127,6 +129,16 @@ public class TermsBuilder extends ValuesSourceAggregationBuilder<TermsBuilder> {
         return this;
     }
 
+    /**
+     * Defines when sub-aggregations collect documents. With {@link SubAggCollectionMode#BREADTH_FIRST}, sub-aggregations
+     * are only computed for the buckets that each shard returns, which is cheaper when there are many more terms than
+     * the shard size, but doesn't allow to order by a sub-aggregation.
+     */
+    public TermsBuilder collectMode(SubAggCollectionMode collectMode) {
+        this.collectMode = collectMode;
+        return this;
+    }
+
     @Override
     protected XContentBuilder doInternalXContent(XContentBuilder builder, Params params) throws IOException {
         if (size >=0) {
@@ -165,6 +177,9 @@ public class TermsBuilder extends ValuesSourceAggregationBuilder<TermsBuilder> {
         if (executionHint != null) {
             builder.field("execution_hint", executionHint);
         }
+        if (collectMode != null) {
+            builder.field("collect_mode", collectMode.toXContentName());
+        }
         return builder;
     }
 }
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.bucket.terms;
 
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.fielddata.IndexFieldData;
@@ -29,6 +30,7 @@ import org.elasticsearch.index.mapper.ip.IpFieldMapper;
 import org.elasticsearch.script.SearchScript;
 import org.elasticsearch.search.SearchParseException;
 import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.Aggregator.SubAggCollectionMode;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
 import org.elasticsearch.search.aggregations.bucket.terms.support.IncludeExclude;
 import org.elasticsearch.search.aggregations.support.FieldContext;
@@ -73,6 +75,7 @@ public class TermsParser implements Aggregator.Parser {
         String exclude = null;
         int excludeFlags = 0; // 0 means no flags
         String executionHint = null;
+        SubAggCollectionMode collectMode = SubAggCollectionMode.DEPTH_FIRST;
 
 
         XContentParser.Token token;
@@ -97,6 +100,13 @@ public class TermsParser implements Aggregator.Parser {
                     exclude = parser.text();
                 } else if ("execution_hint".equals(currentFieldName) || "executionHint".equals(currentFieldName)) {
                     executionHint = parser.text();
+                } else if ("collect_mode".equals(currentFieldName) || "collectMode".equals(currentFieldName)) {
+                    try {
+                        collectMode = SubAggCollectionMode.parse(parser.text());
+                    } catch (ElasticsearchIllegalArgumentException e) {
+                        throw new SearchParseException(context, "Unknown collect_mode [" + parser.text() + "] in [" + aggregationName + "], expected [" +
+                                SubAggCollectionMode.DEPTH_FIRST.toXContentName() + "] or [" + SubAggCollectionMode.BREADTH_FIRST.toXContentName() + "].");
+                    }
                 } else {
                     throw new SearchParseException(context, "Unknown key for a " + token + " in [" + aggregationName + "]: [" + currentFieldName + "].");
                 }
@@ -187,6 +197,11 @@ public class TermsParser implements Aggregator.Parser {
         }
 
         InternalOrder order = resolveOrder(orderKey, orderAsc);
+        if (collectMode == SubAggCollectionMode.BREADTH_FIRST && order instanceof InternalOrder.Aggregation) {
+            // buckets are pruned before sub-aggregations are computed, so they can't be used to sort the buckets
+            throw new SearchParseException(context, "Invalid terms aggregation [" + aggregationName + "]: the [" +
+                    SubAggCollectionMode.BREADTH_FIRST.toXContentName() + "] collect_mode cannot be used when ordering by a sub-aggregation.");
+        }
         SearchScript searchScript = null;
         if (script != null) {
             searchScript = context.scriptService().search(context.lookup(), scriptLang, script, scriptParams);
@@ -207,14 +222,14 @@ public class TermsParser implements Aggregator.Parser {
             if (!assumeUnique) {
                 config.ensureUnique(true);
             }
-            return new TermsAggregatorFactory(aggregationName, config, order, requiredSize, shardSize, includeExclude, executionHint);
+            return new TermsAggregatorFactory(aggregationName, config, order, requiredSize, shardSize, includeExclude, executionHint, collectMode);
         }
 
         FieldMapper<?> mapper = context.smartNameFieldMapper(field);
         if (mapper == null) {
             ValuesSourceConfig<?> config = new ValuesSourceConfig<BytesValuesSource>(BytesValuesSource.class);
             config.unmapped(true);
-            return new TermsAggregatorFactory(aggregationName, config, order, requiredSize, shardSize, includeExclude, executionHint);
+            return new TermsAggregatorFactory(aggregationName, config, order, requiredSize, shardSize, includeExclude, executionHint, collectMode);
         }
         IndexFieldData<?> indexFieldData = context.fieldData().getForField(mapper);
 
@@ -256,7 +271,7 @@ public class TermsParser implements Aggregator.Parser {
             config.ensureUnique(true);
         }
 
-        return new TermsAggregatorFactory(aggregationName, config, order, requiredSize, shardSize, includeExclude, executionHint);
+        return new TermsAggregatorFactory(aggregationName, config, order, requiredSize, shardSize, includeExclude, executionHint, collectMode);
     }
 
     static InternalOrder resolveOrder(String key, boolean asc) {
@@ -0,0 +1,312 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.cardinality;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.OpenBitSet;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.cache.recycler.PageCacheRecycler;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.lucene.ReaderContextAware;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.index.fielddata.DoubleValues;
+import org.elasticsearch.index.fielddata.LongValues;
+import org.elasticsearch.index.fielddata.ordinals.Ordinals;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.metrics.MetricsAggregator;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.ValueSourceAggregatorFactory;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.aggregations.support.bytes.BytesValuesSource;
+import org.elasticsearch.search.aggregations.support.numeric.NumericValuesSource;
+
+import java.io.IOException;
+
+/**
+ * An aggregator that computes approximate counts of unique values.
+ *
+ * Values are hashed to 64 bits and added to a {@link HyperLogLogPlusPlus} counter per bucket. When the field has
+ * ordinals and enough values are collected in a segment, every ordinal of the segment is hashed at most once.
+ */
+public class CardinalityAggregator extends MetricsAggregator.SingleValue implements ReaderContextAware {
+
+    private final int precision;
+    private final ValuesSource valuesSource;
+
+    // null when the field is unmapped
+    @Nullable
+    private final HyperLogLogPlusPlus counts;
+
+    private Collector collector;
+
+    public CardinalityAggregator(String name, long estimatedBucketsCount, ValuesSource valuesSource, int precision,
+                                 AggregationContext context, Aggregator parent) {
+        super(name, estimatedBucketsCount, context, parent);
+        this.valuesSource = valuesSource;
+        this.precision = precision;
+        if (valuesSource != null) {
+            final long initialSize = estimatedBucketsCount < 2 ? 1 : estimatedBucketsCount;
+            this.counts = new HyperLogLogPlusPlus(precision, context.pageCacheRecycler(), initialSize);
+        } else {
+            this.counts = null;
+        }
+    }
+
+    @Override
+    public boolean shouldCollect() {
+        return valuesSource != null;
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext reader) {
+        Releasables.release(collector);
+        collector = createCollector(valuesSource);
+    }
+
+    private Collector createCollector(ValuesSource source) {
+        if (source instanceof NumericValuesSource) {
+            final NumericValuesSource numericSource = (NumericValuesSource) source;
+            if (numericSource.isFloatingPoint()) {
+                final DoubleValues values = numericSource.doubleValues();
+                return values == null ? null : new DoubleValuesCollector(counts, values);
+            } else {
+                final LongValues values = numericSource.longValues();
+                return values == null ? null : new LongValuesCollector(counts, values);
+            }
+        }
+        if (source instanceof BytesValuesSource.WithOrdinals) {
+            final BytesValues.WithOrdinals values = ((BytesValuesSource.WithOrdinals) source).bytesValues();
+            return values == null ? null : new OrdinalsCollector(counts, values, context.pageCacheRecycler());
+        }
+        final BytesValues values = source.bytesValues();
+        return values == null ? null : new BytesValuesCollector(counts, values);
+    }
+
+    @Override
+    public void collect(int doc, long owningBucketOrdinal) throws IOException {
+        if (collector != null) {
+            collector.collect(doc, owningBucketOrdinal);
+        }
+    }
+
+    @Override
+    public double metric(long owningBucketOrd) {
+        return counts == null ? 0 : counts.cardinality(owningBucketOrd);
+    }
+
+    @Override
+    public InternalAggregation buildAggregation(long owningBucketOrdinal) {
+        if (counts == null || owningBucketOrdinal >= counts.maxBucket()) {
+            return buildEmptyAggregation();
+        }
+        // we need to copy the counts of this bucket since the counter is going to be released
+        final HyperLogLogPlusPlus copy = new HyperLogLogPlusPlus(precision, null, 1);
+        copy.merge(0, counts, owningBucketOrdinal);
+        return new InternalCardinality(name, copy);
+    }
+
+    @Override
+    public InternalAggregation buildEmptyAggregation() {
+        return new InternalCardinality(name, null);
+    }
+
+    @Override
+    protected void doRelease() {
+        Releasables.release(counts, collector);
+    }
+
+    private static interface Collector extends Releasable {
+
+        void collect(int doc, long bucketOrd);
+
+    }
+
+    private static class LongValuesCollector implements Collector {
+
+        private final HyperLogLogPlusPlus counts;
+        private final LongValues values;
+
+        LongValuesCollector(HyperLogLogPlusPlus counts, LongValues values) {
+            this.counts = counts;
+            this.values = values;
+        }
+
+        @Override
+        public void collect(int doc, long bucketOrd) {
+            final int valueCount = values.setDocument(doc);
+            for (int i = 0; i < valueCount; ++i) {
+                counts.collect(bucketOrd, MurmurHash3.hash(values.nextValue()));
+            }
+        }
+
+        @Override
+        public boolean release() throws ElasticsearchException {
+            return true;
+        }
+    }
+
+    private static class DoubleValuesCollector implements Collector {
+
+        private final HyperLogLogPlusPlus counts;
+        private final DoubleValues values;
+
+        DoubleValuesCollector(HyperLogLogPlusPlus counts, DoubleValues values) {
+            this.counts = counts;
+            this.values = values;
+        }
+
+        @Override
+        public void collect(int doc, long bucketOrd) {
+            final int valueCount = values.setDocument(doc);
+            for (int i = 0; i < valueCount; ++i) {
+                counts.collect(bucketOrd, MurmurHash3.hash(Double.doubleToLongBits(values.nextValue())));
+            }
+        }
+
+        @Override
+        public boolean release() throws ElasticsearchException {
+            return true;
+        }
+    }
+
+    private static long hash(BytesRef bytes, MurmurHash3.Hash128 scratch) {
+        return MurmurHash3.hash128(bytes.bytes, bytes.offset, bytes.length, 0, scratch).h1;
+    }
+
+    private static class BytesValuesCollector implements Collector {
+
+        private final HyperLogLogPlusPlus counts;
+        private final BytesValues values;
+        private final MurmurHash3.Hash128 scratch = new MurmurHash3.Hash128();
+
+        BytesValuesCollector(HyperLogLogPlusPlus counts, BytesValues values) {
+            this.counts = counts;
+            this.values = values;
+        }
+
+        @Override
+        public void collect(int doc, long bucketOrd) {
+            final int valueCount = values.setDocument(doc);
+            for (int i = 0; i < valueCount; ++i) {
+                counts.collect(bucketOrd, hash(values.nextValue(), scratch));
+            }
+        }
+
+        @Override
+        public boolean release() throws ElasticsearchException {
+            return true;
+        }
+    }
+
+    /**
+     * Collector for fields that have ordinals: the hash of an ordinal is computed the first time that the ordinal is
+     * seen in the segment and reused afterwards. Caching hashes takes memory proportional to the number of ordinals of
+     * the segment, so values are hashed directly until enough of them have been collected to make the cache worth it,
+     * which saves the cache when few documents match in a segment that has many ordinals.
+     */
+    private static class OrdinalsCollector implements Collector {
+
+        // the cache is allocated once the number of hashed values reaches maxOrd / CACHE_RATIO
+        private static final int CACHE_RATIO = 8;
+
+        private final HyperLogLogPlusPlus counts;
+        private final BytesValues.WithOrdinals values;
+        private final Ordinals.Docs ordinals;
+        private final PageCacheRecycler recycler;
+        private final long maxOrd;
+        private long hashedValues;
+        private OpenBitSet visitedOrds;
+        private LongArray hashes;
+        private final MurmurHash3.Hash128 scratch = new MurmurHash3.Hash128();
+
+        OrdinalsCollector(HyperLogLogPlusPlus counts, BytesValues.WithOrdinals values, PageCacheRecycler recycler) {
+            this.counts = counts;
+            this.values = values;
+            this.ordinals = values.ordinals();
+            this.recycler = recycler;
+            this.maxOrd = ordinals.getMaxOrd();
+        }
+
+        @Override
+        public void collect(int doc, long bucketOrd) {
+            final int valueCount = ordinals.setDocument(doc);
+            if (hashes == null) {
+                hashedValues += valueCount;
+                if (hashedValues < maxOrd / CACHE_RATIO) {
+                    for (int i = 0; i < valueCount; ++i) {
+                        counts.collect(bucketOrd, hash(values.getValueByOrd(ordinals.nextOrd()), scratch));
+                    }
+                    return;
+                }
+                visitedOrds = new OpenBitSet(maxOrd);
+                hashes = BigArrays.newLongArray(maxOrd, recycler, false);
+            }
+            for (int i = 0; i < valueCount; ++i) {
+                final long ord = ordinals.nextOrd();
+                final long hash;
+                if (visitedOrds.get(ord)) {
+                    hash = hashes.get(ord);
+                } else {
+                    hash = hash(values.getValueByOrd(ord), scratch);
+                    hashes.set(ord, hash);
+                    visitedOrds.set(ord);
+                }
+                counts.collect(bucketOrd, hash);
+            }
+        }
+
+        @Override
+        public boolean release() throws ElasticsearchException {
+            Releasables.release(hashes);
+            return true;
+        }
+    }
+
+    public static class Factory extends ValueSourceAggregatorFactory.LeafOnly<ValuesSource> {
+
+        private final int precision;
+
+        public Factory(String name, ValuesSourceConfig<ValuesSource> valuesSourceConfig, int precision) {
+            super(name, InternalCardinality.TYPE.name(), valuesSourceConfig);
+            this.precision = precision;
+        }
+
+        @Override
+        protected Aggregator createUnmapped(AggregationContext aggregationContext, Aggregator parent) {
+            return new CardinalityAggregator(name, 0, null, precision, aggregationContext, parent);
+        }
+
+        @Override
+        protected Aggregator create(ValuesSource valuesSource, long expectedBucketsCount, AggregationContext aggregationContext, Aggregator parent) {
+            final CardinalityAggregator aggregator = new CardinalityAggregator(name, expectedBucketsCount, valuesSource, precision, aggregationContext, parent);
+            aggregationContext.registerReaderContextAware(aggregator);
+            return aggregator;
+        }
+
+    }
+}
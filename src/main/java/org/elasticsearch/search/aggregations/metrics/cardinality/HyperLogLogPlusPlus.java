@@ -0,0 +1,371 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.cardinality;
+
+import com.carrotsearch.hppc.hash.MurmurHash3;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.cache.recycler.PageCacheRecycler;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.ByteArray;
+import org.elasticsearch.common.util.IntArray;
+
+import java.io.IOException;
+
+/**
+ * Hyperloglog++ counter, implemented based on pseudo code from
+ * http://static.googleusercontent.com/media/research.google.com/fr//pubs/archive/40671.pdf
+ *
+ * This implementation is different from the original implementation in that it uses a hash table instead of a sorted
+ * list for linear counting. Although this requires more space and makes hyperloglog (which is less accurate) used
+ * sooner, this is also considerably faster. The empirical bias correction of the paper is not applied, small
+ * cardinalities that are estimated with hyperloglog are corrected with linear counting instead.
+ *
+ * Trying to understand what this class does without having read the paper is considered adventurous.
+ *
+ * The counts of all buckets are stored in a single {@link ByteArray} of <code>2^precision</code> bytes per bucket.
+ * Buckets that use linear counting store their hash table, which has <code>2^precision / 4</code> int slots, in the
+ * same bytes, so that switching to hyperloglog doesn't require more memory.
+ */
+public final class HyperLogLogPlusPlus implements Releasable {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    // precision of the encoded hashes that are stored in the hash table of linear counting
+    private static final int P2 = 25;
+    // marker of buckets which use hyperloglog
+    private static final int HYPERLOGLOG = -1;
+
+    /**
+     * Compute the required precision so that <code>count</code> distinct entries would be counted with linear counting.
+     */
+    public static int precisionFromThreshold(long count) {
+        final long hashTableEntries = (long) Math.ceil(count / MAX_LOAD_FACTOR);
+        int precision = PackedInts.bitsRequired(hashTableEntries * RamUsageEstimator.NUM_BYTES_INT);
+        precision = Math.max(precision, MIN_PRECISION);
+        precision = Math.min(precision, MAX_PRECISION);
+        return precision;
+    }
+
+    /**
+     * Return the expected per-bucket memory usage for the given precision.
+     */
+    public static long memoryUsage(int precision) {
+        return 1L << precision;
+    }
+
+    // encode the hash so that it can be stored in the hash table of linear counting, without losing information
+    // that will be required to compute the run length once the bucket switches to hyperloglog. Encoded hashes are
+    // never equal to 0, which is used to mark empty slots.
+    static int encodeHash(long hash, int p) {
+        final long e = hash >>> (64 - P2);
+        final long encoded;
+        if ((e & ((1L << (P2 - p)) - 1)) == 0) {
+            final int runLen = 1 + Math.min(Long.numberOfLeadingZeros(hash << P2), 64 - P2);
+            encoded = (e << 7) | (runLen << 1) | 1;
+        } else {
+            encoded = e << 1;
+        }
+        return (int) encoded;
+    }
+
+    static int decodeIndex(int encoded, int p) {
+        final long e;
+        if ((encoded & 1) != 0) {
+            e = (encoded & 0xFFFFFFFFL) >>> 7;
+        } else {
+            e = (encoded & 0xFFFFFFFFL) >>> 1;
+        }
+        return (int) (e >>> (P2 - p));
+    }
+
+    static int decodeRunLen(int encoded, int p) {
+        if ((encoded & 1) != 0) {
+            return ((encoded >>> 1) & 0x3F) + (P2 - p);
+        } else {
+            final int bits = (encoded >>> 1) & ((1 << (P2 - p)) - 1);
+            return Integer.numberOfLeadingZeros(bits) - (32 - (P2 - p)) + 1;
+        }
+    }
+
+    private static double linearCounting(long m, long v) {
+        return m * Math.log((double) m / v);
+    }
+
+    private final int p;
+    private final int m;
+    private final int capacity;
+    private final int threshold;
+    private final double alphaMM;
+    // run lengths of the hyperloglog registers, or hash table for linear counting
+    private ByteArray runLens;
+    // number of entries in the hash table of linear counting, or HYPERLOGLOG
+    private IntArray sizes;
+
+    public HyperLogLogPlusPlus(int precision, @Nullable PageCacheRecycler recycler, long initialBucketCount) {
+        if (precision < MIN_PRECISION) {
+            throw new ElasticsearchIllegalArgumentException("precision must be >= " + MIN_PRECISION);
+        }
+        if (precision > MAX_PRECISION) {
+            throw new ElasticsearchIllegalArgumentException("precision must be <= " + MAX_PRECISION);
+        }
+        p = precision;
+        m = 1 << p;
+        capacity = m / RamUsageEstimator.NUM_BYTES_INT;
+        threshold = (int) (capacity * MAX_LOAD_FACTOR);
+        runLens = BigArrays.newByteArray(initialBucketCount << p, recycler, true);
+        sizes = BigArrays.newIntArray(initialBucketCount, recycler, true);
+        final double alpha;
+        switch (p) {
+            case 4:
+                alpha = 0.673;
+                break;
+            case 5:
+                alpha = 0.697;
+                break;
+            default:
+                alpha = 0.7213 / (1 + 1.079 / m);
+                break;
+        }
+        alphaMM = alpha * m * m;
+    }
+
+    public int precision() {
+        return p;
+    }
+
+    /**
+     * Return the number of buckets that this counter has room for, buckets which have never been collected count 0.
+     */
+    public long maxBucket() {
+        return sizes.size();
+    }
+
+    private void ensureCapacity(long numBuckets) {
+        sizes = BigArrays.grow(sizes, numBuckets);
+        runLens = BigArrays.grow(runLens, numBuckets << p);
+    }
+
+    /**
+     * Add the given 64-bits hash to the counts of <code>bucket</code>.
+     */
+    public void collect(long bucket, long hash) {
+        ensureCapacity(bucket + 1);
+        if (sizes.get(bucket) == HYPERLOGLOG) {
+            final int index = (int) (hash >>> (64 - p));
+            final int runLen = Long.numberOfLeadingZeros((hash << p) | (1L << (p - 1))) + 1;
+            collectRunLen(bucket, index, runLen);
+        } else {
+            collectLcEncoded(bucket, encodeHash(hash, p));
+        }
+    }
+
+    private void collectRunLen(long bucket, int index, int runLen) {
+        final long i = (bucket << p) + index;
+        if (runLen > runLens.get(i)) {
+            runLens.set(i, (byte) runLen);
+        }
+    }
+
+    private void collectEncoded(long bucket, int encoded) {
+        if (sizes.get(bucket) == HYPERLOGLOG) {
+            collectRunLen(bucket, decodeIndex(encoded, p), decodeRunLen(encoded, p));
+        } else {
+            collectLcEncoded(bucket, encoded);
+        }
+    }
+
+    private void collectLcEncoded(long bucket, int encoded) {
+        final int newSize = hashTableAdd(bucket, encoded);
+        if (newSize > threshold) {
+            upgradeToHll(bucket);
+        }
+    }
+
+    private int hashTableGet(long bucket, int index) {
+        final long offset = (bucket << p) + ((long) index << 2);
+        return ((runLens.get(offset) & 0xFF) << 24)
+                | ((runLens.get(offset + 1) & 0xFF) << 16)
+                | ((runLens.get(offset + 2) & 0xFF) << 8)
+                | (runLens.get(offset + 3) & 0xFF);
+    }
+
+    private void hashTableSet(long bucket, int index, int value) {
+        final long offset = (bucket << p) + ((long) index << 2);
+        runLens.set(offset, (byte) (value >>> 24));
+        runLens.set(offset + 1, (byte) (value >>> 16));
+        runLens.set(offset + 2, (byte) (value >>> 8));
+        runLens.set(offset + 3, (byte) value);
+    }
+
+    // add an encoded hash to the hash table of the bucket and return the new number of entries
+    private int hashTableAdd(long bucket, int encoded) {
+        assert encoded != 0;
+        final int mask = capacity - 1;
+        int size = sizes.get(bucket);
+        for (int i = MurmurHash3.hash(encoded) & mask; ; i = (i + 1) & mask) {
+            final int v = hashTableGet(bucket, i);
+            if (v == 0) {
+                hashTableSet(bucket, i, encoded);
+                sizes.set(bucket, ++size);
+                return size;
+            } else if (v == encoded) {
+                return size;
+            }
+        }
+    }
+
+    void upgradeToHll(long bucket) {
+        final int[] values = new int[sizes.get(bucket)];
+        int j = 0;
+        for (int i = 0; i < capacity; ++i) {
+            final int v = hashTableGet(bucket, i);
+            if (v != 0) {
+                values[j++] = v;
+            }
+        }
+        assert j == values.length;
+        for (long i = bucket << p, end = i + m; i < end; ++i) {
+            runLens.set(i, (byte) 0);
+        }
+        sizes.set(bucket, HYPERLOGLOG);
+        for (int v : values) {
+            collectRunLen(bucket, decodeIndex(v, p), decodeRunLen(v, p));
+        }
+    }
+
+    /**
+     * Return the estimated number of distinct values of the given bucket.
+     */
+    public long cardinality(long bucket) {
+        if (bucket >= sizes.size()) {
+            return 0;
+        }
+        final int size = sizes.get(bucket);
+        if (size != HYPERLOGLOG) {
+            final long m2 = 1L << P2;
+            return Math.round(linearCounting(m2, m2 - size));
+        }
+        double inverseSum = 0;
+        int zeros = 0;
+        for (long i = bucket << p, end = i + m; i < end; ++i) {
+            final int runLen = runLens.get(i);
+            inverseSum += 1. / (1L << runLen);
+            if (runLen == 0) {
+                ++zeros;
+            }
+        }
+        final double e = alphaMM / inverseSum;
+        if (zeros > 0 && e <= 2.5 * m) {
+            return Math.round(linearCounting(m, zeros));
+        }
+        return Math.round(e);
+    }
+
+    /**
+     * Merge the counts of bucket <code>otherBucket</code> of <code>other</code> into bucket <code>thisBucket</code>.
+     * Both counters must have the same precision.
+     */
+    public void merge(long thisBucket, HyperLogLogPlusPlus other, long otherBucket) {
+        if (p != other.p) {
+            throw new ElasticsearchIllegalArgumentException("cannot merge counters with different precisions: [" + p + "] and [" + other.p + "]");
+        }
+        ensureCapacity(thisBucket + 1);
+        if (otherBucket >= other.sizes.size()) {
+            return;
+        }
+        if (other.sizes.get(otherBucket) != HYPERLOGLOG) {
+            for (int i = 0; i < other.capacity; ++i) {
+                final int v = other.hashTableGet(otherBucket, i);
+                if (v != 0) {
+                    collectEncoded(thisBucket, v);
+                }
+            }
+        } else {
+            if (sizes.get(thisBucket) != HYPERLOGLOG) {
+                upgradeToHll(thisBucket);
+            }
+            for (int i = 0; i < m; ++i) {
+                collectRunLen(thisBucket, i, other.runLens.get((otherBucket << p) + i));
+            }
+        }
+    }
+
+    /**
+     * Serialize the counts of the given bucket. Buckets that use linear counting only write the entries of their hash
+     * table, buckets that use hyperloglog write a fixed-size sketch of <code>2^precision</code> bytes.
+     */
+    public void writeTo(long bucket, StreamOutput out) throws IOException {
+        out.writeVInt(p);
+        final int size = bucket < sizes.size() ? sizes.get(bucket) : 0;
+        if (size != HYPERLOGLOG) {
+            out.writeBoolean(true);
+            out.writeVInt(size);
+            for (int i = 0; i < capacity && size > 0; ++i) {
+                final int v = hashTableGet(bucket, i);
+                if (v != 0) {
+                    out.writeInt(v);
+                }
+            }
+        } else {
+            out.writeBoolean(false);
+            for (long i = bucket << p, end = i + m; i < end; ++i) {
+                out.writeByte(runLens.get(i));
+            }
+        }
+    }
+
+    /**
+     * Read a counter that has a single bucket.
+     */
+    public static HyperLogLogPlusPlus readFrom(StreamInput in, @Nullable PageCacheRecycler recycler) throws IOException {
+        final int precision = in.readVInt();
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(precision, recycler, 1);
+        final boolean linearCounting = in.readBoolean();
+        if (linearCounting) {
+            final int size = in.readVInt();
+            for (int i = 0; i < size; ++i) {
+                counts.collectEncoded(0, in.readInt());
+            }
+        } else {
+            counts.sizes.set(0, HYPERLOGLOG);
+            for (int i = 0; i < counts.m; ++i) {
+                counts.runLens.set(i, in.readByte());
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public boolean release() throws ElasticsearchException {
+        Releasables.release(runLens, sizes);
+        return true;
+    }
+
+}
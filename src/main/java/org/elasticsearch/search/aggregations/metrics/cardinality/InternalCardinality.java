@@ -0,0 +1,133 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.cardinality;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.AggregationStreams;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.metrics.MetricsAggregation;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An internal implementation of {@link Cardinality}, shards send their counts as sketches that are merged on reduce.
+ */
+public final class InternalCardinality extends MetricsAggregation.SingleValue implements Cardinality {
+
+    public static final Type TYPE = new Type("cardinality");
+
+    private static final AggregationStreams.Stream STREAM = new AggregationStreams.Stream() {
+        @Override
+        public InternalCardinality readResult(StreamInput in) throws IOException {
+            InternalCardinality result = new InternalCardinality();
+            result.readFrom(in);
+            return result;
+        }
+    };
+
+    public static void registerStreams() {
+        AggregationStreams.registerStream(STREAM, TYPE.stream());
+    }
+
+    // null when the field is unmapped
+    @Nullable
+    private HyperLogLogPlusPlus counts;
+
+    InternalCardinality() {} // for serialization
+
+    InternalCardinality(String name, @Nullable HyperLogLogPlusPlus counts) {
+        super(name);
+        this.counts = counts;
+    }
+
+    @Override
+    public double value() {
+        return getValue();
+    }
+
+    @Override
+    public long getValue() {
+        return counts == null ? 0 : counts.cardinality(0);
+    }
+
+    @Override
+    public Type type() {
+        return TYPE;
+    }
+
+    @Override
+    public InternalAggregation reduce(ReduceContext reduceContext) {
+        List<InternalAggregation> aggregations = reduceContext.aggregations();
+        if (aggregations.size() == 1) {
+            return aggregations.get(0);
+        }
+        InternalCardinality reduced = null;
+        for (InternalAggregation aggregation : aggregations) {
+            final InternalCardinality cardinality = (InternalCardinality) aggregation;
+            if (cardinality.counts != null) {
+                if (reduced == null) {
+                    reduced = new InternalCardinality(name, new HyperLogLogPlusPlus(cardinality.counts.precision(), null, 1));
+                }
+                reduced.counts.merge(0, cardinality.counts, 0);
+            }
+        }
+        if (reduced == null) { // all empty
+            return aggregations.get(0);
+        }
+        return reduced;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        name = in.readString();
+        if (in.readBoolean()) {
+            counts = HyperLogLogPlusPlus.readFrom(in, null);
+        } else {
+            counts = null;
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(name);
+        if (counts == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            counts.writeTo(0, out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        return builder.startObject(name)
+                .field(CommonFields.VALUE, getValue())
+                .endObject();
+    }
+
+    @Override
+    public String toString() {
+        return "cardinality[" + getValue() + "]";
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles;
+
+import com.google.common.collect.UnmodifiableIterator;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.search.aggregations.AggregationStreams;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.metrics.MetricsAggregation;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An internal implementation of {@link Percentiles}, shards send their digests which are merged on reduce.
+ */
+public final class InternalPercentiles extends MetricsAggregation.MultiValue implements Percentiles {
+
+    public static final Type TYPE = new Type("percentiles");
+
+    private static final AggregationStreams.Stream STREAM = new AggregationStreams.Stream() {
+        @Override
+        public InternalPercentiles readResult(StreamInput in) throws IOException {
+            InternalPercentiles result = new InternalPercentiles();
+            result.readFrom(in);
+            return result;
+        }
+    };
+
+    public static void registerStreams() {
+        AggregationStreams.registerStream(STREAM, TYPE.stream());
+    }
+
+    private double[] percents;
+    // null when the field is unmapped
+    @Nullable
+    private TDigestState state;
+
+    InternalPercentiles() {} // for serialization
+
+    InternalPercentiles(String name, double[] percents, @Nullable TDigestState state) {
+        super(name);
+        this.percents = percents;
+        this.state = state;
+    }
+
+    @Override
+    public double percentile(double percent) {
+        return state == null ? Double.NaN : state.quantile(percent / 100);
+    }
+
+    @Override
+    public double value(String name) {
+        return percentile(Double.parseDouble(name));
+    }
+
+    @Override
+    public Iterator<Percentile> iterator() {
+        return new UnmodifiableIterator<Percentile>() {
+
+            int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < percents.length;
+            }
+
+            @Override
+            public Percentile next() {
+                final double percent = percents[i++];
+                return new InternalPercentile(percent, percentile(percent));
+            }
+        };
+    }
+
+    @Override
+    public Type type() {
+        return TYPE;
+    }
+
+    @Override
+    public InternalAggregation reduce(ReduceContext reduceContext) {
+        List<InternalAggregation> aggregations = reduceContext.aggregations();
+        if (aggregations.size() == 1) {
+            return aggregations.get(0);
+        }
+        InternalPercentiles reduced = null;
+        for (InternalAggregation aggregation : aggregations) {
+            final InternalPercentiles percentiles = (InternalPercentiles) aggregation;
+            if (percentiles.state != null) {
+                if (reduced == null) {
+                    reduced = new InternalPercentiles(name, percents, new TDigestState(percentiles.state.compression()));
+                }
+                reduced.state.add(percentiles.state);
+            }
+        }
+        if (reduced == null) { // all empty
+            return aggregations.get(0);
+        }
+        return reduced;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        name = in.readString();
+        percents = new double[in.readVInt()];
+        for (int i = 0; i < percents.length; ++i) {
+            percents[i] = in.readDouble();
+        }
+        if (in.readBoolean()) {
+            state = TDigestState.read(in);
+        } else {
+            state = null;
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(name);
+        out.writeVInt(percents.length);
+        for (double percent : percents) {
+            out.writeDouble(percent);
+        }
+        if (state == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            TDigestState.write(state, out);
+        }
+    }
+
+    static class Fields {
+        public static final XContentBuilderString VALUES = new XContentBuilderString("values");
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(name);
+        builder.startObject(Fields.VALUES);
+        for (double percent : percents) {
+            final double value = percentile(percent);
+            builder.field(String.valueOf(percent), Double.isNaN(value) ? null : value);
+        }
+        builder.endObject();
+        return builder.endObject();
+    }
+
+    private static final class InternalPercentile implements Percentile {
+
+        private final double percent;
+        private final double value;
+
+        InternalPercentile(double percent, double value) {
+            this.percent = percent;
+            this.value = value;
+        }
+
+        @Override
+        public double getPercent() {
+            return percent;
+        }
+
+        @Override
+        public double getValue() {
+            return value;
+        }
+    }
+}
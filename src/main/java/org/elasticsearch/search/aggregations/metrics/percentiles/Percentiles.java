@@ -0,0 +1,45 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles;
+
+import org.elasticsearch.search.aggregations.Aggregation;
+
+/**
+ * An aggregation that computes approximate percentiles of numeric values.
+ */
+public interface Percentiles extends Aggregation, Iterable<Percentiles.Percentile> {
+
+    /**
+     * A percent and the estimated value at this percent.
+     */
+    public static interface Percentile {
+
+        double getPercent();
+
+        double getValue();
+
+    }
+
+    /**
+     * Return the estimated value at the given percent, which must be in <tt>[0, 100]</tt>.
+     */
+    public double percentile(double percent);
+
+}
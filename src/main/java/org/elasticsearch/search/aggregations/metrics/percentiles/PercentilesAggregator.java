@@ -0,0 +1,155 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles;
+
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.ObjectArray;
+import org.elasticsearch.index.fielddata.DoubleValues;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.metrics.MetricsAggregator;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.ValueSourceAggregatorFactory;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.aggregations.support.numeric.NumericValuesSource;
+
+import java.io.IOException;
+
+/**
+ * An aggregator that computes approximate percentiles by collecting values into a {@link TDigestState} per bucket.
+ */
+public class PercentilesAggregator extends MetricsAggregator.MultiValue {
+
+    private final NumericValuesSource valuesSource;
+    private final double[] percents;
+    private final double compression;
+
+    private ObjectArray<TDigestState> states;
+
+    public PercentilesAggregator(String name, long estimatedBucketsCount, NumericValuesSource valuesSource, double[] percents,
+                                 double compression, AggregationContext context, Aggregator parent) {
+        super(name, estimatedBucketsCount, context, parent);
+        this.valuesSource = valuesSource;
+        this.percents = percents;
+        this.compression = compression;
+        if (valuesSource != null) {
+            final long initialSize = estimatedBucketsCount < 2 ? 1 : estimatedBucketsCount;
+            states = BigArrays.newObjectArray(initialSize, context.pageCacheRecycler());
+        }
+    }
+
+    @Override
+    public boolean shouldCollect() {
+        return valuesSource != null;
+    }
+
+    @Override
+    public void collect(int doc, long owningBucketOrdinal) throws IOException {
+        assert valuesSource != null : "collect must only be called if #shouldCollect returns true";
+
+        DoubleValues values = valuesSource.doubleValues();
+        if (values == null) {
+            return;
+        }
+
+        states = BigArrays.grow(states, owningBucketOrdinal + 1);
+        TDigestState state = states.get(owningBucketOrdinal);
+        if (state == null) {
+            state = new TDigestState(compression);
+            states.set(owningBucketOrdinal, state);
+        }
+
+        final int valuesCount = values.setDocument(doc);
+        for (int i = 0; i < valuesCount; i++) {
+            state.add(values.nextValue());
+        }
+    }
+
+    @Override
+    public boolean hasMetric(String name) {
+        try {
+            final double percent = Double.parseDouble(name);
+            for (double p : percents) {
+                if (p == percent) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public double metric(String name, long owningBucketOrd) {
+        final TDigestState state = valuesSource == null || owningBucketOrd >= states.size() ? null : states.get(owningBucketOrd);
+        if (state == null) {
+            return Double.NaN;
+        }
+        return state.quantile(Double.parseDouble(name) / 100);
+    }
+
+    @Override
+    public InternalAggregation buildAggregation(long owningBucketOrdinal) {
+        if (valuesSource == null) {
+            return buildEmptyAggregation();
+        }
+        TDigestState state = owningBucketOrdinal >= states.size() ? null : states.get(owningBucketOrdinal);
+        if (state == null) {
+            // this bucket didn't collect any value, but the digest must exist to be merged with other shards
+            state = new TDigestState(compression);
+        }
+        return new InternalPercentiles(name, percents, state);
+    }
+
+    @Override
+    public InternalAggregation buildEmptyAggregation() {
+        return new InternalPercentiles(name, percents, null);
+    }
+
+    @Override
+    public void doRelease() {
+        Releasables.release(states);
+    }
+
+    public static class Factory extends ValueSourceAggregatorFactory.LeafOnly<NumericValuesSource> {
+
+        private final double[] percents;
+        private final double compression;
+
+        public Factory(String name, ValuesSourceConfig<NumericValuesSource> valuesSourceConfig, double[] percents, double compression) {
+            super(name, InternalPercentiles.TYPE.name(), valuesSourceConfig);
+            this.percents = percents;
+            this.compression = compression;
+        }
+
+        @Override
+        protected Aggregator createUnmapped(AggregationContext aggregationContext, Aggregator parent) {
+            return new PercentilesAggregator(name, 0, null, percents, compression, aggregationContext, parent);
+        }
+
+        @Override
+        protected Aggregator create(NumericValuesSource valuesSource, long expectedBucketsCount, AggregationContext aggregationContext, Aggregator parent) {
+            return new PercentilesAggregator(name, expectedBucketsCount, valuesSource, percents, compression, aggregationContext, parent);
+        }
+    }
+
+}
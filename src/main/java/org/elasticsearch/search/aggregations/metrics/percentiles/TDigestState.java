@@ -0,0 +1,301 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntroSorter;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A t-digest (Ted Dunning, "Computing extremely accurate quantiles using t-digests") which summarizes a distribution
+ * of values as a sorted list of weighted centroids. Centroids are small near the tails of the distribution and larger
+ * in the middle, which keeps estimates of extreme quantiles accurate.
+ * <p/>
+ * Values are first appended to a buffer, which is merged into the centroids when it is full. Merging uses the
+ * <tt>k(q) = compression / (2 * PI) * asin(2q - 1)</tt> scale function: a centroid may only absorb its neighbour if the
+ * resulting centroid spans at most one unit of <tt>k</tt>, so that a merged digest never has more than about
+ * <tt>compression</tt> centroids, whatever the number of values that have been added.
+ */
+public final class TDigestState {
+
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final double compression;
+
+    // centroids, sorted by mean
+    private double[] means;
+    private long[] counts;
+    private int size;
+
+    // values which have not been merged into the centroids yet
+    private final int maxBufferSize;
+    private double[] bufferMeans;
+    private long[] bufferCounts;
+    private int bufferSize;
+
+    private long totalCount;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigestState(double compression) {
+        if (compression < 1) {
+            throw new ElasticsearchIllegalArgumentException("compression must be greater than or equal to 1, got [" + compression + "]");
+        }
+        this.compression = compression;
+        maxBufferSize = 5 * maxCentroids(compression);
+        // arrays grow on demand so that digests which only see a few values, eg. in small buckets, remain small
+        means = new double[INITIAL_CAPACITY];
+        counts = new long[INITIAL_CAPACITY];
+        bufferMeans = new double[INITIAL_CAPACITY];
+        bufferCounts = new long[INITIAL_CAPACITY];
+    }
+
+    private static int maxCentroids(double compression) {
+        // a merged digest has at most compression + 1 centroids, keep some slack for rounding
+        return (int) Math.ceil(compression) + 10;
+    }
+
+    /**
+     * Return the maximum number of bytes that a digest with the given compression may use.
+     */
+    public static long memoryUsage(double compression) {
+        final int maxCentroids = maxCentroids(compression);
+        return 6L * maxCentroids * (RamUsageEstimator.NUM_BYTES_DOUBLE + RamUsageEstimator.NUM_BYTES_LONG);
+    }
+
+    public double compression() {
+        return compression;
+    }
+
+    /**
+     * Return the number of values that have been added to this digest.
+     */
+    public long size() {
+        return totalCount;
+    }
+
+    /**
+     * Return the number of centroids of this digest, after merging pending values.
+     */
+    public int centroidCount() {
+        compress();
+        return size;
+    }
+
+    /**
+     * Add a value to this digest.
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Add a value with the given weight to this digest.
+     */
+    public void add(double value, long count) {
+        if (Double.isNaN(value)) {
+            throw new ElasticsearchIllegalArgumentException("cannot add NaN to a t-digest");
+        }
+        if (bufferSize == bufferMeans.length) {
+            if (bufferSize < maxBufferSize) {
+                final int newLength = Math.min(maxBufferSize, ArrayUtil.oversize(bufferSize + 1, RamUsageEstimator.NUM_BYTES_DOUBLE));
+                bufferMeans = Arrays.copyOf(bufferMeans, newLength);
+                bufferCounts = Arrays.copyOf(bufferCounts, newLength);
+            } else {
+                compress();
+            }
+        }
+        bufferMeans[bufferSize] = value;
+        bufferCounts[bufferSize] = count;
+        ++bufferSize;
+        totalCount += count;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Merge the centroids of <code>other</code> into this digest.
+     */
+    public void add(TDigestState other) {
+        other.compress();
+        for (int i = 0; i < other.size; ++i) {
+            add(other.means[i], other.counts[i]);
+        }
+        // centroid means are within [min, max] but don't necessarily reach them
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    private double k(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    /**
+     * Merge the buffered values into the centroids.
+     */
+    private void compress() {
+        if (bufferSize == 0) {
+            return;
+        }
+        // append the centroids to the buffer and sort everything by mean
+        final int count = size + bufferSize;
+        final double[] allMeans = new double[count];
+        final long[] allCounts = new long[count];
+        System.arraycopy(means, 0, allMeans, 0, size);
+        System.arraycopy(counts, 0, allCounts, 0, size);
+        System.arraycopy(bufferMeans, 0, allMeans, size, bufferSize);
+        System.arraycopy(bufferCounts, 0, allCounts, size, bufferSize);
+        new IntroSorter() {
+
+            double pivot;
+
+            @Override
+            protected void swap(int i, int j) {
+                final double tmpMean = allMeans[i];
+                allMeans[i] = allMeans[j];
+                allMeans[j] = tmpMean;
+                final long tmpCount = allCounts[i];
+                allCounts[i] = allCounts[j];
+                allCounts[j] = tmpCount;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return Double.compare(allMeans[i], allMeans[j]);
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                pivot = allMeans[i];
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                return Double.compare(pivot, allMeans[j]);
+            }
+        }.sort(0, count);
+
+        // greedily merge neighbours as long as the merged centroid spans at most one unit of k
+        size = 0;
+        double mean = allMeans[0];
+        long weight = allCounts[0];
+        long weightSoFar = 0;
+        double kLeft = k(0);
+        for (int i = 1; i < count; ++i) {
+            final double q = (double) (weightSoFar + weight + allCounts[i]) / totalCount;
+            if (k(q) - kLeft <= 1) {
+                weight += allCounts[i];
+                mean += (allMeans[i] - mean) * allCounts[i] / weight;
+            } else {
+                weightSoFar += weight;
+                appendCentroid(mean, weight);
+                kLeft = k((double) weightSoFar / totalCount);
+                mean = allMeans[i];
+                weight = allCounts[i];
+            }
+        }
+        appendCentroid(mean, weight);
+        bufferSize = 0;
+    }
+
+    private void appendCentroid(double mean, long count) {
+        assert size < maxCentroids(compression) : "too many centroids for a compression of " + compression;
+        if (size == means.length) {
+            means = ArrayUtil.grow(means, size + 1);
+            counts = ArrayUtil.grow(counts, size + 1);
+        }
+        means[size] = mean;
+        counts[size] = count;
+        ++size;
+    }
+
+    /**
+     * Return an estimate of the value at the given quantile, which must be in <tt>[0, 1]</tt>.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new ElasticsearchIllegalArgumentException("quantile must be in [0, 1], got [" + q + "]");
+        }
+        compress();
+        if (size == 0) {
+            return Double.NaN;
+        }
+        // every centroid is assumed to be centered on its mean, interpolate linearly between centers and use min and
+        // max at both ends of the distribution
+        final double index = q * totalCount;
+        double left = min;
+        double leftIndex = 0;
+        double weightSoFar = 0;
+        for (int i = 0; i < size; ++i) {
+            final double center = weightSoFar + counts[i] / 2.0;
+            if (index <= center) {
+                return interpolate(left, leftIndex, means[i], center, index);
+            }
+            left = means[i];
+            leftIndex = center;
+            weightSoFar += counts[i];
+        }
+        return interpolate(left, leftIndex, max, totalCount, index);
+    }
+
+    private static double interpolate(double left, double leftIndex, double right, double rightIndex, double index) {
+        if (rightIndex <= leftIndex) {
+            return right;
+        }
+        return left + (right - left) * (index - leftIndex) / (rightIndex - leftIndex);
+    }
+
+    public static void write(TDigestState state, StreamOutput out) throws IOException {
+        state.compress();
+        out.writeDouble(state.compression);
+        out.writeVInt(state.size);
+        if (state.size > 0) {
+            out.writeDouble(state.min);
+            out.writeDouble(state.max);
+        }
+        for (int i = 0; i < state.size; ++i) {
+            out.writeDouble(state.means[i]);
+            out.writeVLong(state.counts[i]);
+        }
+    }
+
+    public static TDigestState read(StreamInput in) throws IOException {
+        final TDigestState state = new TDigestState(in.readDouble());
+        final int size = in.readVInt();
+        if (size > 0) {
+            state.min = in.readDouble();
+            state.max = in.readDouble();
+        }
+        for (int i = 0; i < size; ++i) {
+            state.appendCentroid(in.readDouble(), in.readVLong());
+            state.totalCount += state.counts[i];
+        }
+        return state;
+    }
+
+}
@@ -153,6 +153,8 @@ public abstract class FieldDataSource {
 
             public abstract BytesValues.WithOrdinals bytesValues();
 
+            public abstract IndexFieldData.WithOrdinals<?> indexFieldData();
+
             public static class FieldData extends WithOrdinals implements ReaderContextAware {
 
                 protected boolean needsHashes;
@@ -172,6 +174,11 @@ public abstract class FieldDataSource {
                     return metaData;
                 }
 
+                @Override
+                public IndexFieldData.WithOrdinals<?> indexFieldData() {
+                    return indexFieldData;
+                }
+
                 public final void setNeedsHashes(boolean needsHashes) {
                     this.needsHashes = needsHashes;
                 }
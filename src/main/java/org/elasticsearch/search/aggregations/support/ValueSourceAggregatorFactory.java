@@ -59,6 +59,12 @@ public abstract class ValueSourceAggregatorFactory<VS extends ValuesSource> exte
         return create(vs, expectedBucketsCount, context, parent);
     }
 
+    @Override
+    public boolean supportsConcurrentCollection() {
+        // scripts keep per reader state
+        return valuesSourceConfig.script == null && super.supportsConcurrentCollection();
+    }
+
     @Override
     public void doValidate() {
         if (valuesSourceConfig == null || !valuesSourceConfig.valid()) {
@@ -20,6 +20,7 @@
 package org.elasticsearch.search.aggregations.support.bytes;
 
 import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.index.fielddata.IndexFieldData;
 import org.elasticsearch.search.aggregations.support.FieldDataSource;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
 
@@ -58,6 +59,10 @@ public class BytesValuesSource implements ValuesSource {
             return source.bytesValues();
         }
 
+        public IndexFieldData.WithOrdinals<?> indexFieldData() {
+            return source.indexFieldData();
+        }
+
     }
 
 }
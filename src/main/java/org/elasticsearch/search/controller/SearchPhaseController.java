@@ -25,6 +25,7 @@ import com.google.common.collect.Lists;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
 import org.apache.lucene.util.PriorityQueue;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.collect.HppcMaps;
@@ -35,6 +36,7 @@ import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.dfs.AggregatedDfs;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.Facets;
 import org.elasticsearch.search.facet.InternalFacet;
 import org.elasticsearch.search.facet.InternalFacets;
 import org.elasticsearch.search.fetch.FetchSearchResult;
@@ -66,20 +68,35 @@ public class SearchPhaseController extends AbstractComponent {
 
     public static final ScoreDoc[] EMPTY_DOCS = new ScoreDoc[0];
 
+    public static final int DEFAULT_BATCHED_REDUCE_SIZE = 512;
+
     private final CacheRecycler cacheRecycler;
     private final boolean optimizeSingleShard;
+    private final int batchedReduceSize;
 
     @Inject
     public SearchPhaseController(Settings settings, CacheRecycler cacheRecycler) {
         super(settings);
         this.cacheRecycler = cacheRecycler;
         this.optimizeSingleShard = componentSettings.getAsBoolean("optimize_single_shard", true);
+        this.batchedReduceSize = componentSettings.getAsInt("batched_reduce_size", DEFAULT_BATCHED_REDUCE_SIZE);
+        if (batchedReduceSize < 2) {
+            throw new ElasticsearchIllegalArgumentException("batched_reduce_size must be at least 2, got [" + batchedReduceSize + "]");
+        }
     }
 
     public boolean optimizeSingleShard() {
         return optimizeSingleShard;
     }
 
+    /**
+     * @return The number of query results that are buffered on the coordinating node before they are partially reduced
+     *         (see {@link #partialReduce(List)}).
+     */
+    public int batchedReduceSize() {
+        return batchedReduceSize;
+    }
+
     public AggregatedDfs aggregateDfs(AtomicArray<DfsSearchResult> results) {
         ObjectObjectOpenHashMap<Term, TermStatistics> termStatistics = HppcMaps.newNoNullKeysMap();
         ObjectObjectOpenHashMap<String, CollectionStatistics> fieldStatistics = HppcMaps.newNoNullKeysMap();
@@ -175,7 +192,7 @@ public class SearchPhaseController extends AbstractComponent {
                     ScoreDoc[] docs = new ScoreDoc[resultDocsSize];
                     for (int i = 0; i < resultDocsSize; i++) {
                         ScoreDoc scoreDoc = scoreDocs[result.from() + i];
-                        scoreDoc.shardIndex = shardIndex;
+                        setShardIndex(scoreDoc, shardIndex);
                         docs[i] = scoreDoc;
                     }
                     return docs;
@@ -183,7 +200,7 @@ public class SearchPhaseController extends AbstractComponent {
                     ScoreDoc[] docs = new ScoreDoc[resultDocsSize];
                     for (int i = 0; i < resultDocsSize; i++) {
                         ScoreDoc scoreDoc = scoreDocs[result.from() + i];
-                        scoreDoc.shardIndex = shardIndex;
+                        setShardIndex(scoreDoc, shardIndex);
                         docs[i] = scoreDoc;
                     }
                     return docs;
@@ -196,8 +213,6 @@ public class SearchPhaseController extends AbstractComponent {
         Arrays.sort(sortedResults, QUERY_RESULT_ORDERING);
         QuerySearchResultProvider firstResult = sortedResults[0].value;
 
-        int totalNumDocs = 0;
-
         int queueSize = firstResult.queryResult().from() + firstResult.queryResult().size();
         if (firstResult.includeFetch()) {
             // if we did both query and fetch on the same go, we have fetched all the docs from each shards already, use them...
@@ -205,11 +220,44 @@ public class SearchPhaseController extends AbstractComponent {
             queueSize *= sortedResults.length;
         }
 
+        int totalNumDocs = 0;
+        for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : sortedResults) {
+            totalNumDocs += entry.value.queryResult().topDocs().scoreDocs.length;
+        }
+        PriorityQueue queue = fillQueue(sortedResults, queueSize);
+
+        int resultDocsSize = firstResult.queryResult().size();
+        if (firstResult.includeFetch()) {
+            // if we did both query and fetch on the same go, we have fetched all the docs from each shards already, use them...
+            resultDocsSize *= sortedResults.length;
+        }
+        if (totalNumDocs < queueSize) {
+            resultDocsSize = totalNumDocs - firstResult.queryResult().from();
+        }
+
+        if (resultDocsSize <= 0) {
+            return EMPTY_DOCS;
+        }
+
+        // we only pop the first, this handles "from" nicely since the "from" are down the queue
+        // that we already fetched, so we are actually popping the "from" and up to "size"
+        ScoreDoc[] shardDocs = new ScoreDoc[resultDocsSize];
+        for (int i = resultDocsSize - 1; i >= 0; i--)      // put docs in array
+            shardDocs[i] = (ScoreDoc) queue.pop();
+        return shardDocs;
+    }
+
+    /**
+     * Fills a queue of the given size with the top docs of the given results, which must be sorted according to
+     * {@link #QUERY_RESULT_ORDERING}.
+     */
+    private PriorityQueue fillQueue(AtomicArray.Entry<? extends QuerySearchResultProvider>[] sortedResults, int queueSize) {
         // we don't use TopDocs#merge here because with TopDocs#merge, when pagination, we need to ask for "from + size" topN
         // hits, which ends up creating a "from + size" ScoreDoc[], while in our implementation, we can actually get away with
         // just create "size" ScoreDoc (the reverse order in the queue). would be nice to improve TopDocs#merge to allow for
         // it in which case we won't need this logic...
 
+        final QuerySearchResultProvider firstResult = sortedResults[0].value;
         PriorityQueue queue;
         if (firstResult.queryResult().topDocs() instanceof TopFieldDocs) {
             // sorting, first if the type is a String, chance CUSTOM to STRING so we handle nulls properly (since our CUSTOM String sorting might return null)
@@ -244,9 +292,8 @@ public class SearchPhaseController extends AbstractComponent {
             for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : sortedResults) {
                 QuerySearchResult result = entry.value.queryResult();
                 ScoreDoc[] scoreDocs = result.topDocs().scoreDocs;
-                totalNumDocs += scoreDocs.length;
                 for (ScoreDoc doc : scoreDocs) {
-                    doc.shardIndex = entry.index;
+                    setShardIndex(doc, entry.index);
                     if (queue.insertWithOverflow(doc) == doc) {
                         // filled the queue, break
                         break;
@@ -258,37 +305,142 @@ public class SearchPhaseController extends AbstractComponent {
             for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : sortedResults) {
                 QuerySearchResult result = entry.value.queryResult();
                 ScoreDoc[] scoreDocs = result.topDocs().scoreDocs;
-                totalNumDocs += scoreDocs.length;
                 for (ScoreDoc doc : scoreDocs) {
-                    doc.shardIndex = entry.index;
+                    setShardIndex(doc, entry.index);
                     if (queue.insertWithOverflow(doc) == doc) {
                         // filled the queue, break
                         break;
                     }
                 }
             }
+        }
+        return queue;
+    }
 
+    private static void setShardIndex(ScoreDoc doc, int shardIndex) {
+        // docs of partially reduced results already know which shard they come from
+        if (doc.shardIndex == -1) {
+            doc.shardIndex = shardIndex;
         }
+    }
 
-        int resultDocsSize = firstResult.queryResult().size();
-        if (firstResult.includeFetch()) {
-            // if we did both query and fetch on the same go, we have fetched all the docs from each shards already, use them...
-            resultDocsSize *= sortedResults.length;
+    /**
+     * Reduces the aggregations, facets and top docs of the given query results into the result of the shard that
+     * comes first according to {@link #QUERY_RESULT_ORDERING}, and releases them from the other results, so that the
+     * coordinating node doesn't need to hold the results of all shards until the last one responded. The partially
+     * reduced result keeps the top <code>from + size</code> docs of all given results, and aggregations and facets are
+     * reduced without dropping anything that the final reduction may need. {@link #sortDocs(AtomicArray)} and
+     * {@link #merge(ScoreDoc[], AtomicArray, AtomicArray)} can be used on partially reduced results as usual.
+     *
+     * @return The result into which the given results have been reduced
+     */
+    public QuerySearchResult partialReduce(List<? extends AtomicArray.Entry<? extends QuerySearchResultProvider>> results) {
+        @SuppressWarnings("unchecked")
+        AtomicArray.Entry<? extends QuerySearchResultProvider>[] sortedResults = results.toArray(new AtomicArray.Entry[results.size()]);
+        Arrays.sort(sortedResults, QUERY_RESULT_ORDERING);
+        final QuerySearchResult reduced = sortedResults[0].value.queryResult();
+        assert !sortedResults[0].value.includeFetch() : "results that include fetched hits can't be partially reduced";
+
+        // top docs
+        long totalHits = 0;
+        float maxScore = Float.NEGATIVE_INFINITY;
+        int totalNumDocs = 0;
+        for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : sortedResults) {
+            TopDocs topDocs = entry.value.queryResult().topDocs();
+            totalHits += topDocs.totalHits;
+            if (!Float.isNaN(topDocs.getMaxScore())) {
+                maxScore = Math.max(maxScore, topDocs.getMaxScore());
+            }
+            totalNumDocs += topDocs.scoreDocs.length;
         }
-        if (totalNumDocs < queueSize) {
-            resultDocsSize = totalNumDocs - firstResult.queryResult().from();
+        if (Float.isInfinite(maxScore)) {
+            maxScore = Float.NaN;
+        }
+        final int queueSize = Math.min(reduced.from() + reduced.size(), totalNumDocs);
+        ScoreDoc[] docs = EMPTY_DOCS;
+        if (queueSize > 0) {
+            PriorityQueue queue = fillQueue(sortedResults, queueSize);
+            docs = new ScoreDoc[queue.size()];
+            for (int i = docs.length - 1; i >= 0; i--) {
+                docs[i] = (ScoreDoc) queue.pop();
+            }
         }
 
-        if (resultDocsSize <= 0) {
-            return EMPTY_DOCS;
+        // facets and aggregations
+        List<QuerySearchResult> queryResults = new ArrayList<QuerySearchResult>(sortedResults.length);
+        for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : sortedResults) {
+            queryResults.add(entry.value.queryResult());
         }
+        InternalFacets facets = reduceFacets(queryResults, false);
+        InternalAggregations aggregations = reduceAggregations(queryResults, false);
 
-        // we only pop the first, this handles "from" nicely since the "from" are down the queue
-        // that we already fetched, so we are actually popping the "from" and up to "size"
-        ScoreDoc[] shardDocs = new ScoreDoc[resultDocsSize];
-        for (int i = resultDocsSize - 1; i >= 0; i--)      // put docs in array
-            shardDocs[i] = (ScoreDoc) queue.pop();
-        return shardDocs;
+        for (QuerySearchResult result : queryResults) {
+            result.topDocs(emptyTopDocs(result.topDocs()));
+            result.facets(null);
+            result.aggregations(null);
+        }
+        if (reduced.topDocs() instanceof TopFieldDocs) {
+            reduced.topDocs(new TopFieldDocs(totalHits, docs, ((TopFieldDocs) reduced.topDocs()).fields, maxScore));
+        } else {
+            reduced.topDocs(new TopDocs(totalHits, docs, maxScore));
+        }
+        reduced.facets(facets);
+        reduced.aggregations(aggregations);
+        return reduced;
+    }
+
+    private static TopDocs emptyTopDocs(TopDocs topDocs) {
+        if (topDocs instanceof TopFieldDocs) {
+            return new TopFieldDocs(0, EMPTY_DOCS, ((TopFieldDocs) topDocs).fields, Float.NaN);
+        }
+        return new TopDocs(0, EMPTY_DOCS, Float.NaN);
+    }
+
+    private InternalFacets reduceFacets(List<QuerySearchResult> queryResults, boolean finalReduce) {
+        // results which have been partially reduced into another result don't have facets anymore
+        Facets firstFacets = null;
+        for (QuerySearchResult result : queryResults) {
+            if (result.facets() != null) {
+                firstFacets = result.facets();
+                break;
+            }
+        }
+        // we rely on the fact that the order of facets is the same on all query results
+        if (firstFacets == null || firstFacets.facets() == null || firstFacets.facets().isEmpty()) {
+            return null;
+        }
+        List<Facet> aggregatedFacets = Lists.newArrayList();
+        List<Facet> namedFacets = Lists.newArrayList();
+        for (Facet facet : firstFacets) {
+            // aggregate each facet name into a single list, and aggregate it
+            namedFacets.clear();
+            for (QuerySearchResult result : queryResults) {
+                if (result.facets() == null) {
+                    continue;
+                }
+                for (Facet facet1 : result.facets()) {
+                    if (facet.getName().equals(facet1.getName())) {
+                        namedFacets.add(facet1);
+                    }
+                }
+            }
+            if (!namedFacets.isEmpty()) {
+                Facet aggregatedFacet = ((InternalFacet) namedFacets.get(0)).reduce(new InternalFacet.ReduceContext(cacheRecycler, namedFacets, finalReduce));
+                aggregatedFacets.add(aggregatedFacet);
+            }
+        }
+        return new InternalFacets(aggregatedFacets);
+    }
+
+    private InternalAggregations reduceAggregations(List<QuerySearchResult> queryResults, boolean finalReduce) {
+        List<InternalAggregations> aggregationsList = new ArrayList<InternalAggregations>(queryResults.size());
+        for (QuerySearchResult result : queryResults) {
+            // results which have been partially reduced into another result don't have aggregations anymore
+            if (result.aggregations() != null && result.aggregations().asList() != null) {
+                aggregationsList.add((InternalAggregations) result.aggregations());
+            }
+        }
+        return InternalAggregations.reduce(aggregationsList, cacheRecycler, finalReduce);
     }
 
     /**
@@ -328,41 +480,27 @@ public class SearchPhaseController extends AbstractComponent {
             }
         }
 
-        // merge facets
-        InternalFacets facets = null;
-        if (!queryResults.isEmpty()) {
-            // we rely on the fact that the order of facets is the same on all query results
-            if (firstResult.facets() != null && firstResult.facets().facets() != null && !firstResult.facets().facets().isEmpty()) {
-                List<Facet> aggregatedFacets = Lists.newArrayList();
-                List<Facet> namedFacets = Lists.newArrayList();
-                for (Facet facet : firstResult.facets()) {
-                    // aggregate each facet name into a single list, and aggregate it
-                    namedFacets.clear();
-                    for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : queryResults) {
-                        for (Facet facet1 : entry.value.queryResult().facets()) {
-                            if (facet.getName().equals(facet1.getName())) {
-                                namedFacets.add(facet1);
-                            }
-                        }
-                    }
-                    if (!namedFacets.isEmpty()) {
-                        Facet aggregatedFacet = ((InternalFacet) namedFacets.get(0)).reduce(new InternalFacet.ReduceContext(cacheRecycler, namedFacets));
-                        aggregatedFacets.add(aggregatedFacet);
-                    }
-                }
-                facets = new InternalFacets(aggregatedFacets);
-            }
+        List<QuerySearchResult> results = new ArrayList<QuerySearchResult>(queryResults.size());
+        for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : queryResults) {
+            results.add(entry.value.queryResult());
         }
 
+        // merge facets
+        InternalFacets facets = reduceFacets(results, true);
+
         // count the total (we use the query result provider here, since we might not get any hits (we scrolled past them))
         long totalHits = 0;
         float maxScore = Float.NEGATIVE_INFINITY;
         boolean timedOut = false;
+        boolean terminatedEarly = false;
         for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : queryResults) {
             QuerySearchResult result = entry.value.queryResult();
             if (result.searchTimedOut()) {
                 timedOut = true;
             }
+            if (result.terminatedEarly()) {
+                terminatedEarly = true;
+            }
             totalHits += result.topDocs().totalHits;
             if (!Float.isNaN(result.topDocs().getMaxScore())) {
                 maxScore = Math.max(maxScore, result.topDocs().getMaxScore());
@@ -424,20 +562,11 @@ public class SearchPhaseController extends AbstractComponent {
         }
 
         // merge addAggregation
-        InternalAggregations aggregations = null;
-        if (!queryResults.isEmpty()) {
-            if (firstResult.aggregations() != null && firstResult.aggregations().asList() != null) {
-                List<InternalAggregations> aggregationsList = new ArrayList<InternalAggregations>(queryResults.size());
-                for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : queryResults) {
-                    aggregationsList.add((InternalAggregations) entry.value.queryResult().aggregations());
-                }
-                aggregations = InternalAggregations.reduce(aggregationsList, cacheRecycler);
-            }
-        }
+        InternalAggregations aggregations = reduceAggregations(results, true);
 
         InternalSearchHits searchHits = new InternalSearchHits(hits.toArray(new InternalSearchHit[hits.size()]), totalHits, maxScore);
 
-        return new InternalSearchResponse(searchHits, facets, aggregations, suggest, timedOut);
+        return new InternalSearchResponse(searchHits, facets, aggregations, suggest, timedOut, terminatedEarly);
     }
 
 }
@@ -21,7 +21,11 @@ package org.elasticsearch.search.facet;
 
 import org.apache.lucene.search.Filter;
 import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.query.ParsedFilter;
 import org.elasticsearch.search.SearchParseElement;
@@ -51,6 +55,8 @@ import java.util.List;
  */
 public class FacetParseElement implements SearchParseElement {
 
+    private static final byte[] SCRIPT = new byte[] {'s', 'c', 'r', 'i', 'p', 't'};
+
     private final FacetParsers facetParsers;
 
     @Inject
@@ -69,75 +75,123 @@ public class FacetParseElement implements SearchParseElement {
             if (token == XContentParser.Token.FIELD_NAME) {
                 facetName = parser.currentName();
             } else if (token == XContentParser.Token.START_OBJECT) {
-                FacetExecutor facetExecutor = null;
-                boolean global = false;
-                FacetExecutor.Mode defaultMainMode = null;
-                FacetExecutor.Mode defaultGlobalMode = null;
-                FacetExecutor.Mode mode = null;
-                Filter filter = null;
-                boolean cacheFilter = false;
-                String nestedPath = null;
-
-                String fieldName = null;
-                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
-                    if (token == XContentParser.Token.FIELD_NAME) {
-                        fieldName = parser.currentName();
-                    } else if (token == XContentParser.Token.START_OBJECT) {
-                        if ("facet_filter".equals(fieldName) || "facetFilter".equals(fieldName)) {
-                            ParsedFilter parsedFilter = context.queryParserService().parseInnerFilter(parser);
-                            filter = parsedFilter == null ? null : parsedFilter.filter();
-                        } else {
-                            FacetParser facetParser = facetParsers.parser(fieldName);
-                            if (facetParser == null) {
-                                throw new SearchParseException(context, "No facet type found for [" + fieldName + "]");
-                            }
-                            facetExecutor = facetParser.parse(facetName, parser, context);
-                            defaultMainMode = facetParser.defaultMainMode();
-                            defaultGlobalMode = facetParser.defaultGlobalMode();
-                        }
-                    } else if (token.isValue()) {
-                        if ("global".equals(fieldName)) {
-                            global = parser.booleanValue();
-                        } else if ("mode".equals(fieldName)) {
-                            String modeAsText = parser.text();
-                            if ("collector".equals(modeAsText)) {
-                                mode = FacetExecutor.Mode.COLLECTOR;
-                            } else if ("post".equals(modeAsText)) {
-                                mode = FacetExecutor.Mode.POST;
-                            } else {
-                                throw new ElasticsearchIllegalArgumentException("failed to parse facet mode [" + modeAsText + "]");
-                            }
-                        } else if ("scope".equals(fieldName) || "_scope".equals(fieldName)) {
-                            throw new SearchParseException(context, "the [scope] support in facets have been removed");
-                        } else if ("cache_filter".equals(fieldName) || "cacheFilter".equals(fieldName)) {
-                            cacheFilter = parser.booleanValue();
-                        } else if ("nested".equals(fieldName)) {
-                            nestedPath = parser.text();
-                        }
-                    }
+                if (context.searcher().hasConcurrentSlices()) {
+                    // keep the source of the facet, each slice of the main query parses its own executor
+                    XContentBuilder builder = XContentFactory.contentBuilder(parser.contentType());
+                    builder.copyCurrentStructure(parser);
+                    entries.add(parseEntry(facetName, builder.bytes(), context));
+                } else {
+                    entries.add(parseEntry(facetName, parser, null, context));
                 }
+            }
+        }
 
-                if (filter != null) {
-                    if (cacheFilter) {
-                        filter = context.filterCache().cache(filter);
-                    }
-                }
+        context.facets(new SearchContextFacets(entries));
+    }
 
-                if (facetExecutor == null) {
-                    throw new SearchParseException(context, "no facet type found for facet named [" + facetName + "]");
-                }
+    /**
+     * Parses the facet of the given entry again, for a slice of the concurrently collected main query.
+     */
+    public SearchContextFacets.Entry parseSliceEntry(SearchContextFacets.Entry entry, SearchContext context) throws Exception {
+        assert entry.getSource() != null;
+        return parseEntry(entry.getFacetName(), entry.getSource(), context);
+    }
 
-                if (nestedPath != null) {
-                    facetExecutor = new NestedFacetExecutor(facetExecutor, context, nestedPath);
-                }
+    private SearchContextFacets.Entry parseEntry(String facetName, BytesReference source, SearchContext context) throws Exception {
+        XContentParser parser = XContentFactory.xContent(source).createParser(source);
+        try {
+            parser.nextToken();
+            return parseEntry(facetName, parser, source, context);
+        } finally {
+            parser.close();
+        }
+    }
 
-                if (mode == null) {
-                    mode = global ? defaultGlobalMode : defaultMainMode;
+    private SearchContextFacets.Entry parseEntry(String facetName, XContentParser parser, @Nullable BytesReference source, SearchContext context) throws Exception {
+        XContentParser.Token token;
+        FacetExecutor facetExecutor = null;
+        boolean global = false;
+        FacetExecutor.Mode defaultMainMode = null;
+        FacetExecutor.Mode defaultGlobalMode = null;
+        FacetExecutor.Mode mode = null;
+        Filter filter = null;
+        boolean cacheFilter = false;
+        String nestedPath = null;
+
+        String fieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                fieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if ("facet_filter".equals(fieldName) || "facetFilter".equals(fieldName)) {
+                    ParsedFilter parsedFilter = context.queryParserService().parseInnerFilter(parser);
+                    filter = parsedFilter == null ? null : parsedFilter.filter();
+                } else {
+                    FacetParser facetParser = facetParsers.parser(fieldName);
+                    if (facetParser == null) {
+                        throw new SearchParseException(context, "No facet type found for [" + fieldName + "]");
+                    }
+                    facetExecutor = facetParser.parse(facetName, parser, context);
+                    defaultMainMode = facetParser.defaultMainMode();
+                    defaultGlobalMode = facetParser.defaultGlobalMode();
+                }
+            } else if (token.isValue()) {
+                if ("global".equals(fieldName)) {
+                    global = parser.booleanValue();
+                } else if ("mode".equals(fieldName)) {
+                    String modeAsText = parser.text();
+                    if ("collector".equals(modeAsText)) {
+                        mode = FacetExecutor.Mode.COLLECTOR;
+                    } else if ("post".equals(modeAsText)) {
+                        mode = FacetExecutor.Mode.POST;
+                    } else {
+                        throw new ElasticsearchIllegalArgumentException("failed to parse facet mode [" + modeAsText + "]");
+                    }
+                } else if ("scope".equals(fieldName) || "_scope".equals(fieldName)) {
+                    throw new SearchParseException(context, "the [scope] support in facets have been removed");
+                } else if ("cache_filter".equals(fieldName) || "cacheFilter".equals(fieldName)) {
+                    cacheFilter = parser.booleanValue();
+                } else if ("nested".equals(fieldName)) {
+                    nestedPath = parser.text();
                 }
-                entries.add(new SearchContextFacets.Entry(facetName, mode, facetExecutor, global, filter));
             }
         }
 
-        context.facets(new SearchContextFacets(entries));
+        if (filter != null) {
+            if (cacheFilter) {
+                filter = context.filterCache().cache(filter);
+            }
+        }
+
+        if (facetExecutor == null) {
+            throw new SearchParseException(context, "no facet type found for facet named [" + facetName + "]");
+        }
+
+        if (nestedPath != null) {
+            facetExecutor = new NestedFacetExecutor(facetExecutor, context, nestedPath);
+        }
+
+        if (mode == null) {
+            mode = global ? defaultGlobalMode : defaultMainMode;
+        }
+        if (source != null && (global || mode != FacetExecutor.Mode.COLLECTOR || contains(source, SCRIPT))) {
+            // only the collectors of the main query are sliced, and scripts would share the lookup of the search context
+            source = null;
+        }
+        return new SearchContextFacets.Entry(facetName, mode, facetExecutor, global, filter, source);
+    }
+
+    private static boolean contains(BytesReference source, byte[] pattern) {
+        final int end = source.length() - pattern.length;
+        for (int i = 0; i <= end; ++i) {
+            int j = 0;
+            while (j < pattern.length && source.get(i + j) == pattern[j]) {
+                ++j;
+            }
+            if (j == pattern.length) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -33,8 +33,10 @@ import org.elasticsearch.search.SearchParseElement;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.facet.nested.NestedFacetExecutor;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.SliceableCollector;
 import org.elasticsearch.search.query.QueryPhaseExecutionException;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -67,21 +69,9 @@ public class FacetPhase implements SearchPhase {
                     continue;
                 }
                 if (entry.getMode() == FacetExecutor.Mode.COLLECTOR) {
-                    // TODO: We can pass the filter as param to collector method, then this filter wrapper logic can
-                    // be moved to NestedFacetExecutor impl, the other implementations would just wrap it into
-                    // FilteredCollector.
-                    Collector collector = entry.getFacetExecutor().collector();
-
-                    if (entry.getFilter() != null) {
-                        if (collector instanceof NestedFacetExecutor.Collector) {
-                            // We get rootDoc ids as hits in the collect method, so we need to first translate from
-                            // rootDoc hit to nested doc hit and then apply filter.
-                            collector = new NestedFacetExecutor.Collector((NestedFacetExecutor.Collector) collector, entry.getFilter());
-                            // If we would first apply the filter on the rootDoc level and then translate it back to the
-                            // nested docs we ignore the facet filter and all nested docs are passed to facet collector
-                        } else {
-                            collector = new FilteredCollector(collector, entry.getFilter());
-                        }
+                    Collector collector = mainQueryCollector(entry);
+                    if (entry.getSource() != null) {
+                        collector = new SliceableFacetCollector(collector, entry, context);
                     }
                     context.searcher().addMainQueryCollector(collector);
                 } else if (entry.getMode() == FacetExecutor.Mode.POST) {
@@ -197,8 +187,108 @@ public class FacetPhase implements SearchPhase {
 
         List<Facet> facets = new ArrayList<Facet>(context.facets().entries().size());
         for (SearchContextFacets.Entry entry : context.facets().entries()) {
-            facets.add(entry.getFacetExecutor().buildFacet(entry.getFacetName()));
+            if (entry.getSliceFacetExecutors().isEmpty()) {
+                facets.add(entry.getFacetExecutor().buildFacet(entry.getFacetName()));
+            } else {
+                // the main query was collected concurrently, each slice has its own executor. The shard facet is reduced
+                // again on the coordinating node, so this is a partial reduction which keeps the entries beyond the
+                // requested size. The executor of the request collected nothing, building it releases its resources.
+                List<Facet> slices = new ArrayList<Facet>(entry.getSliceFacetExecutors().size() + 1);
+                slices.add(entry.getFacetExecutor().buildFacet(entry.getFacetName()));
+                for (FacetExecutor sliceFacetExecutor : entry.getSliceFacetExecutors()) {
+                    slices.add(sliceFacetExecutor.buildFacet(entry.getFacetName()));
+                }
+                facets.add(((InternalFacet) slices.get(0)).reduce(new InternalFacet.ReduceContext(context.cacheRecycler(), slices, false)));
+            }
         }
         context.queryResult().facets(new InternalFacets(facets));
     }
+
+    private Collector mainQueryCollector(SearchContextFacets.Entry entry) {
+        // TODO: We can pass the filter as param to collector method, then this filter wrapper logic can
+        // be moved to NestedFacetExecutor impl, the other implementations would just wrap it into
+        // FilteredCollector.
+        Collector collector = entry.getFacetExecutor().collector();
+
+        if (entry.getFilter() != null) {
+            if (collector instanceof NestedFacetExecutor.Collector) {
+                // We get rootDoc ids as hits in the collect method, so we need to first translate from
+                // rootDoc hit to nested doc hit and then apply filter.
+                collector = new NestedFacetExecutor.Collector((NestedFacetExecutor.Collector) collector, entry.getFilter());
+                // If we would first apply the filter on the rootDoc level and then translate it back to the
+                // nested docs we ignore the facet filter and all nested docs are passed to facet collector
+            } else {
+                collector = new FilteredCollector(collector, entry.getFilter());
+            }
+        }
+        return collector;
+    }
+
+    /**
+     * Collects a facet of the main query. When the main query is executed concurrently, each slice parses its own
+     * facet executor from the source of the facet, the facets of the slices are then reduced in {@link #execute(SearchContext)}.
+     */
+    class SliceableFacetCollector extends XCollector implements SliceableCollector {
+
+        private final Collector collector;
+        private final SearchContextFacets.Entry entry;
+        private final SearchContext context;
+
+        SliceableFacetCollector(Collector collector, SearchContextFacets.Entry entry, SearchContext context) {
+            this.collector = collector;
+            this.entry = entry;
+            this.context = context;
+        }
+
+        @Override
+        public boolean supportsSlicing() {
+            // facets are only computed once per search context, eg. the first time a scroll is executed
+            return context.queryResult().facets() == null;
+        }
+
+        @Override
+        public Collector newSliceCollector() {
+            SearchContextFacets.Entry sliceEntry;
+            try {
+                sliceEntry = facetParseElement.parseSliceEntry(entry, context);
+            } catch (Exception e) {
+                throw new QueryPhaseExecutionException(context, "failed to parse facet [" + entry.getFacetName() + "] for a slice", e);
+            }
+            // registered right away so that it is built with the facet of the request
+            entry.addSliceFacetExecutor(sliceEntry.getFacetExecutor());
+            return mainQueryCollector(sliceEntry);
+        }
+
+        @Override
+        public void mergeSlices(List<Collector> sliceCollectors) {
+            // nothing to do, the facets of the slices are reduced when building the facets
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException {
+            collector.setScorer(scorer);
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            collector.collect(doc);
+        }
+
+        @Override
+        public void setNextReader(AtomicReaderContext context) throws IOException {
+            collector.setNextReader(context);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return collector.acceptsDocsOutOfOrder();
+        }
+
+        @Override
+        public void postCollection() {
+            if (collector instanceof XCollector) {
+                ((XCollector) collector).postCollection();
+            }
+        }
+    }
 }
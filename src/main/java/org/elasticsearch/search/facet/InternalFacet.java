@@ -39,10 +39,16 @@ public abstract class InternalFacet implements Facet, Streamable, ToXContent {
     public static class ReduceContext {
         private final CacheRecycler cacheRecycler;
         private final List<Facet> facets;
+        private final boolean finalReduce;
 
         public ReduceContext(CacheRecycler cacheRecycler, List<Facet> facets) {
+            this(cacheRecycler, facets, true);
+        }
+
+        public ReduceContext(CacheRecycler cacheRecycler, List<Facet> facets, boolean finalReduce) {
             this.cacheRecycler = cacheRecycler;
             this.facets = facets;
+            this.finalReduce = finalReduce;
         }
 
         public CacheRecycler cacheRecycler() {
@@ -52,6 +58,14 @@ public abstract class InternalFacet implements Facet, Streamable, ToXContent {
         public List<Facet> facets() {
             return facets;
         }
+
+        /**
+         * @return Whether this is the last reduction of these facets, partial reductions must not drop entries that
+         *         the final reduction may need.
+         */
+        public boolean isFinalReduce() {
+            return finalReduce;
+        }
     }
 
     private String facetName;
@@ -21,7 +21,9 @@ package org.elasticsearch.search.facet;
 
 import org.apache.lucene.search.Filter;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesReference;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -36,13 +38,21 @@ public class SearchContextFacets {
         private final boolean global;
         @Nullable
         private final Filter filter;
+        @Nullable
+        private final BytesReference source;
+        private final List<FacetExecutor> sliceFacetExecutors = new ArrayList<FacetExecutor>();
 
         public Entry(String facetName, FacetExecutor.Mode mode, FacetExecutor facetExecutor, boolean global, @Nullable Filter filter) {
+            this(facetName, mode, facetExecutor, global, filter, null);
+        }
+
+        public Entry(String facetName, FacetExecutor.Mode mode, FacetExecutor facetExecutor, boolean global, @Nullable Filter filter, @Nullable BytesReference source) {
             this.facetName = facetName;
             this.mode = mode;
             this.facetExecutor = facetExecutor;
             this.global = global;
             this.filter = filter;
+            this.source = source;
         }
 
         public String getFacetName() {
@@ -64,6 +74,27 @@ public class SearchContextFacets {
         public Filter getFilter() {
             return filter;
         }
+
+        /**
+         * @return The source of the facet if each slice of a concurrently collected main query can parse its own
+         *         executor from it, <tt>null</tt> otherwise.
+         */
+        @Nullable
+        public BytesReference getSource() {
+            return source;
+        }
+
+        /**
+         * @return The executors that collected a slice of the main query when it was collected concurrently, in
+         *         slice order. Empty otherwise.
+         */
+        public List<FacetExecutor> getSliceFacetExecutors() {
+            return sliceFacetExecutors;
+        }
+
+        public void addSliceFacetExecutor(FacetExecutor facetExecutor) {
+            sliceFacetExecutors.add(facetExecutor);
+        }
     }
 
     private final List<Entry> entries;
@@ -80,7 +80,7 @@ public class CountDateHistogramFacetExecutor extends FacetExecutor {
         private final DateHistogramProc histoProc;
 
         public Collector() {
-            this.histoProc = new DateHistogramProc(counts.v(), tzRounding);
+            this.histoProc = new DateHistogramProc(counts.v(), tzRounding.prepare());
         }
 
         @Override
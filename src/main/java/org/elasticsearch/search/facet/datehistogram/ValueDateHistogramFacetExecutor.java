@@ -83,7 +83,7 @@ public class ValueDateHistogramFacetExecutor extends FacetExecutor {
         private LongValues keyValues;
 
         public Collector() {
-            this.histoProc = new DateHistogramProc(tzRounding, entries.v());
+            this.histoProc = new DateHistogramProc(tzRounding.prepare(), entries.v());
         }
 
         @Override
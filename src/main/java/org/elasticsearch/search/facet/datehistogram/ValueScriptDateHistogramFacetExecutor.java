@@ -84,7 +84,7 @@ public class ValueScriptDateHistogramFacetExecutor extends FacetExecutor {
         private LongValues keyValues;
 
         public Collector() {
-            histoProc = new DateHistogramProc(tzRounding, valueScript, entries.v());
+            histoProc = new DateHistogramProc(tzRounding.prepare(), valueScript, entries.v());
         }
 
         @Override
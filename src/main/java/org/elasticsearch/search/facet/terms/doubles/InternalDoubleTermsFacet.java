@@ -164,7 +164,7 @@ public class InternalDoubleTermsFacet extends InternalTermsFacet {
             Facet facet = facets.get(0);
 
             // can be of type InternalStringTermsFacet representing unmapped fields
-            if (facet instanceof InternalDoubleTermsFacet) {
+            if (context.isFinalReduce() && facet instanceof InternalDoubleTermsFacet) {
                 ((InternalDoubleTermsFacet) facet).trimExcessEntries();
             }
             return facet;
@@ -188,7 +188,7 @@ public class InternalDoubleTermsFacet extends InternalTermsFacet {
             }
         }
 
-        BoundedTreeSet<DoubleEntry> ordered = new BoundedTreeSet<DoubleEntry>(first.comparatorType.comparator(), first.requiredSize);
+        BoundedTreeSet<DoubleEntry> ordered = new BoundedTreeSet<DoubleEntry>(first.comparatorType.comparator(), context.isFinalReduce() ? first.requiredSize : Integer.MAX_VALUE);
         final boolean[] states = aggregated.v().allocated;
         final double[] keys = aggregated.v().keys;
         final int[] values = aggregated.v().values;
@@ -165,7 +165,7 @@ public class InternalLongTermsFacet extends InternalTermsFacet {
             Facet facet = facets.get(0);
 
             // facet could be InternalStringTermsFacet representing unmapped fields
-            if (facet instanceof InternalLongTermsFacet) {
+            if (context.isFinalReduce() && facet instanceof InternalLongTermsFacet) {
                 ((InternalLongTermsFacet) facet).trimExcessEntries();
             }
             return facet;
@@ -189,7 +189,7 @@ public class InternalLongTermsFacet extends InternalTermsFacet {
             }
         }
 
-        BoundedTreeSet<LongEntry> ordered = new BoundedTreeSet<LongEntry>(first.comparatorType.comparator(), first.requiredSize);
+        BoundedTreeSet<LongEntry> ordered = new BoundedTreeSet<LongEntry>(first.comparatorType.comparator(), context.isFinalReduce() ? first.requiredSize : Integer.MAX_VALUE);
         LongIntOpenHashMap entries = aggregated.v();
         final boolean[] states = aggregated.v().allocated;
         final long[] keys = aggregated.v().keys;
@@ -172,7 +172,9 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
         List<Facet> facets = context.facets();
         if (facets.size() == 1) {
             InternalStringTermsFacet facet = (InternalStringTermsFacet) facets.get(0);
-            facet.trimExcessEntries();
+            if (context.isFinalReduce()) {
+                facet.trimExcessEntries();
+            }
             return facet;
         }
 
@@ -202,7 +204,7 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
             }
         }
 
-        BoundedTreeSet<TermEntry> ordered = new BoundedTreeSet<TermEntry>(first.comparatorType.comparator(), first.requiredSize);
+        BoundedTreeSet<TermEntry> ordered = new BoundedTreeSet<TermEntry>(first.comparatorType.comparator(), context.isFinalReduce() ? first.requiredSize : Integer.MAX_VALUE);
         ObjectIntOpenHashMap<Text> aggregatedEntries = aggregated.v();
 
         final boolean[] states = aggregatedEntries.allocated;
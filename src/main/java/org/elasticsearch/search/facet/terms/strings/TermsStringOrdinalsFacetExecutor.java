@@ -25,34 +25,34 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.PriorityQueue;
 import org.apache.lucene.util.UnicodeUtil;
-import org.elasticsearch.cache.recycler.CacheRecycler;
-import org.elasticsearch.common.collect.BoundedTreeSet;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.common.util.BigArrays;
-import org.elasticsearch.common.util.IntArray;
-import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.common.util.Comparators;
+import org.elasticsearch.common.util.LongArray;
 import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinals;
 import org.elasticsearch.index.fielddata.ordinals.Ordinals;
 import org.elasticsearch.search.facet.FacetExecutor;
 import org.elasticsearch.search.facet.InternalFacet;
 import org.elasticsearch.search.facet.terms.TermsFacet;
-import org.elasticsearch.search.facet.terms.support.EntryPriorityQueue;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
+ * Terms facet on a field that has ordinals: documents are counted per global ordinal, and terms are only resolved
+ * for the top entries (and for all candidates when terms are excluded or filtered by a regular expression).
  *
+ * @see GlobalOrdinals
  */
 public class TermsStringOrdinalsFacetExecutor extends FacetExecutor {
 
     private final IndexFieldData.WithOrdinals indexFieldData;
 
-    final CacheRecycler cacheRecycler;
+    private final SearchContext context;
     private final TermsFacet.ComparatorType comparatorType;
     private final int size;
     private final int shardSize;
@@ -61,7 +61,8 @@ public class TermsStringOrdinalsFacetExecutor extends FacetExecutor {
     private final Matcher matcher;
     final int ordinalsCacheAbove;
 
-    final List<ReaderAggregator> aggregators;
+    GlobalOrdinals globalOrdinals;
+    LongArray counts;
     long missing;
     long total;
 
@@ -72,6 +73,7 @@ public class TermsStringOrdinalsFacetExecutor extends FacetExecutor {
         this.shardSize = shardSize;
         this.comparatorType = comparatorType;
         this.ordinalsCacheAbove = ordinalsCacheAbove;
+        this.context = context;
 
         if (excluded == null || excluded.isEmpty()) {
             this.excluded = null;
@@ -86,10 +88,6 @@ public class TermsStringOrdinalsFacetExecutor extends FacetExecutor {
         } else {
             minCount = 0;
         }
-
-        this.cacheRecycler = context.cacheRecycler();
-
-        this.aggregators = new ArrayList<ReaderAggregator>(context.searcher().getIndexReader().leaves().size());
     }
 
     @Override
@@ -99,75 +97,20 @@ public class TermsStringOrdinalsFacetExecutor extends FacetExecutor {
 
     @Override
     public InternalFacet buildFacet(String facetName) {
-        final CharsRef spare = new CharsRef();
-        AggregatorPriorityQueue queue = new AggregatorPriorityQueue(aggregators.size());
-        for (ReaderAggregator aggregator : aggregators) {
-            if (aggregator.nextPosition()) {
-                queue.add(aggregator);
-            }
+        if (globalOrdinals == null) {
+            return new InternalStringTermsFacet(facetName, comparatorType, size, Arrays.<InternalStringTermsFacet.TermEntry>asList(), missing, total);
         }
-
-        // YACK, we repeat the same logic, but once with an optimizer priority queue for smaller sizes
-        if (shardSize < EntryPriorityQueue.LIMIT) {
-            // optimize to use priority size
-            EntryPriorityQueue ordered = new EntryPriorityQueue(shardSize, comparatorType.comparator());
-
-            while (queue.size() > 0) {
-                ReaderAggregator agg = queue.top();
-                BytesRef value = agg.copyCurrent(); // we need to makeSafe it, since we end up pushing it... (can we get around this?)
-                int count = 0;
-                do {
-                    count += agg.counts.get(agg.position);
-                    if (agg.nextPosition()) {
-                        agg = queue.updateTop();
-                    } else {
-                        // we are done with this reader
-                        queue.pop();
-                        agg = queue.top();
-                    }
-                } while (agg != null && value.equals(agg.current));
-
-                if (count > minCount) {
-                    if (excluded != null && excluded.contains(value)) {
-                        continue;
-                    }
-                    if (matcher != null) {
-                        UnicodeUtil.UTF8toUTF16(value, spare);
-                        assert spare.toString().equals(value.utf8ToString());
-                        if (!matcher.reset(spare).matches()) {
-                            continue;
-                        }
-                    }
-                    InternalStringTermsFacet.TermEntry entry = new InternalStringTermsFacet.TermEntry(value, count);
-                    ordered.insertWithOverflow(entry);
-                }
-            }
-            InternalStringTermsFacet.TermEntry[] list = new InternalStringTermsFacet.TermEntry[ordered.size()];
-            for (int i = ordered.size() - 1; i >= 0; i--) {
-                list[i] = (InternalStringTermsFacet.TermEntry) ordered.pop();
+        final CharsRef spare = new CharsRef();
+        final long maxOrd = globalOrdinals.getMaxOrd();
+        OrdinalEntryQueue ordered = new OrdinalEntryQueue((int) Math.min(shardSize, maxOrd), comparatorType);
+        OrdinalEntry entry = null;
+        for (long globalOrd = Ordinals.MIN_ORDINAL; globalOrd < maxOrd; ++globalOrd) {
+            final long count = counts.get(globalOrd);
+            if (count <= minCount) {
+                continue;
             }
-
-            return new InternalStringTermsFacet(facetName, comparatorType, size, Arrays.asList(list), missing, total);
-        }
-
-        BoundedTreeSet<InternalStringTermsFacet.TermEntry> ordered = new BoundedTreeSet<InternalStringTermsFacet.TermEntry>(comparatorType.comparator(), shardSize);
-
-        while (queue.size() > 0) {
-            ReaderAggregator agg = queue.top();
-            BytesRef value = agg.copyCurrent(); // we need to makeSafe it, since we end up pushing it... (can we work around that?)
-            int count = 0;
-            do {
-                count += agg.counts.get(agg.position);
-                if (agg.nextPosition()) {
-                    agg = queue.updateTop();
-                } else {
-                    // we are done with this reader
-                    queue.pop();
-                    agg = queue.top();
-                }
-            } while (agg != null && value.equals(agg.current));
-
-            if (count > minCount) {
+            if (excluded != null || matcher != null) {
+                final BytesRef value = globalOrdinals.getValueByOrd(globalOrd);
                 if (excluded != null && excluded.contains(value)) {
                     continue;
                 }
@@ -178,112 +121,106 @@ public class TermsStringOrdinalsFacetExecutor extends FacetExecutor {
                         continue;
                     }
                 }
-                InternalStringTermsFacet.TermEntry entry = new InternalStringTermsFacet.TermEntry(value, count);
-                ordered.add(entry);
             }
+            if (entry == null) {
+                entry = new OrdinalEntry();
+            }
+            entry.ord = globalOrd;
+            entry.count = count;
+            entry = ordered.insertWithOverflow(entry);
         }
 
-        return new InternalStringTermsFacet(facetName, comparatorType, size, ordered, missing, total);
+        InternalStringTermsFacet.TermEntry[] list = new InternalStringTermsFacet.TermEntry[ordered.size()];
+        for (int i = ordered.size() - 1; i >= 0; i--) {
+            final OrdinalEntry top = ordered.pop();
+            list[i] = new InternalStringTermsFacet.TermEntry(BytesRef.deepCopyOf(globalOrdinals.getValueByOrd(top.ord)), (int) top.count);
+        }
+        return new InternalStringTermsFacet(facetName, comparatorType, size, Arrays.asList(list), missing, total);
     }
 
     class Collector extends FacetExecutor.Collector {
 
         private long missing;
         private long total;
-        private BytesValues.WithOrdinals values;
-        private ReaderAggregator current;
         private Ordinals.Docs ordinals;
+        private int segmentIndex;
 
         @Override
         public void setNextReader(AtomicReaderContext context) throws IOException {
-            if (current != null) {
-                missing += current.counts.get(0);
-                total += current.total - current.counts.get(0);
-                if (current.values.ordinals().getNumOrds() > 0) {
-                    aggregators.add(current);
-                }
+            if (globalOrdinals == null) {
+                globalOrdinals = TermsStringOrdinalsFacetExecutor.this.context.fieldData().getGlobalOrdinals(
+                        TermsStringOrdinalsFacetExecutor.this.context.searcher().getIndexReader(), indexFieldData);
+                counts = BigArrays.newLongArray(globalOrdinals.getMaxOrd());
             }
-            values = indexFieldData.load(context).getBytesValues(false);
-            current = new ReaderAggregator(values, ordinalsCacheAbove, cacheRecycler);
-            ordinals = values.ordinals();
+            ordinals = indexFieldData.load(context).getBytesValues(false).ordinals();
+            segmentIndex = context.ord;
         }
 
         @Override
         public void collect(int doc) throws IOException {
             final int length = ordinals.setDocument(doc);
-            int missing = 1;
+            if (length == 0) {
+                missing++;
+                return;
+            }
             for (int i = 0; i < length; i++) {
-                current.onOrdinal(doc, ordinals.nextOrd());
-                missing = 0;
+                counts.increment(globalOrdinals.getGlobalOrd(segmentIndex, ordinals.nextOrd()), 1);
             }
-            current.incrementMissing(missing);
+            total += length;
         }
 
         @Override
         public void postCollection() {
-            if (current != null) {
-                missing += current.counts.get(0);
-                total += current.total - current.counts.get(0);
-                // if we have values for this one, add it
-                if (current.values.ordinals().getNumOrds() > 0) {
-                    aggregators.add(current);
-                }
-                current = null;
-            }
             TermsStringOrdinalsFacetExecutor.this.missing = missing;
             TermsStringOrdinalsFacetExecutor.this.total = total;
         }
     }
 
-    public static final class ReaderAggregator {
-
-        private final long maxOrd;
+    static final class OrdinalEntry {
+        long ord;
+        long count;
+    }
 
-        final BytesValues.WithOrdinals values;
-        final IntArray counts;
-        long position = 0;
-        BytesRef current;
-        int total;
+    /**
+     * Sorts entries like {@link TermsFacet.ComparatorType} sorts terms, relying on the fact that global ordinals are
+     * sorted like the terms they stand for.
+     */
+    static final class OrdinalEntryQueue extends PriorityQueue<OrdinalEntry> {
 
+        private final TermsFacet.ComparatorType comparatorType;
 
-        public ReaderAggregator(BytesValues.WithOrdinals values, int ordinalsCacheLimit, CacheRecycler cacheRecycler) {
-            this.values = values;
-            this.maxOrd = values.ordinals().getMaxOrd();
-            this.counts = BigArrays.newIntArray(maxOrd);
-        }
-
-        final void onOrdinal(int docId, long ordinal) {
-            counts.increment(ordinal, 1);
-            total++;
+        OrdinalEntryQueue(int size, TermsFacet.ComparatorType comparatorType) {
+            super(size);
+            this.comparatorType = comparatorType;
         }
 
-        final void incrementMissing(int numMissing) {
-            counts.increment(0, numMissing);
-            total += numMissing;
+        @Override
+        protected boolean lessThan(OrdinalEntry a, OrdinalEntry b) {
+            return compare(a, b) > 0; // reverse, since we reverse again when adding to a list
         }
 
-        public boolean nextPosition() {
-            if (++position >= maxOrd) {
-                return false;
+        private int compare(OrdinalEntry a, OrdinalEntry b) {
+            switch (comparatorType) {
+                case COUNT:
+                    return countThenOrd(a, b);
+                case REVERSE_COUNT:
+                    return -countThenOrd(a, b);
+                case TERM:
+                    return Comparators.compare(a.ord, b.ord);
+                case REVERSE_TERM:
+                    return -Comparators.compare(a.ord, b.ord);
+                default:
+                    throw new ElasticsearchIllegalArgumentException("unsupported comparator type [" + comparatorType + "]");
             }
-            current = values.getValueByOrd(position);
-            return true;
-        }
-
-        public BytesRef copyCurrent() {
-            return values.copyShared();
-        }
-    }
-
-    public static class AggregatorPriorityQueue extends PriorityQueue<ReaderAggregator> {
-
-        public AggregatorPriorityQueue(int size) {
-            super(size);
         }
 
-        @Override
-        protected boolean lessThan(ReaderAggregator a, ReaderAggregator b) {
-            return a.current.compareTo(b.current) < 0;
+        private static int countThenOrd(OrdinalEntry a, OrdinalEntry b) {
+            // higher counts first, then higher terms first, like TermsFacet.ComparatorType.COUNT
+            final int cmp = Comparators.compare(b.count, a.count);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return Comparators.compare(b.ord, a.ord);
         }
     }
 }
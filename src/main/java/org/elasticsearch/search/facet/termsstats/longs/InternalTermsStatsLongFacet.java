@@ -180,7 +180,9 @@ public class InternalTermsStatsLongFacet extends InternalTermsStatsFacet {
                     CollectionUtil.timSort(entries, comparatorType.comparator());
                 }
             }
-            tsFacet.trimExcessEntries();
+            if (context.isFinalReduce()) {
+                tsFacet.trimExcessEntries();
+            }
             return facets.get(0);
         }
         int missing = 0;
@@ -208,7 +210,7 @@ public class InternalTermsStatsLongFacet extends InternalTermsStatsFacet {
         }
 
         // sort
-        if (requiredSize == 0) { // all terms
+        if (requiredSize == 0 || !context.isFinalReduce()) { // all terms, partial reductions keep them all
             LongEntry[] entries1 = map.v().values().toArray(LongEntry.class);
             Arrays.sort(entries1, comparatorType.comparator());
             map.release();
@@ -185,7 +185,9 @@ public class InternalTermsStatsStringFacet extends InternalTermsStatsFacet {
                     CollectionUtil.timSort(entries, comparatorType.comparator());
                 }
             }
-            tsFacet.trimExcessEntries();
+            if (context.isFinalReduce()) {
+                tsFacet.trimExcessEntries();
+            }
             return tsFacet;
         }
         int missing = 0;
@@ -213,7 +215,7 @@ public class InternalTermsStatsStringFacet extends InternalTermsStatsFacet {
         }
 
         // sort
-        if (requiredSize == 0) { // all terms
+        if (requiredSize == 0 || !context.isFinalReduce()) { // all terms, partial reductions keep them all
             StringEntry[] entries1 = map.v().values().toArray(StringEntry.class);
             Arrays.sort(entries1, comparatorType.comparator());
             map.release();
@@ -21,6 +21,7 @@ package org.elasticsearch.search.internal;
 
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.*;
+import org.apache.lucene.util.ThreadInterruptedException;
 import org.elasticsearch.common.lucene.MinimumScoreCollector;
 import org.elasticsearch.common.lucene.MultiCollector;
 import org.elasticsearch.common.lucene.search.FilteredCollector;
@@ -32,6 +33,11 @@ import org.elasticsearch.search.dfs.CachedDfSource;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Context-aware extension of {@link IndexSearcher}.
@@ -59,6 +65,9 @@ public class ContextIndexSearcher extends IndexSearcher {
     private boolean enableMainDocIdSetCollector;
     private DocIdSetCollector mainDocIdSetCollector;
 
+    private Executor sliceExecutor;
+    private int maxSlices = 1;
+
     public ContextIndexSearcher(SearchContext searchContext, Engine.Searcher searcher) {
         super(searcher.reader());
         in = searcher.searcher();
@@ -88,6 +97,14 @@ public class ContextIndexSearcher extends IndexSearcher {
         queryCollectors.add(collector);
     }
 
+    /**
+     * @return Whether the main query needs to visit all its matching documents, in addition to the top docs collection
+     *         (main query collectors or the main doc id set collector).
+     */
+    public boolean hasMainQueryCollectors() {
+        return enableMainDocIdSetCollector || (queryCollectors != null && !queryCollectors.isEmpty());
+    }
+
     public DocIdSetCollector mainDocIdSetCollector() {
         return this.mainDocIdSetCollector;
     }
@@ -96,6 +113,23 @@ public class ContextIndexSearcher extends IndexSearcher {
         this.enableMainDocIdSetCollector = true;
     }
 
+    /**
+     * Enables concurrent execution of the main query: the leaves are partitioned into at most <tt>maxSlices</tt>
+     * slices which are collected in parallel on the given executor. Only applies if all the main query collectors
+     * are {@link SliceableCollector}s, otherwise the main query is executed sequentially.
+     */
+    public void concurrentSlices(Executor sliceExecutor, int maxSlices) {
+        this.sliceExecutor = sliceExecutor;
+        this.maxSlices = maxSlices;
+    }
+
+    /**
+     * @return Whether the main query may be executed concurrently over slices of the leaves.
+     */
+    public boolean hasConcurrentSlices() {
+        return sliceExecutor != null && maxSlices > 1;
+    }
+
     public void inStage(Stage stage) {
         this.currentState = stage;
     }
@@ -191,6 +225,273 @@ public class ContextIndexSearcher extends IndexSearcher {
         }
     }
 
+    /**
+     * Returns the number of documents matching the given query, executed concurrently over slices of the leaves
+     * when possible.
+     */
+    public int count(Query query) throws IOException {
+        Weight weight = createNormalizedWeight(query);
+        if (!useSlices(leafContexts)) {
+            TotalHitCountCollector collector = new TotalHitCountCollector();
+            search(leafContexts, weight, collector);
+            return collector.getTotalHits();
+        }
+        int totalHits = 0;
+        for (TotalHitCountCollector collector : searchSlices(leafContexts, weight, new SliceCollectorFactory<TotalHitCountCollector>() {
+            @Override
+            public TotalHitCountCollector newCollector() {
+                return new TotalHitCountCollector();
+            }
+        })) {
+            totalHits += collector.getTotalHits();
+        }
+        return totalHits;
+    }
+
+    @Override
+    protected TopDocs search(List<AtomicReaderContext> leaves, Weight weight, final ScoreDoc after, int nDocs) throws IOException {
+        if (!useSlices(leaves)) {
+            return super.search(leaves, weight, after, nDocs);
+        }
+        final int numHits = Math.min(nDocs, Math.max(1, getIndexReader().maxDoc()));
+        final boolean docsScoredInOrder = !weight.scoresDocsOutOfOrder();
+        List<TopScoreDocCollector> collectors = searchSlices(leaves, weight, new SliceCollectorFactory<TopScoreDocCollector>() {
+            @Override
+            public TopScoreDocCollector newCollector() {
+                return TopScoreDocCollector.create(numHits, after, docsScoredInOrder);
+            }
+        });
+        TopDocs[] sliceTopDocs = new TopDocs[collectors.size()];
+        for (int i = 0; i < sliceTopDocs.length; i++) {
+            sliceTopDocs[i] = collectors.get(i).topDocs();
+        }
+        return mergeSlices(null, numHits, sliceTopDocs);
+    }
+
+    @Override
+    protected TopFieldDocs search(List<AtomicReaderContext> leaves, Weight weight, final FieldDoc after, int nDocs, final Sort sort,
+                                  final boolean fillFields, final boolean doDocScores, final boolean doMaxScore) throws IOException {
+        if (!useSlices(leaves) || !fillFields) {
+            // merging sorted slices requires the sort values of the hits
+            return super.search(leaves, weight, after, nDocs, sort, fillFields, doDocScores, doMaxScore);
+        }
+        final int numHits = Math.min(nDocs, Math.max(1, getIndexReader().maxDoc()));
+        final boolean docsScoredInOrder = !weight.scoresDocsOutOfOrder();
+        List<TopFieldCollector> collectors = searchSlices(leaves, weight, new SliceCollectorFactory<TopFieldCollector>() {
+            @Override
+            public TopFieldCollector newCollector() throws IOException {
+                return TopFieldCollector.create(sort, numHits, after, fillFields, doDocScores, doMaxScore, docsScoredInOrder);
+            }
+        });
+        TopDocs[] sliceTopDocs = new TopDocs[collectors.size()];
+        for (int i = 0; i < sliceTopDocs.length; i++) {
+            sliceTopDocs[i] = collectors.get(i).topDocs();
+        }
+        return (TopFieldDocs) mergeSlices(sort, numHits, sliceTopDocs);
+    }
+
+    private static TopDocs mergeSlices(Sort sort, int numHits, TopDocs[] sliceTopDocs) throws IOException {
+        TopDocs topDocs = TopDocs.merge(sort, numHits, sliceTopDocs);
+        // TopDocs#merge uses the shard index to break ties (slices are in leaf order, so the order is the same as when
+        // searching sequentially), but it is not a shard index from the point of view of the search request
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            scoreDoc.shardIndex = -1;
+        }
+        return topDocs;
+    }
+
+    private boolean useSlices(List<AtomicReaderContext> leaves) {
+        if (currentState != Stage.MAIN_QUERY || sliceExecutor == null || maxSlices <= 1 || leaves.size() <= 1) {
+            return false;
+        }
+        if (enableMainDocIdSetCollector) {
+            // post facets require the doc id sets of the whole shard, in leaf order
+            return false;
+        }
+        if (queryCollectors != null) {
+            for (Collector queryCollector : queryCollectors) {
+                if (!(queryCollector instanceof SliceableCollector) || !((SliceableCollector) queryCollector).supportsSlicing()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Partitions the leaves into contiguous slices of roughly the same number of documents.
+     */
+    private List<List<AtomicReaderContext>> slices(List<AtomicReaderContext> leaves) {
+        int numSlices = Math.min(maxSlices, leaves.size());
+        long totalDocs = 0;
+        for (AtomicReaderContext leaf : leaves) {
+            totalDocs += leaf.reader().maxDoc();
+        }
+        List<List<AtomicReaderContext>> slices = new ArrayList<List<AtomicReaderContext>>(numSlices);
+        List<AtomicReaderContext> current = new ArrayList<AtomicReaderContext>();
+        long sliceDocs = 0;
+        long docsPerSlice = Math.max(1, totalDocs / numSlices);
+        for (int i = 0; i < leaves.size(); i++) {
+            AtomicReaderContext leaf = leaves.get(i);
+            current.add(leaf);
+            sliceDocs += leaf.reader().maxDoc();
+            int remainingLeaves = leaves.size() - i - 1;
+            int remainingSlices = numSlices - slices.size() - 1;
+            if (remainingSlices > 0 && (sliceDocs >= docsPerSlice || remainingLeaves == remainingSlices)) {
+                slices.add(current);
+                current = new ArrayList<AtomicReaderContext>();
+                sliceDocs = 0;
+            }
+        }
+        if (!current.isEmpty()) {
+            slices.add(current);
+        }
+        return slices;
+    }
+
+    private static interface SliceCollectorFactory<C extends Collector> {
+
+        C newCollector() throws IOException;
+    }
+
+    /**
+     * Executes the main query concurrently over slices of the given leaves, wrapping the per slice collectors the
+     * same way as {@link #search(java.util.List, Weight, Collector)} does for sequential execution. The slice
+     * collectors of the {@link SliceableCollector} main query collectors are merged back once all slices are done.
+     */
+    private <C extends Collector> List<C> searchSlices(List<AtomicReaderContext> leaves, final Weight weight, SliceCollectorFactory<C> factory) throws IOException {
+        List<List<AtomicReaderContext>> slices = slices(leaves);
+        final List<C> collectors = new ArrayList<C>(slices.size());
+        final List<List<Collector>> sliceQueryCollectors = new ArrayList<List<Collector>>(slices.size());
+        final List<FutureTask<Boolean>> tasks = new ArrayList<FutureTask<Boolean>>(slices.size());
+        final List<FutureTask<Boolean>> startedTasks = new ArrayList<FutureTask<Boolean>>(slices.size());
+        try {
+            for (final List<AtomicReaderContext> slice : slices) {
+                final C collector = factory.newCollector();
+                final List<Collector> queryCollectors = new ArrayList<Collector>();
+                if (this.queryCollectors != null) {
+                    for (Collector queryCollector : this.queryCollectors) {
+                        queryCollectors.add(((SliceableCollector) queryCollector).newSliceCollector());
+                    }
+                }
+                collectors.add(collector);
+                sliceQueryCollectors.add(queryCollectors);
+                tasks.add(new FutureTask<Boolean>(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        // filters like the parent/child ones look up the search context of the current thread. Slices
+                        // also run on the calling thread (the last one, or rejected ones), which keeps using its context
+                        // once the query phase is done, so it is restored rather than cleared
+                        SearchContext previous = SearchContext.current();
+                        SearchContext.setCurrent(searchContext);
+                        try {
+                            return searchSlice(slice, weight, collector, queryCollectors);
+                        } finally {
+                            if (previous != null) {
+                                SearchContext.setCurrent(previous);
+                            } else {
+                                SearchContext.removeCurrent();
+                            }
+                        }
+                    }
+                }));
+            }
+
+            // the calling thread executes the last slice itself
+            for (int i = 0; i < tasks.size() - 1; i++) {
+                FutureTask<Boolean> task = tasks.get(i);
+                startedTasks.add(task);
+                try {
+                    sliceExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.run();
+                }
+            }
+            FutureTask<Boolean> lastTask = tasks.get(tasks.size() - 1);
+            startedTasks.add(lastTask);
+            lastTask.run();
+
+            boolean timedOut = false;
+            Throwable failure = null;
+            for (FutureTask<Boolean> task : startedTasks) {
+                try {
+                    timedOut |= task.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ThreadInterruptedException(e);
+                }
+            }
+            if (failure != null) {
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw new RuntimeException(failure);
+            }
+            if (timedOut) {
+                searchContext.queryResult().searchTimedOut(true);
+            }
+
+            if (queryCollectors != null && !queryCollectors.isEmpty()) {
+                for (int i = 0; i < queryCollectors.size(); i++) {
+                    List<Collector> slicesOfCollector = new ArrayList<Collector>(slices.size());
+                    for (List<Collector> queryCollectorsOfSlice : sliceQueryCollectors) {
+                        Collector sliceCollector = queryCollectorsOfSlice.get(i);
+                        if (sliceCollector instanceof XCollector) {
+                            ((XCollector) sliceCollector).postCollection();
+                        }
+                        slicesOfCollector.add(sliceCollector);
+                    }
+                    ((SliceableCollector) queryCollectors.get(i)).mergeSlices(slicesOfCollector);
+                }
+            }
+            return collectors;
+        } finally {
+            // make sure no slice is still running before resources get released
+            for (FutureTask<Boolean> task : startedTasks) {
+                try {
+                    task.get();
+                } catch (Throwable t) {
+                    // already handled above
+                }
+            }
+            searchContext.clearReleasables();
+        }
+    }
+
+    /**
+     * Collects a single slice, returns whether the collection timed out.
+     */
+    private boolean searchSlice(List<AtomicReaderContext> slice, Weight weight, Collector collector, List<Collector> queryCollectors) throws IOException {
+        if (searchContext.timeoutInMillis() != -1) {
+            collector = new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(), searchContext.timeoutInMillis());
+        }
+        if (searchContext.parsedPostFilter() != null) {
+            collector = new FilteredCollector(collector, searchContext.parsedPostFilter().filter());
+        }
+        if (!queryCollectors.isEmpty()) {
+            collector = new MultiCollector(collector, queryCollectors.toArray(new Collector[queryCollectors.size()]));
+        }
+        if (searchContext.minimumScore() != null) {
+            collector = new MinimumScoreCollector(collector, searchContext.minimumScore());
+        }
+        try {
+            super.search(slice, weight, collector);
+        } catch (TimeLimitingCollector.TimeExceededException e) {
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public Explanation explain(Query query, int doc) throws IOException {
         try {
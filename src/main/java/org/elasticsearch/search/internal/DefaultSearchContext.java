@@ -39,6 +39,7 @@ import org.elasticsearch.common.lucene.search.function.FunctionScoreQuery;
 import org.elasticsearch.index.analysis.AnalysisService;
 import org.elasticsearch.index.cache.docset.DocSetCache;
 import org.elasticsearch.index.cache.filter.FilterCache;
+import org.elasticsearch.index.cache.fixedbitset.FixedBitSetFilterCache;
 import org.elasticsearch.index.cache.id.IdCache;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
@@ -202,6 +203,10 @@ public class DefaultSearchContext extends SearchContext {
         // clear and scope phase we  have
         searcher.release();
         engineSearcher.release();
+        if (pageCacheRecycler instanceof Releasable) {
+            // give back the memory that this request has been charged for
+            ((Releasable) pageCacheRecycler).release();
+        }
         return true;
     }
 
@@ -432,6 +437,10 @@ public class DefaultSearchContext extends SearchContext {
         return indexService.cache().filter();
     }
 
+    public FixedBitSetFilterCache fixedBitSetFilterCache() {
+        return indexService.cache().fixedBitSetFilterCache();
+    }
+
     public DocSetCache docSetCache() {
         return indexService.cache().docSet();
     }
@@ -640,7 +649,7 @@ public class DefaultSearchContext extends SearchContext {
     }
 
     @Override
-    public void addReleasable(Releasable releasable) {
+    public synchronized void addReleasable(Releasable releasable) {
         if (clearables == null) {
             clearables = new ArrayList<Releasable>();
         }
@@ -648,7 +657,7 @@ public class DefaultSearchContext extends SearchContext {
     }
 
     @Override
-    public void clearReleasables() {
+    public synchronized void clearReleasables() {
         if (clearables != null) {
             Throwable th = null;
             for (Releasable releasable : clearables) {
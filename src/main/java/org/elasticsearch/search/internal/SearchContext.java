@@ -29,6 +29,7 @@ import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.index.analysis.AnalysisService;
 import org.elasticsearch.index.cache.docset.DocSetCache;
 import org.elasticsearch.index.cache.filter.FilterCache;
+import org.elasticsearch.index.cache.fixedbitset.FixedBitSetFilterCache;
 import org.elasticsearch.index.cache.id.IdCache;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
 import org.elasticsearch.index.mapper.FieldMapper;
@@ -180,6 +181,8 @@ public abstract class SearchContext implements Releasable {
 
     public abstract FilterCache filterCache();
 
+    public abstract FixedBitSetFilterCache fixedBitSetFilterCache();
+
     public abstract DocSetCache docSetCache();
 
     public abstract IndexFieldDataService fieldData();
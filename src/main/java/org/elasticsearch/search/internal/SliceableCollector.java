@@ -0,0 +1,51 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.internal;
+
+import org.apache.lucene.search.Collector;
+
+import java.util.List;
+
+/**
+ * A main query collector (see {@link ContextIndexSearcher#addMainQueryCollector(Collector)}) that can be split
+ * into independent per-slice collectors, so that the leaves of a shard can be collected concurrently.
+ * <p/>
+ * Slice collectors are created on the searching thread, used by a single slice thread for collection and handed
+ * back to {@link #mergeSlices(java.util.List)} on the searching thread once all slices are done.
+ */
+public interface SliceableCollector {
+
+    /**
+     * @return Whether this collector can currently be sliced. If any main query collector can't be sliced, the
+     *         main query is executed sequentially.
+     */
+    boolean supportsSlicing();
+
+    /**
+     * @return A new collector that will collect a single slice of the leaves.
+     */
+    Collector newSliceCollector();
+
+    /**
+     * Merges the state of the given slice collectors (as returned by {@link #newSliceCollector()}, in slice order)
+     * back into this collector. Called after the post collection callbacks of the slice collectors.
+     */
+    void mergeSlices(List<Collector> sliceCollectors);
+}
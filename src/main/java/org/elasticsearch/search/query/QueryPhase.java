@@ -21,11 +21,16 @@ package org.elasticsearch.search.query;
 
 import com.google.common.collect.ImmutableMap;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.TopFieldCollector;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.search.EarlyTerminatingCollector;
+import org.elasticsearch.index.fielddata.fieldcomparator.LongValuesComparatorSource;
+import org.elasticsearch.index.fielddata.fieldcomparator.SortMode;
+import org.elasticsearch.index.merge.policy.NumericFieldSorter;
 import org.elasticsearch.search.SearchParseElement;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.aggregations.AggregationPhase;
@@ -106,14 +111,24 @@ public class QueryPhase implements SearchPhase {
             int numDocs = searchContext.from() + searchContext.size();
 
             if (searchContext.searchType() == SearchType.COUNT || numDocs == 0) {
-                TotalHitCountCollector collector = new TotalHitCountCollector();
-                searchContext.searcher().search(query, collector);
-                topDocs = new TopDocs(collector.getTotalHits(), Lucene.EMPTY_SCORE_DOCS, 0);
+                topDocs = new TopDocs(searchContext.searcher().count(query), Lucene.EMPTY_SCORE_DOCS, 0);
             } else if (searchContext.searchType() == SearchType.SCAN) {
                 topDocs = searchContext.scanContext().execute(searchContext);
             } else if (searchContext.sort() != null) {
-                topDocs = searchContext.searcher().search(query, null, numDocs, searchContext.sort(),
-                        searchContext.trackScores(), searchContext.trackScores());
+                NumericFieldSorter indexSorter = earlyTerminationSorter(searchContext);
+                if (indexSorter != null) {
+                    // segments are sorted the same way as the request, each of them can stop after collecting numDocs docs
+                    TopFieldCollector topDocsCollector = TopFieldCollector.create(searchContext.sort(),
+                            Math.max(1, Math.min(numDocs, searchContext.searcher().getIndexReader().maxDoc())), true,
+                            searchContext.trackScores(), searchContext.trackScores(), false);
+                    EarlyTerminatingCollector collector = new EarlyTerminatingCollector(topDocsCollector, indexSorter, numDocs);
+                    searchContext.searcher().search(query, collector);
+                    topDocs = topDocsCollector.topDocs();
+                    searchContext.queryResult().terminatedEarly(collector.terminatedEarly());
+                } else {
+                    topDocs = searchContext.searcher().search(query, null, numDocs, searchContext.sort(),
+                            searchContext.trackScores(), searchContext.trackScores());
+                }
             } else {
                 if (searchContext.rescore() != null) {
                     rescore = true;
@@ -134,4 +149,37 @@ public class QueryPhase implements SearchPhase {
         facetPhase.execute(searchContext);
         aggregationPhase.execute(searchContext);
     }
+
+    /**
+     * @return The sorter of the index segments if collection can be terminated early on the sorted segments: the
+     *         request must sort on the sort field of the index only, in the same order, with missing values last and
+     *         the sort mode the index is sorted with, and nothing else than the top docs may need all matching docs.
+     */
+    private static NumericFieldSorter earlyTerminationSorter(SearchContext searchContext) {
+        if (searchContext.searcher().hasMainQueryCollectors()) {
+            return null;
+        }
+        NumericFieldSorter indexSorter = NumericFieldSorter.fromSettings(searchContext.indexShard().indexSettings());
+        if (indexSorter == null) {
+            return null;
+        }
+        SortField[] sortFields = searchContext.sort().getSort();
+        if (sortFields.length != 1) {
+            return null;
+        }
+        SortField sortField = sortFields[0];
+        if (!indexSorter.field().equals(sortField.getField()) || sortField.getReverse() != indexSorter.reverse()
+                || !(sortField.getComparatorSource() instanceof LongValuesComparatorSource)) {
+            return null;
+        }
+        LongValuesComparatorSource comparatorSource = (LongValuesComparatorSource) sortField.getComparatorSource();
+        Object missingValue = comparatorSource.missingValue();
+        if (missingValue != null && !"_last".equals(missingValue)) {
+            return null;
+        }
+        if (comparatorSource.sortMode() != (indexSorter.reverse() ? SortMode.MAX : SortMode.MIN)) {
+            return null;
+        }
+        return indexSorter;
+    }
 }
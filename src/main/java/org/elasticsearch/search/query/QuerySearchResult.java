@@ -20,6 +20,7 @@
 package org.elasticsearch.search.query;
 
 import org.apache.lucene.search.TopDocs;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.search.SearchShardTarget;
@@ -49,6 +50,7 @@ public class QuerySearchResult extends TransportResponse implements QuerySearchR
     private InternalAggregations aggregations;
     private Suggest suggest;
     private boolean searchTimedOut;
+    private boolean terminatedEarly;
 
     public QuerySearchResult() {
 
@@ -90,6 +92,18 @@ public class QuerySearchResult extends TransportResponse implements QuerySearchR
         return searchTimedOut;
     }
 
+    public void terminatedEarly(boolean terminatedEarly) {
+        this.terminatedEarly = terminatedEarly;
+    }
+
+    /**
+     * @return Whether the collection of the top docs was terminated early on sorted segments, in which case the total
+     *         hits are a lower bound.
+     */
+    public boolean terminatedEarly() {
+        return terminatedEarly;
+    }
+
     public TopDocs topDocs() {
         return topDocs;
     }
@@ -164,6 +178,9 @@ public class QuerySearchResult extends TransportResponse implements QuerySearchR
             suggest = Suggest.readSuggest(Suggest.Fields.SUGGEST, in);
         }
         searchTimedOut = in.readBoolean();
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            terminatedEarly = in.readBoolean();
+        }
     }
 
     @Override
@@ -193,5 +210,8 @@ public class QuerySearchResult extends TransportResponse implements QuerySearchR
             suggest.writeTo(out);
         }
         out.writeBoolean(searchTimedOut);
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_RC1)) {
+            out.writeBoolean(terminatedEarly);
+        }
     }
 }
@@ -66,6 +66,28 @@ public class LongFieldDataBenchmark {
                 return 1000L * (40L * SECONDS_PER_YEAR + RANDOM.nextInt(2 * SECONDS_PER_YEAR));
             }
         },
+        SINGLE_VALUED_DENSE_SORTED_DATE {
+            private long timestamp = 1000L * 40L * SECONDS_PER_YEAR;
+            public int numValues() {
+                return 1;
+            }
+            @Override
+            public long nextValue() {
+                // timestamps of documents that are indexed in chronological order, rounded to the second
+                timestamp += 1000L * RANDOM.nextInt(3);
+                return timestamp;
+            }
+        },
+        SINGLE_VALUED_SPARSE_DATE_MINUTES {
+            public int numValues() {
+                return RANDOM.nextFloat() < 0.5f ? 1 : 0;
+            }
+            @Override
+            public long nextValue() {
+                // somewhere in-between 2010 and 2012, rounded to the minute
+                return 60 * 1000L * ((40L * SECONDS_PER_YEAR + RANDOM.nextInt(2 * SECONDS_PER_YEAR)) / 60);
+            }
+        },
         MULTI_VALUED_DATE {
             public int numValues() {
                 return RANDOM.nextInt(3);
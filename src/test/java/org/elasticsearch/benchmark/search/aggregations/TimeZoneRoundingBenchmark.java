@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search.aggregations;
+
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.rounding.DateTimeUnit;
+import org.elasticsearch.common.rounding.Rounding;
+import org.elasticsearch.common.rounding.TimeZoneRounding;
+import org.elasticsearch.common.unit.TimeValue;
+import org.joda.time.DateTimeZone;
+
+import java.util.Random;
+
+/**
+ * Compares the time it takes to round dates with time zone roundings and with their prepared versions, which is what
+ * the <tt>date_histogram</tt> aggregation and facet use when collecting documents.
+ */
+public class TimeZoneRoundingBenchmark {
+
+    static final int NUMBER_OF_VALUES = 1 << 22;
+    static final int WARMUP = 5;
+    static final int ITERATIONS = 20;
+    // dates are spread over about 3 years
+    static final long START = 1300000000000L;
+    static final long RANGE = 100000000000L;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(0);
+        long[] sortedValues = new long[NUMBER_OF_VALUES];
+        long[] randomValues = new long[NUMBER_OF_VALUES];
+        for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+            sortedValues[i] = START + (long) i * (RANGE / NUMBER_OF_VALUES);
+            randomValues[i] = START + (long) (random.nextDouble() * RANGE);
+        }
+
+        DateTimeZone[] zones = new DateTimeZone[] {DateTimeZone.UTC, DateTimeZone.forOffsetHours(2),
+                DateTimeZone.forID("Europe/Paris"), DateTimeZone.forID("America/Los_Angeles")};
+        for (DateTimeZone zone : zones) {
+            for (DateTimeUnit unit : new DateTimeUnit[] {DateTimeUnit.HOUR_OF_DAY, DateTimeUnit.DAY_OF_MONTH, DateTimeUnit.WEEK_OF_WEEKYEAR, DateTimeUnit.MONTH_OF_YEAR}) {
+                run(zone + " " + unit, TimeZoneRounding.builder(unit).preZone(zone).build(), sortedValues, randomValues);
+            }
+            run(zone + " 3h", TimeZoneRounding.builder(TimeValue.timeValueHours(3)).preZone(zone).build(), sortedValues, randomValues);
+        }
+    }
+
+    static void run(String name, TimeZoneRounding rounding, long[] sortedValues, long[] randomValues) {
+        System.out.println("--> " + name + ", sorted values: " + took(rounding, sortedValues) + " (plain) / "
+                + took(rounding.prepare(), sortedValues) + " (prepared), random values: " + took(rounding, randomValues)
+                + " (plain) / " + took(rounding.prepare(), randomValues) + " (prepared)");
+    }
+
+    static TimeValue took(Rounding rounding, long[] values) {
+        long sum = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sum += round(rounding, values);
+        }
+        StopWatch stopWatch = new StopWatch().start();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sum += round(rounding, values);
+        }
+        stopWatch.stop();
+        if (sum == 42) {
+            // make sure the JIT doesn't optimize rounding away
+            System.out.println("lucky");
+        }
+        return new TimeValue(stopWatch.totalTime().millis() / ITERATIONS);
+    }
+
+    static long round(Rounding rounding, long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += rounding.round(value);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cache.recycler;
+
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class CircuitBreakingPageCacheRecyclerTests extends ElasticsearchTestCase {
+
+    private static PageCacheRecycler newRecycler() {
+        return new MockPageCacheRecycler(ImmutableSettings.EMPTY, new ThreadPool());
+    }
+
+    private static MemoryCircuitBreaker newBreaker(long limit) {
+        return new MemoryCircuitBreaker(new ByteSizeValue(limit), 1.0, Loggers.getLogger(CircuitBreakingPageCacheRecyclerTests.class));
+    }
+
+    @Test
+    public void testChargeAndRelease() {
+        final MemoryCircuitBreaker breaker = newBreaker(-1);
+        final CircuitBreakingPageCacheRecycler recycler = new CircuitBreakingPageCacheRecycler(newRecycler(), breaker);
+        final int numPages = randomIntBetween(2, 10);
+        final LongArray array = BigArrays.newLongArray(numPages * BigArrays.LONG_PAGE_SIZE, recycler, randomBoolean());
+        assertThat(breaker.getUsed(), equalTo((long) numPages * BigArrays.PAGE_SIZE_IN_BYTES));
+        assertThat(recycler.chargedBytes(), equalTo(breaker.getUsed()));
+        array.release();
+        assertThat(breaker.getUsed(), equalTo(0L));
+        assertThat(recycler.chargedBytes(), equalTo(0L));
+        recycler.release();
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    @Test
+    public void testReleaseUnchargesPagesThatAreStillHeld() {
+        final MemoryCircuitBreaker breaker = newBreaker(-1);
+        final CircuitBreakingPageCacheRecycler recycler = new CircuitBreakingPageCacheRecycler(newRecycler(), breaker);
+        final LongArray array = BigArrays.newLongArray(randomIntBetween(2, 10) * BigArrays.LONG_PAGE_SIZE, recycler, randomBoolean());
+        assertThat(breaker.getUsed(), greaterThan(0L));
+        recycler.release();
+        assertThat(breaker.getUsed(), equalTo(0L));
+        // pages released after the recycler must not be uncharged twice
+        array.release();
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    @Test
+    public void testBreak() {
+        final MemoryCircuitBreaker breaker = newBreaker(3 * BigArrays.PAGE_SIZE_IN_BYTES);
+        final CircuitBreakingPageCacheRecycler recycler = new CircuitBreakingPageCacheRecycler(newRecycler(), breaker);
+        LongArray array = BigArrays.newLongArray(2 * BigArrays.LONG_PAGE_SIZE, recycler, randomBoolean());
+        try {
+            array = BigArrays.resize(array, 10 * BigArrays.LONG_PAGE_SIZE);
+            fail("expected the request breaker to trip");
+        } catch (CircuitBreakingException e) {
+            assertTrue(e.getMessage().contains("[request]"));
+        }
+        assertThat(breaker.getUsed(), equalTo(3L * BigArrays.PAGE_SIZE_IN_BYTES));
+        recycler.release();
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.docset;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ */
+public class CompressedDocIdSetTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testSparse() throws IOException {
+        final int maxDoc = between(1 << 20, 1 << 22);
+        FixedBitSet bitSet = new FixedBitSet(maxDoc);
+        final int numDocs = between(1, 100);
+        for (int i = 0; i < numDocs; i++) {
+            bitSet.set(randomInt(maxDoc - 1));
+        }
+        DocIdSet compressed = DocIdSets.compress(bitSet);
+        assertThat(compressed, instanceOf(SparseDocIdSet.class));
+        assertThat(DocIdSets.sizeInBytes(compressed), lessThan(DocIdSets.sizeInBytes(bitSet)));
+        assertSameDocs(bitSet, compressed);
+    }
+
+    @Test
+    public void testClustered() throws IOException {
+        final int maxDoc = between(1 << 18, 1 << 20);
+        FixedBitSet bitSet = new FixedBitSet(maxDoc);
+        final int numRuns = between(1, 20);
+        for (int i = 0; i < numRuns; i++) {
+            final int start = randomInt(maxDoc - 1);
+            bitSet.set(start, Math.min(maxDoc, start + between(1000, 50000)));
+        }
+        DocIdSet compressed = DocIdSets.compress(bitSet);
+        assertThat(compressed, instanceOf(RoaringDocIdSet.class));
+        assertThat(DocIdSets.sizeInBytes(compressed), equalTo(RoaringDocIdSet.sizeInBytes(bitSet)));
+        assertThat(DocIdSets.sizeInBytes(compressed), lessThan(DocIdSets.sizeInBytes(bitSet)));
+        assertSameDocs(bitSet, compressed);
+    }
+
+    @Test
+    public void testDense() throws IOException {
+        final int maxDoc = between(1000, 1 << 18);
+        FixedBitSet bitSet = new FixedBitSet(maxDoc);
+        for (int i = 0; i < maxDoc; i += 2) {
+            bitSet.set(i);
+        }
+        assertThat(DocIdSets.compress(bitSet), instanceOf(FixedBitSet.class));
+    }
+
+    @Test
+    public void testRandom() throws IOException {
+        for (int iter = 0; iter < 20; iter++) {
+            final int maxDoc = between(1, 1 << 19);
+            FixedBitSet bitSet = new FixedBitSet(maxDoc);
+            final int numDocs = randomInt(maxDoc);
+            final boolean clustered = randomBoolean();
+            for (int i = 0; i < numDocs; i++) {
+                final int doc = randomInt(maxDoc - 1);
+                if (clustered) {
+                    bitSet.set(doc, Math.min(maxDoc, doc + between(1, 100)));
+                } else {
+                    bitSet.set(doc);
+                }
+            }
+            assertSameDocs(bitSet, RoaringDocIdSet.of(bitSet));
+            assertThat(RoaringDocIdSet.of(bitSet).sizeInBytes(), equalTo(RoaringDocIdSet.sizeInBytes(bitSet)));
+            assertSameDocs(bitSet, DocIdSets.compress(bitSet));
+        }
+    }
+
+    @Test
+    public void testAnd() throws IOException {
+        final int maxDoc = between(1000, 1 << 18);
+        FixedBitSet bitSet1 = new FixedBitSet(maxDoc);
+        FixedBitSet bitSet2 = new FixedBitSet(maxDoc);
+        for (int i = 0; i < maxDoc; i++) {
+            if (randomInt(20) == 0) {
+                bitSet1.set(i);
+            }
+            if (randomInt(3) == 0) {
+                bitSet2.set(i);
+            }
+        }
+        FixedBitSet expected = bitSet1.clone();
+        expected.and(bitSet2);
+        DocIdSet and = new AndDocIdSet(new DocIdSet[] {RoaringDocIdSet.of(bitSet2), new SparseDocIdSet(toArray(bitSet1), maxDoc)});
+        assertSameDocs(expected, DocIdSets.toFixedBitSet(and.iterator(), maxDoc));
+    }
+
+    private static int[] toArray(FixedBitSet bitSet) throws IOException {
+        int[] docs = new int[bitSet.cardinality()];
+        DocIdSetIterator iterator = bitSet.iterator();
+        int i = 0;
+        for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+            docs[i++] = doc;
+        }
+        return docs;
+    }
+
+    private void assertSameDocs(FixedBitSet expected, DocIdSet actual) throws IOException {
+        // nextDoc
+        DocIdSetIterator expectedIterator = expected.iterator();
+        DocIdSetIterator actualIterator = actual.iterator();
+        for (int doc = expectedIterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = expectedIterator.nextDoc()) {
+            assertThat(actualIterator.nextDoc(), equalTo(doc));
+        }
+        assertThat(actualIterator.nextDoc(), equalTo(DocIdSetIterator.NO_MORE_DOCS));
+
+        // advance
+        expectedIterator = expected.iterator();
+        actualIterator = actual.iterator();
+        int doc = -1;
+        while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+            final int target = doc + 1 + randomInt(randomBoolean() ? 10 : 100000);
+            doc = expectedIterator.advance(target);
+            assertThat(actualIterator.advance(target), equalTo(doc));
+            if (doc != DocIdSetIterator.NO_MORE_DOCS && randomBoolean()) {
+                doc = expectedIterator.nextDoc();
+                assertThat(actualIterator.nextDoc(), equalTo(doc));
+            }
+        }
+
+        // random access
+        Bits bits = actual.bits();
+        assertThat(bits.length(), equalTo(expected.length()));
+        for (int i = 0; i < expected.length(); i++) {
+            assertThat(bits.get(i), equalTo(expected.get(i)));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.docset;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.util.SlabAllocator;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ */
+public class OffHeapDocIdSetTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testRandom() throws IOException {
+        SlabAllocator allocator = new SlabAllocator(between(1 << 10, 1 << 16), Long.MAX_VALUE);
+        List<OffHeapDocIdSet> sets = new ArrayList<OffHeapDocIdSet>();
+        for (int iter = 0; iter < 20; iter++) {
+            final int maxDoc = between(1, 1 << 16);
+            FixedBitSet bitSet = new FixedBitSet(maxDoc);
+            final int numDocs = randomBoolean() ? randomInt(10) : randomInt(maxDoc);
+            for (int i = 0; i < numDocs; i++) {
+                bitSet.set(randomInt(maxDoc - 1));
+            }
+            OffHeapDocIdSet offHeap = OffHeapDocIdSet.copyOf(bitSet, allocator);
+            assertThat(offHeap, notNullValue());
+            assertThat(offHeap.cardinality(), equalTo((int) bitSet.cardinality()));
+            assertThat(DocIdSets.isFastIterator(offHeap), equalTo(true));
+            assertThat(DocIdSets.isFastIterator(offHeap.iterator()), equalTo(true));
+            assertSameDocs(bitSet, offHeap);
+            sets.add(offHeap);
+        }
+
+        long used = 0;
+        for (OffHeapDocIdSet set : sets) {
+            used += set.sizeInBytes();
+        }
+        assertThat(allocator.usedBytes(), equalTo(used));
+        assertThat(allocator.reservedBytes(), greaterThanOrEqualTo(used));
+        for (OffHeapDocIdSet set : sets) {
+            set.incRef();
+            set.release();
+        }
+        // every set still has a reference
+        assertThat(allocator.usedBytes(), equalTo(used));
+        for (OffHeapDocIdSet set : sets) {
+            set.release();
+        }
+        assertThat(allocator.usedBytes(), equalTo(0l));
+        // only the current slab is left
+        assertThat(allocator.reservedBytes(), lessThanOrEqualTo((long) allocator.slabSize()));
+    }
+
+    @Test
+    public void testSparseAndDense() throws IOException {
+        SlabAllocator allocator = new SlabAllocator(SlabAllocator.DEFAULT_SLAB_SIZE, Long.MAX_VALUE);
+        FixedBitSet bitSet = new FixedBitSet(10000);
+        bitSet.set(42);
+        bitSet.set(9999);
+        OffHeapDocIdSet offHeap = OffHeapDocIdSet.copyOf(bitSet, allocator);
+        assertThat(offHeap, instanceOf(OffHeapDocIdSet.Sparse.class));
+        assertThat(offHeap.sizeInBytes(), equalTo(8l));
+        assertSameDocs(bitSet, offHeap);
+
+        bitSet.set(0, 5000);
+        offHeap = OffHeapDocIdSet.copyOf(bitSet, allocator);
+        assertThat(offHeap, instanceOf(OffHeapDocIdSet.Dense.class));
+        assertThat(offHeap.sizeInBytes(), equalTo(8l * FixedBitSet.bits2words(10000)));
+        assertSameDocs(bitSet, offHeap);
+    }
+
+    @Test
+    public void testLimit() {
+        final int slabSize = 1024;
+        SlabAllocator allocator = new SlabAllocator(slabSize, 2 * slabSize);
+        // small chunks share slabs
+        SlabAllocator.Chunk small = allocator.allocate(100);
+        assertThat(allocator.reservedBytes(), equalTo((long) slabSize));
+        // large chunks get their own buffer
+        SlabAllocator.Chunk large = allocator.allocate(slabSize);
+        assertThat(large.size(), equalTo(slabSize));
+        assertThat(allocator.reservedBytes(), equalTo(2l * slabSize));
+        assertThat(allocator.allocate(slabSize), nullValue());
+        large.release();
+        assertThat(allocator.reservedBytes(), equalTo((long) slabSize));
+        small.release();
+        // the current slab is kept until it is full
+        assertThat(allocator.reservedBytes(), equalTo((long) slabSize));
+        assertThat(allocator.usedBytes(), equalTo(0l));
+    }
+
+    private void assertSameDocs(FixedBitSet expected, DocIdSet actual) throws IOException {
+        DocIdSetIterator expectedIterator = expected.iterator();
+        DocIdSetIterator actualIterator = actual.iterator();
+        int doc = -1;
+        while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+            if (randomBoolean()) {
+                doc = expectedIterator.nextDoc();
+                assertThat(actualIterator.nextDoc(), equalTo(doc));
+            } else {
+                final int target = doc + 1 + randomInt(100);
+                doc = expectedIterator.advance(target);
+                assertThat(actualIterator.advance(target), equalTo(doc));
+            }
+        }
+
+        Bits bits = actual.bits();
+        assertThat(bits.length(), equalTo(expected.length()));
+        for (int i = 0; i < expected.length(); i++) {
+            assertThat(bits.get(i), equalTo(expected.get(i)));
+        }
+    }
+}
@@ -19,12 +19,18 @@
 
 package org.elasticsearch.common.rounding;
 
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.test.ElasticsearchTestCase;
+import org.joda.time.DateTimeConstants;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.ISODateTimeFormat;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.hamcrest.Matchers.equalTo;
 
 /**
@@ -84,6 +90,55 @@ public class TimeZoneRoundingTests extends ElasticsearchTestCase {
         assertThat(tzRounding.nextRoundingValue(time("2009-02-03T01:00:00", DateTimeZone.forOffsetHours(+2))), equalTo(time("2009-02-03T02:00:00", DateTimeZone.forOffsetHours(+2))));
     }
 
+    @Test
+    public void testPreparedRounding() {
+        final List<String> ids = new ArrayList<String>(DateTimeZone.getAvailableIDs());
+        for (int i = 0; i < 100; ++i) {
+            final TimeZoneRounding tzRounding = randomRounding(ids);
+            final Rounding prepared = tzRounding.prepare();
+            assertThat(prepared.id(), equalTo(tzRounding.id()));
+            // values are mostly within a range, but the prepared rounding must also handle outliers
+            final long base = randomLong() % (100L * 365 * DateTimeConstants.MILLIS_PER_DAY);
+            final long range = 1 + randomInt(10 * 365) * (long) DateTimeConstants.MILLIS_PER_DAY;
+            for (int j = 0; j < 1000; ++j) {
+                final long value = rarely() ? randomLong() >> 12 : base + Math.abs(randomLong() % range);
+                assertThat(prepared.round(value), equalTo(tzRounding.round(value)));
+            }
+        }
+    }
+
+    @Test
+    public void testPreparedRoundingSerialization() throws Exception {
+        final List<String> ids = new ArrayList<String>(DateTimeZone.getAvailableIDs());
+        final TimeZoneRounding tzRounding = randomRounding(ids);
+        final BytesStreamOutput out = new BytesStreamOutput();
+        Rounding.Streams.write(tzRounding.prepare(), out);
+        final Rounding read = Rounding.Streams.read(new BytesStreamInput(out.bytes()));
+        assertThat(read.id(), equalTo(tzRounding.id()));
+        for (int i = 0; i < 100; ++i) {
+            final long value = randomLong() >> 12;
+            assertThat(read.round(value), equalTo(tzRounding.round(value)));
+        }
+    }
+
+    private TimeZoneRounding randomRounding(List<String> ids) {
+        final TimeZoneRounding.Builder builder;
+        if (randomBoolean()) {
+            builder = TimeZoneRounding.builder(randomFrom(DateTimeUnit.values()));
+        } else {
+            builder = TimeZoneRounding.builder(TimeValue.timeValueMinutes(randomIntBetween(1, 3 * 24 * 60)));
+        }
+        final DateTimeZone preTz = DateTimeZone.forID(randomFrom(ids));
+        builder.preZone(preTz);
+        builder.postZone(randomBoolean() ? preTz : DateTimeZone.forID(randomFrom(ids)));
+        builder.preZoneAdjustLargeInterval(randomBoolean());
+        if (randomBoolean()) {
+            builder.preOffset(randomIntBetween(-DateTimeConstants.MILLIS_PER_DAY, DateTimeConstants.MILLIS_PER_DAY));
+            builder.postOffset(randomIntBetween(-DateTimeConstants.MILLIS_PER_DAY, DateTimeConstants.MILLIS_PER_DAY));
+        }
+        return builder.build();
+    }
+
     private long utc(String time) {
         return time(time, DateTimeZone.UTC);
     }
@@ -0,0 +1,100 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util;
+
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class OffHeapPackedLongsTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testRandom() {
+        final SlabAllocator allocator = new SlabAllocator(1 << 12, Long.MAX_VALUE);
+        for (int bitsPerValue = 0; bitsPerValue <= 64; ++bitsPerValue) {
+            final int size = randomInt(1000);
+            final long[] expected = new long[size];
+            final OffHeapPackedLongs values = new OffHeapPackedLongs(allocator, size, bitsPerValue);
+            for (int i = 0; i < size; ++i) {
+                expected[i] = bitsPerValue == 0 ? 0 : randomLong() >>> (64 - bitsPerValue);
+            }
+            // set values in random order to make sure that writes don't clobber neighbours
+            for (int i = 0; i < 3 * size; ++i) {
+                final int index = randomInt(size - 1);
+                values.set(index, expected[index]);
+            }
+            for (int i = 0; i < size; ++i) {
+                values.set(i, expected[i]);
+            }
+            for (int i = 0; i < size; ++i) {
+                assertThat(values.get(i), equalTo(expected[i]));
+            }
+            assertThat(values.sizeInBytes(), equalTo(8L * (((long) size * bitsPerValue + 63) / 64)));
+            values.release();
+        }
+        assertThat(allocator.usedBytes(), equalTo(0L));
+    }
+
+    @Test
+    public void testOverhead() {
+        final int slabSize = 1 << 12;
+        final AtomicLong overhead = new AtomicLong();
+        final SlabAllocator allocator = new SlabAllocator(slabSize, Long.MAX_VALUE) {
+            @Override
+            protected boolean tryAddOverhead(long bytes) {
+                // refuse a third slab
+                if (reservedBytes() > 2 * slabSize) {
+                    return false;
+                }
+                overhead.addAndGet(bytes);
+                return true;
+            }
+
+            @Override
+            protected void addOverhead(long bytes) {
+                overhead.addAndGet(bytes);
+            }
+        };
+        final List<OffHeapPackedLongs> arrays = new ArrayList<OffHeapPackedLongs>();
+        try {
+            while (true) {
+                arrays.add(new OffHeapPackedLongs(allocator, randomInt(1000), randomInt(64)));
+                assertThat(overhead.get(), equalTo(allocator.reservedBytes() - allocator.usedBytes()));
+            }
+        } catch (OffHeapAllocationException e) {
+            // expected
+        }
+        assertThat(allocator.reservedBytes(), lessThanOrEqualTo(2L * slabSize));
+        assertThat(overhead.get(), equalTo(allocator.reservedBytes() - allocator.usedBytes()));
+        for (OffHeapPackedLongs array : arrays) {
+            array.release();
+            assertThat(overhead.get(), equalTo(allocator.reservedBytes() - allocator.usedBytes()));
+        }
+        // only the current slab is left
+        assertThat(allocator.reservedBytes(), lessThanOrEqualTo((long) slabSize));
+        assertThat(overhead.get(), equalTo(allocator.reservedBytes()));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.fixedbitset;
+
+import com.google.common.base.Predicate;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.ClusterScope;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.Scope;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.nestedQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ */
+@ClusterScope(scope = Scope.SUITE, numNodes = 1)
+public class FixedBitSetFilterCacheStatsTests extends ElasticsearchIntegrationTest {
+
+    @Test
+    public void testWarmerLoadsBitSets() throws Exception {
+        createNestedIndex("warmed", true);
+        createNestedIndex("not_warmed", false);
+        assertAcked(prepareCreate("no_nested").setSettings(ImmutableSettings.settingsBuilder()
+                .put("index.number_of_shards", 1).put("index.number_of_replicas", 0)));
+        ensureGreen();
+        indexNestedDocs("warmed");
+        indexNestedDocs("not_warmed");
+        client().prepareIndex("no_nested", "type", "1").setSource("field", "value").get();
+        refresh();
+
+        // the root documents and nested1 bit sets are loaded on refresh, before any search
+        assertThat(fixedBitSetMemoryInBytes("warmed"), greaterThan(0l));
+        assertThat(fixedBitSetMemoryInBytes("not_warmed"), equalTo(0l));
+        assertThat(fixedBitSetMemoryInBytes("no_nested"), equalTo(0l));
+
+        // without the warmer, they are loaded by the first nested query
+        SearchResponse searchResponse = client().prepareSearch("not_warmed").setQuery(nestedQuery("nested1", termQuery("nested1.field", "value"))).get();
+        assertHitCount(searchResponse, 2l);
+        assertThat(fixedBitSetMemoryInBytes("not_warmed"), equalTo(fixedBitSetMemoryInBytes("warmed")));
+    }
+
+    @Test
+    public void testMemoryIsReleased() throws Exception {
+        createNestedIndex("test", true);
+        ensureGreen();
+        indexNestedDocs("test");
+        refresh();
+        final long memory = fixedBitSetMemoryInBytes("test");
+        assertThat(memory, greaterThan(0l));
+
+        client().admin().indices().prepareClearCache("test").get();
+        assertThat(fixedBitSetMemoryInBytes("test"), equalTo(0l));
+
+        // reloaded by the next nested query
+        SearchResponse searchResponse = client().prepareSearch("test").setQuery(nestedQuery("nested1", termQuery("nested1.field", "value"))).get();
+        assertHitCount(searchResponse, 2l);
+        assertThat(fixedBitSetMemoryInBytes("test"), equalTo(memory));
+
+        // the bit sets of a segment are released with the segment
+        client().prepareDelete("test", "type", "1").get();
+        client().prepareDelete("test", "type", "2").get();
+        refresh();
+        // the old reader may still be in use for a little while
+        assertThat(awaitBusy(new Predicate<Object>() {
+            @Override
+            public boolean apply(Object input) {
+                return fixedBitSetMemoryInBytes("test") == 0;
+            }
+        }), equalTo(true));
+    }
+
+    private void createNestedIndex(String index, boolean warmerEnabled) throws IOException {
+        XContentBuilder mapping = jsonBuilder().startObject().startObject("type").startObject("properties")
+                .startObject("nested1").field("type", "nested").endObject()
+                .endObject().endObject().endObject();
+        assertAcked(prepareCreate(index).setSettings(ImmutableSettings.settingsBuilder()
+                .put("index.number_of_shards", 1).put("index.number_of_replicas", 0).put("index.warmer.enabled", warmerEnabled))
+                .addMapping("type", mapping));
+    }
+
+    private void indexNestedDocs(String index) throws IOException {
+        for (int i = 1; i <= 2; i++) {
+            client().prepareIndex(index, "type", Integer.toString(i)).setSource(jsonBuilder().startObject()
+                    .startArray("nested1")
+                    .startObject().field("field", "value").endObject()
+                    .startObject().field("field", "other").endObject()
+                    .endArray()
+                    .endObject()).get();
+        }
+    }
+
+    private long fixedBitSetMemoryInBytes(String index) {
+        return client().admin().indices().prepareStats(index).setSegments(true).get().getTotal().getSegments().getFixedBitSetMemoryInBytes();
+    }
+}
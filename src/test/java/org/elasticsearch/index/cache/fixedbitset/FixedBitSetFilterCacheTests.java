@@ -0,0 +1,109 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.fixedbitset;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.queries.TermFilter;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.lucene.search.XFilteredQuery;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.Builder.EMPTY_SETTINGS;
+import static org.hamcrest.Matchers.*;
+
+/**
+ */
+public class FixedBitSetFilterCacheTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testLoadAndClose() throws Exception {
+        IndexWriter writer = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER).setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES));
+        final int numSegments = randomIntBetween(1, 5);
+        for (int i = 0; i < numSegments; i++) {
+            for (int j = 0; j < 10; j++) {
+                Document document = new Document();
+                document.add(new StringField("field", j % 2 == 0 ? "even" : "odd", Field.Store.NO));
+                writer.addDocument(document);
+            }
+            writer.commit();
+        }
+        DirectoryReader reader = DirectoryReader.open(writer, false);
+        assertThat(reader.leaves().size(), equalTo(numSegments));
+
+        FixedBitSetFilterCache cache = new FixedBitSetFilterCache(new Index("test"), EMPTY_SETTINGS);
+        Filter filter = cache.getFixedBitSetFilter(new TermFilter(new Term("field", "even")));
+        assertThat(filter, equalTo(cache.getFixedBitSetFilter(new TermFilter(new Term("field", "even")))));
+        assertThat(filter, not(equalTo(cache.getFixedBitSetFilter(new TermFilter(new Term("field", "odd"))))));
+        assertThat(cache.numCachedSegments(), equalTo(0));
+
+        IndexSearcher searcher = new IndexSearcher(reader);
+        assertThat(Lucene.count(searcher, new XFilteredQuery(Queries.newMatchAllQuery(), filter)), equalTo(5L * numSegments));
+        assertThat(cache.numCachedSegments(), equalTo(numSegments));
+        for (AtomicReaderContext context : reader.leaves()) {
+            DocIdSet docIdSet = filter.getDocIdSet(context, null);
+            assertThat(docIdSet, instanceOf(FixedBitSet.class));
+            // the same bit set is returned until the segment is closed
+            assertThat(filter.getDocIdSet(context, context.reader().getLiveDocs()), sameInstance(docIdSet));
+            assertThat(((FixedBitSet) docIdSet).cardinality(), equalTo(5));
+        }
+        // a term that doesn't exist has no bit set
+        assertThat(cache.getFixedBitSetFilter(new TermFilter(new Term("field", "none"))).getDocIdSet(reader.leaves().get(0), null), nullValue());
+
+        reader.close();
+        writer.close();
+        // the bit sets are released with the segments
+        assertThat(cache.numCachedSegments(), equalTo(0));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        IndexWriter writer = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER));
+        Document document = new Document();
+        document.add(new StringField("field", "value", Field.Store.NO));
+        writer.addDocument(document);
+        DirectoryReader reader = DirectoryReader.open(writer, false);
+
+        FixedBitSetFilterCache cache = new FixedBitSetFilterCache(new Index("test"), EMPTY_SETTINGS);
+        Filter filter = cache.getFixedBitSetFilter(new TermFilter(new Term("field", "value")));
+        DocIdSet docIdSet = filter.getDocIdSet(reader.leaves().get(0), null);
+        assertThat(cache.numCachedSegments(), equalTo(1));
+        cache.clear(reader);
+        assertThat(cache.numCachedSegments(), equalTo(0));
+        // reloaded on the next access
+        assertThat(filter.getDocIdSet(reader.leaves().get(0), null), not(sameInstance(docIdSet)));
+        assertThat(cache.numCachedSegments(), equalTo(1));
+        cache.clear("test");
+        assertThat(cache.numCachedSegments(), equalTo(0));
+
+        reader.close();
+        writer.close();
+    }
+}
@@ -56,6 +56,8 @@ import org.elasticsearch.index.settings.IndexSettingsService;
 import org.elasticsearch.index.shard.service.IndexShard;
 import org.elasticsearch.index.similarity.SimilarityService;
 import org.elasticsearch.index.store.IndexStore;
+import org.elasticsearch.indices.fielddata.breaker.CircuitBreakerService;
+import org.elasticsearch.indices.fielddata.breaker.DummyCircuitBreakerService;
 import org.elasticsearch.test.ElasticsearchTestCase;
 import org.junit.Test;
 
@@ -64,8 +66,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 
-import static org.hamcrest.Matchers.equalTo;
-import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.*;
 
 /**
  */
@@ -222,27 +223,144 @@ public class SimpleIdCacheTests extends ElasticsearchTestCase {
         assertThat(typeCache.docById(new HashedBytesArray(Strings.toUTF8Bytes("8"))), equalTo(4));
     }
 
-    @Test(expected = AssertionError.class)
-    public void testRefresh_tripAssert() throws Exception {
-        assumeTrue(ASSERTIONS_ENABLED);
-        SimpleIdCache idCache = createSimpleIdCache(Tuple.tuple("child", "parent"));
+    @Test
+    public void testLazyLoading() throws Exception {
+        DummyCircuitBreakerService breakerService = new DummyCircuitBreakerService();
+        SimpleIdCache idCache = createSimpleIdCache(breakerService, Tuple.tuple("child", "parent"));
         IndexWriter writer = createIndexWriter();
-        // Begins with parent, ends with child docs
         writer.addDocument(doc("parent", "1"));
-        writer.addDocument(childDoc("child", "1", "parent", "1"));
+        writer.addDocument(doc("parent", "2"));
+        writer.commit();
+
+        // Children of parents that live in the previous segment and of a parent that doesn't exist
+        writer.addDocument(childDoc("child", "1", "parent", "2"));
         writer.addDocument(childDoc("child", "2", "parent", "1"));
-        writer.addDocument(childDoc("child", "3", "parent", "1"));
+        writer.addDocument(childDoc("child", "3", "parent", "3"));
         writer.addDocument(childDoc("child", "4", "parent", "1"));
-        // Doc like this should never end up in the index, just wanna trip an assert here!
-        Document document = new Document();
-        document.add(new StringField(UidFieldMapper.NAME, "parent", Field.Store.NO));
-        writer.addDocument(document);
         writer.commit();
 
         writer.close();
         DirectoryReader topLevelReader = DirectoryReader.open(writer.getDirectory());
         List<AtomicReaderContext> leaves = topLevelReader.getContext().leaves();
+        assertThat(leaves.size(), equalTo(2));
+
+        // Nothing is loaded until a type is asked for
+        IdReaderCache readerCache = idCache.reader(leaves.get(0).reader());
+        assertThat(readerCache.sizeInBytes(), equalTo(0L));
+        assertThat(breakerService.getBreaker().getUsed(), equalTo(0L));
+
+        IdReaderTypeCache parentsCache = readerCache.type("parent");
+        assertThat(parentsCache.idByDoc(0).toUtf8(), equalTo("1"));
+        assertThat(parentsCache.idByDoc(1).toUtf8(), equalTo("2"));
+        assertThat(parentsCache.parentOrdByDoc(0), equalTo(0));
+        assertThat(parentsCache.parentIdByDoc(0), nullValue());
+        assertThat(parentsCache.docById(new HashedBytesArray(Strings.toUTF8Bytes("2"))), equalTo(1));
+        assertThat(parentsCache.docById(new HashedBytesArray(Strings.toUTF8Bytes("3"))), equalTo(-1));
+        assertThat(breakerService.getBreaker().getUsed(), equalTo(parentsCache.sizeInBytes()));
+
+        IdReaderTypeCache childrenCache = idCache.reader(leaves.get(1).reader()).type("parent");
+        assertThat(childrenCache.idByDoc(0), nullValue());
+        assertThat(childrenCache.parentIdByDoc(0).toUtf8(), equalTo("2"));
+        assertThat(childrenCache.parentIdByDoc(1).toUtf8(), equalTo("1"));
+        assertThat(childrenCache.parentIdByDoc(2).toUtf8(), equalTo("3"));
+        assertThat(childrenCache.parentIdByDoc(3).toUtf8(), equalTo("1"));
+        // Children of the same parent share their parent ordinal
+        assertThat(childrenCache.parentOrdByDoc(1), equalTo(childrenCache.parentOrdByDoc(3)));
+        assertThat(childrenCache.parentIdByOrd(childrenCache.parentOrdByDoc(0)).toUtf8(), equalTo("2"));
+        assertThat(breakerService.getBreaker().getUsed(), equalTo(parentsCache.sizeInBytes() + childrenCache.sizeInBytes()));
+
+        idCache.clear();
+        assertThat(breakerService.getBreaker().getUsed(), equalTo(0L));
+    }
+
+    @Test
+    public void testSharedIdsOutliveTheirSegment() throws Exception {
+        DummyCircuitBreakerService breakerService = new DummyCircuitBreakerService();
+        SimpleIdCache idCache = createSimpleIdCache(breakerService, Tuple.tuple("child", "parent"));
+        IndexWriter writer = createIndexWriter();
+        writer.addDocument(doc("parent", "1"));
+        writer.addDocument(doc("parent", "2"));
+        writer.commit();
+
+        writer.addDocument(childDoc("child", "1", "parent", "2"));
+        writer.addDocument(childDoc("child", "2", "parent", "3"));
+        writer.commit();
+
+        writer.close();
+        DirectoryReader topLevelReader = DirectoryReader.open(writer.getDirectory());
+        List<AtomicReaderContext> leaves = topLevelReader.getContext().leaves();
+        assertThat(leaves.size(), equalTo(2));
+
+        IdReaderTypeCache parentsCache = idCache.reader(leaves.get(0).reader()).type("parent");
+        IdReaderTypeCache childrenCache = idCache.reader(leaves.get(1).reader()).type("parent");
+        assertThat(breakerService.getBreaker().getUsed(), equalTo(parentsCache.sizeInBytes() + childrenCache.sizeInBytes()));
+
+        // The parent id of the first child points to the ids of the parent segment, which are released last
+        idCache.clear(leaves.get(0).reader().getCoreCacheKey());
+        assertThat(breakerService.getBreaker().getUsed(), greaterThan(childrenCache.sizeInBytes()));
+        assertThat(breakerService.getBreaker().getUsed(), lessThan(parentsCache.sizeInBytes() + childrenCache.sizeInBytes()));
+        assertThat(childrenCache.parentIdByDoc(0).toUtf8(), equalTo("2"));
+        assertThat(childrenCache.parentIdByDoc(1).toUtf8(), equalTo("3"));
+
+        idCache.clear(leaves.get(1).reader().getCoreCacheKey());
+        assertThat(breakerService.getBreaker().getUsed(), equalTo(0L));
+    }
+
+    @Test
+    public void testUnsharedIdsAreReleasedWithTheirSegment() throws Exception {
+        DummyCircuitBreakerService breakerService = new DummyCircuitBreakerService();
+        SimpleIdCache idCache = createSimpleIdCache(breakerService, Tuple.tuple("child", "parent"));
+        IndexWriter writer = createIndexWriter();
+        writer.addDocument(doc("parent", "1"));
+        writer.commit();
+
+        // None of the parents lives in the previous segment
+        writer.addDocument(childDoc("child", "1", "parent", "2"));
+        writer.commit();
+
+        writer.close();
+        DirectoryReader topLevelReader = DirectoryReader.open(writer.getDirectory());
+        List<AtomicReaderContext> leaves = topLevelReader.getContext().leaves();
+        assertThat(leaves.size(), equalTo(2));
+
+        idCache.reader(leaves.get(0).reader()).type("parent");
+        IdReaderTypeCache childrenCache = idCache.reader(leaves.get(1).reader()).type("parent");
+        idCache.clear(leaves.get(0).reader().getCoreCacheKey());
+        assertThat(breakerService.getBreaker().getUsed(), equalTo(childrenCache.sizeInBytes()));
+
+        idCache.clear(leaves.get(1).reader().getCoreCacheKey());
+        assertThat(breakerService.getBreaker().getUsed(), equalTo(0L));
+    }
+
+    @Test
+    public void testSparseParentIds() throws Exception {
+        SimpleIdCache idCache = createSimpleIdCache(Tuple.tuple("child", "parent"));
+        IndexWriter writer = createIndexWriter();
+        final int numParents = atLeast(100);
+        for (int i = 0; i < numParents; i++) {
+            writer.addDocument(doc("parent", String.format(Locale.ROOT, "%05d", i)));
+        }
+        writer.commit();
+
+        // Children of a few parents, far from each other, and of parents that don't exist in between
+        final String[] parentIds = new String[randomIntBetween(1, 20)];
+        for (int i = 0; i < parentIds.length; i++) {
+            final int parent = randomIntBetween(0, numParents * 2);
+            parentIds[i] = String.format(Locale.ROOT, "%05d", parent);
+            writer.addDocument(childDoc("child", Integer.toString(i), "parent", parentIds[i]));
+        }
+        writer.commit();
+
+        writer.close();
+        DirectoryReader topLevelReader = DirectoryReader.open(writer.getDirectory());
+        List<AtomicReaderContext> leaves = topLevelReader.getContext().leaves();
+        assertThat(leaves.size(), equalTo(2));
+
         idCache.refresh(leaves);
+        IdReaderTypeCache childrenCache = idCache.reader(leaves.get(1).reader()).type("parent");
+        for (int i = 0; i < parentIds.length; i++) {
+            assertThat(childrenCache.parentIdByDoc(i).toUtf8(), equalTo(parentIds[i]));
+        }
     }
 
     private Document doc(String type, String id) {
@@ -259,9 +377,13 @@ public class SimpleIdCacheTests extends ElasticsearchTestCase {
     }
 
     private SimpleIdCache createSimpleIdCache(Tuple<String, String>... documentTypes) throws IOException {
+        return createSimpleIdCache(new DummyCircuitBreakerService(), documentTypes);
+    }
+
+    private SimpleIdCache createSimpleIdCache(CircuitBreakerService breakerService, Tuple<String, String>... documentTypes) throws IOException {
         Settings settings = ImmutableSettings.EMPTY;
         Index index = new Index("test");
-        SimpleIdCache idCache = new SimpleIdCache(index, settings);
+        SimpleIdCache idCache = new SimpleIdCache(index, settings, breakerService);
         MapperService mapperService = MapperTestUtils.newMapperService();
         idCache.setIndexService(new StubIndexService(mapperService));
 
@@ -256,6 +256,28 @@ public class LongFieldDataTests extends AbstractNumericFieldDataTests {
                 return 1000L * (40L * SECONDS_PER_YEAR + r.nextInt(2 * SECONDS_PER_YEAR));
             }
         },
+        SINGLE_VALUED_DENSE_SORTED_DATE {
+            private long timestamp = 1000L * 40L * SECONDS_PER_YEAR;
+            public int numValues(Random r) {
+                return 1;
+            }
+            @Override
+            public long nextValue(Random r) {
+                // increasing timestamps, rounded to the second
+                timestamp += 1000L * r.nextInt(3);
+                return timestamp;
+            }
+        },
+        SINGLE_VALUED_SPARSE_DATE_MINUTES {
+            public int numValues(Random r) {
+                return r.nextFloat() < 0.5f ? 1 : 0;
+            }
+            @Override
+            public long nextValue(Random r) {
+                // somewhere in-between 2010 and 2012, rounded to the minute
+                return 60 * 1000L * ((40L * SECONDS_PER_YEAR + r.nextInt(2 * SECONDS_PER_YEAR)) / 60);
+            }
+        },
         MULTI_VALUED_DATE {
             public int numValues(Random r) {
                 return r.nextInt(3);
@@ -392,6 +414,14 @@ public class LongFieldDataTests extends AbstractNumericFieldDataTests {
         test(Data.SINGLE_VALUED_DENSE_DATE);
     }
 
+    public void testSingleValuedDenseSortedDate() throws Exception {
+        test(Data.SINGLE_VALUED_DENSE_SORTED_DATE);
+    }
+
+    public void testSingleValuedSparseDateMinutes() throws Exception {
+        test(Data.SINGLE_VALUED_SPARSE_DATE_MINUTES);
+    }
+
     public void testSingleValuedSparseRandom() throws Exception {
         test(Data.SINGLE_VALUED_SPARSE_RANDOM);
     }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.util.SlabAllocator;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.fielddata.plain.OffHeapBytesIndexFieldData;
+import org.elasticsearch.index.fielddata.plain.PagedBytesAtomicFieldData;
+import org.elasticsearch.indices.fielddata.breaker.DummyCircuitBreakerService;
+import org.elasticsearch.indices.fielddata.cache.IndicesFieldDataCache;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ */
+public class OffHeapStringFieldDataTests extends AbstractStringFieldDataTests {
+
+    @Override
+    protected FieldDataType getFieldDataType() {
+        return new FieldDataType("string", ImmutableSettings.builder().put("format", "off_heap"));
+    }
+
+    @Test
+    public void testClearReleasesOffHeapMemoryOnceSegmentsAreClosed() throws Exception {
+        final int numSegments = fillSegments();
+        final OffHeapBytesIndexFieldData indexFieldData = getForField("value");
+        final SlabAllocator allocator = indexFieldData.allocator();
+        final DirectoryReader reader = DirectoryReader.open(writer.getDirectory());
+        assertThat(reader.leaves().size(), equalTo(numSegments));
+        final List<AtomicFieldData> fieldData = new ArrayList<AtomicFieldData>();
+        for (AtomicReaderContext context : reader.leaves()) {
+            fieldData.add(indexFieldData.load(context));
+        }
+        final long usedBytes = allocator.usedBytes();
+        assertThat(usedBytes, greaterThan(0l));
+
+        ifdService.clear();
+        // searches on the open reader may still use the field data
+        assertThat(allocator.usedBytes(), equalTo(usedBytes));
+        for (int i = 0; i < fieldData.size(); i++) {
+            assertValues(fieldData.get(i), reader.leaves().get(i).reader().maxDoc());
+        }
+
+        reader.close();
+        assertThat(allocator.usedBytes(), equalTo(0l));
+        // only the current slab is left
+        assertThat(allocator.reservedBytes(), lessThanOrEqualTo((long) allocator.slabSize()));
+    }
+
+    @Test
+    public void testEvictionReleasesOffHeapMemoryOnceSegmentsAreClosed() throws Exception {
+        // every entry is heavier than the cache can hold, so it is evicted as soon as it is loaded
+        final IndicesFieldDataCache indicesFieldDataCache = new IndicesFieldDataCache(ImmutableSettings.settingsBuilder()
+                .put("indices.fielddata.cache.size", "1b").build());
+        ifdService = new IndexFieldDataService(new Index("test"), ImmutableSettings.Builder.EMPTY_SETTINGS, indicesFieldDataCache,
+                new DummyCircuitBreakerService());
+        final int numSegments = fillSegments();
+        final OffHeapBytesIndexFieldData indexFieldData = getForField("value");
+        final SlabAllocator allocator = indexFieldData.allocator();
+        final DirectoryReader reader = DirectoryReader.open(writer.getDirectory());
+        assertThat(reader.leaves().size(), equalTo(numSegments));
+        for (AtomicReaderContext context : reader.leaves()) {
+            final AtomicFieldData fieldData = indexFieldData.load(context);
+            // evicted field data can still be read by whoever holds it
+            assertThat(allocator.usedBytes(), greaterThan(0l));
+            assertValues(fieldData, context.reader().maxDoc());
+        }
+        reader.close();
+        assertThat(allocator.usedBytes(), equalTo(0l));
+    }
+
+    @Test
+    public void testFallsBackToHeapWhenOffHeapMemoryIsExhausted() throws Exception {
+        fillSegments();
+        final OffHeapBytesIndexFieldData indexFieldData = getForField("value");
+        // no room for any slab
+        indexFieldData.allocator().limit(0);
+        final DirectoryReader reader = DirectoryReader.open(writer.getDirectory());
+        for (AtomicReaderContext context : reader.leaves()) {
+            final AtomicFieldData fieldData = indexFieldData.loadDirect(context);
+            assertThat(fieldData, instanceOf(PagedBytesAtomicFieldData.class));
+            assertValues(fieldData, context.reader().maxDoc());
+        }
+        assertThat(indexFieldData.allocator().reservedBytes(), equalTo(0l));
+        reader.close();
+    }
+
+    private int fillSegments() throws Exception {
+        final int numSegments = randomIntBetween(1, 5);
+        for (int i = 0; i < numSegments; i++) {
+            for (int j = 0; j < 10; j++) {
+                Document d = new Document();
+                d.add(new StringField("value", Integer.toString(j), Field.Store.NO));
+                writer.addDocument(d);
+            }
+            writer.commit();
+        }
+        // segment readers pooled by the writer would keep the cores open
+        writer.close();
+        return numSegments;
+    }
+
+    private void assertValues(AtomicFieldData fieldData, int maxDoc) {
+        final BytesValues values = fieldData.getBytesValues(false);
+        for (int doc = 0; doc < maxDoc; doc++) {
+            assertThat(values.setDocument(doc), equalTo(1));
+            assertThat(values.nextValue().utf8ToString(), equalTo(Integer.toString(doc)));
+        }
+    }
+}
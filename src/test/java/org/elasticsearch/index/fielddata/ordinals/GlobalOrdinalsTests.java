@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.index.fielddata.AbstractFieldDataTests;
+import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.index.fielddata.FieldDataType;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ */
+public class GlobalOrdinalsTests extends AbstractFieldDataTests {
+
+    @Override
+    protected FieldDataType getFieldDataType() {
+        return new FieldDataType("string", ImmutableSettings.builder().put("format", randomFrom("paged_bytes", "fst")));
+    }
+
+    @Test
+    public void testGlobalOrdinals() throws Exception {
+        final TreeSet<BytesRef> terms = new TreeSet<BytesRef>();
+        final int numDocs = between(1, 500);
+        for (int i = 0; i < numDocs; i++) {
+            Document d = new Document();
+            final int numValues = randomInt(3);
+            for (int j = 0; j < numValues; j++) {
+                final String term = randomAsciiOfLength(between(1, 3));
+                d.add(new StringField("value", term, Field.Store.NO));
+                terms.add(new BytesRef(term));
+            }
+            writer.addDocument(d);
+            if (rarely()) {
+                writer.commit();
+            }
+        }
+        DirectoryReader reader = DirectoryReader.open(writer, true);
+        try {
+            IndexFieldData.WithOrdinals<?> indexFieldData = getForField("value");
+            GlobalOrdinals globalOrdinals = ifdService.getGlobalOrdinals(reader, indexFieldData);
+            assertThat(ifdService.getGlobalOrdinals(reader, indexFieldData), sameInstance(globalOrdinals));
+            assertThat(globalOrdinals.getMaxOrd(), equalTo(terms.size() + 1l));
+
+            // global ordinals are sorted like terms
+            long ord = Ordinals.MIN_ORDINAL;
+            for (BytesRef term : terms) {
+                assertThat(globalOrdinals.getValueByOrd(ord++), equalTo(term));
+            }
+
+            final List<AtomicReaderContext> leaves = reader.leaves();
+            for (int i = 0; i < leaves.size(); i++) {
+                BytesValues.WithOrdinals values = indexFieldData.load(leaves.get(i)).getBytesValues(false);
+                assertThat(globalOrdinals.getGlobalOrd(i, Ordinals.MISSING_ORDINAL), equalTo(Ordinals.MISSING_ORDINAL));
+                for (long segmentOrd = Ordinals.MIN_ORDINAL; segmentOrd < values.ordinals().getMaxOrd(); segmentOrd++) {
+                    final long globalOrd = globalOrdinals.getGlobalOrd(i, segmentOrd);
+                    assertThat(globalOrdinals.getValueByOrd(globalOrd), equalTo(values.getValueByOrd(segmentOrd)));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
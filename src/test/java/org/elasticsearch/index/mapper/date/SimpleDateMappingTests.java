@@ -349,6 +349,93 @@ public class SimpleDateMappingTests extends ElasticsearchTestCase {
         assertThat(mergedConfig.get("format"), is("EEE MMM dd HH:mm:ss.S Z yyyy||EEE MMM dd HH:mm:ss.SSS Z yyyy||yyyy-MM-dd'T'HH:mm:ss.SSSZZ"));
     }
 
+    @Test
+    public void testPreRounded() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                    .startObject("date_field").field("type", "date")
+                        .startArray("pre_rounded")
+                            .value("1h")
+                            .startObject().field("interval", "day").field("time_zone", "Europe/Paris").endObject()
+                        .endArray()
+                    .endObject()
+                .endObject()
+                .endObject().endObject().string();
+
+        DocumentMapper defaultMapper = mapper(mapping);
+        DateFieldMapper dateFieldMapper = (DateFieldMapper) defaultMapper.mappers().smartNameFieldMapper("date_field");
+        assertThat(dateFieldMapper.preRounding("1h", DateTimeZone.UTC), notNullValue());
+        assertThat(dateFieldMapper.preRounding("hour", DateTimeZone.UTC), notNullValue());
+        assertThat(dateFieldMapper.preRounding("60m", DateTimeZone.UTC), nullValue());
+        assertThat(dateFieldMapper.preRounding("1h", DateTimeZone.forID("Europe/Paris")), nullValue());
+        assertThat(dateFieldMapper.preRounding("1d", DateTimeZone.UTC), nullValue());
+        DateFieldMapper.PreRounding preRounding = dateFieldMapper.preRounding("1d", DateTimeZone.forID("Europe/Paris"));
+        assertThat(preRounding, notNullValue());
+        assertThat(preRounding.mapper().names().indexName(), equalTo("date_field.rounded_day_Europe/Paris"));
+        assertThat(preRounding.mapper().hasDocValues(), equalTo(true));
+
+        ParsedDocument doc = defaultMapper.parse("type", "1", XContentFactory.jsonBuilder()
+                .startObject()
+                .field("date_field", "2013-11-10T22:30:00Z")
+                .endObject()
+                .bytes());
+        assertThat(doc.rootDoc().getField("date_field.rounded_1h"), notNullValue());
+        assertThat(doc.rootDoc().getField("date_field.rounded_day_Europe/Paris"), notNullValue());
+        assertThat(defaultMapper.mappers().smartNameFieldMapper("date_field.rounded_1h"), instanceOf(LongFieldMapper.class));
+    }
+
+    @Test(expected = MapperParsingException.class)
+    public void testPreRoundedInvalidInterval() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                    .startObject("date_field").field("type", "date")
+                        .startArray("pre_rounded").value("fortnight").endArray()
+                    .endObject()
+                .endObject()
+                .endObject().endObject().string();
+        mapper(mapping);
+    }
+
+    @Test
+    public void testMergePreRounded() throws Exception {
+        String initialMapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                    .startObject("date_field").field("type", "date")
+                        .startArray("pre_rounded").value("1h").endArray()
+                    .endObject()
+                .endObject()
+                .endObject().endObject().string();
+
+        String sameMapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                    .startObject("date_field").field("type", "date")
+                        .startArray("pre_rounded").value("1h").endArray()
+                    .endObject()
+                .endObject()
+                .endObject().endObject().string();
+
+        String updatedMapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                    .startObject("date_field").field("type", "date")
+                        .startArray("pre_rounded").value("1h").value("1d").endArray()
+                    .endObject()
+                .endObject()
+                .endObject().endObject().string();
+
+        DocumentMapper defaultMapper = mapper(initialMapping);
+
+        DocumentMapper.MergeResult mergeResult = defaultMapper.merge(mapper(sameMapping), DocumentMapper.MergeFlags.mergeFlags().simulate(false));
+        assertThat("Merging resulting in conflicts: " + Arrays.asList(mergeResult.conflicts()), mergeResult.hasConflicts(), is(false));
+
+        mergeResult = defaultMapper.merge(mapper(updatedMapping), DocumentMapper.MergeFlags.mergeFlags().simulate(false));
+        assertThat(mergeResult.hasConflicts(), is(true));
+        assertThat(Arrays.asList(mergeResult.conflicts()), hasItem(containsString("[pre_rounded]")));
+
+        DateFieldMapper dateFieldMapper = (DateFieldMapper) defaultMapper.mappers().smartNameFieldMapper("date_field");
+        assertThat(dateFieldMapper.preRounding("1h", DateTimeZone.UTC), notNullValue());
+        assertThat(dateFieldMapper.preRounding("1d", DateTimeZone.UTC), nullValue());
+    }
+
     private Map<String, String> getConfigurationViaXContent(DateFieldMapper dateFieldMapper) throws IOException {
         XContentBuilder builder = JsonXContent.contentBuilder().startObject();
         dateFieldMapper.toXContent(builder, ToXContent.EMPTY_PARAMS).endObject();
@@ -0,0 +1,158 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.percolator;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.memory.MemoryIndex;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.lucene.HashedBytesRef;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.*;
+
+public class QueryTermsIndexTests extends ElasticsearchTestCase {
+
+    private static final String[] FIELDS = new String[] {"f1", "f2"};
+    private static final String[] TERMS = new String[] {"a", "b", "c", "d", "e", "f", "g", "h"};
+
+    private Term randomTerm() {
+        return new Term(randomFrom(FIELDS), randomFrom(TERMS));
+    }
+
+    private Query randomQuery(int depth) {
+        switch (randomInt(depth <= 0 ? 4 : 7)) {
+        case 0:
+        case 1:
+            return new TermQuery(randomTerm());
+        case 2:
+            final PhraseQuery phraseQuery = new PhraseQuery();
+            final String field = randomFrom(FIELDS);
+            for (int i = randomIntBetween(1, 3); i > 0; --i) {
+                phraseQuery.add(new Term(field, randomFrom(TERMS)));
+            }
+            return phraseQuery;
+        case 3:
+            return new PrefixQuery(randomTerm());
+        case 4:
+            return new MatchAllDocsQuery();
+        case 5:
+        case 6:
+            final BooleanQuery booleanQuery = new BooleanQuery();
+            for (int i = randomIntBetween(1, 4); i > 0; --i) {
+                booleanQuery.add(randomQuery(depth - 1), randomFrom(BooleanClause.Occur.values()));
+            }
+            return booleanQuery;
+        default:
+            final DisjunctionMaxQuery disjunctionMaxQuery = new DisjunctionMaxQuery(0);
+            for (int i = randomIntBetween(1, 3); i > 0; --i) {
+                disjunctionMaxQuery.add(randomQuery(depth - 1));
+            }
+            return disjunctionMaxQuery;
+        }
+    }
+
+    private MemoryIndex randomDocument() {
+        final MemoryIndex memoryIndex = new MemoryIndex();
+        for (String field : FIELDS) {
+            final int numTerms = randomInt(4);
+            if (numTerms == 0) {
+                continue;
+            }
+            final StringBuilder text = new StringBuilder();
+            for (int i = 0; i < numTerms; ++i) {
+                text.append(randomFrom(TERMS)).append(' ');
+            }
+            memoryIndex.addField(field, text.toString(), new WhitespaceAnalyzer(Lucene.VERSION));
+        }
+        return memoryIndex;
+    }
+
+    @Test
+    public void noMissedMatches() throws Exception {
+        final QueryTermsIndex index = new QueryTermsIndex();
+        final Map<HashedBytesRef, Query> queries = new HashMap<HashedBytesRef, Query>();
+        final int numQueries = randomIntBetween(10, 500);
+        for (int i = 0; i < numQueries; ++i) {
+            final HashedBytesRef id = new HashedBytesRef(Integer.toString(randomInt(numQueries)));
+            final Query query = randomQuery(3);
+            queries.put(id, query);
+            index.add(id, query);
+            if (randomInt(10) == 0) {
+                queries.remove(id);
+                index.remove(id);
+            }
+        }
+        for (int i = 0; i < 100; ++i) {
+            final MemoryIndex document = randomDocument();
+            final IndexSearcher searcher = document.createSearcher();
+            final Set<HashedBytesRef> candidates = index.candidates(searcher.getIndexReader());
+            for (Map.Entry<HashedBytesRef, Query> entry : queries.entrySet()) {
+                if (searcher.search(entry.getValue(), 1).totalHits > 0) {
+                    assertThat(entry.getValue().toString(), candidates, hasItem(entry.getKey()));
+                }
+            }
+            for (HashedBytesRef candidate : candidates) {
+                assertTrue(queries.containsKey(candidate));
+            }
+        }
+    }
+
+    @Test
+    public void selection() throws Exception {
+        final QueryTermsIndex index = new QueryTermsIndex();
+        final HashedBytesRef termId = new HashedBytesRef("term");
+        index.add(termId, new TermQuery(new Term("f1", "a")));
+        final HashedBytesRef booleanId = new HashedBytesRef("boolean");
+        final BooleanQuery booleanQuery = new BooleanQuery();
+        booleanQuery.add(new TermQuery(new Term("f1", "b")), BooleanClause.Occur.MUST);
+        booleanQuery.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        index.add(booleanId, booleanQuery);
+        final HashedBytesRef rangeId = new HashedBytesRef("range");
+        index.add(rangeId, new TermRangeQuery("f2", new BytesRef("a"), new BytesRef("c"), true, true));
+        final HashedBytesRef matchAllId = new HashedBytesRef("match_all");
+        index.add(matchAllId, new MatchAllDocsQuery());
+        assertThat(index.analyzedQueries(), equalTo(3));
+
+        MemoryIndex document = new MemoryIndex();
+        document.addField("f1", "a c", new WhitespaceAnalyzer(Lucene.VERSION));
+        assertThat(index.candidates(document.createSearcher().getIndexReader()), containsInAnyOrder(termId, matchAllId));
+
+        document = new MemoryIndex();
+        document.addField("f1", "b", new WhitespaceAnalyzer(Lucene.VERSION));
+        document.addField("f2", "z", new WhitespaceAnalyzer(Lucene.VERSION));
+        assertThat(index.candidates(document.createSearcher().getIndexReader()), containsInAnyOrder(booleanId, rangeId, matchAllId));
+
+        // replacing a query replaces its terms
+        index.add(termId, new TermQuery(new Term("f1", "b")));
+        assertThat(index.candidates(document.createSearcher().getIndexReader()), containsInAnyOrder(termId, booleanId, rangeId, matchAllId));
+        index.remove(booleanId);
+        index.remove(matchAllId);
+        assertThat(index.analyzedQueries(), equalTo(2));
+        assertThat(index.candidates(document.createSearcher().getIndexReader()), containsInAnyOrder(termId, rangeId));
+    }
+
+}
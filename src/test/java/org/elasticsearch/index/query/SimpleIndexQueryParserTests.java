@@ -32,6 +32,7 @@ import org.apache.lucene.util.NumericUtils;
 import org.elasticsearch.cache.recycler.CacheRecyclerModule;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.compress.CompressedString;
 import org.elasticsearch.common.inject.AbstractModule;
 import org.elasticsearch.common.inject.Injector;
@@ -44,6 +45,8 @@ import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsModule;
 import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexNameModule;
 import org.elasticsearch.index.analysis.AnalysisModule;
@@ -99,6 +102,7 @@ public class SimpleIndexQueryParserTests extends ElasticsearchTestCase {
     public static void setupQueryParser() throws IOException {
         Settings settings = ImmutableSettings.settingsBuilder()
                 .put("index.cache.filter.type", "none")
+                .put("index.cache.query.parsed.size", "10mb")
                 .build();
         Index index = new Index("test");
         injector = new ModulesBuilder().add(
@@ -2202,4 +2206,74 @@ public class SimpleIndexQueryParserTests extends ElasticsearchTestCase {
         Query parsedQuery = queryParser.parse(query).query();
         assertThat(parsedQuery, instanceOf(BooleanQuery.class));
     }
+
+    @Test
+    public void testParsedQueryCache() throws Exception {
+        IndexQueryParserService queryParser = queryParser();
+        BytesReference source = termQuery("name.first", "shay").buildAsBytes();
+        ParsedQuery parsedQuery = queryParser.parse(source);
+        assertThat(queryParser.parse(new BytesArray(source.toBytes())), sameInstance(parsedQuery));
+
+        // the same query embedded in a request
+        XContentParser parser = XContentHelper.createParser(source);
+        parser.nextToken();
+        assertThat(queryParser.parse(parser), sameInstance(parsedQuery));
+
+        // the types are part of the key
+        String[] previousTypes = QueryParseContext.setTypesWithPrevious(new String[]{"person"});
+        try {
+            assertThat(queryParser.parse(source), not(sameInstance(parsedQuery)));
+        } finally {
+            QueryParseContext.setTypes(previousTypes);
+        }
+
+        // sources which may refer to now are never cached
+        BytesReference nowSource = termQuery("name.first", "nowhere").buildAsBytes();
+        assertThat(queryParser.parse(nowSource), not(sameInstance(queryParser.parse(nowSource))));
+
+        // score functions keep per segment state, function_score queries are never cached
+        BytesReference functionScoreSource = functionScoreQuery(termQuery("name.first", "shay"), factorFunction(1.3f)).buildAsBytes();
+        assertThat(queryParser.parse(functionScoreSource), not(sameInstance(queryParser.parse(functionScoreSource))));
+
+        // fuzzy_like_this queries keep their first rewrite
+        BytesReference fltSource = fuzzyLikeThisQuery("name.first").likeText("shay").buildAsBytes();
+        assertThat(queryParser.parse(fltSource), not(sameInstance(queryParser.parse(fltSource))));
+        fltSource = fuzzyLikeThisFieldQuery("name.first").likeText("shay").buildAsBytes();
+        assertThat(queryParser.parse(fltSource), not(sameInstance(queryParser.parse(fltSource))));
+
+        // neither are wrapped sources which can't be cached
+        BytesReference wrappedSource = wrapperQuery(functionScoreSource.toUtf8()).buildAsBytes();
+        assertThat(queryParser.parse(wrappedSource), not(sameInstance(queryParser.parse(wrappedSource))));
+        wrappedSource = wrapperQuery(nowSource.toUtf8()).buildAsBytes();
+        assertThat(queryParser.parse(wrappedSource), not(sameInstance(queryParser.parse(wrappedSource))));
+        wrappedSource = constantScoreQuery(wrapperFilter(termFilter("name.first", "nowhere").buildAsBytes().toUtf8())).buildAsBytes();
+        assertThat(queryParser.parse(wrappedSource), not(sameInstance(queryParser.parse(wrappedSource))));
+
+        // mapping changes invalidate the cache
+        injector.getInstance(MapperService.class).merge("parsed_cache", new CompressedString("{\"parsed_cache\":{}}"), true);
+        ParsedQuery reparsedQuery = queryParser.parse(source);
+        assertThat(reparsedQuery, not(sameInstance(parsedQuery)));
+        assertThat(reparsedQuery.query(), equalTo(parsedQuery.query()));
+        assertThat(queryParser.parse(source), sameInstance(reparsedQuery));
+    }
+
+    @Test
+    public void testParsedQueryCacheSearchAnalyzerUpdate() throws Exception {
+        IndexQueryParserService queryParser = queryParser();
+        MapperService mapperService = injector.getInstance(MapperService.class);
+        mapperService.merge("analyzer_update", new CompressedString("{\"analyzer_update\":{\"properties\":{\"analyzer_update_field\":" +
+                "{\"type\":\"string\",\"search_analyzer\":\"whitespace\"}}}}"), true);
+        BytesReference source = matchQuery("analyzer_update_field", "foo bar").buildAsBytes();
+        ParsedQuery parsedQuery = queryParser.parse(source);
+        assertThat(parsedQuery.query(), instanceOf(BooleanQuery.class));
+        assertThat(queryParser.parse(source), sameInstance(parsedQuery));
+
+        // updating the search analyzer of an existing field doesn't add mappers, but must invalidate the cache too
+        mapperService.merge("analyzer_update", new CompressedString("{\"analyzer_update\":{\"properties\":{\"analyzer_update_field\":" +
+                "{\"type\":\"string\",\"search_analyzer\":\"keyword\"}}}}"), true);
+        ParsedQuery reparsedQuery = queryParser.parse(source);
+        assertThat(reparsedQuery, not(sameInstance(parsedQuery)));
+        assertThat(reparsedQuery.query(), instanceOf(TermQuery.class));
+        assertThat(((TermQuery) reparsedQuery.query()).getTerm(), equalTo(new Term("analyzer_update_field", "foo bar")));
+    }
 }
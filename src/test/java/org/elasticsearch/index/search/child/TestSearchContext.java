@@ -29,6 +29,7 @@ import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.index.analysis.AnalysisService;
 import org.elasticsearch.index.cache.docset.DocSetCache;
 import org.elasticsearch.index.cache.filter.FilterCache;
+import org.elasticsearch.index.cache.fixedbitset.FixedBitSetFilterCache;
 import org.elasticsearch.index.cache.id.IdCache;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
 import org.elasticsearch.index.mapper.FieldMapper;
@@ -69,16 +70,18 @@ class TestSearchContext extends SearchContext {
     final IdCache idCache;
     final IndexService indexService;
     final FilterCache filterCache;
+    final FixedBitSetFilterCache fixedBitSetFilterCache;
 
     ContextIndexSearcher searcher;
     int size;
 
-    TestSearchContext(CacheRecycler cacheRecycler, PageCacheRecycler pageCacheRecycler, IdCache idCache, IndexService indexService, FilterCache filterCache) {
+    TestSearchContext(CacheRecycler cacheRecycler, PageCacheRecycler pageCacheRecycler, IdCache idCache, IndexService indexService, FilterCache filterCache, FixedBitSetFilterCache fixedBitSetFilterCache) {
         this.cacheRecycler = cacheRecycler;
         this.pageCacheRecycler = pageCacheRecycler;
         this.idCache = idCache;
         this.indexService = indexService;
         this.filterCache = filterCache;
+        this.fixedBitSetFilterCache = fixedBitSetFilterCache;
     }
 
     @Override
@@ -306,6 +309,11 @@ class TestSearchContext extends SearchContext {
         return filterCache;
     }
 
+    @Override
+    public FixedBitSetFilterCache fixedBitSetFilterCache() {
+        return fixedBitSetFilterCache;
+    }
+
     @Override
     public DocSetCache docSetCache() {
         return null;
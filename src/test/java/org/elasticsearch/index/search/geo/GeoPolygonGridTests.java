@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.search.geo;
+
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ */
+public class GeoPolygonGridTests extends ElasticsearchTestCase {
+
+    private static GeoPoint[] randomPolygon() {
+        final int numPoints = randomBoolean() ? randomIntBetween(3, 20) : randomIntBetween(3, 5000);
+        final GeoPoint[] points = new GeoPoint[numPoints];
+        if (randomBoolean()) {
+            // star-shaped polygon, like administrative boundaries
+            final double centerLat = randomDouble() * 120 - 60;
+            final double centerLon = randomDouble() * 240 - 120;
+            final double maxRadius = randomDouble() * 30;
+            for (int i = 0; i < numPoints; ++i) {
+                final double angle = 2 * Math.PI * i / numPoints;
+                final double radius = maxRadius * (0.2 + 0.8 * randomDouble());
+                points[i] = new GeoPoint(centerLat + radius * Math.sin(angle), centerLon + radius * Math.cos(angle));
+            }
+        } else {
+            // self-intersecting polygon, possibly with duplicate coordinates
+            for (int i = 0; i < numPoints; ++i) {
+                points[i] = new GeoPoint(randomIntBetween(-20, 20) / 2d, randomIntBetween(-20, 20) / 2d);
+            }
+        }
+        return points;
+    }
+
+    @Test
+    public void testRandomPolygons() {
+        final int iters = atLeast(20);
+        for (int iter = 0; iter < iters; ++iter) {
+            final GeoPoint[] points = randomPolygon();
+            final GeoPolygonGrid grid = new GeoPolygonGrid(points);
+            double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+            double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+            for (GeoPoint point : points) {
+                minLat = Math.min(minLat, point.lat());
+                maxLat = Math.max(maxLat, point.lat());
+                minLon = Math.min(minLon, point.lon());
+                maxLon = Math.max(maxLon, point.lon());
+            }
+            for (int i = 0; i < 1000; ++i) {
+                // points around the bounding box of the polygon
+                final double lat = minLat - 1 + (maxLat - minLat + 2) * randomDouble();
+                final double lon = minLon - 1 + (maxLon - minLon + 2) * randomDouble();
+                assertThat(grid.contains(lat, lon), equalTo(GeoPolygonGrid.pointInPolygon(points, lat, lon)));
+            }
+            for (GeoPoint point : points) {
+                assertThat(grid.contains(point.lat(), point.lon()), equalTo(GeoPolygonGrid.pointInPolygon(points, point.lat(), point.lon())));
+            }
+        }
+    }
+
+    @Test
+    public void testSquare() {
+        final GeoPoint[] points = new GeoPoint[] {
+                new GeoPoint(0, 0), new GeoPoint(0, 10), new GeoPoint(10, 10), new GeoPoint(10, 0)
+        };
+        final GeoPolygonGrid grid = new GeoPolygonGrid(points);
+        assertTrue(grid.contains(5, 5));
+        assertTrue(grid.contains(0.5, 9.5));
+        assertFalse(grid.contains(-1, 5));
+        assertFalse(grid.contains(5, 11));
+        assertFalse(grid.contains(Double.NaN, 5));
+    }
+}
@@ -26,6 +26,7 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.test.ElasticsearchIntegrationTest;
 import org.elasticsearch.test.ElasticsearchIntegrationTest.ClusterScope;
@@ -34,6 +35,8 @@ import org.junit.Test;
 
 import static org.elasticsearch.index.query.QueryBuilders.filteredQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
 import static org.hamcrest.Matchers.*;
 
 /**
@@ -44,7 +47,9 @@ public class CacheTests extends ElasticsearchIntegrationTest {
     @Override
     protected Settings nodeSettings(int nodeOrdinal) {
         //Filter cache is cleaned periodically, default is 60s, so make sure it runs often. Thread.sleep for 60s is bad
-        return  ImmutableSettings.settingsBuilder().put(super.nodeSettings(nodeOrdinal)).put("indices.cache.filter.clean_interval", "1ms").build();
+        //and cache filters on their first use, even on tiny segments
+        return  ImmutableSettings.settingsBuilder().put(super.nodeSettings(nodeOrdinal)).put("indices.cache.filter.clean_interval", "1ms")
+                .put("indices.cache.filter.admission.min_frequency", 1).put("indices.cache.filter.admission.min_segment_docs", 0).build();
     }
 
     @Test
@@ -116,6 +121,34 @@ public class CacheTests extends ElasticsearchIntegrationTest {
 
     }
 
+    @Test
+    public void testGlobalOrdinalsFieldDataStats() {
+        client().admin().indices().prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1)).execute().actionGet();
+        // two segments, so that global ordinals need a mapping
+        client().prepareIndex("test", "type", "1").setSource("field", "value1").execute().actionGet();
+        client().admin().indices().prepareRefresh().execute().actionGet();
+        client().prepareIndex("test", "type", "2").setSource("field", "value2").execute().actionGet();
+        client().admin().indices().prepareRefresh().execute().actionGet();
+
+        // sort to load the field data of the segments...
+        client().prepareSearch().addSort("field", SortOrder.ASC).execute().actionGet();
+        IndicesStatsResponse indicesStats = client().admin().indices().prepareStats("test").clear().setFieldData(true).setFieldDataFields("field").execute().actionGet();
+        final long segmentsSize = indicesStats.getTotal().getFieldData().getFields().get("field");
+        assertThat(segmentsSize, greaterThan(0l));
+
+        // ... then aggregate to build global ordinals, which are reported with the field data of the field
+        SearchResponse searchResponse = client().prepareSearch().addAggregation(terms("terms").field("field").executionHint("ordinals")).execute().actionGet();
+        assertThat(((Terms) searchResponse.getAggregations().get("terms")).getBuckets().size(), equalTo(2));
+        indicesStats = client().admin().indices().prepareStats("test").clear().setFieldData(true).setFieldDataFields("field").execute().actionGet();
+        assertThat(indicesStats.getTotal().getFieldData().getFields().get("field"), greaterThan(segmentsSize));
+
+        client().admin().indices().prepareClearCache().setFieldDataCache(true).execute().actionGet();
+        indicesStats = client().admin().indices().prepareStats("test").clear().setFieldData(true).execute().actionGet();
+        assertThat(indicesStats.getTotal().getFieldData().getMemorySizeInBytes(), equalTo(0l));
+        NodesStatsResponse nodesStats = client().admin().cluster().prepareNodesStats().all().execute().actionGet();
+        assertThat(nodesStats.getNodes()[0].getBreaker().getEstimated(), equalTo(0l));
+    }
+
     @Test
     public void testClearAllCaches() throws Exception {
                 client().admin().indices().prepareCreate("test")
@@ -174,4 +207,35 @@ public class CacheTests extends ElasticsearchIntegrationTest {
         assertThat(indicesStats.getTotal().getFilterCache().getMemorySizeInBytes(), equalTo(0l));
     }
 
+    @Test
+    public void testParsedQueryCacheStats() {
+        client().admin().indices().prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1)
+                .put("index.cache.query.parsed.size", "1mb")).execute().actionGet();
+        client().prepareIndex("test", "type", "1").setSource("field", "value").execute().actionGet();
+        client().admin().indices().prepareRefresh().execute().actionGet();
+
+        IndicesStatsResponse indicesStats = client().admin().indices().prepareStats("test").clear().setParsedQueryCache(true).execute().actionGet();
+        assertThat(indicesStats.getTotal().getParsedQueryCache().getMemorySizeInBytes(), equalTo(0l));
+
+        for (int i = 0; i < 2; i++) {
+            SearchResponse searchResponse = client().prepareSearch().setQuery(termQuery("field", "value")).execute().actionGet();
+            assertThat(searchResponse.getHits().getTotalHits(), equalTo(1l));
+        }
+        indicesStats = client().admin().indices().prepareStats("test").clear().setParsedQueryCache(true).execute().actionGet();
+        assertThat(indicesStats.getTotal().getParsedQueryCache().getMemorySizeInBytes(), greaterThan(0l));
+        assertThat(indicesStats.getTotal().getParsedQueryCache().getMissCount(), equalTo(1l));
+        assertThat(indicesStats.getTotal().getParsedQueryCache().getHitCount(), equalTo(1l));
+        NodesStatsResponse nodesStats = client().admin().cluster().prepareNodesStats()
+                .setIndices(new CommonStatsFlags().clear().set(CommonStatsFlags.Flag.ParsedQueryCache, true)).execute().actionGet();
+        assertThat(nodesStats.getNodes()[0].getIndices().getParsedQueryCache().getMemorySizeInBytes(), greaterThan(0l));
+
+        client().admin().indices().prepareClearCache().execute().actionGet();
+        indicesStats = client().admin().indices().prepareStats("test").clear().setParsedQueryCache(true).execute().actionGet();
+        assertThat(indicesStats.getTotal().getParsedQueryCache().getMemorySizeInBytes(), equalTo(0l));
+
+        // the cleared query is parsed again
+        client().prepareSearch().setQuery(termQuery("field", "value")).execute().actionGet();
+        indicesStats = client().admin().indices().prepareStats("test").clear().setParsedQueryCache(true).execute().actionGet();
+        assertThat(indicesStats.getTotal().getParsedQueryCache().getMissCount(), equalTo(2l));
+    }
 }
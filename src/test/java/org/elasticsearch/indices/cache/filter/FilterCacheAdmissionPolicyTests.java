@@ -0,0 +1,74 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.cache.filter;
+
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ */
+public class FilterCacheAdmissionPolicyTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testMinFrequency() {
+        final int minFrequency = between(2, 10);
+        FilterCacheAdmissionPolicy policy = new FilterCacheAdmissionPolicy(minFrequency, 100000, 0);
+        final int hash = randomInt();
+        for (int i = 1; i < minFrequency; i++) {
+            assertThat(policy.admit(hash, 10), equalTo(false));
+        }
+        assertThat(policy.admit(hash, 10), equalTo(true));
+        assertThat(policy.admit(hash, 10), equalTo(true));
+    }
+
+    @Test
+    public void testAdmitAll() {
+        FilterCacheAdmissionPolicy policy = new FilterCacheAdmissionPolicy(1, 100, 0);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(policy.admit(randomInt(), randomIntBetween(0, 100)), equalTo(true));
+        }
+    }
+
+    @Test
+    public void testMinSegmentDocs() {
+        FilterCacheAdmissionPolicy policy = new FilterCacheAdmissionPolicy(1, 100, 1000);
+        final int hash = randomInt();
+        for (int i = 0; i < 10; i++) {
+            assertThat(policy.admit(hash, 999), equalTo(false));
+        }
+        assertThat(policy.admit(hash, 1000), equalTo(true));
+    }
+
+    @Test
+    public void testUsagesAgeOut() {
+        final int window = 64;
+        FilterCacheAdmissionPolicy policy = new FilterCacheAdmissionPolicy(2, window, 0);
+        final int hash = 42;
+        assertThat(policy.admit(hash, 10), equalTo(false));
+        // counters are halved once the window is reached, so the first use is forgotten
+        for (int i = 0; i < window - 1; i++) {
+            policy.admit(hash + 1, 10);
+        }
+        assertThat(policy.admit(hash, 10), equalTo(false));
+        assertThat(policy.admit(hash, 10), equalTo(true));
+    }
+}
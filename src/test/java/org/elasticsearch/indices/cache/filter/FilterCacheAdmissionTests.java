@@ -0,0 +1,120 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.cache.filter;
+
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.cache.filter.FilterCacheStats;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.ClusterScope;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.Scope;
+import org.junit.Test;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.FilterBuilders.*;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ */
+@ClusterScope(scope = Scope.SUITE, numNodes = 1)
+public class FilterCacheAdmissionTests extends ElasticsearchIntegrationTest {
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        // filters are cached on their second use, even on tiny segments
+        return ImmutableSettings.settingsBuilder().put(super.nodeSettings(nodeOrdinal))
+                .put("indices.cache.filter.admission.min_frequency", 2).put("indices.cache.filter.admission.min_segment_docs", 0).build();
+    }
+
+    @Test
+    public void testAdmissionStats() throws Exception {
+        assertAcked(prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder()
+                .put("index.number_of_shards", 1).put("index.number_of_replicas", 0)));
+        ensureGreen();
+        client().prepareIndex("test", "type", "1").setSource("field", "value").get();
+        refresh();
+
+        FilterCacheStats stats = filterCacheStats();
+        assertThat(stats.getAdmissions(), equalTo(0l));
+        assertThat(stats.getRejections(), equalTo(0l));
+
+        // first use: the filter is run but not cached
+        SearchResponse searchResponse = client().prepareSearch("test").setQuery(matchAllQuery()).setPostFilter(termFilter("field", "value")).get();
+        assertHitCount(searchResponse, 1l);
+        stats = filterCacheStats();
+        assertThat(stats.getAdmissions(), equalTo(0l));
+        assertThat(stats.getRejections(), equalTo(1l));
+        assertThat(stats.getMemorySizeInBytes(), equalTo(0l));
+
+        // second use: the filter is now frequent enough to be cached
+        searchResponse = client().prepareSearch("test").setQuery(matchAllQuery()).setPostFilter(termFilter("field", "value")).get();
+        assertHitCount(searchResponse, 1l);
+        stats = filterCacheStats();
+        assertThat(stats.getAdmissions(), equalTo(1l));
+        assertThat(stats.getRejections(), equalTo(1l));
+        assertThat(stats.getMemorySizeInBytes(), greaterThan(0l));
+
+        // served from the cache, no admission decision is made anymore
+        searchResponse = client().prepareSearch("test").setQuery(matchAllQuery()).setPostFilter(termFilter("field", "value")).get();
+        assertHitCount(searchResponse, 1l);
+        stats = filterCacheStats();
+        assertThat(stats.getAdmissions(), equalTo(1l));
+        assertThat(stats.getRejections(), equalTo(1l));
+    }
+
+    @Test
+    public void testRejectedFilters() throws Exception {
+        // rejected filters run as if they were not cached, nested filters need the accepted docs to be applied
+        // to their block join, the others must not be turned into bit sets
+        assertAcked(prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder()
+                .put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .addMapping("type", jsonBuilder().startObject().startObject("type").startObject("properties")
+                        .startObject("nested1").field("type", "nested").endObject()
+                        .endObject().endObject().endObject()));
+        ensureGreen();
+        for (int i = 0; i < 3; i++) {
+            client().prepareIndex("test", "type", Integer.toString(i)).setSource(jsonBuilder().startObject()
+                    .field("field", "value")
+                    .startArray("nested1").startObject().field("field", "value" + i).endObject().endArray()
+                    .endObject()).get();
+        }
+        client().prepareDelete("test", "type", "1").get();
+        refresh();
+
+        for (String nestedValue : new String[] {"value0", "value1", "value2"}) {
+            SearchResponse searchResponse = client().prepareSearch("test").setQuery(filteredQuery(matchAllQuery(),
+                    andFilter(termFilter("field", "value").cache(true),
+                            nestedFilter("nested1", termQuery("nested1.field", nestedValue)).cache(true)))).get();
+            assertHitCount(searchResponse, "value1".equals(nestedValue) ? 0l : 1l);
+        }
+        assertThat(filterCacheStats().getRejections(), greaterThan(0l));
+    }
+
+    private FilterCacheStats filterCacheStats() {
+        IndicesStatsResponse indicesStats = client().admin().indices().prepareStats("test").clear().setFilterCache(true).get();
+        return indicesStats.getTotal().getFilterCache();
+    }
+}
@@ -40,8 +40,18 @@ public class DummyCircuitBreakerService implements CircuitBreakerService {
         return breaker;
     }
 
+    @Override
+    public MemoryCircuitBreaker getRequestBreaker() {
+        return breaker;
+    }
+
     @Override
     public FieldDataBreakerStats stats() {
         return new FieldDataBreakerStats(-1, -1, 0);
     }
+
+    @Override
+    public RequestBreakerStats requestStats() {
+        return new RequestBreakerStats(-1, -1, 0);
+    }
 }
@@ -38,6 +38,7 @@ import org.elasticsearch.common.xcontent.json.JsonXContent;
 import org.elasticsearch.index.engine.Segment;
 import org.elasticsearch.index.mapper.FieldMapper.Loading;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.warmer.WarmerStats;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.warmer.IndexWarmerMissingException;
 import org.elasticsearch.search.warmer.IndexWarmersMetaData;
@@ -231,6 +232,35 @@ public class SimpleIndicesWarmerTests extends ElasticsearchIntegrationTest {
         assertThat(getWarmerRuns(), equalTo(warmerRunsAfterDisabling));
     }
 
+    @Test
+    public void testEagerGlobalOrdinalsWarming() throws Exception {
+        client().admin().indices().prepareCreate("test")
+                .setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1, "index.number_of_replicas", 0))
+                .addMapping("type", JsonXContent.contentBuilder()
+                        .startObject("type")
+                            .startObject("properties")
+                                .startObject("foo")
+                                    .field("type", "string")
+                                    .field("index", "not_analyzed")
+                                    .startObject("fielddata")
+                                        .field("loading", Loading.EAGER_GLOBAL_ORDINALS_VALUE)
+                                    .endObject()
+                                .endObject()
+                            .endObject()
+                        .endObject())
+                .execute().actionGet();
+        ensureGreen();
+
+        // two refreshes so that the top-level reader has several segments
+        client().prepareIndex("test", "type", "1").setSource("foo", "bar").setRefresh(true).execute().actionGet();
+        client().prepareIndex("test", "type", "2").setSource("foo", "baz").setRefresh(true).execute().actionGet();
+
+        IndicesStatsResponse indicesStatsResponse = client().admin().indices().prepareStats("test").clear().setWarmer(true).execute().actionGet();
+        WarmerStats warmerStats = indicesStatsResponse.getIndex("test").getPrimaries().warmer;
+        assertThat(warmerStats.fieldDataTimeInMillis(), notNullValue());
+        assertThat(warmerStats.fieldDataTimeInMillis().containsKey("foo"), equalTo(true));
+    }
+
     private long getWarmerRuns() {
         IndicesStatsResponse indicesStatsResponse = client().admin().indices().prepareStats("test").clear().setWarmer(true).execute().actionGet();
         return indicesStatsResponse.getIndex("test").getPrimaries().warmer.total();
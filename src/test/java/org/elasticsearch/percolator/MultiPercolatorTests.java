@@ -21,8 +21,12 @@ package org.elasticsearch.percolator;
 import org.elasticsearch.action.ShardOperationFailedException;
 import org.elasticsearch.action.percolate.MultiPercolateRequestBuilder;
 import org.elasticsearch.action.percolate.MultiPercolateResponse;
+import org.elasticsearch.action.percolate.PercolateRequestBuilder;
+import org.elasticsearch.action.percolate.PercolateResponse;
 import org.elasticsearch.client.Requests;
 import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.test.ElasticsearchIntegrationTest;
 import org.junit.Test;
 
@@ -261,4 +265,127 @@ public class MultiPercolatorTests extends ElasticsearchIntegrationTest {
         assertThat(response.items()[numPercolateRequest].getResponse().getMatches().length, equalTo(numQueries));
     }
 
+
+    @Test
+    public void testBatchedPercolationMatchesSinglePercolation() throws Exception {
+        client().admin().indices().prepareCreate("test")
+                .setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", between(1, 3)).build())
+                .addMapping("type", "field1", "type=string", "field2", "type=string", "field3", "type=integer")
+                .execute().actionGet();
+        ensureGreen();
+
+        final String[] terms = new String[] {"a", "b", "c", "d", "e"};
+        final int numQueries = randomIntBetween(10, 50);
+        for (int i = 0; i < numQueries; i++) {
+            final QueryBuilder query;
+            switch (randomInt(6)) {
+            case 0:
+                query = matchQuery("field1", randomFrom(terms));
+                break;
+            case 1:
+                query = boolQuery().must(matchQuery("field1", randomFrom(terms))).mustNot(matchQuery("field2", randomFrom(terms)));
+                break;
+            case 2:
+                query = rangeQuery("field3").from(randomInt(10)).to(randomInt(10) + 10);
+                break;
+            case 3:
+                query = fuzzyQuery("field1", randomFrom(terms) + randomFrom(terms)).maxExpansions(randomIntBetween(1, 3));
+                break;
+            case 4:
+                query = matchPhrasePrefixQuery("field1", randomFrom(terms) + " " + randomFrom(terms)).maxExpansions(randomIntBetween(1, 3));
+                break;
+            case 5:
+                query = commonTerms("field1", randomFrom(terms) + " " + randomFrom(terms)).cutoffFrequency(randomIntBetween(1, 3));
+                break;
+            default:
+                query = matchAllQuery();
+            }
+            client().prepareIndex("test", PercolatorService.TYPE_NAME, Integer.toString(i))
+                    .setSource(jsonBuilder().startObject().field("query", query).endObject())
+                    .execute().actionGet();
+        }
+
+        final int numDocs = randomIntBetween(2, 20);
+        final MultiPercolateRequestBuilder multiPercolate = client().prepareMultiPercolate();
+        final PercolateRequestBuilder[] singlePercolates = new PercolateRequestBuilder[numDocs];
+        for (int i = 0; i < numDocs; i++) {
+            final XContentBuilder doc = jsonBuilder().startObject()
+                    .field("field1", randomFrom(terms) + " " + randomFrom(terms))
+                    .field("field2", randomFrom(terms));
+            if (randomBoolean()) {
+                doc.field("field3", randomInt(20));
+            }
+            doc.endObject();
+            final boolean onlyCount = randomBoolean();
+            singlePercolates[i] = client().preparePercolate()
+                    .setIndices("test").setDocumentType("type")
+                    .setOnlyCount(onlyCount)
+                    .setPercolateDoc(docBuilder().setDoc(doc));
+            multiPercolate.add(client().preparePercolate()
+                    .setIndices("test").setDocumentType("type")
+                    .setOnlyCount(onlyCount)
+                    .setPercolateDoc(docBuilder().setDoc(doc)));
+        }
+
+        final MultiPercolateResponse response = multiPercolate.execute().actionGet();
+        for (int i = 0; i < numDocs; i++) {
+            final MultiPercolateResponse.Item item = response.getItems()[i];
+            assertThat(item.errorMessage(), nullValue());
+            final PercolateResponse expected = singlePercolates[i].execute().actionGet();
+            assertThat(item.getResponse().getCount(), equalTo(expected.getCount()));
+            if (expected.getMatches() != null) {
+                assertThat(convertFromTextArray(item.getResponse().getMatches(), "test"),
+                        arrayContainingInAnyOrder(convertFromTextArray(expected.getMatches(), "test")));
+            }
+        }
+    }
+
+    @Test
+    public void testBatchedPercolationOfIndexDependentQueries() throws Exception {
+        client().admin().indices().prepareCreate("test")
+                .setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1).build())
+                .addMapping("type", "field1", "type=string")
+                .execute().actionGet();
+        ensureGreen();
+
+        // the best expansion over all the documents is "abcd", which the first document doesn't have
+        client().prepareIndex("test", PercolatorService.TYPE_NAME, "fuzzy")
+                .setSource(jsonBuilder().startObject().field("query", fuzzyQuery("field1", "abcd").maxExpansions(1)).endObject())
+                .execute().actionGet();
+        // the first expansion of "b" over all the documents is "blue", which the first document doesn't have
+        client().prepareIndex("test", PercolatorService.TYPE_NAME, "phrase_prefix")
+                .setSource(jsonBuilder().startObject().field("query", matchPhrasePrefixQuery("field1", "quick b").maxExpansions(1)).endObject())
+                .execute().actionGet();
+        // "red" is a low frequency term in every document, but a high frequency one over all the documents
+        client().prepareIndex("test", PercolatorService.TYPE_NAME, "common")
+                .setSource(jsonBuilder().startObject().field("query", commonTerms("field1", "red fox").cutoffFrequency(2)).endObject())
+                .execute().actionGet();
+
+        final String[] docs = new String[] {"abce quick brown red", "abcd quick blue red", "red fox"};
+        final String[][] expectedMatches = new String[][] {
+                {"fuzzy", "phrase_prefix", "common"},
+                {"fuzzy", "phrase_prefix", "common"},
+                {"common"}
+        };
+        final MultiPercolateRequestBuilder multiPercolate = client().prepareMultiPercolate();
+        for (String doc : docs) {
+            multiPercolate.add(client().preparePercolate()
+                    .setIndices("test").setDocumentType("type")
+                    .setPercolateDoc(docBuilder().setDoc(jsonBuilder().startObject().field("field1", doc).endObject())));
+        }
+        final MultiPercolateResponse response = multiPercolate.execute().actionGet();
+        for (int i = 0; i < docs.length; i++) {
+            final MultiPercolateResponse.Item item = response.getItems()[i];
+            assertThat(item.errorMessage(), nullValue());
+            assertMatchCount(item.getResponse(), expectedMatches[i].length);
+            assertThat(convertFromTextArray(item.getResponse().getMatches(), "test"), arrayContainingInAnyOrder(expectedMatches[i]));
+
+            final PercolateResponse single = client().preparePercolate()
+                    .setIndices("test").setDocumentType("type")
+                    .setPercolateDoc(docBuilder().setDoc(jsonBuilder().startObject().field("field1", docs[i]).endObject()))
+                    .execute().actionGet();
+            assertThat(convertFromTextArray(single.getMatches(), "test"), arrayContainingInAnyOrder(expectedMatches[i]));
+        }
+    }
+
 }
@@ -0,0 +1,127 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.percolator;
+
+import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.action.percolate.PercolateResponse;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.ClusterScope;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.Scope;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.threadpool.ThreadPoolStats;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.elasticsearch.action.percolate.PercolateSourceBuilder.docBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.percolator.PercolatorTests.convertFromTextArray;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertMatchCount;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Percolation with queries verified on several threads.
+ */
+@ClusterScope(scope = Scope.SUITE, numNodes = 1)
+public class ParallelPercolatorTests extends ElasticsearchIntegrationTest {
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return ImmutableSettings.settingsBuilder()
+                .put("percolator.parallel.max_threads", between(2, 4))
+                .put("percolator.parallel.min_queries_per_thread", between(1, 10))
+                .put("threadpool." + ThreadPool.Names.PERCOLATE_PARALLEL + ".size", between(1, 3))
+                .put(super.nodeSettings(nodeOrdinal))
+                .build();
+    }
+
+    @Test
+    public void testParallelPercolation() throws Exception {
+        prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0).build())
+                .addMapping("type", "field1", "type=string,index=not_analyzed").get();
+        ensureGreen();
+
+        final String[] terms = new String[] {"a", "b", "c", "d", "e", "f"};
+        final int numQueries = randomIntBetween(50, 300);
+        final String[] queryTerms = new String[numQueries];
+        for (int i = 0; i < numQueries; i++) {
+            queryTerms[i] = randomFrom(terms);
+            client().prepareIndex("test", PercolatorService.TYPE_NAME, Integer.toString(i))
+                    .setSource(jsonBuilder().startObject().field("query", termQuery("field1", queryTerms[i])).endObject())
+                    .get();
+        }
+
+        for (int iter = 0; iter < 10; iter++) {
+            final Set<String> docTerms = new HashSet<String>();
+            for (int i = randomInt(3); i > 0; i--) {
+                docTerms.add(randomFrom(terms));
+            }
+            final List<String> expected = new ArrayList<String>();
+            for (int i = 0; i < numQueries; i++) {
+                if (docTerms.contains(queryTerms[i])) {
+                    expected.add(Integer.toString(i));
+                }
+            }
+
+            PercolateResponse response = client().preparePercolate()
+                    .setIndices("test").setDocumentType("type")
+                    .setPercolateDoc(docBuilder().setDoc(jsonBuilder().startObject().field("field1", docTerms.toArray()).endObject()))
+                    .get();
+            assertMatchCount(response, expected.size());
+            assertThat(convertFromTextArray(response.getMatches(), "test"), arrayContainingInAnyOrder(expected.toArray()));
+
+            response = client().preparePercolate()
+                    .setIndices("test").setDocumentType("type").setOnlyCount(true)
+                    .setPercolateDoc(docBuilder().setDoc(jsonBuilder().startObject().field("field1", docTerms.toArray()).endObject()))
+                    .get();
+            assertMatchCount(response, expected.size());
+
+            final int size = randomIntBetween(1, 20);
+            response = client().preparePercolate()
+                    .setIndices("test").setDocumentType("type").setSize(size)
+                    .setPercolateDoc(docBuilder().setDoc(jsonBuilder().startObject().field("field1", docTerms.toArray()).endObject()))
+                    .get();
+            assertMatchCount(response, expected.size());
+            assertThat(response.getMatches(), arrayWithSize(Math.min(size, expected.size())));
+            for (String match : convertFromTextArray(response.getMatches(), "test")) {
+                assertThat(expected, hasItem(match));
+            }
+        }
+
+        // the other threads come from the percolate_parallel pool
+        long completed = 0;
+        NodesStatsResponse nodesStats = client().admin().cluster().prepareNodesStats().setThreadPool(true).get();
+        for (NodeStats nodeStats : nodesStats.getNodes()) {
+            for (ThreadPoolStats.Stats stats : nodeStats.getThreadPool()) {
+                if (ThreadPool.Names.PERCOLATE_PARALLEL.equals(stats.getName())) {
+                    completed += stats.getCompleted();
+                }
+            }
+        }
+        assertThat(completed, greaterThan(0l));
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.InternalOrder;
+import org.elasticsearch.search.aggregations.bucket.terms.InternalTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.avg.InternalAvg;
+import org.elasticsearch.search.aggregations.metrics.max.InternalMax;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+
+public class BucketStreamsTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testLongKeys() throws Exception {
+        final long[] keys = new long[randomInt(1000)];
+        long previous = randomLong();
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = randomBoolean() ? randomLong() : (previous += randomInt(1000));
+        }
+        final BytesStreamOutput out = new BytesStreamOutput();
+        BucketStreams.writeLongKeys(keys, out);
+        final BytesStreamInput in = new BytesStreamInput(out.bytes());
+        assertThat(BucketStreams.readLongKeys(in, keys.length), equalTo(keys));
+        assertThat(in.position(), equalTo(out.bytes().length()));
+    }
+
+    @Test
+    public void testTerms() throws Exception {
+        final String[] strings = new String[randomInt(1000)];
+        for (int i = 0; i < strings.length; ++i) {
+            strings[i] = randomBoolean() ? randomUnicodeOfLength(10) : "prefix" + randomInt(100000);
+        }
+        if (randomBoolean()) {
+            Arrays.sort(strings);
+        }
+        final BytesRef[] terms = new BytesRef[strings.length];
+        for (int i = 0; i < terms.length; ++i) {
+            terms[i] = new BytesRef(strings[i]);
+        }
+        final BytesStreamOutput out = new BytesStreamOutput();
+        BucketStreams.writeTerms(terms, out);
+        final BytesStreamInput in = new BytesStreamInput(out.bytes());
+        final BytesRef[] read = BucketStreams.readTerms(in, terms.length);
+        for (int i = 0; i < terms.length; ++i) {
+            assertThat(read[i], equalTo(terms[i]));
+        }
+        assertThat(in.position(), equalTo(out.bytes().length()));
+    }
+
+    @Test
+    public void testDocCounts() throws Exception {
+        final long[] docCounts = new long[randomInt(1000)];
+        final int bitsPerValue = randomIntBetween(1, 63);
+        for (int i = 0; i < docCounts.length; ++i) {
+            docCounts[i] = randomLong() >>> (64 - bitsPerValue);
+        }
+        final BytesStreamOutput out = new BytesStreamOutput();
+        BucketStreams.writeDocCounts(docCounts, out);
+        final BytesStreamInput in = new BytesStreamInput(out.bytes());
+        assertThat(BucketStreams.readDocCounts(in, docCounts.length), equalTo(docCounts));
+        assertThat(in.position(), equalTo(out.bytes().length()));
+    }
+
+    @Test
+    public void testStringTermsSerialization() throws Exception {
+        InternalAvg.registerStreams();
+        InternalMax.registerStreams();
+        StringTerms.registerStreams();
+        final List<InternalTerms.Bucket> buckets = new ArrayList<InternalTerms.Bucket>();
+        final int numBuckets = randomInt(100);
+        // sub-aggregations can only be written by column if all buckets have the same aggregations
+        final boolean sameSubAggregations = randomBoolean();
+        for (int i = 0; i < numBuckets; ++i) {
+            final List<InternalAggregation> aggregations = new ArrayList<InternalAggregation>();
+            if (sameSubAggregations || randomBoolean()) {
+                aggregations.add(new InternalMax("max", randomDouble()));
+                aggregations.add(new InternalAvg("avg", randomDouble(), randomIntBetween(1, 100)));
+            }
+            buckets.add(new StringTerms.Bucket(new BytesRef("term" + i), randomInt(1000), new InternalAggregations(aggregations)));
+        }
+        Collections.shuffle(buckets, getRandom());
+        final StringTerms terms = new StringTerms("terms", InternalOrder.COUNT_DESC, 10, buckets);
+
+        for (Version version : Arrays.asList(Version.V_1_0_0_Beta2, Version.CURRENT)) {
+            final BytesStreamOutput out = new BytesStreamOutput();
+            out.setVersion(version);
+            terms.writeTo(out);
+            final BytesStreamInput in = new BytesStreamInput(out.bytes());
+            in.setVersion(version);
+            final StringTerms read = (StringTerms) StringTerms.STREAM.readResult(in);
+            assertThat(in.position(), equalTo(out.bytes().length()));
+            assertThat(read.getName(), equalTo(terms.getName()));
+            assertThat(read.buckets().size(), equalTo(terms.buckets().size()));
+            final Iterator<Terms.Bucket> expected = terms.buckets().iterator();
+            for (Terms.Bucket bucket : read.buckets()) {
+                final Terms.Bucket expectedBucket = expected.next();
+                assertThat(bucket.getKey().string(), equalTo(expectedBucket.getKey().string()));
+                assertThat(bucket.getDocCount(), equalTo(expectedBucket.getDocCount()));
+                final InternalAggregations aggregations = (InternalAggregations) bucket.getAggregations();
+                final InternalAggregations expectedAggregations = (InternalAggregations) expectedBucket.getAggregations();
+                assertThat(aggregations.asList().size(), equalTo(expectedAggregations.asList().size()));
+                if (!expectedAggregations.asList().isEmpty()) {
+                    assertThat(((InternalMax) aggregations.get("max")).getValue(), equalTo(((InternalMax) expectedAggregations.get("max")).getValue()));
+                    assertThat(((InternalAvg) aggregations.get("avg")).getValue(), equalTo(((InternalAvg) expectedAggregations.get("avg")).getValue()));
+                }
+            }
+        }
+    }
+}
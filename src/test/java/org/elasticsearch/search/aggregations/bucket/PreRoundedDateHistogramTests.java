@@ -0,0 +1,140 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramBuilder;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.dateHistogram;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Checks that date histograms which read keys that have been rounded at index time return the same buckets as date
+ * histograms which round dates at search time.
+ */
+public class PreRoundedDateHistogramTests extends ElasticsearchIntegrationTest {
+
+    @Before
+    public void init() throws Exception {
+        assertAcked(prepareCreate("idx").addMapping("type", jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                    .startObject("date").field("type", "date")
+                        .startArray("pre_rounded")
+                            .value("1h")
+                            .value("1M")
+                            .startObject().field("interval", "1d").field("time_zone", "Europe/Paris").endObject()
+                        .endArray()
+                    .endObject()
+                    .startObject("plain_date").field("type", "date").endObject()
+                .endObject()
+                .endObject().endObject()));
+        final List<IndexRequestBuilder> docs = new ArrayList<IndexRequestBuilder>();
+        final long start = new DateTime(2013, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        final int numDocs = randomIntBetween(50, 500);
+        for (int i = 0; i < numDocs; ++i) {
+            final int numDates = randomInt(3);
+            final long[] dates = new long[numDates];
+            for (int j = 0; j < numDates; ++j) {
+                // about one year of dates, so that they span both daylight saving time transitions in Europe/Paris
+                dates[j] = start + (long) (randomDouble() * 366 * 24 * 60 * 60 * 1000);
+            }
+            docs.add(client().prepareIndex("idx", "type").setSource(jsonBuilder().startObject()
+                    .field("date", dates)
+                    .field("plain_date", dates)
+                    .endObject()));
+        }
+        indexRandom(true, docs);
+        ensureSearchable();
+    }
+
+    private void assertSameBuckets(DateHistogramBuilder preRounded, DateHistogramBuilder plain, boolean expectPreRounded) {
+        client().admin().indices().prepareClearCache("idx").setFieldDataCache(true).execute().actionGet();
+        SearchResponse response = client().prepareSearch("idx")
+                .addAggregation(preRounded.field("date"))
+                .execute().actionGet();
+        assertSearchResponse(response);
+        DateHistogram preRoundedHisto = response.getAggregations().get("pre_rounded");
+
+        // pre-rounded keys are read from doc values, so field data for the date field itself is only loaded when dates
+        // are rounded at search time
+        final long dateFieldDataMemory = client().admin().indices().prepareStats("idx")
+                .setFieldData(true).setFieldDataFields("date")
+                .execute().actionGet().getTotal().getFieldData().getFields().get("date");
+        if (expectPreRounded) {
+            assertThat(dateFieldDataMemory, equalTo(0L));
+        } else {
+            assertThat(dateFieldDataMemory, greaterThan(0L));
+        }
+
+        response = client().prepareSearch("idx")
+                .addAggregation(plain.field("plain_date"))
+                .execute().actionGet();
+        assertSearchResponse(response);
+        DateHistogram plainHisto = response.getAggregations().get("plain");
+        assertThat(preRoundedHisto.buckets().size(), equalTo(plainHisto.buckets().size()));
+        for (DateHistogram.Bucket bucket : plainHisto.buckets()) {
+            DateHistogram.Bucket preRoundedBucket = preRoundedHisto.getByKey(bucket.getKey());
+            assertThat(preRoundedBucket, notNullValue());
+            assertThat(preRoundedBucket.getDocCount(), equalTo(bucket.getDocCount()));
+        }
+    }
+
+    @Test
+    public void hour() {
+        assertSameBuckets(dateHistogram("pre_rounded").interval(DateHistogram.Interval.HOUR),
+                dateHistogram("plain").interval(DateHistogram.Interval.HOUR), true);
+    }
+
+    @Test
+    public void month() {
+        assertSameBuckets(dateHistogram("pre_rounded").interval(DateHistogram.Interval.MONTH),
+                dateHistogram("plain").interval(DateHistogram.Interval.MONTH), true);
+    }
+
+    @Test
+    public void dayWithTimeZone() {
+        assertSameBuckets(dateHistogram("pre_rounded").interval(DateHistogram.Interval.DAY).preZone("Europe/Paris"),
+                dateHistogram("plain").interval(DateHistogram.Interval.DAY).preZone("Europe/Paris"), true);
+    }
+
+    @Test
+    public void notPreRounded() {
+        // no matching pre-rounding, dates are rounded at search time
+        assertSameBuckets(dateHistogram("pre_rounded").interval(DateHistogram.Interval.DAY),
+                dateHistogram("plain").interval(DateHistogram.Interval.DAY), false);
+        assertSameBuckets(dateHistogram("pre_rounded").interval(DateHistogram.Interval.HOUR).postZone("Europe/Paris"),
+                dateHistogram("plain").interval(DateHistogram.Interval.HOUR).postZone("Europe/Paris"), false);
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.aggregations.bucket.sampler.Sampler;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.elasticsearch.search.aggregations.metrics.min.Min;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders.scriptFunction;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.*;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.core.IsNull.notNullValue;
+
+/**
+ *
+ */
+public class SamplerTests extends ElasticsearchIntegrationTest {
+
+    @Override
+    public Settings indexSettings() {
+        // a single shard so that the sample is the global top of the hits
+        return ImmutableSettings.builder()
+                .put("index.number_of_shards", 1)
+                .put("index.number_of_replicas", between(0, 1))
+                .build();
+    }
+
+    int numDocs;
+
+    @Before
+    public void init() throws Exception {
+        createIndex("idx");
+        numDocs = randomIntBetween(20, 100);
+        List<IndexRequestBuilder> builders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < numDocs; i++) {
+            builders.add(client().prepareIndex("idx", "type", "" + i).setSource(jsonBuilder()
+                    .startObject()
+                    .field("value", i)
+                    .field("tag", i % 2 == 0 ? "even" : "odd")
+                    .endObject()));
+        }
+        indexRandom(true, builders.toArray(new IndexRequestBuilder[builders.size()]));
+        ensureSearchable();
+    }
+
+    // scores every document by its value so that the top scoring documents are the ones with the highest values
+    private static QueryBuilder scoreByValue() {
+        return functionScoreQuery(matchAllQuery(), scriptFunction("doc['value'].value + 1")).boostMode("replace");
+    }
+
+    @Test
+    public void topScoringDocs() throws Exception {
+        final int shardSize = randomIntBetween(1, numDocs - 1);
+        SearchResponse response = client().prepareSearch("idx")
+                .setQuery(scoreByValue())
+                .addAggregation(sampler("sample").shardSize(shardSize)
+                        .subAggregation(min("min_value").field("value"))
+                        .subAggregation(max("max_value").field("value")))
+                .execute().actionGet();
+
+        assertSearchResponse(response);
+
+        Sampler sample = response.getAggregations().get("sample");
+        assertThat(sample, notNullValue());
+        assertThat(sample.getName(), equalTo("sample"));
+        assertThat(sample.getDocCount(), equalTo((long) shardSize));
+        Min min = sample.getAggregations().get("min_value");
+        assertThat(min.getValue(), equalTo((double) numDocs - shardSize));
+        Max max = sample.getAggregations().get("max_value");
+        assertThat(max.getValue(), equalTo((double) numDocs - 1));
+    }
+
+    @Test
+    public void fewerHitsThanShardSize() throws Exception {
+        SearchResponse response = client().prepareSearch("idx")
+                .setQuery(scoreByValue())
+                .addAggregation(sampler("sample").shardSize(numDocs + randomInt(10))
+                        .subAggregation(min("min_value").field("value")))
+                .execute().actionGet();
+
+        assertSearchResponse(response);
+
+        Sampler sample = response.getAggregations().get("sample");
+        assertThat(sample.getDocCount(), equalTo((long) numDocs));
+        Min min = sample.getAggregations().get("min_value");
+        assertThat(min.getValue(), equalTo(0d));
+    }
+
+    @Test
+    public void asSubAggregation() throws Exception {
+        final int shardSize = randomIntBetween(1, numDocs / 2 - 1);
+        SearchResponse response = client().prepareSearch("idx")
+                .setQuery(scoreByValue())
+                .addAggregation(terms("tags").field("tag")
+                        .subAggregation(sampler("sample").shardSize(shardSize)
+                                .subAggregation(min("min_value").field("value"))))
+                .execute().actionGet();
+
+        assertSearchResponse(response);
+
+        Terms terms = response.getAggregations().get("tags");
+        assertThat(terms.getBuckets().size(), equalTo(2));
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            Sampler sample = bucket.getAggregations().get("sample");
+            assertThat(sample.getDocCount(), equalTo((long) shardSize));
+            // the highest value of this bucket is either numDocs - 1 or numDocs - 2
+            final int highest = "even".equals(bucket.getKey().string()) == ((numDocs - 1) % 2 == 0) ? numDocs - 1 : numDocs - 2;
+            Min min = sample.getAggregations().get("min_value");
+            assertThat(min.getValue(), equalTo((double) highest - 2 * (shardSize - 1)));
+        }
+    }
+
+    @Test
+    public void unmappedSubAggregation() throws Exception {
+        SearchResponse response = client().prepareSearch("idx")
+                .setQuery(scoreByValue())
+                .addAggregation(sampler("sample").shardSize(10)
+                        .subAggregation(terms("terms").field("unmapped")))
+                .execute().actionGet();
+
+        assertSearchResponse(response);
+
+        Sampler sample = response.getAggregations().get("sample");
+        assertThat(sample.getDocCount(), equalTo(10L));
+        Terms terms = sample.getAggregations().get("terms");
+        assertThat(terms.getBuckets().size(), equalTo(0));
+    }
+
+    @Test(expected = ElasticsearchException.class)
+    public void invalidShardSize() throws Exception {
+        client().prepareSearch("idx")
+                .addAggregation(sampler("sample").shardSize(0))
+                .execute().actionGet();
+    }
+}
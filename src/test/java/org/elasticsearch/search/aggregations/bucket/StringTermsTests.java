@@ -26,6 +26,7 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.search.aggregations.Aggregator.SubAggCollectionMode;
 import org.elasticsearch.search.aggregations.bucket.filter.Filter;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
@@ -33,6 +34,7 @@ import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregatorFactory
 import org.elasticsearch.search.aggregations.metrics.avg.Avg;
 import org.elasticsearch.search.aggregations.metrics.stats.Stats;
 import org.elasticsearch.search.aggregations.metrics.stats.extended.ExtendedStats;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
 import org.elasticsearch.search.aggregations.metrics.valuecount.ValueCount;
 import org.elasticsearch.test.ElasticsearchIntegrationTest;
 import org.hamcrest.Matchers;
@@ -41,12 +43,15 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Pattern;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.index.query.FilterBuilders.termFilter;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders.scriptFunction;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.*;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
 import static org.hamcrest.Matchers.equalTo;
@@ -1011,4 +1016,100 @@ public class StringTermsTests extends ElasticsearchIntegrationTest {
         }
 
     }
+
+    @Test
+    public void multiValuedField_WithSubAggregations_BreadthFirst() throws Exception {
+        // sub-aggregations are only collected for the top buckets in breadth-first mode, results must be the same as
+        // when collecting depth-first
+        final int size = randomIntBetween(1, 20);
+        final String executionHint = randomExecutionHint();
+        final SubAggCollectionMode[] modes = new SubAggCollectionMode[] {SubAggCollectionMode.DEPTH_FIRST, SubAggCollectionMode.BREADTH_FIRST};
+        final Terms[] results = new Terms[modes.length];
+        for (int i = 0; i < modes.length; ++i) {
+            SearchResponse response = client().prepareSearch("idx").setTypes("high_card_type")
+                    .addAggregation(terms("terms")
+                            .executionHint(executionHint)
+                            .collectMode(modes[i])
+                            .field("values")
+                            .size(size)
+                            .order(Terms.Order.term(true))
+                            .subAggregation(count("count").field("values"))
+                            .subAggregation(terms("sub_terms")
+                                    .collectMode(randomFrom(Arrays.asList(modes)))
+                                    .field("values")
+                                    .order(Terms.Order.term(true))))
+                    .execute().actionGet();
+
+            assertSearchResponse(response);
+            results[i] = response.getAggregations().get("terms");
+        }
+
+        Terms depthFirst = results[0];
+        Terms breadthFirst = results[1];
+        assertThat(breadthFirst.buckets().size(), equalTo(size));
+        assertThat(breadthFirst.buckets().size(), equalTo(depthFirst.buckets().size()));
+        Iterator<Terms.Bucket> expected = depthFirst.buckets().iterator();
+        for (Terms.Bucket bucket : breadthFirst.buckets()) {
+            Terms.Bucket expectedBucket = expected.next();
+            assertThat(bucket.getKey().string(), equalTo(expectedBucket.getKey().string()));
+            assertThat(bucket.getDocCount(), equalTo(expectedBucket.getDocCount()));
+            ValueCount valueCount = bucket.getAggregations().get("count");
+            assertThat(valueCount.getValue(), equalTo(2 * bucket.getDocCount()));
+            Terms subTerms = bucket.getAggregations().get("sub_terms");
+            Terms expectedSubTerms = expectedBucket.getAggregations().get("sub_terms");
+            assertThat(subTerms.buckets().size(), equalTo(expectedSubTerms.buckets().size()));
+            Iterator<Terms.Bucket> expectedSubBuckets = expectedSubTerms.buckets().iterator();
+            for (Terms.Bucket subBucket : subTerms.buckets()) {
+                Terms.Bucket expectedSubBucket = expectedSubBuckets.next();
+                assertThat(subBucket.getKey().string(), equalTo(expectedSubBucket.getKey().string()));
+                assertThat(subBucket.getDocCount(), equalTo(expectedSubBucket.getDocCount()));
+            }
+        }
+    }
+
+    @Test
+    public void singleValuedField_WithScoreScriptSubAggregation_BreadthFirst() throws Exception {
+        // the documents replayed into the sub-aggregations come with the scores they were collected with
+        SearchResponse response = client().prepareSearch("idx").setTypes("type")
+                .setQuery(functionScoreQuery(matchAllQuery(), scriptFunction("doc['i'].value + 1")).boostMode("replace"))
+                .addAggregation(terms("terms")
+                        .executionHint(randomExecutionHint())
+                        .collectMode(SubAggCollectionMode.BREADTH_FIRST)
+                        .field("value")
+                        .subAggregation(sum("score").script("_score")))
+                .execute().actionGet();
+
+        assertSearchResponse(response);
+
+        Terms terms = response.getAggregations().get("terms");
+        assertThat(terms.buckets().size(), equalTo(5));
+        for (int i = 0; i < 5; i++) {
+            Terms.Bucket bucket = terms.getByTerm("val" + i);
+            assertThat(bucket, notNullValue());
+            assertThat(bucket.getDocCount(), equalTo(1l));
+            Sum score = bucket.getAggregations().get("score");
+            assertThat(score.getValue(), equalTo((double) i + 1));
+        }
+    }
+
+    @Test
+    public void singleValuedField_OrderedBySubAggregation_BreadthFirst() throws Exception {
+
+        try {
+
+            client().prepareSearch("idx").setTypes("type")
+                    .addAggregation(terms("terms")
+                            .executionHint(randomExecutionHint())
+                            .collectMode(SubAggCollectionMode.BREADTH_FIRST)
+                            .field("value")
+                            .order(Terms.Order.aggregation("avg_i", true))
+                            .subAggregation(avg("avg_i").field("i"))
+                    ).execute().actionGet();
+
+            fail("Expected search to fail when trying to sort terms aggregation by sub-aggregation in breadth_first mode");
+
+        } catch (ElasticsearchException e) {
+            // expected
+        }
+    }
 }
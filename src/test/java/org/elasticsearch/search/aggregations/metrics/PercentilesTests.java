@@ -0,0 +1,341 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.metrics.percentiles.Percentiles;
+import org.elasticsearch.search.aggregations.metrics.percentiles.PercentilesBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.histogram;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.percentiles;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class PercentilesTests extends AbstractNumericTests {
+
+    private static double[] randomPercentiles() {
+        final int length = randomIntBetween(1, 20);
+        final double[] percentiles = new double[length];
+        for (int i = 0; i < percentiles.length; ++i) {
+            switch (randomInt(20)) {
+            case 0:
+                percentiles[i] = 0;
+                break;
+            case 1:
+                percentiles[i] = 100;
+                break;
+            default:
+                percentiles[i] = randomDouble() * 100;
+                break;
+            }
+        }
+        Arrays.sort(percentiles);
+        return percentiles;
+    }
+
+    private static PercentilesBuilder randomCompression(PercentilesBuilder builder) {
+        if (randomBoolean()) {
+            builder.compression(randomIntBetween(20, 120) + randomDouble());
+        }
+        return builder;
+    }
+
+    private void assertConsistent(double[] pcts, Percentiles percentiles, long minValue, long maxValue) {
+        assertThat(percentiles, notNullValue());
+        assertThat(percentiles.getName(), equalTo("percentiles"));
+        int i = 0;
+        double previous = Double.NEGATIVE_INFINITY;
+        for (Percentiles.Percentile percentile : percentiles) {
+            assertThat(percentile.getPercent(), equalTo(pcts[i]));
+            final double value = percentile.getValue();
+            assertThat(value, equalTo(percentiles.percentile(pcts[i])));
+            assertThat(value, greaterThanOrEqualTo((double) minValue));
+            assertThat(value, lessThanOrEqualTo((double) maxValue));
+            assertThat(value, greaterThanOrEqualTo(previous));
+            previous = value;
+            ++i;
+        }
+        assertThat(i, equalTo(pcts.length));
+        if (pcts.length > 0 && pcts[0] == 0) {
+            assertThat(percentiles.percentile(0), equalTo((double) minValue));
+        }
+        if (pcts.length > 0 && pcts[pcts.length - 1] == 100) {
+            assertThat(percentiles.percentile(100), equalTo((double) maxValue));
+        }
+    }
+
+    @Test
+    public void testEmptyAggregation() throws Exception {
+
+        SearchResponse searchResponse = client().prepareSearch("empty_bucket_idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(histogram("histo").field("value").interval(1l).emptyBuckets(true)
+                        .subAggregation(randomCompression(percentiles("percentiles").percentiles(10, 15))))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(2l));
+        Histogram histo = searchResponse.getAggregations().get("histo");
+        assertThat(histo, notNullValue());
+        Histogram.Bucket bucket = histo.getByKey(1l);
+        assertThat(bucket, notNullValue());
+
+        Percentiles percentiles = bucket.getAggregations().get("percentiles");
+        assertThat(percentiles, notNullValue());
+        assertThat(percentiles.getName(), equalTo("percentiles"));
+        assertThat(percentiles.percentile(10), equalTo(Double.NaN));
+        assertThat(percentiles.percentile(15), equalTo(Double.NaN));
+    }
+
+    @Test
+    public void testUnmapped() throws Exception {
+        SearchResponse searchResponse = client().prepareSearch("idx_unmapped")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .field("value")
+                        .percentiles(0, 10, 15, 100))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(0l));
+
+        Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertThat(percentiles, notNullValue());
+        assertThat(percentiles.getName(), equalTo("percentiles"));
+        assertThat(percentiles.percentile(0), equalTo(Double.NaN));
+        assertThat(percentiles.percentile(10), equalTo(Double.NaN));
+        assertThat(percentiles.percentile(15), equalTo(Double.NaN));
+        assertThat(percentiles.percentile(100), equalTo(Double.NaN));
+    }
+
+    @Test
+    public void testSingleValuedField() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .field("value")
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 1, 10);
+    }
+
+    @Test
+    public void testSingleValuedField_PartiallyUnmapped() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx", "idx_unmapped")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .field("value")
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 1, 10);
+    }
+
+    @Test
+    public void testSingleValuedField_WithValueScript() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .field("value").script("_value - 1")
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 0, 9);
+    }
+
+    @Test
+    public void testSingleValuedField_WithValueScript_WithParams() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .field("value").script("_value - dec").param("dec", 1)
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 0, 9);
+    }
+
+    @Test
+    public void testMultiValuedField() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .field("values")
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 2, 12);
+    }
+
+    @Test
+    public void testMultiValuedField_WithValueScript() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .field("values").script("_value - 1")
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 1, 11);
+    }
+
+    @Test
+    public void testMultiValuedField_WithValueScript_WithParams() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .field("values").script("_value - dec").param("dec", 1)
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 1, 11);
+    }
+
+    @Test
+    public void testScript_SingleValued() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .script("doc['value'].value")
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 1, 10);
+    }
+
+    @Test
+    public void testScript_SingleValued_WithParams() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .script("doc['value'].value - dec").param("dec", 1)
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 0, 9);
+    }
+
+    @Test
+    public void testScript_ExplicitSingleValued_WithParams() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .script("doc['value'].value - dec").param("dec", 1)
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 0, 9);
+    }
+
+    @Test
+    public void testScript_MultiValued() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .script("doc['values'].values")
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 2, 12);
+    }
+
+    @Test
+    public void testScript_ExplicitMultiValued() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .script("doc['values'].values")
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 2, 12);
+    }
+
+    @Test
+    public void testScript_MultiValued_WithParams() throws Exception {
+        final double[] pcts = randomPercentiles();
+        SearchResponse searchResponse = client().prepareSearch("idx")
+                .setQuery(matchAllQuery())
+                .addAggregation(randomCompression(percentiles("percentiles"))
+                        .script("new double[] { doc['value'].value, doc['value'].value - dec }").param("dec", 1)
+                        .percentiles(pcts))
+                .execute().actionGet();
+
+        assertThat(searchResponse.getHits().getTotalHits(), equalTo(10l));
+
+        final Percentiles percentiles = searchResponse.getAggregations().get("percentiles");
+        assertConsistent(pcts, percentiles, 0, 10);
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.cardinality;
+
+import com.carrotsearch.hppc.IntOpenHashSet;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MAX_PRECISION;
+import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MIN_PRECISION;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+public class HyperLogLogPlusPlusTests extends ElasticsearchTestCase {
+
+    @Test
+    public void encodeDecode() {
+        final int iters = atLeast(100000);
+        // random hashes
+        for (int i = 0; i < iters; ++i) {
+            final int p1 = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+            final long hash = randomLong();
+            assertEncodeDecode(hash, p1);
+        }
+        // special cases
+        for (int p1 = MIN_PRECISION; p1 <= MAX_PRECISION; ++p1) {
+            assertEncodeDecode(0L, p1);
+            assertEncodeDecode(1L, p1);
+            assertEncodeDecode(~0L, p1);
+        }
+    }
+
+    private void assertEncodeDecode(long hash, int p1) {
+        final int index = (int) (hash >>> (64 - p1));
+        final int runLen = Long.numberOfLeadingZeros((hash << p1) | (1L << (p1 - 1))) + 1;
+        final int encoded = HyperLogLogPlusPlus.encodeHash(hash, p1);
+        assertTrue(encoded != 0);
+        assertEquals(index, HyperLogLogPlusPlus.decodeIndex(encoded, p1));
+        assertEquals(runLen, HyperLogLogPlusPlus.decodeRunLen(encoded, p1));
+    }
+
+    @Test
+    public void accuracy() {
+        final long bucket = randomInt(20);
+        final int numValues = randomIntBetween(1, 100000);
+        final int maxValue = randomIntBetween(1, randomBoolean() ? 1000 : 100000);
+        final int p = randomIntBetween(14, MAX_PRECISION);
+        IntOpenHashSet set = new IntOpenHashSet();
+        HyperLogLogPlusPlus e = new HyperLogLogPlusPlus(p, null, 1);
+        for (int i = 0; i < numValues; ++i) {
+            final int n = randomInt(maxValue);
+            set.add(n);
+            final long hash = MurmurHash3.hash((long) n);
+            e.collect(bucket, hash);
+            if (randomInt(100) == 0) {
+                assertThat((double) e.cardinality(bucket), closeTo(set.size(), 0.1 * set.size()));
+            }
+        }
+        assertThat((double) e.cardinality(bucket), closeTo(set.size(), 0.1 * set.size()));
+    }
+
+    @Test
+    public void merge() {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus single = new HyperLogLogPlusPlus(p, null, 0);
+        final HyperLogLogPlusPlus[] multi = new HyperLogLogPlusPlus[randomIntBetween(2, 100)];
+        final long[] bucketOrds = new long[multi.length];
+        for (int i = 0; i < multi.length; ++i) {
+            bucketOrds[i] = randomInt(20);
+            multi[i] = new HyperLogLogPlusPlus(p, null, 5);
+        }
+        final int numValues = randomIntBetween(1, 100000);
+        final int maxValue = randomIntBetween(1, randomBoolean() ? 1000 : 1000000);
+        for (int i = 0; i < numValues; ++i) {
+            final int n = randomInt(maxValue);
+            final long hash = MurmurHash3.hash((long) n);
+            single.collect(0, hash);
+            // use a skewed distribution so that all instances don't collect as many hashes
+            final int index = (int) (Math.pow(randomDouble(), 2) * multi.length);
+            multi[index].collect(bucketOrds[index], hash);
+            if (randomInt(100) == 0) {
+                HyperLogLogPlusPlus merged = new HyperLogLogPlusPlus(p, null, 0);
+                for (int j = 0; j < multi.length; ++j) {
+                    merged.merge(0, multi[j], bucketOrds[j]);
+                }
+                assertEquals(single.cardinality(0), merged.cardinality(0));
+            }
+        }
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, null, 1);
+        final long bucket = randomInt(5);
+        final int numValues = randomIntBetween(0, 10000);
+        for (int i = 0; i < numValues; ++i) {
+            counts.collect(bucket, randomLong());
+        }
+        final BytesStreamOutput out = new BytesStreamOutput();
+        counts.writeTo(bucket, out);
+        final HyperLogLogPlusPlus read = HyperLogLogPlusPlus.readFrom(new BytesStreamInput(out.bytes()), null);
+        assertThat(read.precision(), equalTo(p));
+        assertThat(read.cardinality(0), equalTo(counts.cardinality(bucket)));
+    }
+
+    @Test
+    public void fakeHashes() {
+        // hashes with lots of leading zeros trigger different paths in the code that we try to check here
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, null, 0);
+        counts.collect(0, 0);
+        assertEquals(1, counts.cardinality(0));
+        if (randomBoolean()) {
+            counts.collect(0, 1);
+            assertEquals(2, counts.cardinality(0));
+        }
+        counts.upgradeToHll(0);
+        // all hashes fell into the same bucket so hll would expect a count of 1
+        assertEquals(1, counts.cardinality(0));
+    }
+
+    @Test
+    public void precisionFromThreshold() {
+        assertEquals(4, HyperLogLogPlusPlus.precisionFromThreshold(0));
+        assertEquals(6, HyperLogLogPlusPlus.precisionFromThreshold(10));
+        assertEquals(10, HyperLogLogPlusPlus.precisionFromThreshold(100));
+        assertEquals(13, HyperLogLogPlusPlus.precisionFromThreshold(1000));
+        assertEquals(16, HyperLogLogPlusPlus.precisionFromThreshold(10000));
+        assertEquals(18, HyperLogLogPlusPlus.precisionFromThreshold(100000));
+        assertEquals(18, HyperLogLogPlusPlus.precisionFromThreshold(1000000));
+    }
+
+}
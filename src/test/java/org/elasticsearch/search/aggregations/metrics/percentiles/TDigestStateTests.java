@@ -0,0 +1,146 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles;
+
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class TDigestStateTests extends ElasticsearchTestCase {
+
+    private static double randomValue() {
+        switch (randomInt(2)) {
+        case 0:
+            return randomDouble();
+        case 1:
+            return getRandom().nextGaussian();
+        default:
+            return -Math.log(1 - randomDouble()); // exponential
+        }
+    }
+
+    // error on the rank of the estimated value rather than on the value itself, which is independent of the distribution
+    private static double rankError(double[] sorted, double estimate, double q) {
+        int rank = Arrays.binarySearch(sorted, estimate);
+        if (rank < 0) {
+            rank = -1 - rank;
+        }
+        return Math.abs((double) rank / sorted.length - q);
+    }
+
+    private static void assertAccurate(double[] sorted, TDigestState state) {
+        for (double q : new double[] {0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999}) {
+            assertThat(rankError(sorted, state.quantile(q), q), lessThanOrEqualTo(0.02));
+        }
+    }
+
+    @Test
+    public void accuracy() {
+        final int numValues = randomIntBetween(1000, 100000);
+        final double[] values = new double[numValues];
+        final TDigestState state = new TDigestState(TDigestState.DEFAULT_COMPRESSION);
+        for (int i = 0; i < numValues; ++i) {
+            values[i] = randomValue();
+            state.add(values[i]);
+        }
+        Arrays.sort(values);
+        assertThat(state.size(), equalTo((long) numValues));
+        assertThat(state.quantile(0), equalTo(values[0]));
+        assertThat(state.quantile(1), equalTo(values[numValues - 1]));
+        assertAccurate(values, state);
+    }
+
+    @Test
+    public void boundedSize() {
+        final double compression = randomIntBetween(1, 200) + randomDouble();
+        final TDigestState state = new TDigestState(compression);
+        final int numValues = atLeast(10000);
+        for (int i = 0; i < numValues; ++i) {
+            state.add(randomValue());
+            if (randomInt(1000) == 0) {
+                assertThat((double) state.centroidCount(), lessThanOrEqualTo(compression + 1));
+            }
+        }
+        assertThat((double) state.centroidCount(), lessThanOrEqualTo(compression + 1));
+    }
+
+    @Test
+    public void fewValues() {
+        // below the compression, every value has its own centroid
+        final TDigestState state = new TDigestState(100);
+        for (int i = 1; i <= 10; ++i) {
+            state.add(i);
+        }
+        assertThat(state.centroidCount(), equalTo(10));
+        assertThat(state.quantile(0), equalTo(1d));
+        assertThat(state.quantile(0.5), equalTo(5.5));
+        assertThat(state.quantile(1), equalTo(10d));
+        assertTrue(Double.isNaN(new TDigestState(100).quantile(0.5)));
+    }
+
+    @Test
+    public void merge() {
+        final int numValues = randomIntBetween(1000, 100000);
+        final double[] values = new double[numValues];
+        final TDigestState[] states = new TDigestState[randomIntBetween(2, 10)];
+        for (int i = 0; i < states.length; ++i) {
+            states[i] = new TDigestState(TDigestState.DEFAULT_COMPRESSION);
+        }
+        for (int i = 0; i < numValues; ++i) {
+            values[i] = randomValue();
+            states[randomInt(states.length - 1)].add(values[i]);
+        }
+        Arrays.sort(values);
+        final TDigestState merged = new TDigestState(TDigestState.DEFAULT_COMPRESSION);
+        for (TDigestState state : states) {
+            merged.add(state);
+        }
+        assertThat(merged.size(), equalTo((long) numValues));
+        assertThat(merged.quantile(0), equalTo(values[0]));
+        assertThat(merged.quantile(1), equalTo(values[numValues - 1]));
+        assertAccurate(values, merged);
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        final TDigestState state = new TDigestState(randomIntBetween(20, 200));
+        final int numValues = randomInt(10000);
+        for (int i = 0; i < numValues; ++i) {
+            state.add(randomValue());
+        }
+        final BytesStreamOutput out = new BytesStreamOutput();
+        TDigestState.write(state, out);
+        final TDigestState read = TDigestState.read(new BytesStreamInput(out.bytes()));
+        assertThat(read.compression(), equalTo(state.compression()));
+        assertThat(read.size(), equalTo(state.size()));
+        assertThat(read.centroidCount(), equalTo(state.centroidCount()));
+        for (int i = 0; i < 10; ++i) {
+            final double q = randomDouble();
+            assertThat(read.quantile(q), equalTo(state.quantile(q)));
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.controller;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.facet.terms.TermsFacet;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.ClusterScope;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.Scope;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.elasticsearch.search.facet.FacetBuilders.termsFacet;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Runs searches on more shards than the batched reduce size, so that shard results are partially reduced on the
+ * coordinating node.
+ */
+@ClusterScope(scope = Scope.SUITE)
+public class BatchedReduceTests extends ElasticsearchIntegrationTest {
+
+    private static final int NUM_TAGS = 7;
+
+    // each index has a single shard, so that the per-shard counts of every tag are known:
+    // idx_a: t0=10, t1=9, t2=8, t3..t5=4, t6=3
+    // idx_b: t0..t2=1, t3=6, t4=5, t5=2, t6=2
+    // idx_c: t0..t2=1, t3=6, t4=5, t5=2, t6=2
+    // idx_d: t0..t2=1, t3=2, t4=2, t5=7, t6=3
+    // total: t3=18, t4=16, t5=15, t0=13, t1=12, t2=11, t6=10
+    // the top tags of idx_a are not among the top tags overall, so counts are only right if shard_size > size
+    private static final String[] INDICES = new String[] {"idx_a", "idx_b", "idx_c", "idx_d"};
+    private static final int[][] TAG_COUNTS = new int[][] {
+            {10, 9, 8, 4, 4, 4, 3},
+            {1, 1, 1, 6, 5, 2, 2},
+            {1, 1, 1, 6, 5, 2, 2},
+            {1, 1, 1, 2, 2, 7, 3}
+    };
+    private static final String[] TOP_TAGS = new String[] {"t3", "t4", "t5"};
+    private static final long[] TOP_TAG_COUNTS = new long[] {18, 16, 15};
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return ImmutableSettings.settingsBuilder()
+                .put("search.controller.batched_reduce_size", 2)
+                .put(super.nodeSettings(nodeOrdinal))
+                .build();
+    }
+
+    private int indexDocs() throws Exception {
+        for (String index : INDICES) {
+            prepareCreate(index).setSettings(ImmutableSettings.settingsBuilder()
+                    .put("index.number_of_shards", 1)
+                    .put("index.number_of_replicas", 0))
+                    .addMapping("type", "tag", "type=string,index=not_analyzed")
+                    .get();
+        }
+        ensureGreen();
+        List<IndexRequestBuilder> builders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < INDICES.length; i++) {
+            List<String> tags = new ArrayList<String>();
+            for (int tag = 0; tag < NUM_TAGS; tag++) {
+                for (int j = 0; j < TAG_COUNTS[i][tag]; j++) {
+                    tags.add("t" + tag);
+                }
+            }
+            Collections.shuffle(tags, getRandom());
+            for (String tag : tags) {
+                final int id = builders.size();
+                builders.add(client().prepareIndex(INDICES[i], "type", "" + id).setSource(jsonBuilder()
+                        .startObject()
+                        .field("value", id)
+                        .field("tag", tag)
+                        .endObject()));
+            }
+        }
+        indexRandom(true, builders.toArray(new IndexRequestBuilder[builders.size()]));
+        return builders.size();
+    }
+
+    @Test
+    public void queryThenFetch() throws Exception {
+        final int numDocs = indexDocs();
+        final int from = randomIntBetween(0, 5);
+        final int size = randomIntBetween(1, 10);
+        SearchResponse response = client().prepareSearch(INDICES)
+                .setSearchType(SearchType.QUERY_THEN_FETCH)
+                .setQuery(matchAllQuery())
+                .addSort("value", SortOrder.DESC)
+                .setFrom(from)
+                .setSize(size)
+                .addAggregation(terms("tags").field("tag").size(3).shardSize(NUM_TAGS).order(Terms.Order.count(false)))
+                .addFacet(termsFacet("tags").field("tag").size(3).shardSize(NUM_TAGS).order(TermsFacet.ComparatorType.COUNT))
+                .get();
+
+        assertSearchResponse(response);
+        assertThat(response.getHits().getTotalHits(), equalTo((long) numDocs));
+
+        SearchHit[] hits = response.getHits().getHits();
+        assertThat(hits.length, equalTo(size));
+        for (int i = 0; i < hits.length; i++) {
+            assertThat(hits[i].getId(), equalTo("" + (numDocs - 1 - from - i)));
+        }
+
+        assertTopTags((Terms) response.getAggregations().get("tags"));
+
+        TermsFacet facet = response.getFacets().facet("tags");
+        assertThat(facet.getEntries().size(), equalTo(TOP_TAGS.length));
+        for (int i = 0; i < TOP_TAGS.length; i++) {
+            TermsFacet.Entry entry = facet.getEntries().get(i);
+            assertThat(entry.getTerm().string(), equalTo(TOP_TAGS[i]));
+            assertThat((long) entry.getCount(), equalTo(TOP_TAG_COUNTS[i]));
+        }
+    }
+
+    @Test
+    public void count() throws Exception {
+        final int numDocs = indexDocs();
+        SearchResponse response = client().prepareSearch(INDICES)
+                .setSearchType(SearchType.COUNT)
+                .setQuery(matchAllQuery())
+                .addAggregation(terms("tags").field("tag").size(3).shardSize(NUM_TAGS).order(Terms.Order.count(false)))
+                .get();
+
+        assertSearchResponse(response);
+        assertThat(response.getHits().getTotalHits(), equalTo((long) numDocs));
+
+        assertTopTags((Terms) response.getAggregations().get("tags"));
+    }
+
+    private static void assertTopTags(Terms terms) {
+        assertThat(terms.buckets().size(), equalTo(TOP_TAGS.length));
+        int i = 0;
+        for (Terms.Bucket bucket : terms.buckets()) {
+            assertThat(bucket.getKey().string(), equalTo(TOP_TAGS[i]));
+            assertThat(bucket.getDocCount(), equalTo(TOP_TAG_COUNTS[i]));
+            i++;
+        }
+    }
+}
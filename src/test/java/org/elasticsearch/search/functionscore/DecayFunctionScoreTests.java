@@ -28,6 +28,7 @@ import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.lucene.search.function.CombineFunction;
 import org.elasticsearch.index.query.MatchAllFilterBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.functionscore.DecayFunctionBuilder;
 import org.elasticsearch.index.query.functionscore.gauss.GaussDecayFunctionBuilder;
@@ -41,6 +42,7 @@ import java.util.List;
 
 import static org.elasticsearch.client.Requests.indexRequest;
 import static org.elasticsearch.client.Requests.searchRequest;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
@@ -712,4 +714,40 @@ public class DecayFunctionScoreTests extends ElasticsearchIntegrationTest {
         response.actionGet();
     }
 
+    @Test
+    public void testConcurrentSearchesWithSameQuery() throws Exception {
+        // decay functions keep per segment state, concurrent requests with the same query must not share it
+        assertAcked(prepareCreate("test").setSettings(settingsBuilder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .addMapping("type", jsonBuilder().startObject().startObject("type").startObject("properties")
+                        .startObject("num").field("type", "double").endObject().endObject().endObject().endObject()));
+        ensureGreen();
+        final int numDocs = between(50, 100);
+        for (int i = 0; i < numDocs; i++) {
+            client().prepareIndex("test", "type", Integer.toString(i)).setSource("num", randomDouble() * 100).get();
+            if (i % 10 == 9) {
+                // several segments, so that the functions move to other readers while other requests are scoring
+                refresh();
+            }
+        }
+        refresh();
+
+        final QueryBuilder query = functionScoreQuery(QueryBuilders.matchAllQuery(), gaussDecayFunction("num", 50, 20));
+        SearchResponse expected = client().prepareSearch("test").setSize(numDocs).setQuery(query).get();
+        assertNoFailures(expected);
+        assertHitCount(expected, numDocs);
+
+        List<ActionFuture<SearchResponse>> responses = new ArrayList<ActionFuture<SearchResponse>>();
+        for (int i = 0; i < 50; i++) {
+            responses.add(client().prepareSearch("test").setSize(numDocs).setQuery(query).execute());
+        }
+        for (ActionFuture<SearchResponse> future : responses) {
+            SearchResponse response = future.actionGet();
+            assertNoFailures(response);
+            assertHitCount(response, numDocs);
+            for (int i = 0; i < numDocs; i++) {
+                assertThat(response.getHits().getAt(i).id(), equalTo(expected.getHits().getAt(i).id()));
+                assertThat(response.getHits().getAt(i).score(), equalTo(expected.getHits().getAt(i).score()));
+            }
+        }
+    }
 }
@@ -0,0 +1,243 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.query;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms.Order;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.elasticsearch.search.facet.statistical.StatisticalFacet;
+import org.elasticsearch.search.facet.terms.TermsFacet;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.sum;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.elasticsearch.search.facet.FacetBuilders.statisticalFacet;
+import static org.elasticsearch.search.facet.FacetBuilders.termsFacet;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Duels the query phase of an index searched concurrently over slices of its segments against a sequentially searched one.
+ */
+public class ConcurrentSlicesSearchTests extends ElasticsearchIntegrationTest {
+
+    @Test
+    public void testDuelWithSequentialSearch() throws Exception {
+        for (String index : new String[] {"sequential", "sliced"}) {
+            client().admin().indices().prepareCreate(index)
+                    .setSettings(ImmutableSettings.builder()
+                            .put("index.number_of_shards", 1)
+                            .put("index.number_of_replicas", 0)
+                            .put(SearchService.INDEX_SEARCH_CONCURRENT_SLICES, "sequential".equals(index) ? 1 : between(2, 5)))
+                    .addMapping("type", "key", "type=string,index=not_analyzed", "value", "type=long")
+                    .execute().actionGet();
+        }
+        ensureGreen();
+
+        final int numDocs = atLeast(200);
+        final int refreshEvery = between(10, 50);
+        for (int i = 0; i < numDocs; i++) {
+            final String key = "key" + randomInt(20);
+            for (String index : new String[] {"sequential", "sliced"}) {
+                client().prepareIndex(index, "type", Integer.toString(i)).setSource("key", key, "value", i).execute().actionGet();
+                if (i % refreshEvery == 0) {
+                    // create several segments
+                    client().admin().indices().prepareRefresh(index).execute().actionGet();
+                }
+            }
+        }
+        client().admin().indices().prepareRefresh().execute().actionGet();
+
+        SearchResponse sequential = client().prepareSearch("sequential").setSearchType(SearchType.COUNT)
+                .setQuery(termQuery("key", "key1")).execute().actionGet();
+        SearchResponse sliced = client().prepareSearch("sliced").setSearchType(SearchType.COUNT)
+                .setQuery(termQuery("key", "key1")).execute().actionGet();
+        assertNoFailures(sliced);
+        assertHitCount(sliced, sequential.getHits().totalHits());
+
+        final int size = between(1, 30);
+        sequential = client().prepareSearch("sequential").setQuery(matchAllQuery()).addSort("value", SortOrder.DESC).setSize(size)
+                .addAggregation(terms("keys").field("key").size(100).subAggregation(sum("sum").field("value")))
+                .execute().actionGet();
+        sliced = client().prepareSearch("sliced").setQuery(matchAllQuery()).addSort("value", SortOrder.DESC).setSize(size)
+                .addAggregation(terms("keys").field("key").size(100).subAggregation(sum("sum").field("value")))
+                .execute().actionGet();
+        assertNoFailures(sliced);
+        assertHitCount(sliced, numDocs);
+        assertThat(sliced.getHits().hits().length, equalTo(size));
+        for (int i = 0; i < size; i++) {
+            assertThat(sliced.getHits().getAt(i).id(), equalTo(sequential.getHits().getAt(i).id()));
+        }
+
+        Terms sequentialKeys = sequential.getAggregations().get("keys");
+        Terms slicedKeys = sliced.getAggregations().get("keys");
+        assertThat(slicedKeys.buckets().size(), equalTo(sequentialKeys.buckets().size()));
+        for (Terms.Bucket bucket : sequentialKeys) {
+            Terms.Bucket slicedBucket = slicedKeys.getByTerm(bucket.getKey().string());
+            assertThat(slicedBucket.getDocCount(), equalTo(bucket.getDocCount()));
+            Sum sum = bucket.getAggregations().get("sum");
+            Sum slicedSum = slicedBucket.getAggregations().get("sum");
+            assertThat(slicedSum.getValue(), equalTo(sum.getValue()));
+        }
+
+        sequential = client().prepareSearch("sequential").setSearchType(SearchType.COUNT).setQuery(matchAllQuery())
+                .addFacet(termsFacet("keys").field("key").size(5).order(TermsFacet.ComparatorType.COUNT))
+                .addFacet(statisticalFacet("values").field("value"))
+                .execute().actionGet();
+        sliced = client().prepareSearch("sliced").setSearchType(SearchType.COUNT).setQuery(matchAllQuery())
+                .addFacet(termsFacet("keys").field("key").size(5).order(TermsFacet.ComparatorType.COUNT))
+                .addFacet(statisticalFacet("values").field("value"))
+                .execute().actionGet();
+        assertNoFailures(sliced);
+        TermsFacet sequentialKeysFacet = sequential.getFacets().facet("keys");
+        TermsFacet slicedKeysFacet = sliced.getFacets().facet("keys");
+        assertThat(slicedKeysFacet.getEntries().size(), equalTo(sequentialKeysFacet.getEntries().size()));
+        assertThat(slicedKeysFacet.getTotalCount(), equalTo(sequentialKeysFacet.getTotalCount()));
+        assertThat(slicedKeysFacet.getOtherCount(), equalTo(sequentialKeysFacet.getOtherCount()));
+        for (int i = 0; i < sequentialKeysFacet.getEntries().size(); i++) {
+            TermsFacet.Entry entry = sequentialKeysFacet.getEntries().get(i);
+            TermsFacet.Entry slicedEntry = slicedKeysFacet.getEntries().get(i);
+            assertThat(slicedEntry.getCount(), equalTo(entry.getCount()));
+            assertThat(slicedEntry.getTerm().string(), equalTo(entry.getTerm().string()));
+        }
+        StatisticalFacet sequentialValues = sequential.getFacets().facet("values");
+        StatisticalFacet slicedValues = sliced.getFacets().facet("values");
+        assertThat(slicedValues.getCount(), equalTo(sequentialValues.getCount()));
+        assertThat(slicedValues.getTotal(), equalTo(sequentialValues.getTotal()));
+        assertThat(slicedValues.getMin(), equalTo(sequentialValues.getMin()));
+        assertThat(slicedValues.getMax(), equalTo(sequentialValues.getMax()));
+
+        sliced = client().prepareSearch("sliced").setQuery(termQuery("key", "key2")).setMinScore(Float.MAX_VALUE).execute().actionGet();
+        assertNoFailures(sliced);
+        assertHitCount(sliced, 0);
+    }
+
+    @Test
+    public void testSearchContextSurvivesSlices() throws Exception {
+        client().admin().indices().prepareCreate("sliced")
+                .setSettings(ImmutableSettings.builder()
+                        .put("index.number_of_shards", 1)
+                        .put("index.number_of_replicas", 0)
+                        .put(SearchService.INDEX_SEARCH_CONCURRENT_SLICES, between(2, 5)))
+                .addMapping("type", "key", "type=string,index=not_analyzed")
+                .execute().actionGet();
+        ensureGreen();
+
+        final int numDocs = between(20, 50);
+        for (int i = 0; i < numDocs; i++) {
+            client().prepareIndex("sliced", "type", Integer.toString(i)).setSource("key", "key" + (i % 2)).execute().actionGet();
+            if (i % 5 == 0) {
+                client().admin().indices().prepareRefresh("sliced").execute().actionGet();
+            }
+        }
+        client().admin().indices().prepareRefresh().execute().actionGet();
+
+        // the fetch phase of a single shard search runs on the thread that executed a slice of the query phase,
+        // matched queries look up its search context
+        SearchResponse sliced = client().prepareSearch("sliced").setQuery(termQuery("key", "key0").queryName("key0"))
+                .setSize(numDocs).execute().actionGet();
+        assertNoFailures(sliced);
+        assertHitCount(sliced, (numDocs + 1) / 2);
+        for (int i = 0; i < sliced.getHits().hits().length; i++) {
+            assertThat(sliced.getHits().getAt(i).matchedQueries(), arrayContaining("key0"));
+        }
+    }
+
+    @Test
+    public void testShardSizeWithSkewedShards() throws Exception {
+        // the top terms of each shard differ from the global top terms, only buckets beyond size but within shard_size
+        // returned by each shard give the exact counts
+        final int numSlices = between(2, 5);
+        for (String prefix : new String[] {"sequential", "sliced"}) {
+            for (String shard : new String[] {"_a", "_b"}) {
+                client().admin().indices().prepareCreate(prefix + shard)
+                        .setSettings(ImmutableSettings.builder()
+                                .put("index.number_of_shards", 1)
+                                .put("index.number_of_replicas", 0)
+                                .put(SearchService.INDEX_SEARCH_CONCURRENT_SLICES, "sequential".equals(prefix) ? 1 : numSlices))
+                        .addMapping("type", "key", "type=string,index=not_analyzed")
+                        .execute().actionGet();
+            }
+        }
+        ensureGreen();
+
+        // shard a: key0=10, key1=9, key2=8, key3..key9=5
+        // shard b: key0..key2=1, key3=7, key4..key9=2
+        // total:   key3=12, key0=11, key1=10, key2=9, key4..key9=7
+        indexKeys("_a", new int[] {10, 9, 8, 5, 5, 5, 5, 5, 5, 5});
+        indexKeys("_b", new int[] {1, 1, 1, 7, 2, 2, 2, 2, 2, 2});
+
+        SearchResponse sequential = client().prepareSearch("sequential_a", "sequential_b").setSearchType(SearchType.COUNT)
+                .addAggregation(terms("keys").field("key").size(3).shardSize(10).order(Order.count(false)))
+                .execute().actionGet();
+        SearchResponse sliced = client().prepareSearch("sliced_a", "sliced_b").setSearchType(SearchType.COUNT)
+                .addAggregation(terms("keys").field("key").size(3).shardSize(10).order(Order.count(false)))
+                .execute().actionGet();
+        assertNoFailures(sliced);
+
+        Terms sequentialKeys = sequential.getAggregations().get("keys");
+        Terms slicedKeys = sliced.getAggregations().get("keys");
+        assertThat(slicedKeys.buckets().size(), equalTo(3));
+        List<Terms.Bucket> sequentialBuckets = new ArrayList<Terms.Bucket>(sequentialKeys.buckets());
+        List<Terms.Bucket> slicedBuckets = new ArrayList<Terms.Bucket>(slicedKeys.buckets());
+        String[] expectedKeys = new String[] {"key3", "key0", "key1"};
+        long[] expectedCounts = new long[] {12, 11, 10};
+        for (int i = 0; i < 3; i++) {
+            assertThat(sequentialBuckets.get(i).getKey().string(), equalTo(expectedKeys[i]));
+            assertThat(sequentialBuckets.get(i).getDocCount(), equalTo(expectedCounts[i]));
+            assertThat(slicedBuckets.get(i).getKey().string(), equalTo(expectedKeys[i]));
+            assertThat(slicedBuckets.get(i).getDocCount(), equalTo(expectedCounts[i]));
+        }
+    }
+
+    private void indexKeys(String shard, int[] counts) throws Exception {
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < counts.length; i++) {
+            for (int j = 0; j < counts[i]; j++) {
+                keys.add("key" + i);
+            }
+        }
+        Collections.shuffle(keys, getRandom());
+        for (String prefix : new String[] {"sequential", "sliced"}) {
+            for (int i = 0; i < keys.size(); i++) {
+                client().prepareIndex(prefix + shard, "type", Integer.toString(i)).setSource("key", keys.get(i)).execute().actionGet();
+                if (i % 7 == 6) {
+                    // create several segments
+                    client().admin().indices().prepareRefresh(prefix + shard).execute().actionGet();
+                }
+            }
+        }
+        client().admin().indices().prepareRefresh().execute().actionGet();
+    }
+}
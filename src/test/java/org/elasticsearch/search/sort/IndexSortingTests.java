@@ -0,0 +1,113 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.sort;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.index.merge.policy.NumericFieldSorter;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.max;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Tests the early termination of sorted queries on indices whose segments are sorted.
+ */
+public class IndexSortingTests extends ElasticsearchIntegrationTest {
+
+    @Test
+    public void testEarlyTermination() throws Exception {
+        client().admin().indices().prepareCreate("unsorted")
+                .setSettings(ImmutableSettings.builder()
+                        .put("index.number_of_shards", 1)
+                        .put("index.number_of_replicas", 0))
+                .addMapping("type", "value", "type=long")
+                .execute().actionGet();
+        client().admin().indices().prepareCreate("sorted")
+                .setSettings(ImmutableSettings.builder()
+                        .put("index.number_of_shards", 1)
+                        .put("index.number_of_replicas", 0)
+                        .put(NumericFieldSorter.INDEX_SORT_FIELD, "value")
+                        .put(NumericFieldSorter.INDEX_SORT_ORDER, "desc"))
+                .addMapping("type", "value", "type=long")
+                .execute().actionGet();
+        ensureGreen();
+
+        final int numDocs = atLeast(200);
+        final List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < numDocs; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, getRandom());
+        final int refreshEvery = between(10, 50);
+        for (int i = 0; i < numDocs; i++) {
+            for (String index : new String[] {"unsorted", "sorted"}) {
+                if (values.get(i) % 10 == 0) {
+                    client().prepareIndex(index, "type", Integer.toString(i)).setSource("other", i).execute().actionGet();
+                } else {
+                    client().prepareIndex(index, "type", Integer.toString(i)).setSource("value", values.get(i)).execute().actionGet();
+                }
+                if (i % refreshEvery == 0) {
+                    // create several segments so that they get merged
+                    client().admin().indices().prepareRefresh(index).execute().actionGet();
+                }
+            }
+        }
+        client().admin().indices().prepareOptimize().setMaxNumSegments(1).setFlush(true).execute().actionGet();
+        client().admin().indices().prepareRefresh().execute().actionGet();
+
+        final int size = between(1, 30);
+        SearchResponse unsorted = client().prepareSearch("unsorted").setQuery(matchAllQuery())
+                .addSort("value", SortOrder.DESC).setSize(size).execute().actionGet();
+        SearchResponse sorted = client().prepareSearch("sorted").setQuery(matchAllQuery())
+                .addSort("value", SortOrder.DESC).setSize(size).execute().actionGet();
+        assertNoFailures(sorted);
+        assertThat(unsorted.isTerminatedEarly(), equalTo(false));
+        assertThat(sorted.isTerminatedEarly(), equalTo(true));
+        assertThat(sorted.getHits().totalHits(), lessThanOrEqualTo((long) numDocs));
+        assertThat(sorted.getHits().hits().length, equalTo(size));
+        for (int i = 0; i < size; i++) {
+            assertThat(sorted.getHits().getAt(i).id(), equalTo(unsorted.getHits().getAt(i).id()));
+        }
+
+        // incompatible sort order
+        sorted = client().prepareSearch("sorted").setQuery(matchAllQuery())
+                .addSort("value", SortOrder.ASC).setSize(size).execute().actionGet();
+        assertNoFailures(sorted);
+        assertThat(sorted.isTerminatedEarly(), equalTo(false));
+        assertHitCount(sorted, numDocs);
+
+        // aggregations need to see all the matching docs
+        sorted = client().prepareSearch("sorted").setQuery(matchAllQuery())
+                .addSort("value", SortOrder.DESC).setSize(size).addAggregation(max("max").field("value")).execute().actionGet();
+        assertNoFailures(sorted);
+        assertThat(sorted.isTerminatedEarly(), equalTo(false));
+        assertHitCount(sorted, numDocs);
+    }
+}